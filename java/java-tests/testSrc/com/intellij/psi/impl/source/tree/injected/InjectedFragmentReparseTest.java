@@ -0,0 +1,176 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi.impl.source.tree.injected;
+
+import com.intellij.lang.Language;
+import com.intellij.lang.injection.InjectedLanguageManager;
+import com.intellij.lang.injection.MultiHostInjector;
+import com.intellij.lang.injection.MultiHostRegistrar;
+import com.intellij.lang.java.JavaLanguage;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileTypes.PlainTextLanguage;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.*;
+import com.intellij.psi.impl.DebugUtil;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.xml.XmlTag;
+import com.intellij.psi.xml.XmlText;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks that injected fragments are kept consistent with their hosts when the hosts are changed, whether the fragment
+ * is reparsed incrementally or from scratch.
+ */
+public class InjectedFragmentReparseTest extends LightCodeInsightFixtureTestCase {
+  private final MultiHostInjector myInjector = new MultiHostInjector() {
+    @Override
+    public void getLanguagesToInject(@NotNull MultiHostRegistrar registrar, @NotNull PsiElement context) {
+      XmlTag tag = ((XmlText)context).getParentTag();
+      if (tag == null) return;
+      Language language = "java".equals(tag.getName()) ? JavaLanguage.INSTANCE
+                          : "text".equals(tag.getName()) ? PlainTextLanguage.INSTANCE : null;
+      if (language == null) return;
+      registrar.startInjecting(language)
+        .addPlace(null, null, (PsiLanguageInjectionHost)context, new TextRange(0, context.getTextLength()))
+        .doneInjecting();
+    }
+
+    @NotNull
+    @Override
+    public List<? extends Class<? extends PsiElement>> elementsToInjectIn() {
+      return Collections.singletonList(XmlText.class);
+    }
+  };
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    InjectedLanguageManager.getInstance(getProject()).registerMultiHostInjector(myInjector);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      InjectedLanguageManager.getInstance(getProject()).unregisterMultiHostInjector(myInjector);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testEditInsideFragmentKeepsInjectedFile() {
+    PsiFile injected = configure("java", "class A { void f() { int a = 1; } void g() { int b = 2; } }");
+    PsiMethod g = findMethod(injected, "g");
+
+    PsiFile reparsed = insert("int a = 1;", " int c = 3;");
+
+    assertSame(injected, reparsed);
+    assertEquals("class A { void f() { int a = 1; int c = 3; } void g() { int b = 2; } }", reparsed.getText());
+    assertTrue(g.isValid());
+    assertSame(g, findMethod(reparsed, "g"));
+    assertSameTreeAsFullReparse(reparsed);
+  }
+
+  public void testEditChangingStructureOfFragment() {
+    configure("java", "class A { void f() { int a = 1; } }");
+
+    PsiFile reparsed = insert("int a = 1; }", " void g() { }");
+
+    assertEquals("class A { void f() { int a = 1; } void g() { } }", reparsed.getText());
+    assertNotNull(findMethod(reparsed, "g"));
+    assertSameTreeAsFullReparse(reparsed);
+  }
+
+  public void testEscapedFragmentIsReparsedFully() {
+    configure("java", "class A { boolean f() { return 1 &lt; 2; } }");
+
+    PsiFile reparsed = insert("return 1", " + 1");
+
+    assertEquals("class A { boolean f() { return 1 + 1 < 2; } }", reparsed.getText());
+    assertSameTreeAsFullReparse(reparsed);
+  }
+
+  public void testLanguageWithoutReparseableElements() {
+    PsiFile injected = configure("text", "some text");
+
+    PsiFile reparsed = insert("some", " more");
+
+    assertEquals(injected.getLanguage(), reparsed.getLanguage());
+    assertEquals("some more text", reparsed.getText());
+    assertSameTreeAsFullReparse(reparsed);
+  }
+
+  @NotNull
+  private PsiFile configure(@NotNull String tagName, @NotNull String fragment) {
+    myFixture.configureByText("a.xml", "<root><" + tagName + ">" + fragment + "</" + tagName + "></root>");
+    return findInjectedFile();
+  }
+
+  @NotNull
+  private PsiFile insert(@NotNull String anchor, @NotNull final String text) {
+    final Document document = myFixture.getEditor().getDocument();
+    int anchorOffset = document.getText().indexOf(anchor);
+    assertTrue(anchor, anchorOffset >= 0);
+    final int offset = anchorOffset + anchor.length();
+    new WriteCommandAction.Simple(getProject()) {
+      @Override
+      protected void run() throws Throwable {
+        document.insertString(offset, text);
+        PsiDocumentManager.getInstance(getProject()).commitAllDocuments();
+      }
+    }.execute();
+    return findInjectedFile();
+  }
+
+  @NotNull
+  private PsiFile findInjectedFile() {
+    XmlText host = PsiTreeUtil.findChildOfType(myFixture.getFile(), XmlText.class);
+    assertNotNull(host);
+    List<Pair<PsiElement, TextRange>> injected = InjectedLanguageManager.getInstance(getProject()).getInjectedPsiFiles(host);
+    assertNotNull(injected);
+    assertEquals(1, injected.size());
+    PsiFile file = injected.get(0).first.getContainingFile();
+    assertTrue(file.isValid());
+    return file;
+  }
+
+  @NotNull
+  private static PsiMethod findMethod(@NotNull PsiFile file, @NotNull String name) {
+    PsiMethod[] methods = ((PsiJavaFile)file).getClasses()[0].findMethodsByName(name, false);
+    assertEquals(1, methods.length);
+    return methods[0];
+  }
+
+  private void assertSameTreeAsFullReparse(@NotNull PsiFile injected) {
+    PsiFile expected = PsiFileFactory.getInstance(getProject()).createFileFromText("a", injected.getLanguage(), injected.getText());
+    assertEquals(childrenToString(expected), childrenToString(injected));
+  }
+
+  @NotNull
+  private static String childrenToString(@NotNull PsiFile file) {
+    StringBuilder result = new StringBuilder();
+    for (PsiElement child = file.getFirstChild(); child != null; child = child.getNextSibling()) {
+      result.append(DebugUtil.psiToString(child, false));
+    }
+    return result.toString();
+  }
+}
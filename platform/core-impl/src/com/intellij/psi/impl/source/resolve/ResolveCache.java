@@ -16,6 +16,7 @@
 
 package com.intellij.psi.impl.source.resolve;
 
+import com.intellij.lang.Language;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.diagnostic.Logger;
@@ -26,18 +27,30 @@ import com.intellij.psi.*;
 import com.intellij.psi.impl.AnyPsiChangeListener;
 import com.intellij.psi.impl.PsiManagerImpl;
 import com.intellij.reference.SoftReference;
+import com.intellij.util.ConcurrencyUtil;
+import com.intellij.util.SystemProperties;
 import com.intellij.util.containers.ConcurrentWeakHashMap;
 import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.containers.SLRUMap;
 import com.intellij.util.messages.MessageBus;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ResolveCache {
   private static final Logger LOG = Logger.getInstance("#com.intellij.psi.impl.source.resolve.ResolveCache");
-  private final ConcurrentMap[] myMaps = new ConcurrentMap[2*2*2]; //boolean physical, boolean incompleteCode, boolean isPoly
+  /**
+   * Max number of cached results per map (there are eight of them). When positive, results are held strongly in SLRU maps
+   * and evicted by usage instead of being dropped all at once by GC; otherwise soft references are used.
+   */
+  private static final int BOUNDED_CACHE_SIZE = SystemProperties.getIntProperty("idea.resolve.cache.size", 0);
+
+  private final ResultMap[] myMaps = new ResultMap[2*2*2]; //boolean physical, boolean incompleteCode, boolean isPoly
+  private final ConcurrentMap<Language, Statistics> myStatistics = ContainerUtil.newConcurrentMap();
   private final RecursionGuard myGuard = RecursionManager.createGuard("resolveCache");
 
   public static ResolveCache getInstance(Project project) {
@@ -59,7 +72,7 @@ public class ResolveCache {
 
   public ResolveCache(@NotNull MessageBus messageBus) {
     for (int i = 0; i < myMaps.length; i++) {
-      myMaps[i] = createWeakMap();
+      myMaps[i] = isBounded() ? new BoundedResultMap(BOUNDED_CACHE_SIZE) : new SoftResultMap();
     }
     messageBus.connect().subscribe(PsiManagerImpl.ANY_PSI_CHANGE_TOPIC, new AnyPsiChangeListener() {
       @Override
@@ -73,8 +86,26 @@ public class ResolveCache {
     });
   }
 
-  private static <K,V> ConcurrentWeakHashMap<K, V> createWeakMap() {
-    return new ConcurrentWeakHashMap<K,V>(100, 0.75f, Runtime.getRuntime().availableProcessors(), ContainerUtil.<K>canonicalStrategy());
+  private static boolean isBounded() {
+    return BOUNDED_CACHE_SIZE > 0;
+  }
+
+  /**
+   * @return hit/miss/eviction counters per language of the resolved reference elements.
+   * Counters are collected only in the bounded mode (see {@code idea.resolve.cache.size}), otherwise the map is empty.
+   */
+  @NotNull
+  public Map<Language, Statistics> getStatistics() {
+    return Collections.unmodifiableMap(myStatistics);
+  }
+
+  @NotNull
+  private Statistics getStatistics(@NotNull Language language) {
+    Statistics statistics = myStatistics.get(language);
+    if (statistics == null) {
+      statistics = ConcurrencyUtil.cacheOrGet(myStatistics, language, new Statistics());
+    }
+    return statistics;
   }
 
   public void clearCache(boolean isPhysical) {
@@ -92,9 +123,14 @@ public class ResolveCache {
     ProgressIndicatorProvider.checkCanceled();
     ApplicationManager.getApplication().assertReadAccessAllowed();
 
-    ConcurrentMap<TRef, Getter<TResult>> map = getMap(isPhysical, incompleteCode, isPoly);
+    ResultMap<TRef, TResult> map = getMap(isPhysical, incompleteCode, isPoly);
     Getter<TResult> reference = map.get(ref);
     TResult result = reference == null ? null : reference.get();
+    Language language = isBounded() ? ref.getElement().getLanguage() : null;
+    if (language != null) {
+      AtomicLong counter = result != null ? getStatistics(language).myHits : getStatistics(language).myMisses;
+      counter.incrementAndGet();
+    }
     if (result != null) {
       return result;
     }
@@ -110,7 +146,7 @@ public class ResolveCache {
     LOG.assertTrue(element == null || element.isValid(), result);
 
     if (stamp.mayCacheNow()) {
-      cache(ref, map, result, isPoly);
+      cache(ref, map, result, isPoly, language == null ? null : getStatistics(language));
     }
     return result;
   }
@@ -134,7 +170,7 @@ public class ResolveCache {
 
   @Nullable
   public <T extends PsiPolyVariantReference> ResolveResult[] getCachedResults(@NotNull T ref, boolean physical, boolean incompleteCode, boolean isPoly) {
-    Map<T, Getter<ResolveResult[]>> map = getMap(physical, incompleteCode, isPoly);
+    ResultMap<T, ResolveResult[]> map = getMap(physical, incompleteCode, isPoly);
     Getter<ResolveResult[]> reference = map.get(ref);
     return reference == null ? null : reference.get();
   }
@@ -148,7 +184,7 @@ public class ResolveCache {
     return resolve(ref, resolver, needToPreventRecursion, incompleteCode, false, ref.getElement().isPhysical());
   }
 
-  private <TRef extends PsiReference,TResult> ConcurrentMap<TRef, Getter<TResult>> getMap(boolean physical, boolean incompleteCode, boolean isPoly) {
+  private <TRef extends PsiReference,TResult> ResultMap<TRef, TResult> getMap(boolean physical, boolean incompleteCode, boolean isPoly) {
     //noinspection unchecked
     return myMaps[(physical ? 0 : 1)*4 + (incompleteCode ? 0 : 1)*2 + (isPoly ? 0 : 1)];
   }
@@ -161,9 +197,10 @@ public class ResolveCache {
   private static final Getter<ResolveResult[]> EMPTY_POLY_RESULT = new StaticGetter<ResolveResult[]>(ResolveResult.EMPTY_ARRAY);
   private static final Getter<Object> NULL_RESULT = new StaticGetter<Object>(null);
   private static <TRef extends PsiReference, TResult> void cache(@NotNull TRef ref,
-                                                                 @NotNull ConcurrentMap<TRef, Getter<TResult>> map,
+                                                                 @NotNull ResultMap<TRef, TResult> map,
                                                                  TResult result,
-                                                                 boolean isPoly) {
+                                                                 boolean isPoly,
+                                                                 @Nullable Statistics statistics) {
     // optimization: less contention
     Getter<TResult> cached = map.get(ref);
     if (cached != null && cached.get() == result) {
@@ -179,9 +216,108 @@ public class ResolveCache {
       //noinspection unchecked
       cached = result.getClass() == ResolveResult[].class ? (Getter<TResult>)EMPTY_POLY_RESULT : new StaticGetter<TResult>(result);
     }
+    else if (statistics != null) {
+      // bounded mode: the result is held strongly until evicted
+      cached = new StaticGetter<TResult>(result);
+    }
     else {
       cached = new SoftGetter<TResult>(result);
     }
-    map.put(ref, cached);
+    map.put(ref, cached, statistics);
+  }
+
+  public static class Statistics {
+    private final AtomicLong myHits = new AtomicLong();
+    private final AtomicLong myMisses = new AtomicLong();
+    private final AtomicLong myEvictions = new AtomicLong();
+
+    public long getHits() {
+      return myHits.get();
+    }
+
+    public long getMisses() {
+      return myMisses.get();
+    }
+
+    public long getEvictions() {
+      return myEvictions.get();
+    }
+
+    @Override
+    public String toString() {
+      return "hits: " + getHits() + ", misses: " + getMisses() + ", evictions: " + getEvictions();
+    }
+  }
+
+  interface ResultMap<TRef, TResult> {
+    @Nullable
+    Getter<TResult> get(@NotNull TRef ref);
+
+    void put(@NotNull TRef ref, @NotNull Getter<TResult> result, @Nullable Statistics statistics);
+
+    void clear();
+  }
+
+  private static class SoftResultMap<TRef, TResult> implements ResultMap<TRef, TResult> {
+    private final ConcurrentMap<TRef, Getter<TResult>> myMap =
+      new ConcurrentWeakHashMap<TRef, Getter<TResult>>(100, 0.75f, Runtime.getRuntime().availableProcessors(),
+                                                       ContainerUtil.<TRef>canonicalStrategy());
+
+    @Override
+    public Getter<TResult> get(@NotNull TRef ref) {
+      return myMap.get(ref);
+    }
+
+    @Override
+    public void put(@NotNull TRef ref, @NotNull Getter<TResult> result, @Nullable Statistics statistics) {
+      myMap.put(ref, result);
+    }
+
+    @Override
+    public void clear() {
+      myMap.clear();
+    }
+  }
+
+  static class BoundedResultMap<TRef, TResult> implements ResultMap<TRef, TResult> {
+    private final SLRUMap<TRef, Pair<Getter<TResult>, Statistics>> myMap;
+    private boolean myEvicting = true;
+
+    BoundedResultMap(int size) {
+      myMap = new SLRUMap<TRef, Pair<Getter<TResult>, Statistics>>(size / 2, size - size / 2) {
+        @Override
+        protected void onDropFromCache(TRef key, Pair<Getter<TResult>, Statistics> value) {
+          if (myEvicting && value.second != null) {
+            value.second.myEvictions.incrementAndGet();
+          }
+        }
+      };
+    }
+
+    @Override
+    public synchronized Getter<TResult> get(@NotNull TRef ref) {
+      Pair<Getter<TResult>, Statistics> pair = myMap.get(ref);
+      return pair == null ? null : pair.first;
+    }
+
+    @Override
+    public synchronized void put(@NotNull TRef ref, @NotNull Getter<TResult> result, @Nullable Statistics statistics) {
+      // replacing a value for the same reference is not an eviction
+      myEvicting = false;
+      myMap.remove(ref);
+      myEvicting = true;
+      myMap.put(ref, Pair.create(result, statistics));
+    }
+
+    @Override
+    public synchronized void clear() {
+      myEvicting = false;
+      try {
+        myMap.clear();
+      }
+      finally {
+        myEvicting = true;
+      }
+    }
   }
 }
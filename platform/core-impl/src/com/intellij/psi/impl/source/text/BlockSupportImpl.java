@@ -79,23 +79,43 @@ public class BlockSupportImpl extends BlockSupport {
                               @NotNull final CharSequence newFileText,
                               @NotNull final ProgressIndicator indicator) {
     final PsiFileImpl fileImpl = (PsiFileImpl)file;
-    Project project = fileImpl.getProject();
     final FileElement treeFileElement = fileImpl.getTreeElement();
-    final CharTable charTable = treeFileElement.getCharTable();
-
-
     final int textLength = newFileText.length();
-    int lengthShift = textLength - treeFileElement.getTextLength();
 
     if (treeFileElement.getElementType() instanceof ITemplateDataElementType || isTooDeep(file)) {
       // unable to perform incremental reparse for template data in JSP, or in exceptionally deep trees
       return makeFullParse(treeFileElement, newFileText, textLength, fileImpl, indicator);
     }
 
+    DiffLog diffLog = reparseChangedBlock(fileImpl, changedPsiRange, newFileText, indicator);
+    if (diffLog != null) {
+      return diffLog;
+    }
+    return makeFullParse(treeFileElement, newFileText, textLength, fileImpl, indicator);
+  }
+
+  /**
+   * Tries to reparse only the innermost {@link IReparseableElementType reparseable} element which contains the changed range.
+   *
+   * @return diff to apply to the file tree or <code>null</code> if there is no suitable element and the whole file should be reparsed
+   */
+  @Nullable
+  public static DiffLog reparseChangedBlock(@NotNull PsiFileImpl fileImpl,
+                                            @NotNull TextRange changedPsiRange,
+                                            @NotNull CharSequence newFileText,
+                                            @NotNull ProgressIndicator indicator) {
+    final FileElement treeFileElement = fileImpl.getTreeElement();
+    if (treeFileElement == null || treeFileElement.getElementType() instanceof ITemplateDataElementType || isTooDeep(fileImpl)) {
+      return null;
+    }
+    final CharTable charTable = treeFileElement.getCharTable();
+    final Project project = fileImpl.getProject();
+    int lengthShift = newFileText.length() - treeFileElement.getTextLength();
+
     final ASTNode leafAtStart = treeFileElement.findLeafElementAt(Math.max(0, changedPsiRange.getStartOffset() - 1));
     final ASTNode leafAtEnd = treeFileElement.findLeafElementAt(changedPsiRange.getEndOffset());
     ASTNode node = leafAtStart != null && leafAtEnd != null ? TreeUtil.findCommonParent(leafAtStart, leafAtEnd) : treeFileElement;
-    Language baseLanguage = file.getViewProvider().getBaseLanguage();
+    Language baseLanguage = fileImpl.getViewProvider().getBaseLanguage();
 
     while (node != null && !(node instanceof FileElement)) {
       IElementType elementType = node.getElementType();
@@ -106,7 +126,7 @@ public class BlockSupportImpl extends BlockSupport {
         if (baseLanguage.isKindOf(reparseable.getLanguage())) {
           final int start = textRange.getStartOffset();
           final int end = start + textRange.getLength() + lengthShift;
-          assertFileLength(file, newFileText, node, elementType, start, end);
+          assertFileLength(fileImpl, newFileText, node, elementType, start, end);
 
           CharSequence newTextStr = newFileText.subSequence(start, end);
 
@@ -131,7 +151,7 @@ public class BlockSupportImpl extends BlockSupport {
       node = node.getTreeParent();
     }
 
-    return makeFullParse(node, newFileText, textLength, fileImpl, indicator);
+    return null;
   }
 
   private static void assertFileLength(PsiFile file, CharSequence newFileText, ASTNode node, IElementType elementType, int start, int end) {
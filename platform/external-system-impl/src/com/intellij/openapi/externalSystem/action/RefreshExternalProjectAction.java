@@ -10,18 +10,15 @@ import com.intellij.openapi.externalSystem.model.ProjectSystemId;
 import com.intellij.openapi.externalSystem.model.project.ProjectData;
 import com.intellij.openapi.externalSystem.service.project.ExternalProjectRefreshCallback;
 import com.intellij.openapi.externalSystem.service.project.manage.ProjectDataManager;
-import com.intellij.openapi.externalSystem.util.ExternalSystemApiUtil;
 import com.intellij.openapi.externalSystem.util.ExternalSystemBundle;
 import com.intellij.openapi.externalSystem.util.ExternalSystemUtil;
 import com.intellij.openapi.externalSystem.service.execution.ProgressExecutionMode;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.project.DumbAware;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.roots.ex.ProjectRootManagerEx;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.Collections;
 
 /**
  * * Forces the ide to retrieve the most up-to-date info about the linked external project and updates project state if necessary
@@ -74,17 +71,8 @@ public class RefreshExternalProjectAction extends AnAction implements DumbAware,
           if (externalProject == null) {
             return;
           }
-          ExternalSystemApiUtil.executeProjectChangeAction(true, new Runnable() {
-            @Override
-            public void run() {
-              ProjectRootManagerEx.getInstanceEx(project).mergeRootsChangesDuring(new Runnable() {
-                @Override
-                public void run() {
-                  projectDataManager.importData(externalProject.getKey(), Collections.singleton(externalProject), project, true);
-                }
-              });
-            }
-          });
+          // the user may refresh the project exactly because its ide state looks wrong, so nothing is skipped
+          projectDataManager.importChangedData(externalProject, project, true);
         }
 
         @Override
@@ -155,6 +155,9 @@ public class ExternalSystemFacadeManager {
     if (project.isDisposed() || manager == null) {
       return RemoteExternalSystemFacade.NULL_OBJECT;
     }
+    if (!currentInProcess) {
+      myRemoteCommunicationManager.onFacadeUsed(key.getExternalSystemId());
+    }
     Pair<RemoteExternalSystemFacade, ExternalSystemExecutionSettings> pair = myRemoteFacades.get(key);
     if (pair != null && prepare(myCommunicationManager, project, key, pair)) {
       return pair.first;
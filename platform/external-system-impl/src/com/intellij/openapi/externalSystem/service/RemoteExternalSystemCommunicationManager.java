@@ -36,6 +36,8 @@ import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.extensions.ExtensionPointName;
 import com.intellij.openapi.externalSystem.ExternalSystemManager;
 import com.intellij.openapi.externalSystem.model.ProjectSystemId;
+import com.intellij.openapi.externalSystem.model.task.ExternalSystemTaskId;
+import com.intellij.openapi.externalSystem.model.task.ExternalSystemTaskType;
 import com.intellij.openapi.externalSystem.model.task.ExternalSystemTaskNotificationListener;
 import com.intellij.openapi.externalSystem.service.notification.ExternalSystemProgressNotificationManager;
 import com.intellij.openapi.externalSystem.service.remote.ExternalSystemProgressNotificationManagerImpl;
@@ -62,10 +64,20 @@ import java.nio.charset.Charset;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
+ * Runs external system facades at slave processes.
+ * <p/>
+ * There is a single process per external system which is shared by all open ide projects, so that they don't start
+ * cold processes of their own. A process which hasn't been used for {@link #IDLE_TIMEOUT_MILLIS} and doesn't run any task
+ * is stopped, the next {@link #acquire(String, ProjectSystemId) request} starts it again.
+ * 
  * @author Denis Zhdanov
  * @since 8/9/13 3:37 PM
  */
@@ -75,6 +87,10 @@ public class RemoteExternalSystemCommunicationManager implements ExternalSystemC
 
   private static final String MAIN_CLASS_NAME = RemoteExternalSystemFacadeImpl.class.getName();
 
+  private static final long IDLE_TIMEOUT_MILLIS
+    = TimeUnit.MINUTES.toMillis(Integer.getInteger("external.system.remote.process.idle.ttl.minutes", 30));
+  private static final int  IDLE_CHECK_PERIOD_MILLIS = (int)TimeUnit.MINUTES.toMillis(1);
+
   private final AtomicReference<RemoteExternalSystemProgressNotificationManager> myExportedNotificationManager
     = new AtomicReference<RemoteExternalSystemProgressNotificationManager>();
 
@@ -83,6 +99,19 @@ public class RemoteExternalSystemCommunicationManager implements ExternalSystemC
   @NotNull private final ExternalSystemProgressNotificationManagerImpl                    myProgressManager;
   @NotNull private final RemoteProcessSupport<Object, RemoteExternalSystemFacade, String> mySupport;
 
+  /** Holds 'external system id -> facade of its process' entries for the running processes. */
+  @NotNull private final ConcurrentMap<String, RemoteExternalSystemFacade> myFacades
+    = new ConcurrentHashMap<String, RemoteExternalSystemFacade>();
+  /** Holds 'external system id -> time when its process was used last time' entries for the running processes. */
+  @NotNull private final ConcurrentMap<String, Long> myLastUsageTimes = new ConcurrentHashMap<String, Long>();
+  @NotNull private final Alarm myIdleProcessesAlarm = new Alarm(Alarm.ThreadToUse.SHARED_THREAD);
+  @NotNull private final Runnable myStopIdleProcessesRequest = new Runnable() {
+    @Override
+    public void run() {
+      stopIdleProcesses();
+    }
+  };
+
   public RemoteExternalSystemCommunicationManager(@NotNull ExternalSystemProgressNotificationManager notificationManager) {
     myProgressManager = (ExternalSystemProgressNotificationManagerImpl)notificationManager;
     mySupport = new RemoteProcessSupport<Object, RemoteExternalSystemFacade, String>(RemoteExternalSystemFacade.class) {
@@ -109,6 +138,7 @@ public class RemoteExternalSystemCommunicationManager implements ExternalSystemC
   }
 
   public synchronized void shutdown(boolean wait) {
+    myIdleProcessesAlarm.cancelAllRequests();
     mySupport.stopAll(wait);
   }
 
@@ -160,6 +190,11 @@ public class RemoteExternalSystemCommunicationManager implements ExternalSystemC
           }
         }
 
+        String xmx = System.getProperty("external.system.remote.process.xmx");
+        if (xmx != null) {
+          params.getVMParametersList().add("-Xmx" + xmx);
+        }
+
         return params;
       }
 
@@ -200,10 +235,12 @@ public class RemoteExternalSystemCommunicationManager implements ExternalSystemC
   public RemoteExternalSystemFacade acquire(@NotNull String id, @NotNull ProjectSystemId externalSystemId)
     throws Exception
   {
+    // The process is shared by all ide projects, so, it's identified by the external system only.
+    String configuration = externalSystemId.getId();
     myTargetExternalSystemId.set(externalSystemId);
     final RemoteExternalSystemFacade facade;
     try {
-      facade = mySupport.acquire(this, id);
+      facade = mySupport.acquire(this, configuration);
     }
     finally {
       myTargetExternalSystemId.set(null);
@@ -211,6 +248,8 @@ public class RemoteExternalSystemCommunicationManager implements ExternalSystemC
     if (facade == null) {
       return null;
     }
+    myFacades.put(configuration, facade);
+    onFacadeUsed(externalSystemId);
 
     RemoteExternalSystemProgressNotificationManager exported = myExportedNotificationManager.get();
     if (exported == null) {
@@ -231,6 +270,53 @@ public class RemoteExternalSystemCommunicationManager implements ExternalSystemC
     return facade;
   }
 
+  /**
+   * Postpones stopping of the process of the given external system as idle.
+   */
+  public void onFacadeUsed(@NotNull ProjectSystemId externalSystemId) {
+    myLastUsageTimes.put(externalSystemId.getId(), System.currentTimeMillis());
+    myIdleProcessesAlarm.cancelAllRequests();
+    myIdleProcessesAlarm.addRequest(myStopIdleProcessesRequest, IDLE_CHECK_PERIOD_MILLIS);
+  }
+
+  private void stopIdleProcesses() {
+    long now = System.currentTimeMillis();
+    boolean hasRunningProcesses = false;
+    for (String configuration : mySupport.getActiveConfigurations(this)) {
+      RemoteExternalSystemFacade facade = myFacades.get(configuration);
+      Long lastUsageTime = myLastUsageTimes.get(configuration);
+      if (facade != null && isBusy(facade)) {
+        myLastUsageTimes.put(configuration, now);
+      }
+      else if (lastUsageTime == null || now - lastUsageTime >= IDLE_TIMEOUT_MILLIS) {
+        LOG.info(String.format("Stopping idle external system process '%s'", configuration));
+        myFacades.remove(configuration);
+        myLastUsageTimes.remove(configuration);
+        mySupport.release(this, configuration);
+        continue;
+      }
+      hasRunningProcesses = true;
+    }
+    if (hasRunningProcesses) {
+      myIdleProcessesAlarm.addRequest(myStopIdleProcessesRequest, IDLE_CHECK_PERIOD_MILLIS);
+    }
+  }
+
+  private static boolean isBusy(@NotNull RemoteExternalSystemFacade facade) {
+    try {
+      Map<ExternalSystemTaskType, Set<ExternalSystemTaskId>> tasks = facade.getTasksInProgress();
+      for (Set<ExternalSystemTaskId> ids : tasks.values()) {
+        if (!ids.isEmpty()) {
+          return true;
+        }
+      }
+      return false;
+    }
+    catch (RemoteException e) {
+      return false;
+    }
+  }
+
   @Override
   public boolean isAlive(@NotNull RemoteExternalSystemFacade facade) {
     RemoteExternalSystemFacade toCheck = facade;
@@ -252,6 +338,9 @@ public class RemoteExternalSystemCommunicationManager implements ExternalSystemC
 
   @Override
   public void clear() {
-    mySupport.stopAll(true); 
+    myIdleProcessesAlarm.cancelAllRequests();
+    mySupport.stopAll(true);
+    myFacades.clear();
+    myLastUsageTimes.clear();
   }
 }
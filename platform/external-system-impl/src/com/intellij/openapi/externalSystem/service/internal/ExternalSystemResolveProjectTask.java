@@ -1,6 +1,7 @@
 package com.intellij.openapi.externalSystem.service.internal;
 
 import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.externalSystem.model.DataNode;
 import com.intellij.openapi.externalSystem.model.ProjectSystemId;
 import com.intellij.openapi.externalSystem.model.project.ProjectData;
@@ -15,7 +16,11 @@ import com.intellij.openapi.project.Project;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Thread-safe.
@@ -25,6 +30,8 @@ import java.util.concurrent.atomic.AtomicReference;
  */
 public class ExternalSystemResolveProjectTask extends AbstractExternalSystemTask {
 
+  private static final Logger LOG = Logger.getInstance("#" + ExternalSystemResolveProjectTask.class.getName());
+
   private final AtomicReference<DataNode<ProjectData>> myExternalProject = new AtomicReference<DataNode<ProjectData>>();
 
   @NotNull private final String  myProjectPath;
@@ -50,18 +57,81 @@ public class ExternalSystemResolveProjectTask extends AbstractExternalSystemTask
     try {
       ExternalSystemExecutionSettings settings = ExternalSystemApiUtil
         .getExecutionSettings(ideProject, myProjectPath, getExternalSystemId());
-      DataNode<ProjectData> project = resolver.resolveProjectInfo(getId(), myProjectPath, myIsPreviewMode, settings);
-
-      if (project == null) {
+      if (!resolver.resolveProjectInfoInChunks(getId(), myProjectPath, myIsPreviewMode, settings)) {
         return;
       }
-      myExternalProject.set(project);
+      myExternalProject.set(readProject(resolver));
     }
     finally {
       setState(ExternalSystemTaskState.FINISHED);
     }
   }
 
+  /**
+   * Deserializes the resolved project while its chunks are fetched, so that it's never held as a single serialized message.
+   */
+  @SuppressWarnings("unchecked")
+  @NotNull
+  private DataNode<ProjectData> readProject(@NotNull final RemoteExternalSystemProjectResolver resolver)
+    throws IOException, ClassNotFoundException
+  {
+    InputStream chunks = new InputStream() {
+      private byte[] myChunk = new byte[0];
+      private int myOffset;
+
+      @Override
+      public int read() throws IOException {
+        byte[] buffer = new byte[1];
+        return read(buffer, 0, 1) < 0 ? -1 : buffer[0] & 0xFF;
+      }
+
+      @Override
+      public int read(@NotNull byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+          return 0;
+        }
+        while (myChunk != null && myOffset >= myChunk.length) {
+          myChunk = resolver.readResultChunk(getId());
+          myOffset = 0;
+        }
+        if (myChunk == null) {
+          return -1;
+        }
+        int result = Math.min(len, myChunk.length - myOffset);
+        System.arraycopy(myChunk, myOffset, b, off, result);
+        myOffset += result;
+        return result;
+      }
+    };
+    try {
+      ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(chunks));
+      try {
+        return (DataNode<ProjectData>)in.readObject();
+      }
+      finally {
+        in.close();
+      }
+    }
+    catch (IOException e) {
+      dropResult(resolver);
+      throw e;
+    }
+    catch (ClassNotFoundException e) {
+      dropResult(resolver);
+      throw e;
+    }
+  }
+
+  // the rest of the result is not going to be read, so it's not kept at the external system side
+  private void dropResult(@NotNull RemoteExternalSystemProjectResolver resolver) {
+    try {
+      resolver.cancelTask(getId());
+    }
+    catch (Exception e) {
+      LOG.debug(e);
+    }
+  }
+
   protected void doCancel() throws Exception {
     final ExternalSystemFacadeManager manager = ServiceManager.getService(ExternalSystemFacadeManager.class);
     Project ideProject = getIdeProject();
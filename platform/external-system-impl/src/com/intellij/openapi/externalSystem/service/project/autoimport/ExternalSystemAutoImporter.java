@@ -35,7 +35,6 @@ import com.intellij.openapi.externalSystem.util.ExternalSystemUtil;
 import com.intellij.openapi.externalSystem.service.execution.ProgressExecutionMode;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.roots.ex.ProjectRootManagerEx;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileManager;
@@ -87,17 +86,7 @@ public class ExternalSystemAutoImporter implements BulkFileListener, DocumentLis
     @Override
     public void onSuccess(@Nullable final DataNode<ProjectData> externalProject) {
       if (externalProject != null) {
-        ExternalSystemApiUtil.executeProjectChangeAction(new Runnable() {
-          @Override
-          public void run() {
-            ProjectRootManagerEx.getInstanceEx(myProject).mergeRootsChangesDuring(new Runnable() {
-              @Override
-              public void run() {
-                myProjectDataManager.importData(externalProject.getKey(), Collections.singleton(externalProject), myProject, true);
-              }
-            });
-          }
-        });
+        myProjectDataManager.importChangedData(externalProject, myProject, false);
       }
     }
 
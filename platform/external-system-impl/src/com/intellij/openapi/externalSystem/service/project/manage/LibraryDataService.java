@@ -14,6 +14,7 @@ import com.intellij.openapi.externalSystem.util.ExternalSystemConstants;
 import com.intellij.openapi.externalSystem.util.Order;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.roots.OrderRootType;
+import com.intellij.openapi.roots.ex.ProjectRootManagerEx;
 import com.intellij.openapi.roots.libraries.Library;
 import com.intellij.openapi.roots.libraries.LibraryTable;
 import com.intellij.openapi.vfs.JarFileSystem;
@@ -67,9 +68,57 @@ public class LibraryDataService implements ProjectDataService<LibraryData, Libra
   }
 
   @Override
-  public void importData(@NotNull Collection<DataNode<LibraryData>> toImport, @NotNull Project project, boolean synchronous) {
-    for (DataNode<LibraryData> dataNode : toImport) {
-      importLibrary(dataNode.getData(), project, synchronous);
+  public void importData(@NotNull final Collection<DataNode<LibraryData>> toImport,
+                         @NotNull final Project project,
+                         boolean synchronous)
+  {
+    if (toImport.isEmpty()) {
+      return;
+    }
+    ExternalSystemApiUtil.executeProjectChangeAction(synchronous, new Runnable() {
+      @Override
+      public void run() {
+        // Large projects have thousands of libraries, so, they are created via a single library table commit
+        // and the project roots are changed only once for the whole batch.
+        ProjectRootManagerEx.getInstanceEx(project).mergeRootsChangesDuring(new Runnable() {
+          @Override
+          public void run() {
+            importLibraries(toImport, project);
+          }
+        });
+      }
+    });
+  }
+
+  private void importLibraries(@NotNull Collection<DataNode<LibraryData>> toImport, @NotNull Project project) {
+    LibraryTable libraryTable = myPlatformFacade.getProjectLibraryTable(project);
+    Map<String, Library> ideLibraries = ContainerUtilRt.newHashMap();
+    for (Library library : libraryTable.getLibraries()) {
+      String name = ExternalSystemApiUtil.getLibraryName(library);
+      if (!ideLibraries.containsKey(name)) {
+        ideLibraries.put(name, library);
+      }
+    }
+
+    LibraryTable.ModifiableModel projectLibraryModel = null;
+    try {
+      for (DataNode<LibraryData> dataNode : toImport) {
+        LibraryData data = dataNode.getData();
+        Library library = ideLibraries.get(data.getName());
+        if (library != null) {
+          syncPaths(data, library, true);
+          continue;
+        }
+        if (projectLibraryModel == null) {
+          projectLibraryModel = libraryTable.getModifiableModel();
+        }
+        ideLibraries.put(data.getName(), createLibrary(data.getName(), prepareLibraryFiles(data), projectLibraryModel));
+      }
+    }
+    finally {
+      if (projectLibraryModel != null) {
+        projectLibraryModel.commit();
+      }
     }
   }
 
@@ -108,24 +157,36 @@ public class LibraryDataService implements ProjectDataService<LibraryData, Libra
         // Is assumed to be called from the EDT.
         final LibraryTable libraryTable = myPlatformFacade.getProjectLibraryTable(project);
         final LibraryTable.ModifiableModel projectLibraryModel = libraryTable.getModifiableModel();
-        final Library intellijLibrary;
         try {
-          intellijLibrary = projectLibraryModel.createLibrary(libraryName);
+          createLibrary(libraryName, libraryFiles, projectLibraryModel);
         }
         finally {
           projectLibraryModel.commit();
         }
-        final Library.ModifiableModel libraryModel = intellijLibrary.getModifiableModel();
-        try {
-          registerPaths(libraryFiles, libraryModel, libraryName);
-        }
-        finally {
-          libraryModel.commit();
-        }
       }
     });
   }
 
+  /**
+   * Creates a library with the given roots at the given library table model. The library appears at the project when the model
+   * is committed.
+   */
+  @NotNull
+  private Library createLibrary(@NotNull String libraryName,
+                                @NotNull Map<OrderRootType, Collection<File>> libraryFiles,
+                                @NotNull LibraryTable.ModifiableModel projectLibraryModel)
+  {
+    Library library = projectLibraryModel.createLibrary(libraryName);
+    Library.ModifiableModel libraryModel = library.getModifiableModel();
+    try {
+      registerPaths(libraryFiles, libraryModel, libraryName);
+    }
+    finally {
+      libraryModel.commit();
+    }
+    return library;
+  }
+
   @SuppressWarnings("MethodMayBeStatic")
   public void registerPaths(@NotNull final Map<OrderRootType, Collection<File>> libraryFiles,
                             @NotNull Library.ModifiableModel model,
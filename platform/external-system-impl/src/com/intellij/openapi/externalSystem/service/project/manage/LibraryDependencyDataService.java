@@ -26,13 +26,16 @@ import com.intellij.openapi.externalSystem.util.ExternalSystemApiUtil;
 import com.intellij.openapi.externalSystem.util.ExternalSystemConstants;
 import com.intellij.openapi.externalSystem.util.Order;
 import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.roots.*;
+import com.intellij.openapi.roots.ex.ProjectRootManagerEx;
+import com.intellij.openapi.roots.impl.ModifiableModelCommitter;
 import com.intellij.openapi.roots.impl.ModuleLibraryOrderEntryImpl;
 import com.intellij.openapi.roots.libraries.Library;
 import com.intellij.openapi.roots.libraries.LibraryTable;
+import com.intellij.openapi.util.Condition;
 import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.util.BooleanFunction;
 import com.intellij.util.containers.ContainerUtilRt;
 import org.jetbrains.annotations.NotNull;
 
@@ -73,12 +76,34 @@ public class LibraryDependencyDataService extends AbstractDependencyDataService<
   }
 
   @Override
-  public void importData(@NotNull Collection<DataNode<LibraryDependencyData>> toImport, @NotNull Project project, boolean synchronous) {
+  public void importData(@NotNull final Collection<DataNode<LibraryDependencyData>> toImport,
+                         @NotNull final Project project,
+                         boolean synchronous)
+  {
     if (toImport.isEmpty()) {
       return;
     }
 
+    ExternalSystemApiUtil.executeProjectChangeAction(synchronous, new Runnable() {
+      @Override
+      public void run() {
+        // Dependencies of all the modules are committed at once within a single write action, so that the project roots
+        // are changed (and the project is re-indexed) only once.
+        ProjectRootManagerEx.getInstanceEx(project).mergeRootsChangesDuring(new Runnable() {
+          @Override
+          public void run() {
+            importDependencies(toImport, project);
+          }
+        });
+      }
+    });
+  }
+
+  private void importDependencies(@NotNull Collection<DataNode<LibraryDependencyData>> toImport, @NotNull Project project) {
+    importMissingProjectLibraries(project, toImport);
+
     Map<DataNode<ModuleData>, List<DataNode<LibraryDependencyData>>> byModule = ExternalSystemApiUtil.groupBy(toImport, MODULE);
+    Map<Module, List<DataNode<LibraryDependencyData>>> byIdeModule = ContainerUtilRt.newLinkedHashMap();
     for (Map.Entry<DataNode<ModuleData>, List<DataNode<LibraryDependencyData>>> entry : byModule.entrySet()) {
       Module module = myProjectStructureHelper.findIdeModule(entry.getKey().getData(), project);
       if (module == null) {
@@ -92,7 +117,24 @@ public class LibraryDependencyDataService extends AbstractDependencyDataService<
           continue;
         }
       }
-      importData(entry.getValue(), module, synchronous);
+      byIdeModule.put(module, entry.getValue());
+    }
+    if (byIdeModule.isEmpty()) {
+      return;
+    }
+
+    // Root models of all the modules are committed at once, the missing project libraries have already been imported above.
+    List<ModifiableRootModel> moduleRootModels = ContainerUtilRt.newArrayList();
+    try {
+      for (Map.Entry<Module, List<DataNode<LibraryDependencyData>>> entry : byIdeModule.entrySet()) {
+        ModifiableRootModel moduleRootModel = ModuleRootManager.getInstance(entry.getKey()).getModifiableModel();
+        moduleRootModels.add(moduleRootModel);
+        importDependencies(entry.getValue(), entry.getKey(), moduleRootModel);
+      }
+    }
+    finally {
+      ModifiableModelCommitter.multiCommit(moduleRootModels.toArray(new ModifiableRootModel[moduleRootModels.size()]),
+                                           ModuleManager.getInstance(project).getModifiableModel());
     }
   }
 
@@ -103,50 +145,10 @@ public class LibraryDependencyDataService extends AbstractDependencyDataService<
     ExternalSystemApiUtil.executeProjectChangeAction(synchronous, new Runnable() {
       @Override
       public void run() {
-        importMissingProjectLibraries(module, nodesToImport, synchronous);
-        
-        // The general idea is to import all external project library dependencies and module libraries which don't present at the
-        // ide side yet and remove all project library dependencies and module libraries which present at the ide but not at
-        // the given collection.
-        // The trick is that we should perform module settings modification inside try/finally block against target root model.
-        // That means that we need to prepare all necessary data, obtain a model and modify it as necessary.
-        Map<Set<String>/* library paths */, LibraryDependencyData> moduleLibrariesToImport = ContainerUtilRt.newHashMap();
-        Map<String/* library name */, LibraryDependencyData> projectLibrariesToImport = ContainerUtilRt.newHashMap();
-        Set<LibraryDependencyData> toImport = ContainerUtilRt.newLinkedHashSet();
-        
-        boolean hasUnresolved = false;
-        for (DataNode<LibraryDependencyData> dependencyNode : nodesToImport) {
-          LibraryDependencyData dependencyData = dependencyNode.getData();
-          LibraryData libraryData = dependencyData.getTarget();
-          hasUnresolved |= libraryData.isUnresolved();
-          switch (dependencyData.getLevel()) {
-            case MODULE:
-              if (!libraryData.isUnresolved()) {
-                Set<String> paths = ContainerUtilRt.newHashSet();
-                for (String path : libraryData.getPaths(LibraryPathType.BINARY)) {
-                  paths.add(ExternalSystemApiUtil.toCanonicalPath(path));
-                }
-                moduleLibrariesToImport.put(paths, dependencyData);
-                toImport.add(dependencyData);
-              }
-              break;
-            case PROJECT:
-              projectLibrariesToImport.put(libraryData.getName(), dependencyData);
-              toImport.add(dependencyData);
-          }
-        }
-
-        ModuleRootManager moduleRootManager = ModuleRootManager.getInstance(module);
-        final ModifiableRootModel moduleRootModel = moduleRootManager.getModifiableModel();
-        LibraryTable moduleLibraryTable = moduleRootModel.getModuleLibraryTable();
-        LibraryTable libraryTable = myPlatformFacade.getProjectLibraryTable(module.getProject());
+        importMissingProjectLibraries(module.getProject(), nodesToImport);
+        ModifiableRootModel moduleRootModel = ModuleRootManager.getInstance(module).getModifiableModel();
         try {
-          filterUpToDateAndRemoveObsolete(moduleLibrariesToImport, projectLibrariesToImport, toImport, moduleRootModel, hasUnresolved);
-
-          // Import missing library dependencies.
-          if (!toImport.isEmpty()) {
-            importMissing(toImport, moduleRootModel, moduleLibraryTable, libraryTable, module);
-          }
+          importDependencies(nodesToImport, module, moduleRootModel);
         }
         finally {
           moduleRootModel.commit();
@@ -155,6 +157,53 @@ public class LibraryDependencyDataService extends AbstractDependencyDataService<
     });
   }
 
+  /**
+   * Adjusts library dependencies of the given module at the given root model, which is committed by the caller.
+   * Project libraries the dependencies point to are expected to be imported already.
+   */
+  private void importDependencies(@NotNull Collection<DataNode<LibraryDependencyData>> nodesToImport,
+                                  @NotNull Module module,
+                                  @NotNull ModifiableRootModel moduleRootModel)
+  {
+    // The general idea is to import all external project library dependencies and module libraries which don't present at the
+    // ide side yet and remove all project library dependencies and module libraries which present at the ide but not at
+    // the given collection.
+    Map<Set<String>/* library paths */, LibraryDependencyData> moduleLibrariesToImport = ContainerUtilRt.newHashMap();
+    Map<String/* library name */, LibraryDependencyData> projectLibrariesToImport = ContainerUtilRt.newHashMap();
+    Set<LibraryDependencyData> toImport = ContainerUtilRt.newLinkedHashSet();
+    
+    boolean hasUnresolved = false;
+    for (DataNode<LibraryDependencyData> dependencyNode : nodesToImport) {
+      LibraryDependencyData dependencyData = dependencyNode.getData();
+      LibraryData libraryData = dependencyData.getTarget();
+      hasUnresolved |= libraryData.isUnresolved();
+      switch (dependencyData.getLevel()) {
+        case MODULE:
+          if (!libraryData.isUnresolved()) {
+            Set<String> paths = ContainerUtilRt.newHashSet();
+            for (String path : libraryData.getPaths(LibraryPathType.BINARY)) {
+              paths.add(ExternalSystemApiUtil.toCanonicalPath(path));
+            }
+            moduleLibrariesToImport.put(paths, dependencyData);
+            toImport.add(dependencyData);
+          }
+          break;
+        case PROJECT:
+          projectLibrariesToImport.put(libraryData.getName(), dependencyData);
+          toImport.add(dependencyData);
+      }
+    }
+
+    LibraryTable moduleLibraryTable = moduleRootModel.getModuleLibraryTable();
+    LibraryTable libraryTable = myPlatformFacade.getProjectLibraryTable(module.getProject());
+    filterUpToDateAndRemoveObsolete(moduleLibrariesToImport, projectLibrariesToImport, toImport, moduleRootModel, hasUnresolved);
+
+    // Import missing library dependencies.
+    if (!toImport.isEmpty()) {
+      importMissing(toImport, moduleRootModel, moduleLibraryTable, libraryTable, module);
+    }
+  }
+
   private void importMissing(@NotNull Set<LibraryDependencyData> toImport,
                              @NotNull ModifiableRootModel moduleRootModel,
                              @NotNull LibraryTable moduleLibraryTable,
@@ -235,36 +284,55 @@ public class LibraryDependencyDataService extends AbstractDependencyDataService<
     }
   }
 
-  private void importMissingProjectLibraries(@NotNull Module module,
-                                             @NotNull Collection<DataNode<LibraryDependencyData>> nodesToImport,
-                                             boolean synchronous)
+  private void importMissingProjectLibraries(@NotNull Project project,
+                                             @NotNull Collection<DataNode<LibraryDependencyData>> nodesToImport)
   {
-    LibraryTable libraryTable = myPlatformFacade.getProjectLibraryTable(module.getProject());
-    List<DataNode<LibraryData>> librariesToImport = ContainerUtilRt.newArrayList();
+    final LibraryTable libraryTable = myPlatformFacade.getProjectLibraryTable(project);
+    List<DataNode<LibraryData>> librariesToImport = findMissingProjectLibraries(nodesToImport, new Condition<String>() {
+      @Override
+      public boolean value(String libraryName) {
+        return libraryTable.getLibraryByName(libraryName) == null;
+      }
+    });
+    if (!librariesToImport.isEmpty()) {
+      myLibraryManager.importData(librariesToImport, project, true);
+    }
+  }
+
+  /**
+   * @param nodesToImport  library dependencies to import
+   * @param isMissing      tells whether a project library with the given name is missing at the ide side
+   * @return               nodes of the missing project libraries the given dependencies point to, each library once
+   */
+  @NotNull
+  static List<DataNode<LibraryData>> findMissingProjectLibraries(@NotNull Collection<DataNode<LibraryDependencyData>> nodesToImport,
+                                                                 @NotNull Condition<String> isMissing)
+  {
+    // Holds 'project node -> libraries to find among its children' entries.
+    Map<DataNode<ProjectData>, Set<LibraryData>> missingLibraries = new IdentityHashMap<DataNode<ProjectData>, Set<LibraryData>>();
     for (DataNode<LibraryDependencyData> dataNode : nodesToImport) {
-      final LibraryDependencyData dependencyData = dataNode.getData();
-      if (dependencyData.getLevel() != LibraryLevel.PROJECT) {
+      LibraryDependencyData dependencyData = dataNode.getData();
+      if (dependencyData.getLevel() != LibraryLevel.PROJECT || !isMissing.value(dependencyData.getName())) {
         continue;
       }
-      final Library library = libraryTable.getLibraryByName(dependencyData.getName());
-      if (library == null) {
-        DataNode<ProjectData> projectNode = dataNode.getDataNode(ProjectKeys.PROJECT);
-        if (projectNode != null) {
-          DataNode<LibraryData> libraryNode =
-            ExternalSystemApiUtil.find(projectNode, ProjectKeys.LIBRARY, new BooleanFunction<DataNode<LibraryData>>() {
-              @Override
-              public boolean fun(DataNode<LibraryData> node) {
-                return node.getData().equals(dependencyData.getTarget());
-              }
-            });
-          if (libraryNode != null) {
-            librariesToImport.add(libraryNode);
-          }
+      DataNode<ProjectData> projectNode = dataNode.getDataNode(ProjectKeys.PROJECT);
+      if (projectNode != null) {
+        Set<LibraryData> libraries = missingLibraries.get(projectNode);
+        if (libraries == null) {
+          missingLibraries.put(projectNode, libraries = ContainerUtilRt.newHashSet());
         }
+        libraries.add(dependencyData.getTarget());
       }
     }
-    if (!librariesToImport.isEmpty()) {
-      myLibraryManager.importData(librariesToImport, module.getProject(), synchronous);
+
+    List<DataNode<LibraryData>> result = ContainerUtilRt.newArrayList();
+    for (Map.Entry<DataNode<ProjectData>, Set<LibraryData>> entry : missingLibraries.entrySet()) {
+      for (DataNode<LibraryData> libraryNode : ExternalSystemApiUtil.findAll(entry.getKey(), ProjectKeys.LIBRARY)) {
+        if (entry.getValue().remove(libraryNode.getData())) {
+          result.add(libraryNode);
+        }
+      }
     }
+    return result;
   }
 }
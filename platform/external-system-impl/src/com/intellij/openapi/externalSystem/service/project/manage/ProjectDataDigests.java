@@ -0,0 +1,401 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.externalSystem.service.project.manage;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.externalSystem.model.DataNode;
+import com.intellij.openapi.externalSystem.model.ProjectKeys;
+import com.intellij.openapi.externalSystem.model.project.ModuleData;
+import com.intellij.openapi.externalSystem.model.project.ProjectData;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.CharsetToolkit;
+import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.containers.ContainerUtilRt;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Digests of the external project data, one per module subtree plus one for the rest of the project data.
+ * <p/>
+ * Digests of the last imported data are stored under the system directory per ide project and external project, so that
+ * the next import of the same external project is able to skip modules which data hasn't changed since then.
+ * <p/>
+ * Thread-safe.
+ */
+public class ProjectDataDigests {
+
+  private static final Logger LOG = Logger.getInstance("#" + ProjectDataDigests.class.getName());
+
+  private static final int VERSION = 2;
+
+  /** Key of the digest of the project data which doesn't belong to any module. */
+  @NotNull private static final String PROJECT_LEVEL_KEY = "";
+
+  @NotNull private final Map<String, byte[]> myDigests;
+
+  private ProjectDataDigests(@NotNull Map<String, byte[]> digests) {
+    myDigests = digests;
+  }
+
+  /**
+   * @param projectNode  external project data which is {@link DataNode#prepareData(ClassLoader...) ready to use}
+   * @return             digests of the given project data; <code>null</code> if some data can't be serialized
+   */
+  @Nullable
+  public static ProjectDataDigests calculate(@NotNull DataNode<ProjectData> projectNode) {
+    Map<String, byte[]> digests = ContainerUtilRt.newHashMap();
+    try {
+      MessageDigest projectDigest = MessageDigest.getInstance("MD5");
+      CanonicalWriter projectOut = new CanonicalWriter(new DigestOutputStream(new NullOutputStream(), projectDigest));
+      projectOut.write(projectNode.getData());
+      for (DataNode<?> child : projectNode.getChildren()) {
+        if (ProjectKeys.MODULE.equals(child.getKey())) {
+          MessageDigest moduleDigest = MessageDigest.getInstance("MD5");
+          writeSubtree(child, new CanonicalWriter(new DigestOutputStream(new NullOutputStream(), moduleDigest)));
+          digests.put(((ModuleData)child.getData()).getName(), moduleDigest.digest());
+        }
+        else {
+          writeSubtree(child, projectOut);
+        }
+      }
+      digests.put(PROJECT_LEVEL_KEY, projectDigest.digest());
+    }
+    catch (NoSuchAlgorithmException e) {
+      LOG.warn(e);
+      return null;
+    }
+    catch (IOException e) {
+      LOG.warn("Can't calculate digests of the project data " + projectNode, e);
+      return null;
+    }
+    return new ProjectDataDigests(digests);
+  }
+
+  private static void writeSubtree(@NotNull DataNode<?> node, @NotNull CanonicalWriter out) throws IOException {
+    out.write(node.getKey());
+    out.write(node.getData());
+    out.writeInt(node.getChildren().size());
+    for (DataNode<?> child : node.getChildren()) {
+      writeSubtree(child, out);
+    }
+  }
+
+  public boolean isProjectLevelDataChanged(@NotNull ProjectDataDigests previous) {
+    return !MessageDigest.isEqual(myDigests.get(PROJECT_LEVEL_KEY), previous.myDigests.get(PROJECT_LEVEL_KEY));
+  }
+
+  public boolean isModuleDataChanged(@NotNull String moduleName, @NotNull ProjectDataDigests previous) {
+    byte[] digest = myDigests.get(moduleName);
+    byte[] previousDigest = previous.myDigests.get(moduleName);
+    return digest == null || previousDigest == null || !MessageDigest.isEqual(digest, previousDigest);
+  }
+
+  /**
+   * @return    digests of the data imported last time for the given external project; <code>null</code> if there are no such digests
+   */
+  @Nullable
+  public static ProjectDataDigests load(@NotNull Project ideProject, @NotNull String externalProjectPath) {
+    return load(getFile(ideProject, externalProjectPath), externalProjectPath);
+  }
+
+  @Nullable
+  static synchronized ProjectDataDigests load(@NotNull File file, @NotNull String externalProjectPath) {
+    if (!file.isFile()) {
+      return null;
+    }
+    try {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      try {
+        if (in.readInt() != VERSION || !externalProjectPath.equals(in.readUTF())) {
+          return null;
+        }
+        Map<String, byte[]> digests = ContainerUtilRt.newHashMap();
+        for (int count = in.readInt(); count > 0; count--) {
+          String key = in.readUTF();
+          byte[] digest = new byte[in.readUnsignedByte()];
+          in.readFully(digest);
+          digests.put(key, digest);
+        }
+        return new ProjectDataDigests(digests);
+      }
+      finally {
+        in.close();
+      }
+    }
+    catch (IOException e) {
+      LOG.info("Can't read digests of the imported project data from " + file, e);
+      return null;
+    }
+  }
+
+  public void save(@NotNull Project ideProject, @NotNull String externalProjectPath) {
+    save(getFile(ideProject, externalProjectPath), externalProjectPath);
+  }
+
+  void save(@NotNull File file, @NotNull String externalProjectPath) {
+    synchronized (ProjectDataDigests.class) {
+      doSave(file, externalProjectPath);
+    }
+  }
+
+  private void doSave(@NotNull File file, @NotNull String externalProjectPath) {
+    try {
+      FileUtil.createParentDirs(file);
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+      try {
+        out.writeInt(VERSION);
+        out.writeUTF(externalProjectPath);
+        out.writeInt(myDigests.size());
+        for (Map.Entry<String, byte[]> entry : myDigests.entrySet()) {
+          out.writeUTF(entry.getKey());
+          out.writeByte(entry.getValue().length);
+          out.write(entry.getValue());
+        }
+      }
+      finally {
+        out.close();
+      }
+    }
+    catch (IOException e) {
+      LOG.info("Can't save digests of the imported project data to " + file, e);
+      FileUtil.delete(file);
+    }
+  }
+
+  @NotNull
+  private static File getFile(@NotNull Project ideProject, @NotNull String externalProjectPath) {
+    File dir = new File(PathManager.getSystemPath(), "external_build_system" + File.separator + ideProject.getLocationHash());
+    return new File(dir, Integer.toHexString(externalProjectPath.hashCode()) + ".digests");
+  }
+
+  /**
+   * Writes the data field by field, so that equal data gets the same encoding regardless of the iteration order of hash based
+   * collections within it, unlike the java serialization: elements of sets and entries of maps are sorted by their encodings.
+   * Lists and arrays are written in their order, as it matters. Objects of the jdk classes which aren't handled explicitly are
+   * written by the java serialization.
+   */
+  private static class CanonicalWriter {
+
+    private static final byte NULL = 0;
+    private static final byte VALUE = 1;
+    private static final byte ENUM = 2;
+    private static final byte ORDERED = 3;
+    private static final byte UNORDERED = 4;
+    private static final byte MAP = 5;
+    private static final byte OBJECT = 6;
+    private static final byte SERIALIZED = 7;
+    private static final byte CYCLE = 8;
+
+    @NotNull private static final ConcurrentMap<Class<?>, List<Field>> ourFields = ContainerUtil.newConcurrentMap();
+
+    @NotNull private static final Comparator<byte[]> ENCODING_COMPARATOR = new Comparator<byte[]>() {
+      @Override
+      public int compare(byte[] b1, byte[] b2) {
+        for (int i = 0; i < b1.length && i < b2.length; i++) {
+          if (b1[i] != b2[i]) {
+            return b1[i] - b2[i];
+          }
+        }
+        return b1.length - b2.length;
+      }
+    };
+
+    @NotNull private final DataOutputStream myOut;
+    /** Objects being written, to write back references instead of reference cycles. */
+    @NotNull private final Set<Object> myParents;
+
+    CanonicalWriter(@NotNull OutputStream out) {
+      this(out, Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>()));
+    }
+
+    private CanonicalWriter(@NotNull OutputStream out, @NotNull Set<Object> parents) {
+      myOut = new DataOutputStream(out);
+      myParents = parents;
+    }
+
+    void writeInt(int value) throws IOException {
+      myOut.writeInt(value);
+    }
+
+    void write(@Nullable Object value) throws IOException {
+      if (value == null) {
+        myOut.writeByte(NULL);
+      }
+      else if (value instanceof String || value instanceof Number || value instanceof Boolean || value instanceof Character) {
+        myOut.writeByte(VALUE);
+        writeString(value.getClass().getName());
+        writeString(value.toString());
+      }
+      else if (value instanceof Class) {
+        myOut.writeByte(VALUE);
+        writeString(Class.class.getName());
+        writeString(((Class)value).getName());
+      }
+      else if (value instanceof Enum) {
+        myOut.writeByte(ENUM);
+        writeString(((Enum)value).getDeclaringClass().getName());
+        writeString(((Enum)value).name());
+      }
+      else if (!myParents.add(value)) {
+        myOut.writeByte(CYCLE);
+      }
+      else {
+        try {
+          writeComposite(value);
+        }
+        finally {
+          myParents.remove(value);
+        }
+      }
+    }
+
+    private void writeComposite(@NotNull Object value) throws IOException {
+      if (value instanceof Map) {
+        myOut.writeByte(MAP);
+        List<byte[]> entries = ContainerUtilRt.newArrayList();
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>)value).entrySet()) {
+          entries.add(encode(entry.getKey(), entry.getValue()));
+        }
+        writeSorted(entries);
+      }
+      else if (value instanceof List || value.getClass().isArray()) {
+        myOut.writeByte(ORDERED);
+        if (value instanceof List) {
+          myOut.writeInt(((List)value).size());
+          for (Object element : (List)value) {
+            write(element);
+          }
+        }
+        else {
+          int length = Array.getLength(value);
+          myOut.writeInt(length);
+          for (int i = 0; i < length; i++) {
+            write(Array.get(value, i));
+          }
+        }
+      }
+      else if (value instanceof Collection) {
+        myOut.writeByte(UNORDERED);
+        List<byte[]> elements = ContainerUtilRt.newArrayList();
+        for (Object element : (Collection)value) {
+          elements.add(encode(element));
+        }
+        writeSorted(elements);
+      }
+      else if (value.getClass().getName().startsWith("java.")) {
+        if (!(value instanceof Serializable)) {
+          throw new NotSerializableException(value.getClass().getName());
+        }
+        myOut.writeByte(SERIALIZED);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(value);
+        out.close();
+        myOut.writeInt(bytes.size());
+        bytes.writeTo(myOut);
+      }
+      else {
+        myOut.writeByte(OBJECT);
+        writeString(value.getClass().getName());
+        for (Field field : getFields(value.getClass())) {
+          try {
+            write(field.get(value));
+          }
+          catch (IllegalAccessException e) {
+            throw new IOException("Can't read " + field + ": " + e.getMessage());
+          }
+        }
+      }
+    }
+
+    @NotNull
+    private byte[] encode(@NotNull Object... values) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      CanonicalWriter writer = new CanonicalWriter(bytes, myParents);
+      for (Object value : values) {
+        writer.write(value);
+      }
+      return bytes.toByteArray();
+    }
+
+    private void writeSorted(@NotNull List<byte[]> encodings) throws IOException {
+      Collections.sort(encodings, ENCODING_COMPARATOR);
+      myOut.writeInt(encodings.size());
+      for (byte[] encoding : encodings) {
+        myOut.writeInt(encoding.length);
+        myOut.write(encoding);
+      }
+    }
+
+    private void writeString(@NotNull String s) throws IOException {
+      byte[] bytes = s.getBytes(CharsetToolkit.UTF8_CHARSET);
+      myOut.writeInt(bytes.length);
+      myOut.write(bytes);
+    }
+
+    /**
+     * @return  non-static non-transient fields of the given class and its superclasses, sorted by name within every class
+     */
+    @NotNull
+    private static List<Field> getFields(@NotNull Class<?> aClass) {
+      List<Field> result = ourFields.get(aClass);
+      if (result == null) {
+        result = ContainerUtilRt.newArrayList();
+        for (Class<?> c = aClass; c != null && c != Object.class; c = c.getSuperclass()) {
+          List<Field> declared = ContainerUtilRt.newArrayList();
+          for (Field field : c.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic()) {
+              field.setAccessible(true);
+              declared.add(field);
+            }
+          }
+          Collections.sort(declared, new Comparator<Field>() {
+            @Override
+            public int compare(Field f1, Field f2) {
+              return f1.getName().compareTo(f2.getName());
+            }
+          });
+          result.addAll(declared);
+        }
+        ourFields.putIfAbsent(aClass, result);
+      }
+      return result;
+    }
+  }
+
+  private static class NullOutputStream extends OutputStream {
+    @Override
+    public void write(int b) {
+    }
+
+    @Override
+    public void write(@NotNull byte[] b, int off, int len) {
+    }
+  }
+}
@@ -15,11 +15,19 @@
  */
 package com.intellij.openapi.externalSystem.service.project.manage;
 
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.externalSystem.model.DataNode;
 import com.intellij.openapi.externalSystem.model.Key;
+import com.intellij.openapi.externalSystem.model.ProjectKeys;
+import com.intellij.openapi.externalSystem.model.project.ModuleData;
+import com.intellij.openapi.externalSystem.model.project.ProjectData;
+import com.intellij.openapi.externalSystem.service.project.ProjectStructureHelper;
 import com.intellij.openapi.externalSystem.util.ExternalSystemApiUtil;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ex.ProjectRootManagerEx;
+import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.util.NotNullLazyValue;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.containers.ContainerUtilRt;
@@ -27,6 +35,7 @@ import com.intellij.util.containers.Stack;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -62,6 +71,67 @@ public class ProjectDataManager {
       }
     };
 
+  /**
+   * Imports the given external project data. Unless the import is forced, only modules which data has changed since the previous
+   * import of the same external project (or which are missing at the ide) are passed to the services, given that the rest of
+   * the project data hasn't changed as well.
+   * <p/>
+   * Is expected to be called from a background thread: the data is prepared there, and then all services apply it within a single
+   * write action where roots changes are merged, so that the whole import causes a single roots change.
+   * Returns when the data is imported.
+   *
+   * @param force  whether to import the whole data, e.g. on a manual refresh, as the ide project might be modified since the previous import
+   */
+  public void importChangedData(@NotNull DataNode<ProjectData> projectNode, @NotNull final Project project, boolean force) {
+    ensureTheDataIsReadyToUse(Collections.singleton(projectNode));
+    String externalProjectPath = projectNode.getData().getLinkedExternalProjectPath();
+    ProjectDataDigests digests = ProjectDataDigests.calculate(projectNode);
+    ProjectDataDigests previous = force || digests == null ? null : ProjectDataDigests.load(project, externalProjectPath);
+
+    DataNode<ProjectData> toImport = projectNode;
+    if (previous != null && !digests.isProjectLevelDataChanged(previous)) {
+      toImport = new DataNode<ProjectData>(ProjectKeys.PROJECT, projectNode.getData(), null);
+      final ProjectStructureHelper helper = ServiceManager.getService(ProjectStructureHelper.class);
+      int skipped = 0;
+      for (DataNode<?> child : projectNode.getChildren()) {
+        if (!ProjectKeys.MODULE.equals(child.getKey())) {
+          continue;
+        }
+        final ModuleData moduleData = (ModuleData)child.getData();
+        boolean exists = ApplicationManager.getApplication().runReadAction(new Computable<Boolean>() {
+          @Override
+          public Boolean compute() {
+            return helper.findIdeModule(moduleData, project) != null;
+          }
+        });
+        if (exists && !digests.isModuleDataChanged(moduleData.getName(), previous)) {
+          skipped++;
+        }
+        else {
+          // the node keeps its original parent, so that the services can find the rest of the project data
+          toImport.addChild(child);
+        }
+      }
+      LOG.info(String.format("Skipping import of %d unchanged modules of %s", skipped, externalProjectPath));
+    }
+
+    final Collection<DataNode<?>> nodes = Collections.<DataNode<?>>singleton(toImport);
+    ExternalSystemApiUtil.executeProjectChangeAction(true, new Runnable() {
+      @Override
+      public void run() {
+        ProjectRootManagerEx.getInstanceEx(project).mergeRootsChangesDuring(new Runnable() {
+          @Override
+          public void run() {
+            importData(nodes, project, true);
+          }
+        });
+      }
+    });
+    if (digests != null) {
+      digests.save(project, externalProjectPath);
+    }
+  }
+
   @SuppressWarnings("unchecked")
   public <T> void importData(@NotNull Collection<DataNode<?>> nodes, @NotNull Project project, boolean synchronous) {
     Map<Key<?>, List<DataNode<?>>> grouped = ExternalSystemApiUtil.group(nodes);
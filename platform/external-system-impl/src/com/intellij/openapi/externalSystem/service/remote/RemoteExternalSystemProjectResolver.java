@@ -51,6 +51,22 @@ public interface RemoteExternalSystemProjectResolver<S extends ExternalSystemExe
       return null;
     }
 
+    @Override
+    public boolean resolveProjectInfoInChunks(@NotNull ExternalSystemTaskId id,
+                                              @NotNull String projectPath,
+                                              boolean isPreviewMode,
+                                              @Nullable ExternalSystemExecutionSettings settings)
+      throws ExternalSystemException, IllegalArgumentException, IllegalStateException
+    {
+      return false;
+    }
+
+    @Nullable
+    @Override
+    public byte[] readResultChunk(@NotNull ExternalSystemTaskId id) {
+      return null;
+    }
+
     @Override
     public void setSettings(@NotNull ExternalSystemExecutionSettings settings) throws RemoteException {
     }
@@ -82,4 +98,25 @@ public interface RemoteExternalSystemProjectResolver<S extends ExternalSystemExe
                                            boolean isPreviewMode,
                                            @Nullable S settings)
     throws RemoteException, ExternalSystemException, IllegalArgumentException, IllegalStateException;
+
+  /**
+   * Does the same as {@link #resolveProjectInfo(ExternalSystemTaskId, String, boolean, ExternalSystemExecutionSettings)} but keeps
+   * the resolved project at the service side. It's expected to be fetched then by {@link #readResultChunk(ExternalSystemTaskId)} calls,
+   * so that a large project is not transferred as a single message. The project is serialized and compressed as the chunks are read.
+   *
+   * @return    <code>true</code> if the project has been resolved; <code>false</code> if there is no project to fetch
+   */
+  boolean resolveProjectInfoInChunks(@NotNull ExternalSystemTaskId id,
+                                     @NotNull String projectPath,
+                                     boolean isPreviewMode,
+                                     @Nullable S settings)
+    throws RemoteException, ExternalSystemException, IllegalArgumentException, IllegalStateException;
+
+  /**
+   * @param id  id of the task which has {@link #resolveProjectInfoInChunks resolved} the project
+   * @return    next chunk of the resolved project data; <code>null</code> if the whole data has been read
+   * @throws ExternalSystemException  if the project can't be serialized
+   */
+  @Nullable
+  byte[] readResultChunk(@NotNull ExternalSystemTaskId id) throws RemoteException, ExternalSystemException;
 }
@@ -7,8 +7,21 @@ import com.intellij.openapi.externalSystem.model.settings.ExternalSystemExecutio
 import com.intellij.openapi.externalSystem.model.task.ExternalSystemTaskId;
 import com.intellij.openapi.externalSystem.service.project.ExternalSystemProjectResolver;
 import com.intellij.util.Producer;
+import com.intellij.util.containers.ConcurrentHashMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Defines common interface for resolving gradle project, i.e. building object-level representation of <code>'build.gradle'</code>.
@@ -20,33 +33,242 @@ public class RemoteExternalSystemProjectResolverImpl<S extends ExternalSystemExe
   extends AbstractRemoteExternalSystemService<S> implements RemoteExternalSystemProjectResolver<S>
 {
 
+  private static final int RESULT_CHUNK_SIZE = 1024 * 1024;
+
+  /** Max number of serialized chunks which are kept ahead of reading. */
+  private static final int MAX_PENDING_CHUNKS = 4;
+
+  /** Results which are not read for that long are dropped, e.g. when the ide side has gone away in the middle of reading. */
+  private static final long RESULT_EXPIRATION_MS = TimeUnit.MINUTES.toMillis(10);
+
   private final ExternalSystemProjectResolver<S> myDelegate;
+  private final int myChunkSize;
+
+  /**
+   * Projects resolved by {@link #resolveProjectInfoInChunks} which are not fetched yet. A result is removed when it's read completely,
+   * when its task is {@link #cancelTask cancelled} (which is also done when the ide side fails to read it) or when it expires.
+   * A removed result stops being serialized.
+   */
+  private final ConcurrentMap<ExternalSystemTaskId, ChunkedResult> myResults = new ConcurrentHashMap<ExternalSystemTaskId, ChunkedResult>();
 
   public RemoteExternalSystemProjectResolverImpl(@NotNull ExternalSystemProjectResolver<S> delegate) {
+    this(delegate, RESULT_CHUNK_SIZE);
+  }
+
+  RemoteExternalSystemProjectResolverImpl(@NotNull ExternalSystemProjectResolver<S> delegate, int chunkSize) {
     myDelegate = delegate;
+    myChunkSize = chunkSize;
   }
 
+  @SuppressWarnings("unchecked")
   @Nullable
   @Override
   public DataNode<ProjectData> resolveProjectInfo(@NotNull final ExternalSystemTaskId id,
                                                   @NotNull final String projectPath,
                                                   final boolean isPreviewMode,
-                                                  ExternalSystemExecutionSettings settings)
+                                                  final ExternalSystemExecutionSettings settings)
     throws ExternalSystemException, IllegalArgumentException, IllegalStateException
   {
     return execute(id, new Producer<DataNode<ProjectData>>() {
       @Nullable
       @Override
       public DataNode<ProjectData> produce() {
-        return myDelegate.resolveProjectInfo(id, projectPath, isPreviewMode, getSettings(), getNotificationListener());
+        // The process is shared by several ide projects, so, the settings given for the call take precedence over the applied ones
+        S effectiveSettings = settings == null ? getSettings() : (S)settings;
+        return myDelegate.resolveProjectInfo(id, projectPath, isPreviewMode, effectiveSettings, getNotificationListener());
       }
     });
   }
 
+  @Override
+  public boolean resolveProjectInfoInChunks(@NotNull ExternalSystemTaskId id,
+                                            @NotNull String projectPath,
+                                            boolean isPreviewMode,
+                                            ExternalSystemExecutionSettings settings)
+    throws ExternalSystemException, IllegalArgumentException, IllegalStateException
+  {
+    removeExpiredResults();
+    DataNode<ProjectData> project = resolveProjectInfo(id, projectPath, isPreviewMode, settings);
+    if (project == null) {
+      return false;
+    }
+    ChunkedResult result = new ChunkedResult(myChunkSize);
+    myResults.put(id, result);
+    result.startWriting(project);
+    return true;
+  }
+
   @Nullable
+  @Override
+  public byte[] readResultChunk(@NotNull ExternalSystemTaskId id) throws ExternalSystemException {
+    ChunkedResult result = myResults.get(id);
+    if (result == null) {
+      return null;
+    }
+    byte[] chunk;
+    try {
+      chunk = result.next();
+    }
+    catch (ExternalSystemException e) {
+      myResults.remove(id);
+      throw e;
+    }
+    if (chunk == null) {
+      myResults.remove(id);
+    }
+    return chunk;
+  }
+
   @Override
   public void cancelTask(@NotNull final ExternalSystemTaskId id)
     throws ExternalSystemException, IllegalArgumentException, IllegalStateException {
-    // canceling of the project resolving does not support yet
+    // canceling of the project resolving does not support yet, only its result is dropped
+    ChunkedResult result = myResults.remove(id);
+    if (result != null) {
+      result.drop();
+    }
+  }
+
+  private void removeExpiredResults() {
+    long now = System.currentTimeMillis();
+    for (Iterator<ChunkedResult> iterator = myResults.values().iterator(); iterator.hasNext(); ) {
+      ChunkedResult result = iterator.next();
+      if (result.isExpired(now)) {
+        result.drop();
+        iterator.remove();
+      }
+    }
+  }
+
+  @TestOnly
+  int getResultsCountInTests() {
+    return myResults.size();
+  }
+
+  /**
+   * Compressed serialized form of a resolved project which is produced by a separate thread as its chunks are read, so that at most
+   * {@link #MAX_PENDING_CHUNKS} chunks are held at a time instead of the whole serialized project.
+   */
+  private static class ChunkedResult extends OutputStream {
+
+    private static final byte[] END = new byte[0];
+
+    @NotNull private final BlockingQueue<byte[]> myChunks = new ArrayBlockingQueue<byte[]>(MAX_PENDING_CHUNKS);
+    @NotNull private final byte[] myBuffer;
+    private int myBufferSize;
+    private boolean myRead;
+    private volatile boolean myDropped;
+    @Nullable private volatile IOException myError;
+    private volatile long myLastAccessTime = System.currentTimeMillis();
+
+    ChunkedResult(int chunkSize) {
+      myBuffer = new byte[chunkSize];
+    }
+
+    void startWriting(@NotNull final DataNode<ProjectData> project) {
+      Thread thread = new Thread("Serializing " + project.getData().getName()) {
+        @Override
+        public void run() {
+          try {
+            // the stream is not closed on failure, as that would mark the result as complete
+            ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(ChunkedResult.this));
+            out.writeObject(project);
+            out.close();
+          }
+          catch (IOException e) {
+            if (!myDropped) {
+              myError = e;
+              myChunks.clear();
+              myChunks.offer(END);
+            }
+          }
+        }
+      };
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    boolean isExpired(long now) {
+      return now - myLastAccessTime > RESULT_EXPIRATION_MS;
+    }
+
+    void drop() {
+      myDropped = true;
+      myChunks.clear();
+    }
+
+    /**
+     * @return the next chunk, waiting until it's serialized; <code>null</code> if the whole project has been read
+     */
+    @Nullable
+    synchronized byte[] next() throws ExternalSystemException {
+      if (myRead) {
+        return null;
+      }
+      myLastAccessTime = System.currentTimeMillis();
+      byte[] chunk;
+      try {
+        chunk = myChunks.take();
+      }
+      catch (InterruptedException e) {
+        throw new ExternalSystemException(e);
+      }
+      myLastAccessTime = System.currentTimeMillis();
+      if (chunk != END) {
+        return chunk;
+      }
+      myRead = true;
+      IOException error = myError;
+      if (error != null) {
+        throw new ExternalSystemException(error);
+      }
+      return null;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[]{(byte)b}, 0, 1);
+    }
+
+    @Override
+    public void write(@NotNull byte[] b, int off, int len) throws IOException {
+      while (len > 0) {
+        int count = Math.min(len, myBuffer.length - myBufferSize);
+        System.arraycopy(b, off, myBuffer, myBufferSize, count);
+        myBufferSize += count;
+        off += count;
+        len -= count;
+        if (myBufferSize == myBuffer.length) {
+          flushBuffer();
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (myBufferSize > 0) {
+        flushBuffer();
+      }
+      put(END);
+    }
+
+    private void flushBuffer() throws IOException {
+      put(Arrays.copyOf(myBuffer, myBufferSize));
+      myBufferSize = 0;
+    }
+
+    // waits while the chunks ahead are not read; gives up if the result is dropped or nobody reads it until it expires
+    private void put(@NotNull byte[] chunk) throws IOException {
+      try {
+        while (!myChunks.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+          if (myDropped || isExpired(System.currentTimeMillis())) {
+            throw new IOException("The result is not read");
+          }
+        }
+      }
+      catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+    }
   }
 }
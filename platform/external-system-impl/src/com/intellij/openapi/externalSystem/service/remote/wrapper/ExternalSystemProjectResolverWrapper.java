@@ -53,6 +53,28 @@ public class ExternalSystemProjectResolverWrapper<S extends ExternalSystemExecut
     }
   }
 
+  @Override
+  public boolean resolveProjectInfoInChunks(@NotNull ExternalSystemTaskId id,
+                                            @NotNull String projectPath,
+                                            boolean isPreviewMode,
+                                            @Nullable S settings)
+    throws ExternalSystemException, IllegalArgumentException, IllegalStateException, RemoteException
+  {
+    myProgressManager.onQueued(id);
+    try {
+      return getDelegate().resolveProjectInfoInChunks(id, projectPath, isPreviewMode, settings);
+    }
+    finally {
+      myProgressManager.onEnd(id);
+    }
+  }
+
+  @Nullable
+  @Override
+  public byte[] readResultChunk(@NotNull ExternalSystemTaskId id) throws RemoteException {
+    return getDelegate().readResultChunk(id);
+  }
+
   @Override
   public void cancelTask(@NotNull ExternalSystemTaskId id)
     throws ExternalSystemException, IllegalArgumentException, IllegalStateException, RemoteException {
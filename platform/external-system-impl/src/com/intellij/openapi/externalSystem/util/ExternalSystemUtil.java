@@ -53,7 +53,6 @@ import com.intellij.openapi.progress.PerformInBackgroundOption;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.roots.ex.ProjectRootManagerEx;
 import com.intellij.openapi.ui.DialogWrapper;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.LocalFileSystem;
@@ -178,7 +177,7 @@ public class ExternalSystemUtil {
    * @param externalSystemId  target external system which projects should be refreshed
    * @param force             flag which defines if external project refresh should be performed if it's config is up-to-date
    */
-  public static void refreshProjects(@NotNull final Project project, @NotNull final ProjectSystemId externalSystemId, boolean force, @NotNull final ProgressExecutionMode progressExecutionMode) {
+  public static void refreshProjects(@NotNull final Project project, @NotNull final ProjectSystemId externalSystemId, final boolean force, @NotNull final ProgressExecutionMode progressExecutionMode) {
     ExternalSystemManager<?, ?, ?, ?, ?> manager = ExternalSystemApiUtil.getManager(externalSystemId);
     if (manager == null) {
       return;
@@ -206,17 +205,8 @@ public class ExternalSystemUtil {
         for (DataNode<ModuleData> node : moduleNodes) {
           myExternalModulePaths.add(node.getData().getLinkedExternalProjectPath());
         }
-        ExternalSystemApiUtil.executeProjectChangeAction(true, new Runnable() {
-          @Override
-          public void run() {
-            ProjectRootManagerEx.getInstanceEx(project).mergeRootsChangesDuring(new Runnable() {
-              @Override
-              public void run() {
-                projectDataManager.importData(externalProject.getKey(), Collections.singleton(externalProject), project, true);
-              }
-            });
-          }
-        });
+        // forced refreshes are requested by the user, and unchanged modules are imported as well then
+        projectDataManager.importChangedData(externalProject, project, force);
         if (--counter[0] <= 0) {
           processOrphanModules();
         }
@@ -674,18 +664,8 @@ public class ExternalSystemUtil {
         projects.add(projectSettings);
         systemSettings.setLinkedProjectsSettings(projects);
         ensureToolWindowInitialized(project, externalSystemId);
-        ExternalSystemApiUtil.executeProjectChangeAction(new Runnable() {
-          @Override
-          public void run() {
-            ProjectRootManagerEx.getInstanceEx(project).mergeRootsChangesDuring(new Runnable() {
-              @Override
-              public void run() {
-                ProjectDataManager dataManager = ServiceManager.getService(ProjectDataManager.class);
-                dataManager.importData(externalProject.getKey(), Collections.singleton(externalProject), project, true);
-              }
-            });
-          }
-        });
+        ProjectDataManager dataManager = ServiceManager.getService(ProjectDataManager.class);
+        dataManager.importChangedData(externalProject, project, true);
         if (executionResultCallback != null) {
           executionResultCallback.consume(true);
         }
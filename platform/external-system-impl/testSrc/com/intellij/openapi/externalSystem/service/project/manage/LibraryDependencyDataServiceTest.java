@@ -0,0 +1,113 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.externalSystem.service.project.manage;
+
+import com.intellij.openapi.externalSystem.model.DataNode;
+import com.intellij.openapi.externalSystem.model.ProjectKeys;
+import com.intellij.openapi.externalSystem.model.project.*;
+import com.intellij.openapi.externalSystem.test.ExternalSystemTestUtil;
+import com.intellij.openapi.util.Condition;
+import com.intellij.openapi.util.Conditions;
+import com.intellij.util.containers.ContainerUtilRt;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+public class LibraryDependencyDataServiceTest {
+
+  private DataNode<ProjectData> myProject;
+
+  @Before
+  public void setUp() {
+    myProject = new DataNode<ProjectData>(ProjectKeys.PROJECT, new ProjectData(ExternalSystemTestUtil.TEST_EXTERNAL_SYSTEM_ID, "ide", "external"),
+                                          null);
+  }
+
+  @Test
+  public void testLibrariesSharedByModulesAreImportedOnce() {
+    DataNode<LibraryData> shared = createLibrary("shared");
+    DataNode<LibraryData> own = createLibrary("own");
+    createLibrary("unused");
+    List<DataNode<LibraryDependencyData>> dependencies = ContainerUtilRt.newArrayList();
+    dependencies.addAll(createDependencies("a", LibraryLevel.PROJECT, shared));
+    dependencies.addAll(createDependencies("b", LibraryLevel.PROJECT, shared, own));
+
+    List<DataNode<LibraryData>> missing =
+      LibraryDependencyDataService.findMissingProjectLibraries(dependencies, Conditions.<String>alwaysTrue());
+
+    Assert.assertEquals(ContainerUtilRt.newArrayList(shared, own), missing);
+  }
+
+  @Test
+  public void testExistingAndModuleLibrariesAreNotImported() {
+    DataNode<LibraryData> existing = createLibrary("existing");
+    DataNode<LibraryData> missing = createLibrary("missing");
+    DataNode<LibraryData> moduleLevel = createLibrary("module");
+    List<DataNode<LibraryDependencyData>> dependencies = ContainerUtilRt.newArrayList();
+    dependencies.addAll(createDependencies("a", LibraryLevel.PROJECT, existing, missing));
+    dependencies.addAll(createDependencies("b", LibraryLevel.MODULE, moduleLevel));
+
+    Condition<String> isMissing = new Condition<String>() {
+      @Override
+      public boolean value(String name) {
+        return !"existing".equals(name);
+      }
+    };
+    List<DataNode<LibraryData>> toImport = LibraryDependencyDataService.findMissingProjectLibraries(dependencies, isMissing);
+
+    Assert.assertEquals(Collections.singletonList(missing), toImport);
+  }
+
+  @Test
+  public void testLibrariesUnknownToProjectAreSkipped() {
+    List<DataNode<LibraryDependencyData>> dependencies = createDependencies("a", LibraryLevel.PROJECT, createLibrary("known"));
+    LibraryData unknown = new LibraryData(ExternalSystemTestUtil.TEST_EXTERNAL_SYSTEM_ID, "unknown");
+    DataNode<ModuleData> module = dependencies.get(0).getDataNode(ProjectKeys.MODULE);
+    Assert.assertNotNull(module);
+    LibraryDependencyData dependency = new LibraryDependencyData(module.getData(), unknown, LibraryLevel.PROJECT);
+    dependencies.add(module.createChild(ProjectKeys.LIBRARY_DEPENDENCY, dependency));
+
+    List<DataNode<LibraryData>> missing =
+      LibraryDependencyDataService.findMissingProjectLibraries(dependencies, Conditions.<String>alwaysTrue());
+
+    Assert.assertEquals(1, missing.size());
+    Assert.assertEquals("known", missing.get(0).getData().getName());
+  }
+
+  @NotNull
+  private DataNode<LibraryData> createLibrary(@NotNull String name) {
+    return myProject.createChild(ProjectKeys.LIBRARY, new LibraryData(ExternalSystemTestUtil.TEST_EXTERNAL_SYSTEM_ID, name));
+  }
+
+  @NotNull
+  private List<DataNode<LibraryDependencyData>> createDependencies(@NotNull String moduleName,
+                                                                   @NotNull LibraryLevel level,
+                                                                   @NotNull DataNode<LibraryData>... libraries)
+  {
+    ModuleData data = new ModuleData(ExternalSystemTestUtil.TEST_EXTERNAL_SYSTEM_ID, "JAVA_MODULE", moduleName, "ide/" + moduleName,
+                                     "external/" + moduleName);
+    DataNode<ModuleData> module = myProject.createChild(ProjectKeys.MODULE, data);
+    List<DataNode<LibraryDependencyData>> result = ContainerUtilRt.newArrayList();
+    for (DataNode<LibraryData> library : libraries) {
+      result.add(module.createChild(ProjectKeys.LIBRARY_DEPENDENCY, new LibraryDependencyData(data, library.getData(), level)));
+    }
+    return result;
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.externalSystem.service.project.manage;
+
+import com.intellij.openapi.externalSystem.model.DataNode;
+import com.intellij.openapi.externalSystem.model.ProjectKeys;
+import com.intellij.openapi.externalSystem.model.project.*;
+import com.intellij.openapi.externalSystem.test.ExternalSystemTestUtil;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+public class ProjectDataDigestsTest {
+
+  private File myDir;
+
+  @Before
+  public void setUp() throws Exception {
+    myDir = FileUtil.createTempDirectory("digests", null);
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.delete(myDir);
+  }
+
+  @Test
+  public void testSameDataIsNotChanged() {
+    ProjectDataDigests previous = calculate(createProject(1, 1, false));
+    ProjectDataDigests current = calculate(createProject(1, 1, false));
+
+    Assert.assertFalse(current.isProjectLevelDataChanged(previous));
+    Assert.assertFalse(current.isModuleDataChanged("a", previous));
+    Assert.assertFalse(current.isModuleDataChanged("b", previous));
+  }
+
+  @Test
+  public void testOnlyChangedModuleIsChanged() {
+    ProjectDataDigests previous = calculate(createProject(1, 1, false));
+    ProjectDataDigests current = calculate(createProject(1, 2, false));
+
+    Assert.assertFalse(current.isProjectLevelDataChanged(previous));
+    Assert.assertFalse(current.isModuleDataChanged("a", previous));
+    Assert.assertTrue(current.isModuleDataChanged("b", previous));
+  }
+
+  @Test
+  public void testUnknownModuleIsChanged() {
+    ProjectDataDigests previous = calculate(createProject(1, 1, false));
+    ProjectDataDigests current = calculate(createProject(1, 1, false));
+
+    Assert.assertTrue(current.isModuleDataChanged("c", previous));
+  }
+
+  @Test
+  public void testProjectLevelChangeDoesNotChangeModules() {
+    ProjectDataDigests previous = calculate(createProject(1, 1, false));
+    ProjectDataDigests current = calculate(createProject(1, 1, true));
+
+    Assert.assertTrue(current.isProjectLevelDataChanged(previous));
+    Assert.assertFalse(current.isModuleDataChanged("a", previous));
+    Assert.assertFalse(current.isModuleDataChanged("b", previous));
+  }
+
+  @Test
+  public void testInsertionOrderDoesNotChangeData() {
+    // "Aa" and "BB" have the same hash code, so hash sets iterate them in the insertion order
+    ProjectDataDigests previous = calculate(createProjectWithPaths("Aa", "BB"));
+    ProjectDataDigests current = calculate(createProjectWithPaths("BB", "Aa"));
+
+    Assert.assertFalse(current.isProjectLevelDataChanged(previous));
+    Assert.assertFalse(current.isModuleDataChanged("a", previous));
+  }
+
+  @Test
+  public void testSavedDigestsAreLoaded() {
+    File file = new File(myDir, "project.digests");
+    calculate(createProject(1, 1, false)).save(file, "external");
+
+    ProjectDataDigests loaded = ProjectDataDigests.load(file, "external");
+    Assert.assertNotNull(loaded);
+    ProjectDataDigests current = calculate(createProject(1, 2, false));
+    Assert.assertFalse(current.isProjectLevelDataChanged(loaded));
+    Assert.assertFalse(current.isModuleDataChanged("a", loaded));
+    Assert.assertTrue(current.isModuleDataChanged("b", loaded));
+
+    Assert.assertNull(ProjectDataDigests.load(file, "other"));
+    Assert.assertNull(ProjectDataDigests.load(new File(myDir, "missing.digests"), "external"));
+  }
+
+  @NotNull
+  private static ProjectDataDigests calculate(@NotNull DataNode<ProjectData> project) {
+    ProjectDataDigests result = ProjectDataDigests.calculate(project);
+    Assert.assertNotNull(result);
+    return result;
+  }
+
+  @NotNull
+  private static DataNode<ProjectData> createProject(int aDependencies, int bDependencies, boolean withProjectLibrary) {
+    DataNode<ProjectData> project =
+      new DataNode<ProjectData>(ProjectKeys.PROJECT, new ProjectData(ExternalSystemTestUtil.TEST_EXTERNAL_SYSTEM_ID, "ide", "external"), null);
+    createModule(project, "a", aDependencies);
+    createModule(project, "b", bDependencies);
+    if (withProjectLibrary) {
+      project.createChild(ProjectKeys.LIBRARY, new LibraryData(ExternalSystemTestUtil.TEST_EXTERNAL_SYSTEM_ID, "shared"));
+    }
+    return project;
+  }
+
+  @NotNull
+  private static DataNode<ProjectData> createProjectWithPaths(@NotNull String... names) {
+    DataNode<ProjectData> project =
+      new DataNode<ProjectData>(ProjectKeys.PROJECT, new ProjectData(ExternalSystemTestUtil.TEST_EXTERNAL_SYSTEM_ID, "ide", "external"), null);
+    ModuleData data = new ModuleData(ExternalSystemTestUtil.TEST_EXTERNAL_SYSTEM_ID, "JAVA_MODULE", "a", "ide/a", "external/a");
+    DataNode<ModuleData> module = project.createChild(ProjectKeys.MODULE, data);
+    ContentRootData root = new ContentRootData(ExternalSystemTestUtil.TEST_EXTERNAL_SYSTEM_ID, "/external/a");
+    LibraryData library = new LibraryData(ExternalSystemTestUtil.TEST_EXTERNAL_SYSTEM_ID, "shared");
+    for (String name : names) {
+      root.storePath(ExternalSystemSourceType.SOURCE, "/external/a/" + name);
+      library.addPath(LibraryPathType.BINARY, "lib/" + name + ".jar");
+    }
+    module.createChild(ProjectKeys.CONTENT_ROOT, root);
+    project.createChild(ProjectKeys.LIBRARY, library);
+    return project;
+  }
+
+  private static void createModule(@NotNull DataNode<ProjectData> project, @NotNull String name, int dependencies) {
+    ModuleData data = new ModuleData(ExternalSystemTestUtil.TEST_EXTERNAL_SYSTEM_ID, "JAVA_MODULE", name, "ide/" + name, "external/" + name);
+    DataNode<ModuleData> module = project.createChild(ProjectKeys.MODULE, data);
+    for (int i = 0; i < dependencies; i++) {
+      LibraryData library = new LibraryData(ExternalSystemTestUtil.TEST_EXTERNAL_SYSTEM_ID, name + "-lib" + i);
+      module.createChild(ProjectKeys.LIBRARY_DEPENDENCY, new LibraryDependencyData(data, library, LibraryLevel.MODULE));
+    }
+  }
+}
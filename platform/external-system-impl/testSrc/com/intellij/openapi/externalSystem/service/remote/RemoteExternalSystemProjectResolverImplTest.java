@@ -0,0 +1,115 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.externalSystem.service.remote;
+
+import com.intellij.openapi.externalSystem.model.DataNode;
+import com.intellij.openapi.externalSystem.model.ProjectKeys;
+import com.intellij.openapi.externalSystem.model.project.ModuleData;
+import com.intellij.openapi.externalSystem.model.project.ProjectData;
+import com.intellij.openapi.externalSystem.model.settings.ExternalSystemExecutionSettings;
+import com.intellij.openapi.externalSystem.model.task.ExternalSystemTaskId;
+import com.intellij.openapi.externalSystem.model.task.ExternalSystemTaskNotificationListener;
+import com.intellij.openapi.externalSystem.model.task.ExternalSystemTaskType;
+import com.intellij.openapi.externalSystem.service.project.ExternalSystemProjectResolver;
+import com.intellij.openapi.externalSystem.test.ExternalSystemTestUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.util.zip.GZIPInputStream;
+
+public class RemoteExternalSystemProjectResolverImplTest {
+
+  private DataNode<ProjectData> myProject;
+
+  private final RemoteExternalSystemProjectResolverImpl<ExternalSystemExecutionSettings> myResolver =
+    new RemoteExternalSystemProjectResolverImpl<ExternalSystemExecutionSettings>(new ExternalSystemProjectResolver<ExternalSystemExecutionSettings>() {
+      @Nullable
+      @Override
+      public DataNode<ProjectData> resolveProjectInfo(@NotNull ExternalSystemTaskId id,
+                                                      @NotNull String projectPath,
+                                                      boolean isPreviewMode,
+                                                      @Nullable ExternalSystemExecutionSettings settings,
+                                                      @NotNull ExternalSystemTaskNotificationListener listener)
+      {
+        return myProject;
+      }
+    }, 1024);
+
+  @Test
+  public void testResultIsReadInChunksAndRemoved() throws Exception {
+    myProject = createProject(1000);
+    ExternalSystemTaskId id = ExternalSystemTaskId.create(ExternalSystemTaskType.RESOLVE_PROJECT, "project");
+    Assert.assertTrue(myResolver.resolveProjectInfoInChunks(id, "external", false, null));
+    Assert.assertEquals(1, myResolver.getResultsCountInTests());
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int chunks = 0;
+    for (byte[] chunk = myResolver.readResultChunk(id); chunk != null; chunk = myResolver.readResultChunk(id)) {
+      Assert.assertTrue(chunk.length <= 1024);
+      out.write(chunk);
+      chunks++;
+    }
+    Assert.assertTrue(chunks > 1);
+    Assert.assertEquals(0, myResolver.getResultsCountInTests());
+    Assert.assertNull(myResolver.readResultChunk(id));
+
+    ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())));
+    try {
+      DataNode<?> project = (DataNode<?>)in.readObject();
+      Assert.assertEquals(myProject.getData(), project.getData());
+      Assert.assertEquals(1000, project.getChildren().size());
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  @Test
+  public void testCancelledResultIsRemoved() throws Exception {
+    myProject = createProject(10);
+    ExternalSystemTaskId id = ExternalSystemTaskId.create(ExternalSystemTaskType.RESOLVE_PROJECT, "project");
+    Assert.assertTrue(myResolver.resolveProjectInfoInChunks(id, "external", false, null));
+
+    myResolver.cancelTask(id);
+
+    Assert.assertEquals(0, myResolver.getResultsCountInTests());
+    Assert.assertNull(myResolver.readResultChunk(id));
+  }
+
+  @Test
+  public void testNothingIsKeptIfProjectIsNotResolved() throws Exception {
+    ExternalSystemTaskId id = ExternalSystemTaskId.create(ExternalSystemTaskType.RESOLVE_PROJECT, "project");
+    Assert.assertFalse(myResolver.resolveProjectInfoInChunks(id, "external", false, null));
+    Assert.assertEquals(0, myResolver.getResultsCountInTests());
+  }
+
+  @NotNull
+  private static DataNode<ProjectData> createProject(int modulesCount) {
+    DataNode<ProjectData> project =
+      new DataNode<ProjectData>(ProjectKeys.PROJECT, new ProjectData(ExternalSystemTestUtil.TEST_EXTERNAL_SYSTEM_ID, "ide", "external"), null);
+    for (int i = 0; i < modulesCount; i++) {
+      String name = "module" + i;
+      project.createChild(ProjectKeys.MODULE,
+                          new ModuleData(ExternalSystemTestUtil.TEST_EXTERNAL_SYSTEM_ID, "JAVA_MODULE", name, "ide/" + name, "external/" + name));
+    }
+    return project;
+  }
+}
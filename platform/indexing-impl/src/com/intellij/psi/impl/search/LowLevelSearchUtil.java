@@ -32,6 +32,7 @@ import com.intellij.psi.impl.source.tree.TreeElement;
 import com.intellij.psi.search.TextOccurenceProcessor;
 import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.util.text.CharArrayUtil;
+import com.intellij.util.text.MultiStringSearcher;
 import com.intellij.util.text.StringSearcher;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -180,6 +181,48 @@ public class LowLevelSearchUtil {
     return true;
   }
 
+  /**
+   * Does the same as {@link #processElementsContainingWordInElement} for the words of all searchers of the multi-searcher,
+   * scanning the text of the scope once. Occurrences of the words for which the processor is null are skipped.
+   */
+  //@RequiresReadAction
+  public static boolean processElementsContainingWordsInElement(@NotNull final List<TextOccurenceProcessor> processors,
+                                                                @NotNull final PsiElement scope,
+                                                                @NotNull final MultiStringSearcher searcher,
+                                                                final boolean processInjectedPsi,
+                                                                final ProgressIndicator progress) {
+    if (progress != null) progress.checkCanceled();
+
+    PsiFile file = scope.getContainingFile();
+    final CharSequence buffer = file.getViewProvider().getContents();
+
+    TextRange range = scope.getTextRange();
+    if (range == null) {
+      throw new AssertionError("Element " + scope + " of class " + scope.getClass() + " has null range");
+    }
+
+    final int scopeStart = range.getStartOffset();
+    final int endOffset = range.getEndOffset();
+    if (endOffset > buffer.length()) {
+      LOG.error("Range for element: '"+scope+"' = "+range+" is out of file '" + file + "' range: " + file.getTextLength());
+    }
+
+    final char[] bufferArray = CharArrayUtil.fromSequenceWithoutCopying(buffer);
+
+    final Project project = file.getProject();
+    return searcher.scan(buffer, bufferArray, scopeStart, endOffset, new MultiStringSearcher.OccurrenceProcessor() {
+      @Override
+      public boolean process(int searcherIndex, int offset) {
+        if (progress != null) progress.checkCanceled();
+        TextOccurenceProcessor processor = processors.get(searcherIndex);
+        StringSearcher wordSearcher = searcher.getSearchers().get(searcherIndex);
+        return processor == null ||
+               !isWordOccurrence(buffer, bufferArray, scopeStart, endOffset, offset, wordSearcher) ||
+               processTreeUp(project, processor, scope, wordSearcher, offset - scopeStart, processInjectedPsi, progress);
+      }
+    });
+  }
+
   public static int searchWord(@NotNull CharSequence text,
                                int startOffset,
                                int endOffset,
@@ -201,32 +244,44 @@ public class LowLevelSearchUtil {
       //noinspection AssignmentToForLoopParameter
       index = searcher.scan(text, textArray, index, endOffset);
       if (index < 0) return -1;
-      if (!searcher.isJavaIdentifier()) {
+      if (isWordOccurrence(text, textArray, startOffset, endOffset, index, searcher)) {
         return index;
       }
+    }
+    return -1;
+  }
 
-      if (index > startOffset) {
-        char c = textArray != null ? textArray[index - 1]:text.charAt(index - 1);
-        if (Character.isJavaIdentifierPart(c) && c != '$') {
-          if (!searcher.isHandleEscapeSequences() || (index < 2 || !isNotEscapedBackslash(text, textArray, startOffset, index-2))) { //escape sequence
-            continue;
-          }
-        }
-        else if (index > 0 && searcher.isHandleEscapeSequences() && isNotEscapedBackslash(text, textArray, startOffset, index-1)) {
-          continue;
+  // the occurrence is not a part of a longer identifier or an escape sequence
+  private static boolean isWordOccurrence(@NotNull CharSequence text,
+                                          @Nullable char[] textArray,
+                                          int startOffset,
+                                          int endOffset,
+                                          int index,
+                                          @NotNull StringSearcher searcher) {
+    if (!searcher.isJavaIdentifier()) {
+      return true;
+    }
+
+    if (index > startOffset) {
+      char c = textArray != null ? textArray[index - 1]:text.charAt(index - 1);
+      if (Character.isJavaIdentifierPart(c) && c != '$') {
+        if (!searcher.isHandleEscapeSequences() || (index < 2 || !isNotEscapedBackslash(text, textArray, startOffset, index-2))) { //escape sequence
+          return false;
         }
       }
+      else if (index > 0 && searcher.isHandleEscapeSequences() && isNotEscapedBackslash(text, textArray, startOffset, index-1)) {
+        return false;
+      }
+    }
 
-      final int patternLength = searcher.getPattern().length();
-      if (index + patternLength < endOffset) {
-        char c = textArray != null ? textArray[index + patternLength]:text.charAt(index + patternLength);
-        if (Character.isJavaIdentifierPart(c) && c != '$') {
-          continue;
-        }
+    final int patternLength = searcher.getPattern().length();
+    if (index + patternLength < endOffset) {
+      char c = textArray != null ? textArray[index + patternLength]:text.charAt(index + patternLength);
+      if (Character.isJavaIdentifierPart(c) && c != '$') {
+        return false;
       }
-      return index;
     }
-    return -1;
+    return true;
   }
 
   private static boolean isNotEscapedBackslash(CharSequence text, char[] textArray, int startOffset, int index) {
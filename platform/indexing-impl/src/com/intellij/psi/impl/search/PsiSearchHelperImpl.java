@@ -47,9 +47,11 @@ import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.containers.MultiMap;
 import com.intellij.util.indexing.FileBasedIndex;
 import com.intellij.util.text.CharArrayUtil;
+import com.intellij.util.text.MultiStringSearcher;
 import com.intellij.util.text.StringSearcher;
 import gnu.trove.THashMap;
 import gnu.trove.THashSet;
+import gnu.trove.TObjectIntHashMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -763,6 +765,20 @@ public class PsiSearchHelperImpl implements PsiSearchHelper {
                                                       int alreadyProcessedFiles) {
     List<VirtualFile> files = new ArrayList<VirtualFile>(candidateFiles.keySet());
 
+    // files which are candidates for several requests are scanned once for all their words
+    final List<RequestWithProcessor> requests =
+      new ArrayList<RequestWithProcessor>(new LinkedHashSet<RequestWithProcessor>(candidateFiles.values()));
+    final TObjectIntHashMap<RequestWithProcessor> requestIndices = new TObjectIntHashMap<RequestWithProcessor>();
+    final List<TextOccurenceProcessor> occurrenceProcessors = new ArrayList<TextOccurenceProcessor>(requests.size());
+    List<StringSearcher> searchers = new ArrayList<StringSearcher>(requests.size());
+    for (RequestWithProcessor singleRequest : requests) {
+      PsiSearchRequest primitive = singleRequest.request;
+      requestIndices.put(singleRequest, searchers.size());
+      searchers.add(new StringSearcher(primitive.word, primitive.caseSensitive, true, false));
+      occurrenceProcessors.add(adaptProcessor(primitive, singleRequest.refProcessor));
+    }
+    final MultiStringSearcher multiSearcher = requests.size() > 1 ? new MultiStringSearcher(searchers) : null;
+
     return processPsiFileRootsAsync(files, totalSize, alreadyProcessedFiles, progress, new Processor<PsiFile>() {
       @Override
       public boolean process(final PsiFile psiRoot) {
@@ -773,7 +789,24 @@ public class PsiSearchHelperImpl implements PsiSearchHelper {
             return psiRoot.getVirtualFile();
           }
         });
-        for (final RequestWithProcessor singleRequest : candidateFiles.get(vfile)) {
+        Collection<RequestWithProcessor> fileRequests = candidateFiles.get(vfile);
+        if (multiSearcher != null && fileRequests.size() > 1) {
+          final List<TextOccurenceProcessor> fileProcessors = new ArrayList<TextOccurenceProcessor>(requests.size());
+          for (int i = 0; i < requests.size(); i++) {
+            fileProcessors.add(null);
+          }
+          for (RequestWithProcessor singleRequest : fileRequests) {
+            int index = requestIndices.get(singleRequest);
+            fileProcessors.set(index, occurrenceProcessors.get(index));
+          }
+          return ApplicationManager.getApplication().runReadAction(new Computable<Boolean>() {
+            @Override
+            public Boolean compute() {
+              return LowLevelSearchUtil.processElementsContainingWordsInElement(fileProcessors, psiRoot, multiSearcher, true, progress);
+            }
+          }).booleanValue();
+        }
+        for (final RequestWithProcessor singleRequest : fileRequests) {
           Processor<PsiElement> localProcessor = localProcessors.get(singleRequest);
           if (!localProcessor.process(psiRoot)) {
             return false;
@@ -73,6 +73,7 @@ import com.intellij.psi.*;
 import com.intellij.psi.impl.PsiDocumentManagerImpl;
 import com.intellij.psi.impl.PsiManagerEx;
 import com.intellij.psi.search.scope.packageSet.NamedScopeManager;
+import com.intellij.util.CommonProcessors;
 import com.intellij.util.messages.MessageBus;
 import com.intellij.util.messages.MessageBusConnection;
 import com.intellij.util.ui.UIUtil;
@@ -105,6 +106,8 @@ public class DaemonListeners implements Disposable {
   private final ActionManager myActionManager;
   private final TooltipController myTooltipController;
 
+  private HighlightingSnapshotStorage myHighlightingSnapshots;
+
   private boolean myEscPressed;
 
   private volatile boolean cutOperationJustHappened;
@@ -159,6 +162,9 @@ public class DaemonListeners implements Disposable {
     final MessageBusConnection connection = messageBus.connect();
 
     if (project.isDefault()) return;
+    myHighlightingSnapshots = new HighlightingSnapshotStorage(project);
+    Disposer.register(this, myHighlightingSnapshots);
+
     EditorEventMulticaster eventMulticaster = editorFactory.getEventMulticaster();
     eventMulticaster.addDocumentListener(new DocumentAdapter() {
       // clearing highlighters before changing document because change can damage editor highlighters drastically, so we'll clear more than necessary
@@ -225,6 +231,7 @@ public class DaemonListeners implements Disposable {
           LOG.debug("Not worth: " + file);
           return;
         }
+        restoreHighlightingSnapshot(document);
         repaintErrorStripeRenderer(editor, myProject);
       }
 
@@ -278,6 +285,25 @@ public class DaemonListeners implements Disposable {
       }
     });
 
+    connection.subscribe(DaemonCodeAnalyzer.DAEMON_EVENT_TOPIC, new DaemonCodeAnalyzer.DaemonListenerAdapter() {
+      @Override
+      public void daemonFinished() {
+        application.invokeLater(new Runnable() {
+          @Override
+          public void run() {
+            if (myProject.isDisposed()) return;
+            for (Editor editor : editorTracker.getActiveEditors()) {
+              Document document = editor.getDocument();
+              if (myDaemonCodeAnalyzer.getFileStatusMap().allDirtyScopesAreNull(document)) {
+                myHighlightingSnapshots.clearRestored(document);
+                myHighlightingSnapshots.save(document);
+              }
+            }
+          }
+        });
+      }
+    });
+
     connection.subscribe(PowerSaveMode.TOPIC, new PowerSaveMode.Listener() {
       @Override
       public void powerSaveStateChanged() {
@@ -353,6 +379,16 @@ public class DaemonListeners implements Disposable {
     return psiFile != null && psiFile.getOriginalFile() == psiFile;
   }
 
+  // show errors and warnings from the previous session until the daemon re-highlights the file
+  private void restoreHighlightingSnapshot(@NotNull Document document) {
+    if (myDaemonCodeAnalyzer.getFileStatusMap().getFileDirtyScope(document, Pass.UPDATE_ALL) == null) return;
+    boolean hasHighlights = !DaemonCodeAnalyzerEx.processHighlights(document, myProject, null, 0, document.getTextLength(),
+                                                                    CommonProcessors.<HighlightInfo>alwaysFalse());
+    if (!hasHighlights) {
+      myHighlightingSnapshots.restore(document);
+    }
+  }
+
   @Override
   public void dispose() {
     stopDaemonAndRestartAllFiles();
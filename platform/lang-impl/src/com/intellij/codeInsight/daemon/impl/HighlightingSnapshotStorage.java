@@ -0,0 +1,395 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInsight.daemon.impl;
+
+import com.intellij.codeHighlighting.Pass;
+import com.intellij.lang.annotation.HighlightSeverity;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.colors.TextAttributesKey;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.Ref;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileWithId;
+import com.intellij.util.CommonProcessors;
+import com.intellij.util.Processor;
+import com.intellij.util.concurrency.SequentialTaskExecutor;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.EnumeratorIntegerDescriptor;
+import com.intellij.util.io.IOUtil;
+import com.intellij.util.io.PersistentHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps errors and warnings reported for a file by the daemon between IDE sessions.
+ * <p/>
+ * Highlighting is stored when the daemon finished processing the file and is restored when the file is opened again, provided
+ * its text is unchanged. Pass ids are assigned dynamically and may differ between sessions, so restored highlights are registered
+ * under the dedicated {@link #RESTORED_GROUP} and are {@link #clearRestored(Document) removed} once the daemon finishes
+ * the file. Since dependencies of the file may have changed since the previous session the file itself stays dirty,
+ * i.e. restored highlights are only shown until the daemon re-runs.
+ * <p/>
+ * The storage is accessed at a background thread, snapshots of the files which weren't opened for a long time are dropped.
+ */
+class HighlightingSnapshotStorage implements Disposable {
+  private static final Logger LOG = Logger.getInstance("#com.intellij.codeInsight.daemon.impl.HighlightingSnapshotStorage");
+  private static final int VERSION = 2;
+  private static final Key<Long> SAVED_STAMP = Key.create("HIGHLIGHTING_SNAPSHOT_SAVED_STAMP");
+  private static final Key<Boolean> RESTORED = Key.create("HIGHLIGHTING_SNAPSHOT_RESTORED");
+
+  /** Group of the restored highlights, it's not an id of any pass. */
+  static final int RESTORED_GROUP = -2;
+
+  private static final long MAX_AGE = TimeUnit.DAYS.toMillis(30);
+  private static final int MAX_FILES = 1000;
+
+  private final Project myProject;
+  private final File myFile;
+  private final Executor myExecutor = new SequentialTaskExecutor(PooledThreadExecutor.INSTANCE);
+  private final Object myLock = new Object();
+  private PersistentHashMap<Integer, Snapshot> myMap; // guarded by myLock
+  private boolean myDisposed; // guarded by myLock
+
+  HighlightingSnapshotStorage(@NotNull Project project) {
+    myProject = project;
+    myFile = new File(PathManager.getSystemPath() + File.separator + "daemon" + File.separator +
+                      project.getName() + "." + project.getLocationHash() + File.separator + "highlights." + VERSION);
+    myExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        synchronized (myLock) {
+          if (myDisposed) return;
+          myMap = openMap(myFile);
+          if (myMap != null) {
+            prune(myMap, System.currentTimeMillis());
+          }
+        }
+      }
+    });
+  }
+
+  @Nullable
+  private static PersistentHashMap<Integer, Snapshot> openMap(@NotNull File file) {
+    try {
+      return createMap(file);
+    }
+    catch (IOException e) {
+      LOG.info(e);
+      PersistentHashMap.deleteFilesStartingWith(file);
+      try {
+        return createMap(file);
+      }
+      catch (IOException e1) {
+        LOG.error(e1);
+        return null;
+      }
+    }
+  }
+
+  @NotNull
+  static PersistentHashMap<Integer, Snapshot> createMap(@NotNull File file) throws IOException {
+    return new PersistentHashMap<Integer, Snapshot>(file, EnumeratorIntegerDescriptor.INSTANCE, new SnapshotExternalizer());
+  }
+
+  /**
+   * Removes snapshots saved earlier than {@link #MAX_AGE} ago and the oldest ones above {@link #MAX_FILES}.
+   */
+  static void prune(@NotNull final PersistentHashMap<Integer, Snapshot> map, long now) {
+    try {
+      final Map<Integer, Long> timestamps = new HashMap<Integer, Long>();
+      final Ref<IOException> exception = Ref.create();
+      map.processKeysWithExistingMapping(new Processor<Integer>() {
+        @Override
+        public boolean process(Integer fileId) {
+          try {
+            Snapshot snapshot = map.get(fileId);
+            timestamps.put(fileId, snapshot == null ? 0 : snapshot.myTimestamp);
+            return true;
+          }
+          catch (IOException e) {
+            exception.set(e);
+            return false;
+          }
+        }
+      });
+      if (!exception.isNull()) throw exception.get();
+
+      List<Map.Entry<Integer, Long>> entries = new ArrayList<Map.Entry<Integer, Long>>(timestamps.entrySet());
+      Collections.sort(entries, new Comparator<Map.Entry<Integer, Long>>() {
+        @Override
+        public int compare(Map.Entry<Integer, Long> e1, Map.Entry<Integer, Long> e2) {
+          return e2.getValue().compareTo(e1.getValue());
+        }
+      });
+      for (int i = 0; i < entries.size(); i++) {
+        Map.Entry<Integer, Long> entry = entries.get(i);
+        if (i >= MAX_FILES || now - entry.getValue() > MAX_AGE) {
+          map.remove(entry.getKey());
+        }
+      }
+    }
+    catch (IOException e) {
+      LOG.info(e);
+    }
+  }
+
+  /**
+   * Stores current errors and warnings for the given document if they weren't stored for its current state yet.
+   */
+  void save(@NotNull Document document) {
+    ApplicationManager.getApplication().assertIsDispatchThread();
+    Long savedStamp = document.getUserData(SAVED_STAMP);
+    if (savedStamp != null && savedStamp.longValue() == document.getModificationStamp()) {
+      return;
+    }
+    final int fileId = getFileId(document);
+    if (fileId <= 0) {
+      return;
+    }
+    List<HighlightInfo> infos = new ArrayList<HighlightInfo>();
+    DaemonCodeAnalyzerEx.processHighlights(document, myProject, HighlightSeverity.WEAK_WARNING, 0, document.getTextLength(),
+                                           new CommonProcessors.CollectProcessor<HighlightInfo>(infos));
+    List<StoredInfo> stored = new ArrayList<StoredInfo>(infos.size());
+    for (HighlightInfo info : infos) {
+      if (info.isFileLevelAnnotation() || info.getDescription() == null || info.highlighter == null || !info.highlighter.isValid()
+          || info.getGroup() == RESTORED_GROUP) {
+        continue;
+      }
+      TextAttributesKey attributesKey = info.type.getAttributesKey();
+      stored.add(new StoredInfo(info.getActualStartOffset(), info.getActualEndOffset(), info.getSeverity().myName,
+                                attributesKey == null ? null : attributesKey.getExternalName(), info.getDescription(),
+                                info.getToolTip(), info.isAfterEndOfLine()));
+    }
+    final Snapshot snapshot = stored.isEmpty() ? null : new Snapshot(System.currentTimeMillis(), document.getTextLength(),
+                                                                      StringUtil.stringHashCode(document.getCharsSequence()), stored);
+    document.putUserData(SAVED_STAMP, document.getModificationStamp());
+    myExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        synchronized (myLock) {
+          if (myMap == null) return;
+          try {
+            if (snapshot == null) {
+              myMap.remove(fileId);
+            }
+            else {
+              myMap.put(fileId, snapshot);
+            }
+          }
+          catch (IOException e) {
+            LOG.info(e);
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Shows errors and warnings stored for the given document during a previous session if its text wasn't changed since then.
+   * The snapshot is read at a background thread and applied at EDT later if the document is still not highlighted.
+   */
+  void restore(@NotNull final Document document) {
+    ApplicationManager.getApplication().assertIsDispatchThread();
+    final int fileId = getFileId(document);
+    if (fileId <= 0) {
+      return;
+    }
+    final long stamp = document.getModificationStamp();
+    myExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        final Snapshot snapshot;
+        synchronized (myLock) {
+          if (myMap == null) return;
+          try {
+            snapshot = myMap.get(fileId);
+          }
+          catch (IOException e) {
+            LOG.info(e);
+            return;
+          }
+        }
+        if (snapshot == null) return;
+        ApplicationManager.getApplication().invokeLater(new Runnable() {
+          @Override
+          public void run() {
+            if (myProject.isDisposed() || document.getModificationStamp() != stamp) return;
+            apply(snapshot, document);
+          }
+        });
+      }
+    });
+  }
+
+  private void apply(@NotNull Snapshot snapshot, @NotNull Document document) {
+    if (snapshot.myTextLength != document.getTextLength() || snapshot.myTextHash != StringUtil.stringHashCode(document.getCharsSequence())) {
+      return;
+    }
+    // the daemon may have highlighted the file meanwhile
+    if (DaemonCodeAnalyzerEx.getInstanceEx(myProject).getFileStatusMap().getFileDirtyScope(document, Pass.UPDATE_ALL) == null ||
+        !DaemonCodeAnalyzerEx.processHighlights(document, myProject, null, 0, document.getTextLength(),
+                                                CommonProcessors.<HighlightInfo>alwaysFalse())) {
+      return;
+    }
+
+    SeverityRegistrar severityRegistrar = SeverityRegistrar.getSeverityRegistrar(myProject);
+    List<HighlightInfo> infos = new ArrayList<HighlightInfo>(snapshot.myInfos.size());
+    for (StoredInfo storedInfo : snapshot.myInfos) {
+      HighlightInfo info = storedInfo.toHighlightInfo(severityRegistrar);
+      if (info != null) {
+        infos.add(info);
+      }
+    }
+    UpdateHighlightersUtil.setHighlightersToEditor(myProject, document, 0, document.getTextLength(), infos, null, RESTORED_GROUP);
+    document.putUserData(RESTORED, Boolean.TRUE);
+  }
+
+  /**
+   * Removes highlights restored for the given document, is expected to be called when the daemon has highlighted it.
+   */
+  void clearRestored(@NotNull Document document) {
+    if (document.getUserData(RESTORED) == null) return;
+    document.putUserData(RESTORED, null);
+    UpdateHighlightersUtil.setHighlightersToEditor(myProject, document, 0, document.getTextLength(),
+                                                   Collections.<HighlightInfo>emptyList(), null, RESTORED_GROUP);
+  }
+
+  private static int getFileId(@NotNull Document document) {
+    VirtualFile file = FileDocumentManager.getInstance().getFile(document);
+    return file instanceof VirtualFileWithId ? ((VirtualFileWithId)file).getId() : -1;
+  }
+
+  @Override
+  public void dispose() {
+    synchronized (myLock) {
+      myDisposed = true;
+      if (myMap == null) return;
+      try {
+        myMap.close();
+      }
+      catch (IOException e) {
+        LOG.info(e);
+      }
+      myMap = null;
+    }
+  }
+
+  static class Snapshot {
+    final long myTimestamp;
+    final int myTextLength;
+    final int myTextHash;
+    @NotNull final List<StoredInfo> myInfos;
+
+    Snapshot(long timestamp, int textLength, int textHash, @NotNull List<StoredInfo> infos) {
+      myTimestamp = timestamp;
+      myTextLength = textLength;
+      myTextHash = textHash;
+      myInfos = infos;
+    }
+  }
+
+  static class StoredInfo {
+    private final int myStartOffset;
+    private final int myEndOffset;
+    @NotNull private final String mySeverity;
+    @Nullable private final String myAttributesKey;
+    @NotNull private final String myDescription;
+    @Nullable private final String myToolTip;
+    private final boolean myAfterEndOfLine;
+
+    StoredInfo(int startOffset,
+               int endOffset,
+               @NotNull String severity,
+               @Nullable String attributesKey,
+               @NotNull String description,
+               @Nullable String toolTip,
+               boolean afterEndOfLine) {
+      myStartOffset = startOffset;
+      myEndOffset = endOffset;
+      mySeverity = severity;
+      myAttributesKey = attributesKey;
+      myDescription = description;
+      myToolTip = toolTip;
+      myAfterEndOfLine = afterEndOfLine;
+    }
+
+    @Nullable
+    private HighlightInfo toHighlightInfo(@NotNull SeverityRegistrar severityRegistrar) {
+      HighlightSeverity severity = severityRegistrar.getSeverity(mySeverity);
+      if (severity == null) return null; // severity was removed since the previous session
+      TextAttributesKey attributesKey = myAttributesKey == null ? null : TextAttributesKey.find(myAttributesKey);
+      HighlightInfo.Builder builder = HighlightInfo.newHighlightInfo(new HighlightInfoType.HighlightInfoTypeImpl(severity, attributesKey))
+        .range(myStartOffset, myEndOffset)
+        .description(myDescription);
+      if (myToolTip != null) {
+        builder.escapedToolTip(myToolTip);
+      }
+      if (myAfterEndOfLine) {
+        builder.endOfLine();
+      }
+      return builder.createUnconditionally();
+    }
+  }
+
+  private static class SnapshotExternalizer implements DataExternalizer<Snapshot> {
+    @Override
+    public void save(DataOutput out, Snapshot value) throws IOException {
+      out.writeLong(value.myTimestamp);
+      out.writeInt(value.myTextLength);
+      out.writeInt(value.myTextHash);
+      out.writeInt(value.myInfos.size());
+      for (StoredInfo info : value.myInfos) {
+        out.writeInt(info.myStartOffset);
+        out.writeInt(info.myEndOffset);
+        IOUtil.writeString(info.mySeverity, out);
+        IOUtil.writeString(info.myAttributesKey, out);
+        IOUtil.writeString(info.myDescription, out);
+        IOUtil.writeString(info.myToolTip, out);
+        out.writeBoolean(info.myAfterEndOfLine);
+      }
+    }
+
+    @Override
+    public Snapshot read(DataInput in) throws IOException {
+      long timestamp = in.readLong();
+      int textLength = in.readInt();
+      int textHash = in.readInt();
+      int size = in.readInt();
+      List<StoredInfo> infos = new ArrayList<StoredInfo>(size);
+      while (size-- > 0) {
+        infos.add(new StoredInfo(in.readInt(), in.readInt(), IOUtil.readString(in), IOUtil.readString(in),
+                                 IOUtil.readString(in), IOUtil.readString(in), in.readBoolean()));
+      }
+      return new Snapshot(timestamp, textLength, textHash, infos);
+    }
+  }
+}
@@ -17,7 +17,9 @@
 package com.intellij.find.impl;
 
 import com.intellij.BundleBase;
+import com.intellij.concurrency.JobLauncher;
 import com.intellij.find.*;
+import com.intellij.find.ngrams.RegExpTrigramQuery;
 import com.intellij.find.ngrams.TrigramIndex;
 import com.intellij.navigation.ItemPresentation;
 import com.intellij.openapi.actionSystem.CommonDataKeys;
@@ -30,6 +32,7 @@ import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.fileEditor.FileEditor;
+import com.intellij.openapi.fileEditor.impl.LoadTextUtil;
 import com.intellij.openapi.fileTypes.FileTypeManager;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleManager;
@@ -74,6 +77,8 @@ import org.jetbrains.annotations.Nullable;
 import javax.swing.*;
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 public class FindInProjectUtil {
@@ -199,53 +204,92 @@ public class FindInProjectUtil {
                                 @NotNull FindUsagesProcessPresentation processPresentation) {
     final ProgressIndicator progress = ProgressManager.getInstance().getProgressIndicator();
 
-    final Collection<PsiFile> psiFiles = getFilesToSearchIn(findModel, project, psiDirectory);
+    final List<PsiFile> psiFiles = new ArrayList<PsiFile>(getFilesToSearchIn(findModel, project, psiDirectory));
     try {
-      final Set<PsiFile> largeFiles = new THashSet<PsiFile>();
+      final Set<PsiFile> largeFiles = Collections.synchronizedSet(new THashSet<PsiFile>());
 
-      int i = 0;
-      long totalFilesSize = 0;
-      int count = 0;
-      final boolean[] warningShown = {false};
+      final AtomicInteger processedFiles = new AtomicInteger();
+      final long[] fileLengths = new long[psiFiles.size()];
 
-      for (final PsiFile psiFile : psiFiles) {
-        final VirtualFile virtualFile = psiFile.getVirtualFile();
-        final int index = i++;
-        if (virtualFile == null) continue;
+      // files are searched concurrently, but their usages are passed in the order of the files, and the size of the files with usages
+      // is checked there too; the warning is shown once, outside of the lock, by the thread which has passed the limit
+      final AtomicLong sizeToWarnAbout = new AtomicLong();
+      final OrderedFileResults<UsageInfo> orderedUsages = new OrderedFileResults<UsageInfo>(consumer) {
+        private long myTotalFilesSize;
+        private boolean myLimitExceeded;
 
-        long fileLength = UsageViewManagerImpl.getFileLength(virtualFile);
-        if (fileLength == -1) continue; // Binary or invalid
-
-        if (ProjectCoreUtil.isProjectOrWorkspaceFile(virtualFile) && !Registry.is("find.search.in.project.files")) continue;
-
-        if (fileLength > SINGLE_FILE_SIZE_LIMIT) {
-          largeFiles.add(psiFile);
-          continue;
+        @Override
+        protected void passResults(int index, @NotNull List<UsageInfo> usages) {
+          super.passResults(index, usages);
+          if (usages.isEmpty()) return;
+          myTotalFilesSize += fileLengths[index];
+          if (myTotalFilesSize > FILES_SIZE_LIMIT && !myLimitExceeded) {
+            myLimitExceeded = true;
+            sizeToWarnAbout.set(myTotalFilesSize);
+          }
         }
+      };
 
-        if (progress != null) {
-          progress.checkCanceled();
-          progress.setFraction((double)index / psiFiles.size());
-          String text = FindBundle.message("find.searching.for.string.in.file.progress",
-                                           findModel.getStringToFind(), virtualFile.getPresentableUrl());
-          progress.setText(text);
-          progress.setText2(FindBundle.message("find.searching.for.string.in.file.occurrences.progress", count));
+      Processor<Integer> fileProcessor = new Processor<Integer>() {
+        @Override
+        public boolean process(Integer index) {
+          orderedUsages.fileSearched(index, findUsagesInFile(index, processedFiles.getAndIncrement()));
+          long size = sizeToWarnAbout.getAndSet(0);
+          if (size > 0) {
+            String message = FindBundle.message("find.excessive.total.size.prompt", UsageViewManagerImpl.presentableSize(size),
+                                                ApplicationNamesInfo.getInstance().getProductName());
+            UsageLimitUtil.showAndCancelIfAborted(project, message);
+          }
+          return true;
         }
 
-        int countInFile = processUsagesInFile(psiFile, findModel, consumer);
+        @NotNull
+        private List<UsageInfo> findUsagesInFile(int index, int processed) {
+          final PsiFile psiFile = psiFiles.get(index);
+          final VirtualFile virtualFile = psiFile.getVirtualFile();
+          if (virtualFile == null) return Collections.emptyList();
 
-        count += countInFile;
-        if (countInFile > 0) {
-          totalFilesSize += fileLength;
-          if (totalFilesSize > FILES_SIZE_LIMIT && !warningShown[0]) {
-            warningShown[0] = true;
-            String message = FindBundle.message("find.excessive.total.size.prompt", UsageViewManagerImpl.presentableSize(totalFilesSize),
-                                                ApplicationNamesInfo.getInstance().getProductName());
-            UsageLimitUtil.showAndCancelIfAborted(project, message);
+          long fileLength = UsageViewManagerImpl.getFileLength(virtualFile);
+          if (fileLength == -1) return Collections.emptyList(); // Binary or invalid
+
+          if (ProjectCoreUtil.isProjectOrWorkspaceFile(virtualFile) && !Registry.is("find.search.in.project.files")) {
+            return Collections.emptyList();
           }
+
+          if (fileLength > SINGLE_FILE_SIZE_LIMIT) {
+            largeFiles.add(psiFile);
+            return Collections.emptyList();
+          }
+
+          if (progress != null) {
+            progress.checkCanceled();
+            progress.setFraction((double)processed / psiFiles.size());
+            String text = FindBundle.message("find.searching.for.string.in.file.progress",
+                                             findModel.getStringToFind(), virtualFile.getPresentableUrl());
+            progress.setText(text);
+            progress.setText2(FindBundle.message("find.searching.for.string.in.file.occurrences.progress", orderedUsages.getResultCount()));
+          }
+
+          List<UsageInfo> usages = new ArrayList<UsageInfo>();
+          processUsagesInFile(psiFile, findModel, new CommonProcessors.CollectProcessor<UsageInfo>(usages));
+          fileLengths[index] = fileLength;
+          return usages;
         }
-      }
+      };
 
+      if (findModel.isInCommentsOnly() || findModel.isInStringLiteralsOnly()) {
+        // the lexer state of the comments and literals search is kept in the find model, so it can't be shared between threads
+        for (int i = 0; i < psiFiles.size(); i++) {
+          fileProcessor.process(i);
+        }
+      }
+      else {
+        List<Integer> indices = new ArrayList<Integer>(psiFiles.size());
+        for (int i = 0; i < psiFiles.size(); i++) {
+          indices.add(i);
+        }
+        JobLauncher.getInstance().invokeConcurrentlyUnderProgress(indices, progress, false, false, fileProcessor);
+      }
 
       if (!largeFiles.isEmpty()) {
         processPresentation.setLargeFilesWereNotScanned(largeFiles);
@@ -277,9 +321,11 @@ public class FindInProjectUtil {
     final VirtualFile virtualFile = psiFile.getVirtualFile();
     if (virtualFile == null) return 0;
     if (virtualFile.getFileType().isBinary()) return 0; // do not decompile .class files
+    int firstUsageOffset = findFirstUsageOffset(psiFile.getProject(), virtualFile, findModel);
+    if (firstUsageOffset == -1) return 0;
     final Document document = FileDocumentManager.getInstance().getDocument(virtualFile);
     if (document == null) return 0;
-    final int[] offset = {0};
+    final int[] offset = {Math.min(firstUsageOffset, document.getTextLength())};
     int count = 0;
     int found;
     do {
@@ -297,6 +343,20 @@ public class FindInProjectUtil {
     return count;
   }
 
+  /**
+   * Returns the offset to search the document of the file from, or -1 if the file has no usages.
+   * The text of a file which is not loaded into a document yet is searched up to its first usage before the document is created,
+   * so that documents are created only for files with usages, and the document search continues from there.
+   * Documents which are loaded already may have unsaved changes, so these files are searched from the start.
+   */
+  private static int findFirstUsageOffset(@NotNull Project project, @NotNull VirtualFile virtualFile, @NotNull FindModel findModel) {
+    if (findModel.isInCommentsOnly() || findModel.isInStringLiteralsOnly()) return 0;
+    if (FileDocumentManager.getInstance().getCachedDocument(virtualFile) != null) return 0;
+    CharSequence text = LoadTextUtil.loadText(virtualFile);
+    FindResult result = FindManager.getInstance(project).findString(text, 0, findModel, virtualFile);
+    return result.isStringFound() ? result.getStartOffset() : -1;
+  }
+
   @NotNull
   private static Collection<PsiFile> getFilesToSearchIn(@NotNull final FindModel findModel,
                                                         @NotNull final Project project,
@@ -325,7 +385,8 @@ public class FindInProjectUtil {
       Pair<Boolean, Collection<PsiFile>> fastWords = getFilesForFastWordSearch(findModel, project, psiDirectory, fileMaskRegExp, module, fileIndex);
       final Collection<PsiFile> filesForFastWordSearch = fastWords.getSecond();
 
-      if (fastWords.getFirst() && canOptimizeForFastWordSearch(findModel)) return filesForFastWordSearch;
+      // the indices are exact for the files they contain, but files too large for them are still searched, so only these are added
+      final boolean onlyNotIndexed = fastWords.getFirst() && canOptimizeForFastWordSearch(findModel);
 
       final GlobalSearchScope customScope = toGlobal(project, findModel.getCustomScope());
 
@@ -337,6 +398,7 @@ public class FindInProjectUtil {
         public boolean processFile(@NotNull VirtualFile virtualFile) {
           ProgressManager.checkCanceled();
           if (!virtualFile.isDirectory() &&
+              (!onlyNotIndexed || SingleRootFileViewProvider.isTooLargeForIntelligence(virtualFile)) &&
               (fileMaskRegExp == null || fileMaskRegExp.matcher(virtualFile.getName()).matches()) &&
               (customScope == null || customScope.contains(virtualFile))) {
             final PsiFile psiFile = psiManager.findFile(virtualFile);
@@ -429,37 +491,51 @@ public class FindInProjectUtil {
       scope = ProjectScope.getContentScope(project);
     }
 
-    Set<Integer> keys = new THashSet<Integer>(30);
     final Set<PsiFile> resultFiles = new THashSet<PsiFile>();
-    boolean fast = false;
-
     String stringToFind = findModel.getStringToFind();
-    if (TrigramIndex.ENABLED) {
-      TIntHashSet trigrams = TrigramBuilder.buildTrigram(stringToFind);
-      TIntIterator it = trigrams.iterator();
-      while (it.hasNext()) {
-        keys.add(it.next());
+
+    if (TrigramIndex.ENABLED && !stringToFind.isEmpty()) {
+      // a text matching the string contains all trigrams of at least one of these sets
+      List<TIntHashSet> alternatives = null;
+      if (findModel.isRegularExpressions()) {
+        alternatives = RegExpTrigramQuery.decompose(stringToFind);
+      }
+      else {
+        TIntHashSet trigrams = TrigramBuilder.buildTrigram(stringToFind);
+        if (!trigrams.isEmpty()) {
+          alternatives = Collections.singletonList(trigrams);
+        }
       }
 
-      if (!keys.isEmpty()) {
-        fast = true;
-        List<VirtualFile> hits = new ArrayList<VirtualFile>();
-        FileBasedIndex.getInstance().getFilesWithKey(TrigramIndex.INDEX_ID, keys, new CommonProcessors.CollectProcessor<VirtualFile>(hits), scope);
+      if (alternatives != null) {
+        Set<VirtualFile> hits = new THashSet<VirtualFile>();
+        for (TIntHashSet trigrams : alternatives) {
+          Set<Integer> keys = new THashSet<Integer>(trigrams.size());
+          TIntIterator it = trigrams.iterator();
+          while (it.hasNext()) {
+            keys.add(it.next());
+          }
+          FileBasedIndex.getInstance()
+            .getFilesWithKey(TrigramIndex.INDEX_ID, keys, new CommonProcessors.CollectProcessor<VirtualFile>(hits), scope);
+        }
 
         for (VirtualFile hit : hits) {
-          resultFiles.add(pm.findFile(hit));
+          ContainerUtil.addIfNotNull(resultFiles, pm.findFile(hit));
         }
-
         filterMaskedFiles(resultFiles, fileMaskRegExp);
-        if (resultFiles.isEmpty()) return new Pair<Boolean, Collection<PsiFile>>(true, resultFiles);
+        // the trigram index is exact about substrings, unlike the word index, so its answer is final for the indexed files
+        return new Pair<Boolean, Collection<PsiFile>>(true, resultFiles);
       }
     }
 
+    if (findModel.isRegularExpressions()) {
+      return new Pair<Boolean, Collection<PsiFile>>(false, Collections.<PsiFile>emptyList());
+    }
 
     // $ is used to separate words when indexing plain-text files but not when indexing
     // Java identifiers, so we can't consistently break a string containing $ characters into words
 
-    fast |= findModel.isWholeWordsOnly() && stringToFind.indexOf('$') < 0;
+    boolean fast = findModel.isWholeWordsOnly() && stringToFind.indexOf('$') < 0;
 
     List<String> words = StringUtil.getWordsInStringLongestFirst(stringToFind);
 
@@ -474,7 +550,7 @@ public class FindInProjectUtil {
 
       final List<PsiFile> psiFiles = Arrays.asList(files);
 
-      if (i == 0 && keys.isEmpty()) {
+      if (i == 0) {
         resultFiles.addAll(psiFiles);
       }
       else {
@@ -523,8 +599,7 @@ public class FindInProjectUtil {
   }
 
   private static boolean canOptimizeForFastWordSearch(@NotNull final FindModel findModel) {
-    return !findModel.isRegularExpressions()
-           && (findModel.getCustomScope() == null || findModel.getCustomScope() instanceof GlobalSearchScope);
+    return findModel.getCustomScope() == null || findModel.getCustomScope() instanceof GlobalSearchScope;
   }
 
   private static int addToUsages(@NotNull Document document, @NotNull Processor<UsageInfo> consumer, @NotNull FindModel findModel,
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.find.impl;
+
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.util.Processor;
+import gnu.trove.TIntObjectHashMap;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Passes results found in files searched concurrently to the consumer in the order of the files, as if they were searched one by one.
+ * Results of a file are kept until the results of all the files before it are passed.
+ */
+class OrderedFileResults<T> {
+  private final Processor<T> myConsumer;
+  private final TIntObjectHashMap<List<T>> myPending = new TIntObjectHashMap<List<T>>();
+  private int myNextFile;
+  private int myResultCount;
+
+  OrderedFileResults(@NotNull Processor<T> consumer) {
+    myConsumer = consumer;
+  }
+
+  /**
+   * Should be called once for every file index, also for files which weren't searched.
+   *
+   * @throws ProcessCanceledException if the consumer doesn't accept more results
+   */
+  synchronized void fileSearched(int index, @NotNull List<T> results) {
+    myPending.put(index, results);
+    List<T> ready;
+    while ((ready = myPending.remove(myNextFile)) != null) {
+      passResults(myNextFile++, ready);
+    }
+  }
+
+  /**
+   * Called for the files in their order, by one thread at a time; other threads wait to pass their results meanwhile,
+   * so nothing lengthy, e.g. asking the user, should be done here.
+   */
+  protected void passResults(int index, @NotNull List<T> results) {
+    for (T result : results) {
+      if (!myConsumer.process(result)) {
+        throw new ProcessCanceledException();
+      }
+      myResultCount++;
+    }
+  }
+
+  synchronized int getResultCount() {
+    return myResultCount;
+  }
+}
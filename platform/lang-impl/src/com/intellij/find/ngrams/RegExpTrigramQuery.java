@@ -0,0 +1,333 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.find.ngrams;
+
+import com.intellij.openapi.util.text.TrigramBuilder;
+import gnu.trove.TIntHashSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Decomposes a regular expression into the {@link TrigramIndex trigrams} which any text matching it must contain:
+ * an alternative of top-level branches, each one being a conjunction of trigrams of the literal fragments it requires.
+ * <p/>
+ * The decomposition is conservative: fragments which may be absent from a match (optional, repeated from zero times,
+ * inside groups or character classes) are not used. If some branch requires no trigram, or the regexp has an escape
+ * which isn't understood, the regexp can't be decomposed.
+ */
+public class RegExpTrigramQuery {
+  // (?x), (?ix:...) etc.
+  private static final Pattern COMMENTS_FLAG = Pattern.compile("\\(\\?[a-zA-Z-]*x");
+  // escapes of a single letter which match no literal character
+  private static final String CLASS_AND_BOUNDARY_ESCAPES = "dDsSwWhHvVRXbBAGZz";
+  // escapes of a single letter which match a literal character, and these characters
+  private static final String LITERAL_ESCAPES = "tnrfae";
+  private static final String LITERAL_ESCAPE_VALUES = "\t\n\r\f\u0007\u001B";
+
+  private RegExpTrigramQuery() {
+  }
+
+  /**
+   * Returns trigram sets of the top-level branches of the regexp: a matching text contains all trigrams of at least one set.
+   * Returns null if some text may match the regexp without containing any trigram.
+   */
+  @Nullable
+  public static List<TIntHashSet> decompose(@NotNull String regExp) {
+    if (COMMENTS_FLAG.matcher(regExp).find()) {
+      return null; // whitespace in the pattern is not literal
+    }
+    for (int i = 0; i < regExp.length(); i++) {
+      if (regExp.charAt(i) == '\\') {
+        i = skipEscape(regExp, i);
+        if (i < 0) return null;
+      }
+    }
+    List<TIntHashSet> result = new ArrayList<TIntHashSet>();
+    for (String branch : splitTopLevelBranches(regExp)) {
+      List<String> fragments = getRequiredFragments(branch);
+      TIntHashSet trigrams = new TIntHashSet();
+      for (String fragment : fragments) {
+        trigrams.addAll(TrigramBuilder.buildTrigram(fragment).toArray());
+      }
+      if (trigrams.isEmpty()) {
+        return null;
+      }
+      result.add(trigrams);
+    }
+    return result.isEmpty() ? null : result;
+  }
+
+  @NotNull
+  private static List<String> splitTopLevelBranches(@NotNull String regExp) {
+    List<String> branches = new ArrayList<String>();
+    int depth = 0;
+    int start = 0;
+    for (int i = 0; i < regExp.length(); i++) {
+      char c = regExp.charAt(i);
+      if (c == '\\') {
+        i = skipEscape(regExp, i);
+      }
+      else if (c == '[') {
+        i = skipCharacterClass(regExp, i);
+      }
+      else if (c == '(') {
+        depth++;
+      }
+      else if (c == ')') {
+        depth--;
+      }
+      else if (c == '|' && depth == 0) {
+        branches.add(regExp.substring(start, i));
+        start = i + 1;
+      }
+    }
+    branches.add(regExp.substring(start));
+    return branches;
+  }
+
+  // literal fragments which must be present in any match of the branch
+  @NotNull
+  private static List<String> getRequiredFragments(@NotNull String branch) {
+    List<String> fragments = new ArrayList<String>();
+    StringBuilder current = new StringBuilder();
+    boolean lastIsLiteral = false;
+    for (int i = 0; i < branch.length(); i++) {
+      char c = branch.charAt(i);
+      switch (c) {
+        case '\\':
+          int escapeEnd = skipEscape(branch, i);
+          String literal = getEscapedLiteral(branch, i, escapeEnd);
+          i = escapeEnd;
+          if (literal == null) {
+            // character classes, boundaries, back references etc.
+            lastIsLiteral = flush(current, fragments);
+          }
+          else {
+            current.append(literal);
+            lastIsLiteral = !literal.isEmpty();
+          }
+          break;
+        case '[':
+          i = skipCharacterClass(branch, i);
+          lastIsLiteral = flush(current, fragments);
+          break;
+        case '(':
+          i = skipGroup(branch, i);
+          lastIsLiteral = flush(current, fragments);
+          break;
+        case '*':
+        case '?':
+        case '{':
+          // the preceding element may be absent
+          if (lastIsLiteral && current.length() > 0) {
+            current.setLength(current.length() - Character.charCount(Character.codePointBefore(current, current.length())));
+          }
+          if (c == '{') {
+            int end = branch.indexOf('}', i);
+            i = end < 0 ? branch.length() : end;
+          }
+          i = skipQuantifierModifier(branch, i);
+          lastIsLiteral = flush(current, fragments);
+          break;
+        case '+':
+          // the preceding element is present, but what follows is not adjacent to it
+          i = skipQuantifierModifier(branch, i);
+          lastIsLiteral = flush(current, fragments);
+          break;
+        case '.':
+        case '^':
+        case '$':
+        case ')':
+        case '|':
+          lastIsLiteral = flush(current, fragments);
+          break;
+        default:
+          current.append(c);
+          lastIsLiteral = true;
+      }
+    }
+    flush(current, fragments);
+    return fragments;
+  }
+
+  private static boolean flush(@NotNull StringBuilder current, @NotNull List<String> fragments) {
+    if (current.length() > 0) {
+      fragments.add(current.toString());
+      current.setLength(0);
+    }
+    return false;
+  }
+
+  private static int skipQuantifierModifier(@NotNull String regExp, int i) {
+    if (i + 1 < regExp.length() && (regExp.charAt(i + 1) == '?' || regExp.charAt(i + 1) == '+')) {
+      return i + 1;
+    }
+    return i;
+  }
+
+  // returns the index of the closing bracket
+  private static int skipCharacterClass(@NotNull String regExp, int start) {
+    int depth = 0;
+    for (int i = start; i < regExp.length(); i++) {
+      char c = regExp.charAt(i);
+      if (c == '\\') {
+        i = skipEscape(regExp, i);
+      }
+      else if (c == '[') {
+        depth++;
+        if (i + 1 < regExp.length() && regExp.charAt(i + 1) == '^') i++;
+        if (i + 1 < regExp.length() && regExp.charAt(i + 1) == ']') i++; // ']' right after '[' is literal
+      }
+      else if (c == ']') {
+        depth--;
+        if (depth == 0) return i;
+      }
+    }
+    return regExp.length();
+  }
+
+  // returns the index of the closing parenthesis
+  private static int skipGroup(@NotNull String regExp, int start) {
+    int depth = 0;
+    for (int i = start; i < regExp.length(); i++) {
+      char c = regExp.charAt(i);
+      if (c == '\\') {
+        i = skipEscape(regExp, i);
+      }
+      else if (c == '[') {
+        i = skipCharacterClass(regExp, i);
+      }
+      else if (c == '(') {
+        depth++;
+      }
+      else if (c == ')') {
+        depth--;
+        if (depth == 0) return i;
+      }
+    }
+    return regExp.length();
+  }
+
+  /**
+   * Returns the index of the last character of the escape which starts with the backslash at the given index,
+   * or -1 if the escape isn't understood.
+   */
+  private static int skipEscape(@NotNull String regExp, int start) {
+    int length = regExp.length();
+    if (start + 1 >= length) return -1;
+    char c = regExp.charAt(start + 1);
+    int end;
+    switch (c) {
+      case 'Q':
+        end = regExp.indexOf("\\E", start + 2);
+        return end < 0 ? length - 1 : end + 1;
+      case 'x':
+        if (start + 2 < length && regExp.charAt(start + 2) == '{') {
+          end = regExp.indexOf('}', start + 3);
+          return end > start + 3 && isHex(regExp, start + 3, end) ? end : -1;
+        }
+        return isHex(regExp, start + 2, start + 4) ? start + 3 : -1;
+      case 'u':
+        return isHex(regExp, start + 2, start + 6) ? start + 5 : -1;
+      case '0':
+        // \0n, \0nn or \0mnn where m <= 3
+        end = start + 1;
+        while (end + 1 < length && end - start < 4 && isOctal(regExp.charAt(end + 1))) {
+          end++;
+        }
+        if (end - start == 4 && regExp.charAt(start + 2) > '3') end--;
+        return end > start + 1 ? end : -1;
+      case 'c':
+        return start + 2 < length ? start + 2 : -1;
+      case 'k':
+        if (start + 2 >= length || regExp.charAt(start + 2) != '<') return -1;
+        end = regExp.indexOf('>', start + 3);
+        return end > start + 3 ? end : -1;
+      case 'p':
+      case 'P':
+        if (start + 2 >= length) return -1;
+        if (regExp.charAt(start + 2) == '{') {
+          end = regExp.indexOf('}', start + 3);
+          return end > start + 3 ? end : -1;
+        }
+        return Character.isLetter(regExp.charAt(start + 2)) ? start + 2 : -1;
+      default:
+        if (c >= '1' && c <= '9') {
+          // a back reference takes as many digits as there are groups, and the following digits are skipped too
+          end = start + 1;
+          while (end + 1 < length && Character.isDigit(regExp.charAt(end + 1))) {
+            end++;
+          }
+          return end;
+        }
+        if (Character.isLetterOrDigit(c) && CLASS_AND_BOUNDARY_ESCAPES.indexOf(c) < 0 && LITERAL_ESCAPES.indexOf(c) < 0) {
+          return -1;
+        }
+        return start + 1;
+    }
+  }
+
+  /**
+   * Returns the text which the escape between the given indices matches, or null if it doesn't match a literal text.
+   */
+  @Nullable
+  private static String getEscapedLiteral(@NotNull String regExp, int start, int end) {
+    char c = regExp.charAt(start + 1);
+    switch (c) {
+      case 'Q':
+        return regExp.substring(start + 2, regExp.startsWith("\\E", end - 1) ? end - 1 : end + 1);
+      case 'x':
+        return codePoint(regExp.charAt(start + 2) == '{' ? regExp.substring(start + 3, end) : regExp.substring(start + 2, end + 1));
+      case 'u':
+        return String.valueOf((char)Integer.parseInt(regExp.substring(start + 2, end + 1), 16));
+      case '0':
+        return String.valueOf((char)Integer.parseInt(regExp.substring(start + 2, end + 1), 8));
+      case 'c':
+        return String.valueOf((char)(regExp.charAt(start + 2) ^ 64));
+      default:
+        int index = LITERAL_ESCAPES.indexOf(c);
+        if (index >= 0) return String.valueOf(LITERAL_ESCAPE_VALUES.charAt(index));
+        return Character.isLetterOrDigit(c) ? null : String.valueOf(c);
+    }
+  }
+
+  @Nullable
+  private static String codePoint(@NotNull String hex) {
+    try {
+      int codePoint = Integer.parseInt(hex, 16);
+      return Character.isValidCodePoint(codePoint) ? new String(Character.toChars(codePoint)) : null;
+    }
+    catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static boolean isHex(@NotNull String regExp, int start, int end) {
+    if (end > regExp.length()) return false;
+    for (int i = start; i < end; i++) {
+      if (Character.digit(regExp.charAt(i), 16) < 0) return false;
+    }
+    return true;
+  }
+
+  private static boolean isOctal(char c) {
+    return c >= '0' && c <= '7';
+  }
+}
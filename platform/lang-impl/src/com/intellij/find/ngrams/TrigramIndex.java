@@ -32,7 +32,7 @@ import org.jetbrains.annotations.NotNull;
 import java.util.Map;
 
 public class TrigramIndex extends ScalarIndexExtension<Integer> {
-  public static final boolean ENABLED = "true".equals(System.getProperty("idea.internal.trigramindex.enabled"));
+  public static final boolean ENABLED = !"false".equals(System.getProperty("idea.internal.trigramindex.enabled"));
 
   public static final ID<Integer,Void> INDEX_ID = ID.create("Trigram.Index");
 
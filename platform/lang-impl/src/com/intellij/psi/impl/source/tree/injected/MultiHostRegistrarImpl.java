@@ -232,41 +232,44 @@ public class MultiHostRegistrarImpl implements MultiHostRegistrar, ModificationT
       SmartPsiElementPointer<PsiLanguageInjectionHost> pointer = ((ShredImpl)shreds.get(0)).getSmartPointer();
 
       synchronized (PsiLock.LOCK) {
-        final ASTNode parsedNode = keepTreeFromChameleoningBack(psiFile);
+        PsiFile newFile = reparseIncrementally(documentWindow, psiFile, pointer, documentManager);
+        if (newFile == null) {
+          final ASTNode parsedNode = keepTreeFromChameleoningBack(psiFile);
 
-        assert parsedNode instanceof FileElement : "Parsed to "+parsedNode+" instead of FileElement";
+          assert parsedNode instanceof FileElement : "Parsed to "+parsedNode+" instead of FileElement";
 
-        String documentText = documentWindow.getText();
-        assert outChars.toString().equals(parsedNode.getText()) : exceptionContext("Before patch: doc:\n'" + documentText + "'\n---PSI:\n'" + parsedNode.getText() + "'\n---chars:\n'"+outChars+"'");
+          String documentText = documentWindow.getText();
+          assert outChars.toString().equals(parsedNode.getText()) : exceptionContext("Before patch: doc:\n'" + documentText + "'\n---PSI:\n'" + parsedNode.getText() + "'\n---chars:\n'"+outChars+"'");
 
-        viewProvider.setPatchingLeaves(true);
-        try {
-          patchLeafs(parsedNode, escapers, place);
-        }
-        catch (ProcessCanceledException e) {
-          throw e;
-        }
-        catch (RuntimeException e) {
-          throw new RuntimeException(exceptionContext("Patch error"), e);
-        }
-        finally {
-          viewProvider.setPatchingLeaves(false);
-        }
-        if (!parsedNode.getText().equals(documentText)) {
-          throw new AssertionError(exceptionContext(
-            "After patch: doc:\n'" + documentText + "'\n---PSI:\n'" + parsedNode.getText() + "'\n---chars:\n'" + outChars + "'"));
-        }
+          viewProvider.setPatchingLeaves(true);
+          try {
+            patchLeafs(parsedNode, escapers, place);
+          }
+          catch (ProcessCanceledException e) {
+            throw e;
+          }
+          catch (RuntimeException e) {
+            throw new RuntimeException(exceptionContext("Patch error"), e);
+          }
+          finally {
+            viewProvider.setPatchingLeaves(false);
+          }
+          if (!parsedNode.getText().equals(documentText)) {
+            throw new AssertionError(exceptionContext(
+              "After patch: doc:\n'" + documentText + "'\n---PSI:\n'" + parsedNode.getText() + "'\n---chars:\n'" + outChars + "'"));
+          }
 
-        virtualFile.setContent(null, documentWindow.getText(), false);
+          virtualFile.setContent(null, documentWindow.getText(), false);
 
-        cacheEverything(place, documentWindow, viewProvider, psiFile, pointer);
+          cacheEverything(place, documentWindow, viewProvider, psiFile, pointer);
 
-        PsiFile cachedPsiFile = documentManager.getCachedPsiFile(documentWindow);
-        assert cachedPsiFile == psiFile : "Cached psi :"+ cachedPsiFile +" instead of "+psiFile;
+          PsiFile cachedPsiFile = documentManager.getCachedPsiFile(documentWindow);
+          assert cachedPsiFile == psiFile : "Cached psi :"+ cachedPsiFile +" instead of "+psiFile;
 
-        assert place.isValid();
-        assert viewProvider.isValid();
-        PsiFile newFile = registerDocument(documentWindow, psiFile, place, myHostPsiFile, documentManager);
+          assert place.isValid();
+          assert viewProvider.isValid();
+          newFile = registerDocument(documentWindow, psiFile, place, myHostPsiFile, documentManager);
+        }
         boolean mergeHappened = newFile != psiFile;
         if (mergeHappened) {
           InjectedLanguageUtil.clearCaches(psiFile, documentWindow);
@@ -400,6 +403,94 @@ public class MultiHostRegistrarImpl implements MultiHostRegistrar, ModificationT
     TreeUtil.clearCaches((TreeElement)parsedNode);
   }
 
+  /**
+   * Typing inside a big injected fragment (e.g. SQL or regexp in a string literal) changes only a small part of it, so, instead of
+   * parsing the whole fragment again and diffing it against the old tree, the old injected file with the same shreds is reparsed
+   * in place the same way host files are, i.e. only the innermost {@link com.intellij.psi.tree.IReparseableElementType reparseable}
+   * element containing the change is re-created.
+   * <p/>
+   * That is possible only if host text of the shreds matches the decoded text, i.e. reparsed leaves don't need to be patched.
+   *
+   * @return old injected file updated to the current text or <code>null</code> if the fragment should be parsed from scratch
+   */
+  // under com.intellij.psi.PsiLock.LOCK
+  @Nullable
+  private PsiFile reparseIncrementally(@NotNull DocumentWindowImpl documentWindow,
+                                       @NotNull PsiFile injectedPsi,
+                                       @NotNull SmartPsiElementPointer<PsiLanguageInjectionHost> pointer,
+                                       @NotNull PsiDocumentManager documentManager) {
+    final CharSequence newText = outChars;
+    if (!StringUtil.equals(documentWindow.getText(), newText)) {
+      return null;
+    }
+    List<DocumentWindow> injected = InjectedLanguageUtil.getCachedInjectedDocuments(myHostPsiFile);
+    for (int i = injected.size() - 1; i >= 0; i--) {
+      DocumentWindowImpl oldDocument = (DocumentWindowImpl)injected.get(i);
+      if (!oldDocument.areRangesEqual(documentWindow)) continue;
+
+      PsiFile cachedFile = documentManager.getCachedPsiFile(oldDocument);
+      if (!(cachedFile instanceof PsiFileImpl) || !cachedFile.isValid() ||
+          cachedFile.getFileType() != injectedPsi.getFileType() || cachedFile.getLanguage() != injectedPsi.getLanguage()) {
+        return null;
+      }
+      FileViewProvider viewProvider = cachedFile.getViewProvider();
+      if (!(viewProvider instanceof InjectedFileViewProvider) || ((InjectedFileViewProvider)viewProvider).isDisposed()) {
+        return null;
+      }
+      final PsiFileImpl oldFile = (PsiFileImpl)cachedFile;
+      ASTNode oldFileNode = oldFile.getNode();
+      assert oldFileNode != null : "Old node is null";
+      CharSequence oldText = oldFileNode.getChars();
+
+      int prefix = StringUtil.commonPrefixLength(oldText, newText);
+      if (prefix == oldText.length() && prefix == newText.length()) {
+        return oldFile;
+      }
+      int suffix = Math.min(StringUtil.commonSuffixLength(oldText, newText), Math.min(oldText.length(), newText.length()) - prefix);
+      final TextRange changedRange = new TextRange(prefix, oldText.length() - suffix);
+
+      oldFile.putUserData(FileContextUtil.INJECTED_IN_ELEMENT, pointer);
+      boolean reparsed = applyNonPhysically((InjectedFileViewProvider)viewProvider, oldFile, new Computable<DiffLog>() {
+        @Override
+        public DiffLog compute() {
+          return BlockSupportImpl.reparseChangedBlock(oldFile, changedRange, newText, new DaemonProgressIndicator());
+        }
+      });
+      if (!reparsed) {
+        return null;
+      }
+      if (!StringUtil.equals(oldFile.getNode().getChars(), newText)) {
+        throw new AssertionError(exceptionContext("After incremental reparse: PSI:\n'" + oldFile.getText() + "'\n---chars:\n'" + outChars + "'"));
+      }
+      return oldFile;
+    }
+    return null;
+  }
+
+  // returns false if there was nothing to apply
+  private static boolean applyNonPhysically(@NotNull InjectedFileViewProvider viewProvider,
+                                            @NotNull final PsiFileImpl file,
+                                            @NotNull final Computable<DiffLog> diffComputable) {
+    final Ref<Boolean> applied = Ref.create(Boolean.FALSE);
+    viewProvider.performNonPhysically(new Runnable() {
+      @Override
+      public void run() {
+        final DiffLog diffLog = diffComputable.compute();
+        if (diffLog == null) return;
+        CodeStyleManager.getInstance(file.getProject()).performActionWithFormatterDisabled(new Runnable() {
+          @Override
+          public void run() {
+            synchronized (PsiLock.LOCK) {
+              DocumentCommitThread.doActualPsiChange(file, diffLog);
+            }
+          }
+        });
+        applied.set(Boolean.TRUE);
+      }
+    });
+    return applied.get();
+  }
+
   // under com.intellij.psi.PsiLock.LOCK
   private static PsiFile registerDocument(final DocumentWindowImpl documentWindow,
                                           final PsiFile injectedPsi,
@@ -436,19 +527,10 @@ public class MultiHostRegistrarImpl implements MultiHostRegistrar, ModificationT
         oldFile.putUserData(FileContextUtil.INJECTED_IN_ELEMENT, injectedPsi.getUserData(FileContextUtil.INJECTED_IN_ELEMENT));
 
         assert shreds.isValid();
-        oldViewProvider.performNonPhysically(new Runnable() {
+        applyNonPhysically(oldViewProvider, oldFile, new Computable<DiffLog>() {
           @Override
-          public void run() {
-            //todo
-            final DiffLog diffLog = BlockSupportImpl.mergeTrees(oldFile, oldFileNode, injectedNode, new DaemonProgressIndicator());
-            CodeStyleManager.getInstance(hostPsiFile.getProject()).performActionWithFormatterDisabled(new Runnable() {
-              @Override
-              public void run() {
-                synchronized (PsiLock.LOCK) {
-                  DocumentCommitThread.doActualPsiChange(oldFile, diffLog);
-                }
-              }
-            });
+          public DiffLog compute() {
+            return BlockSupportImpl.mergeTrees(oldFile, oldFileNode, injectedNode, new DaemonProgressIndicator());
           }
         });
         assert shreds.isValid();
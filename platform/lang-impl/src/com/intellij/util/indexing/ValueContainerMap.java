@@ -7,6 +7,7 @@ import gnu.trove.TIntHashSet;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.*;
+import java.util.Arrays;
 import java.util.Iterator;
 
 /**
@@ -86,7 +87,23 @@ class ValueContainerMap<Key, Value> extends PersistentHashMap<Key, ValueContaine
         myExternalizer.save(out, value);
 
         final ValueContainer.IntIterator ids = container.getInputIdsIterator(value);
-        if (ids != null) {
+        if (ids != null && ids.size() > 1) {
+          // several ids are saved sorted, as differences between neighbours, which are much shorter than ids themselves;
+          // the negative count distinguishes this from the plain list of ids
+          final int[] sorted = new int[ids.size()];
+          int count = 0;
+          while (ids.hasNext()) {
+            sorted[count++] = ids.next();
+          }
+          Arrays.sort(sorted, 0, count);
+          DataInputOutputUtil.writeSINT(out, -count);
+          int prev = 0;
+          for (int i = 0; i < count; i++) {
+            DataInputOutputUtil.writeINT(out, sorted[i] - prev);
+            prev = sorted[i];
+          }
+        }
+        else if (ids != null) {
           DataInputOutputUtil.writeSINT(out, ids.size());
           while (ids.hasNext()) {
             final int id = ids.next();
@@ -115,10 +132,20 @@ class ValueContainerMap<Key, Value> extends PersistentHashMap<Key, ValueContaine
           for (int valueIdx = 0; valueIdx < valueCount; valueIdx++) {
             final T value = myExternalizer.read(in);
             final int idCount = DataInputOutputUtil.readSINT(in);
-            valueContainer.ensureFileSetCapacityForValue(value, idCount);
-            for (int i = 0; i < idCount; i++) {
-              final int id = DataInputOutputUtil.readSINT(in);
-              valueContainer.addValue(id, value);
+            if (idCount < 0) {
+              valueContainer.ensureFileSetCapacityForValue(value, -idCount);
+              int id = 0;
+              for (int i = 0; i < -idCount; i++) {
+                id += DataInputOutputUtil.readINT(in);
+                valueContainer.addValue(id, value);
+              }
+            }
+            else {
+              valueContainer.ensureFileSetCapacityForValue(value, idCount);
+              for (int i = 0; i < idCount; i++) {
+                final int id = DataInputOutputUtil.readSINT(in);
+                valueContainer.addValue(id, value);
+              }
             }
           }
         }
@@ -47,6 +47,12 @@ public class ChangeCollectingVisitor extends ChangeVisitor {
     return myPath;
   }
 
+  @Override
+  public boolean canSkip(ChangeSet c) {
+    // a change set which doesn't affect the path (or the project by labels) changes nothing here, even the path itself
+    return !c.mayAffectPath(myPath) && !c.mayContainLabels();
+  }
+
   @Override
   public void begin(ChangeSet c) throws StopVisitingException {
     myCurrentChangeSet = c;
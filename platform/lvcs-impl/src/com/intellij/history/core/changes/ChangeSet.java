@@ -17,26 +17,40 @@
 package com.intellij.history.core.changes;
 
 import com.intellij.history.core.Content;
+import com.intellij.history.core.Paths;
 import com.intellij.history.core.StreamUtil;
 import com.intellij.history.utils.LocalHistoryLog;
+import com.intellij.openapi.util.io.BufferExposingByteArrayOutputStream;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.ArrayUtil;
 import com.intellij.util.Producer;
 import com.intellij.util.SmartList;
 import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.io.UnsyncByteArrayInputStream;
+import gnu.trove.TIntHashSet;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
 
-import java.io.DataInput;
-import java.io.DataOutput;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.io.*;
+import java.util.*;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
+/**
+ * A stored change set keeps its changes compressed together with a summary of the paths they affect.
+ * The changes are only read when they are accessed, so the change sets which turn out to be irrelevant for a visitor
+ * (see {@link ChangeVisitor#canSkip(ChangeSet)}) are not unpacked at all.
+ */
 public class ChangeSet {
   private final long myId;
   @Nullable private String myName;
   private final long myTimestamp;
-  private final List<Change> myChanges;
+  private List<Change> myChanges;
+
+  // compressed changes of a change set read from the storage; null once they are unpacked
+  @Nullable private volatile byte[] myPackedChanges;
+  @Nullable private PathsSummary mySummary;
 
   private volatile boolean isLocked = false;
 
@@ -51,12 +65,10 @@ public class ChangeSet {
     myName = StreamUtil.readStringOrNull(in);
     myTimestamp = in.readLong();
 
-    int count = in.readInt();
-    List<Change> changes = new ArrayList<Change>(count);
-    while (count-- > 0) {
-      changes.add(StreamUtil.readChange(in));
-    }
-    myChanges = Collections.unmodifiableList(changes);
+    mySummary = new PathsSummary(in);
+    byte[] packed = new byte[in.readInt()];
+    in.readFully(packed);
+    myPackedChanges = packed;
     isLocked = true;
   }
 
@@ -65,9 +77,65 @@ public class ChangeSet {
     StreamUtil.writeStringOrNull(out, myName);
     out.writeLong(myTimestamp);
 
-    out.writeInt(myChanges.size());
-    for (Change c : myChanges) {
-      StreamUtil.writeChange(out, c);
+    byte[] packed = myPackedChanges;
+    if (packed == null) {
+      List<Change> changes = getChanges();
+      mySummary = PathsSummary.create(changes);
+      packed = pack(changes);
+    }
+    assert mySummary != null;
+    mySummary.write(out);
+    out.writeInt(packed.length);
+    out.write(packed);
+  }
+
+  private static byte[] pack(List<Change> changes) throws IOException {
+    BufferExposingByteArrayOutputStream bytes = new BufferExposingByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes));
+    try {
+      out.writeInt(changes.size());
+      for (Change c : changes) {
+        StreamUtil.writeChange(out, c);
+      }
+    }
+    finally {
+      out.close();
+    }
+    return Arrays.copyOf(bytes.getInternalBuffer(), bytes.size());
+  }
+
+  private static List<Change> unpack(byte[] packed) throws IOException {
+    DataInputStream in = new DataInputStream(new InflaterInputStream(new UnsyncByteArrayInputStream(packed)));
+    try {
+      int count = in.readInt();
+      List<Change> changes = new ArrayList<Change>(count);
+      while (count-- > 0) {
+        changes.add(StreamUtil.readChange(in));
+      }
+      return Collections.unmodifiableList(changes);
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  @TestOnly
+  public boolean isPackedInTests() {
+    return myPackedChanges != null;
+  }
+
+  private void ensureUnpacked() {
+    if (myPackedChanges == null) return;
+    synchronized (this) {
+      byte[] packed = myPackedChanges;
+      if (packed == null) return;
+      try {
+        myChanges = unpack(packed);
+      }
+      catch (IOException e) {
+        throw new RuntimeException("cannot read changes", e);
+      }
+      myPackedChanges = null;
     }
   }
 
@@ -158,6 +226,33 @@ public class ChangeSet {
     });
   }
 
+  /**
+   * Returns false if the change set surely doesn't affect the given path, i.e. {@link #affectsPath(String)} would return false.
+   * Doesn't unpack stored changes.
+   */
+  public boolean mayAffectPath(String path) {
+    PathsSummary summary = mySummary;
+    if (summary != null && isLocked) return summary.mayAffectPath(path);
+    return affectsPath(path);
+  }
+
+  /**
+   * Returns false if the change set surely contains no labels. Doesn't unpack stored changes.
+   */
+  public boolean mayContainLabels() {
+    PathsSummary summary = mySummary;
+    if (summary != null && isLocked) return summary.myHasLabels;
+    return accessChanges(new Producer<Boolean>() {
+      @Override
+      public Boolean produce() {
+        for (Change c : myChanges) {
+          if (c instanceof PutLabelChange) return true;
+        }
+        return false;
+      }
+    });
+  }
+
   public boolean isCreationalFor(final String path) {
     return accessChanges(new Producer<Boolean>() {
       @Override
@@ -266,11 +361,15 @@ public class ChangeSet {
 
   public void accept(ChangeVisitor v) throws ChangeVisitor.StopVisitingException {
     if (isLocked) {
+      // the summary is enough to decide, so the skipped change sets stay packed
+      if (v.canSkip(this)) return;
+      ensureUnpacked();
       doAccept(v);
       return;
     }
 
     synchronized (myChanges) {
+      if (v.canSkip(this)) return;
       doAccept(v);
     }
   }
@@ -285,6 +384,7 @@ public class ChangeSet {
 
   private <T> T accessChanges(@NotNull Producer<T> func) {
     if (isLocked) {
+      ensureUnpacked();
       //noinspection ConstantConditions
       return func.produce();
     }
@@ -304,4 +404,97 @@ public class ChangeSet {
       }
     });
   }
+
+  /**
+   * Hashes of the paths affected by structural changes of a change set, and of all their parents.
+   * A change affects a path if one of them is a parent of the other (see {@link Paths#isParentOrChild(String, String)}),
+   * so the summary answers that question without the changes themselves; hash collisions may only lead to false positives.
+   */
+  private static class PathsSummary {
+    @NotNull private final int[] myPaths;
+    @NotNull private final int[] myParents;
+    private final boolean myHasLabels;
+
+    private PathsSummary(@NotNull int[] paths, @NotNull int[] parents, boolean hasLabels) {
+      myPaths = paths;
+      myParents = parents;
+      myHasLabels = hasLabels;
+    }
+
+    private PathsSummary(DataInput in) throws IOException {
+      myPaths = readHashes(in);
+      myParents = readHashes(in);
+      myHasLabels = in.readBoolean();
+    }
+
+    @NotNull
+    static PathsSummary create(List<Change> changes) {
+      TIntHashSet paths = new TIntHashSet();
+      TIntHashSet parents = new TIntHashSet();
+      boolean hasLabels = false;
+      for (Change each : changes) {
+        if (each instanceof PutLabelChange) {
+          hasLabels = true;
+        }
+        else if (each instanceof StructuralChange) {
+          for (String path : ((StructuralChange)each).getAffectedPaths()) {
+            paths.add(hash(path));
+            String parent = Paths.getParentOf(path);
+            while (!parent.isEmpty() && parents.add(hash(parent))) {
+              String next = Paths.getParentOf(parent);
+              if (next.equals(parent)) break;
+              parent = next;
+            }
+          }
+        }
+      }
+      return new PathsSummary(sorted(paths), sorted(parents), hasLabels);
+    }
+
+    boolean mayAffectPath(String path) {
+      if (path.isEmpty() || Arrays.binarySearch(myParents, hash(path)) >= 0) return true;
+      String each = path;
+      while (!each.isEmpty()) {
+        if (Arrays.binarySearch(myPaths, hash(each)) >= 0) return true;
+        String parent = Paths.getParentOf(each);
+        if (parent.equals(each)) break;
+        each = parent;
+      }
+      return false;
+    }
+
+    void write(DataOutput out) throws IOException {
+      writeHashes(out, myPaths);
+      writeHashes(out, myParents);
+      out.writeBoolean(myHasLabels);
+    }
+
+    private static int hash(String path) {
+      if (path.length() > 1 && path.charAt(path.length() - 1) == Paths.DELIM) path = path.substring(0, path.length() - 1);
+      return Paths.isCaseSensitive() ? path.hashCode() : StringUtil.toLowerCase(path).hashCode();
+    }
+
+    private static int[] sorted(TIntHashSet set) {
+      int[] result = set.toArray();
+      Arrays.sort(result);
+      return result;
+    }
+
+    private static int[] readHashes(DataInput in) throws IOException {
+      int count = in.readInt();
+      if (count == 0) return ArrayUtil.EMPTY_INT_ARRAY;
+      int[] result = new int[count];
+      for (int i = 0; i < count; i++) {
+        result[i] = in.readInt();
+      }
+      return result;
+    }
+
+    private static void writeHashes(DataOutput out, int[] hashes) throws IOException {
+      out.writeInt(hashes.length);
+      for (int each : hashes) {
+        out.writeInt(each);
+      }
+    }
+  }
 }
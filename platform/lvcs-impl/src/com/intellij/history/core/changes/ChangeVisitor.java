@@ -20,6 +20,14 @@ public abstract class ChangeVisitor {
   public void finished() {
   }
 
+  /**
+   * Allows the visitor to skip change sets it is not interested in: neither {@link #begin(ChangeSet)}, nor
+   * {@link #end(ChangeSet)} is called for them and their changes are not visited.
+   */
+  public boolean canSkip(ChangeSet c) {
+    return false;
+  }
+
   public void begin(ChangeSet c) throws StopVisitingException {
   }
 
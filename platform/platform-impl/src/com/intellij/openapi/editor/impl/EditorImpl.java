@@ -228,6 +228,7 @@ public final class EditorImpl extends UserDataHolderBase implements EditorEx, Hi
   private static final int CACHED_CHARS_BUFFER_SIZE = 300;
 
   private final     ArrayList<CachedFontContent> myFontCache       = new ArrayList<CachedFontContent>();
+  private final     GlyphVectorCache myGlyphVectorCache = new GlyphVectorCache();
   @Nullable private FontInfo                     myCurrentFontType = null;
 
   private final EditorSizeContainer mySizeContainer = new EditorSizeContainer();
@@ -663,6 +664,7 @@ public final class EditorImpl extends UserDataHolderBase implements EditorEx, Hi
     myPlainFontMetrics = null;
 
     clearTextWidthCache();
+    myGlyphVectorCache.clear();
 
     boolean softWrapsUsedBefore = mySoftWrapModel.isSoftWrappingEnabled();
 
@@ -738,6 +740,7 @@ public final class EditorImpl extends UserDataHolderBase implements EditorEx, Hi
     myFoldingModel.dispose();
 
     mySoftWrapModel.release();
+    myGlyphVectorCache.clear();
 
     myMarkupModel.dispose();
 
@@ -3333,7 +3336,7 @@ public final class EditorImpl extends UserDataHolderBase implements EditorEx, Hi
   private static final char IDEOGRAPHIC_SPACE = '\u3000'; // http://www.marathon-studios.com/unicode/U3000/Ideographic_Space
 
   private void drawChars(@NotNull Graphics g, char[] data, int start, int end, int x, int y) {
-    g.drawChars(data, start, end - start, x, y);
+    myGlyphVectorCache.drawChars(g, data, start, end, x, y);
 
     if (mySettings.isWhitespacesShown()) {
       Color oldColor = g.getColor();
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.editor.impl;
+
+import com.intellij.util.containers.SLRUMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+
+/**
+ * Editor repaints the same text fragments over and over again (on scrolling, caret blinking, selection change etc), and every
+ * {@link Graphics#drawChars(char[], int, int, int, int)} call lays out the glyphs from scratch. This cache keeps laid out
+ * {@link GlyphVector glyph vectors} of recently painted fragments, so, they may be painted without re-measuring.
+ * <p/>
+ * Fragments are identified by their text, font and font render context, i.e. document, highlighters or folding changes
+ * don't make cached entries invalid - fragments which are not painted anymore are just evicted eventually.
+ * <p/>
+ * Only fragments which don't need complex text layout (bidi, combining marks etc) are cached since
+ * {@link Font#createGlyphVector(FontRenderContext, char[])} doesn't perform it.
+ * <p/>
+ * Not thread-safe, is expected to be used from EDT.
+ */
+class GlyphVectorCache {
+
+  private static final int MAX_FRAGMENT_LENGTH = 256;
+
+  /** Symbols below this one (the first combining diacritical mark) don't require complex text layout. */
+  private static final char SIMPLE_LAYOUT_LIMIT = '\u0300';
+
+  private final SLRUMap<FragmentKey, GlyphVector> myCache = new SLRUMap<FragmentKey, GlyphVector>(1024, 1024);
+
+  /**
+   * Paints given text fragment using current font of the given graphics.
+   */
+  public void drawChars(@NotNull Graphics g, @NotNull char[] data, int start, int end, int x, int y) {
+    GlyphVector vector = getGlyphVector(g, data, start, end);
+    if (vector == null) {
+      g.drawChars(data, start, end - start, x, y);
+    }
+    else {
+      ((Graphics2D)g).drawGlyphVector(vector, x, y);
+    }
+  }
+
+  public void clear() {
+    myCache.clear();
+  }
+
+  @Nullable
+  GlyphVector getGlyphVector(@NotNull Graphics g, @NotNull char[] data, int start, int end) {
+    if (!(g instanceof Graphics2D) || end - start > MAX_FRAGMENT_LENGTH || end <= start || !isSimpleLayout(data, start, end)) {
+      return null;
+    }
+    Font font = g.getFont();
+    FontRenderContext context = ((Graphics2D)g).getFontRenderContext();
+    FragmentKey key = new FragmentKey(new String(data, start, end - start), font, context);
+    GlyphVector result = myCache.get(key);
+    if (result == null) {
+      result = font.createGlyphVector(context, key.myText);
+      myCache.put(key, result);
+    }
+    return result;
+  }
+
+  private static boolean isSimpleLayout(@NotNull char[] data, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (data[i] >= SIMPLE_LAYOUT_LIMIT) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static class FragmentKey {
+    @NotNull private final String            myText;
+    @NotNull private final Font              myFont;
+    @NotNull private final FontRenderContext myContext;
+    private final int myHashCode;
+
+    FragmentKey(@NotNull String text, @NotNull Font font, @NotNull FontRenderContext context) {
+      myText = text;
+      myFont = font;
+      myContext = context;
+      myHashCode = 31 * (31 * text.hashCode() + font.hashCode()) + context.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      FragmentKey key = (FragmentKey)o;
+      return myHashCode == key.myHashCode && myText.equals(key.myText) && myFont.equals(key.myFont) && myContext.equals(key.myContext);
+    }
+
+    @Override
+    public int hashCode() {
+      return myHashCode;
+    }
+  }
+}
@@ -40,6 +40,7 @@ public class IncrementalCacheUpdateEvent {
   private int myNewStartOffset;
   private int myNewEndOffset;
   private int myNewLogicalLinesDiff;
+  private final boolean myDocumentChange;
 
   /**
    * Creates new <code>IncrementalCacheUpdateEvent</code> object on the basis on the given event object that describes
@@ -62,6 +63,7 @@ public class IncrementalCacheUpdateEvent {
     myOldStartOffset = getLineStartOffset(myOldExactStartOffset, document);
     myOldEndOffset = getLineEndOffset(myOldExactEndOffset, document);
     myOldLogicalLinesDiff = document.getLineNumber(myOldExactEndOffset) - document.getLineNumber(myOldExactStartOffset);
+    myDocumentChange = true;
   }
 
   /**
@@ -87,6 +89,7 @@ public class IncrementalCacheUpdateEvent {
     myOldExactStartOffset = myNewExactStartOffset = myOldStartOffset = myNewStartOffset = exactStartOffset;
     myOldExactEndOffset = myNewExactEndOffset = myOldEndOffset = myNewEndOffset = exactEndOffset;
     myOldLogicalLinesDiff = document.getLineNumber(myOldExactEndOffset) - document.getLineNumber(myOldExactStartOffset);
+    myDocumentChange = false;
   }
 
   /**
@@ -112,6 +115,14 @@ public class IncrementalCacheUpdateEvent {
     myNewLogicalLinesDiff = document.getLineNumber(myNewExactEndOffset) - document.getLineNumber(myNewExactStartOffset);
   }
 
+  /**
+   * @return    <code>true</code> if current event reflects particular document change;
+   *            <code>false</code> if it's created for reparsing particular document region (e.g. on fold region state change)
+   */
+  public boolean isDocumentChange() {
+    return myDocumentChange;
+  }
+
   /**
    * @return    number of changed document symbols. May be either negative, zero and positive 
    */
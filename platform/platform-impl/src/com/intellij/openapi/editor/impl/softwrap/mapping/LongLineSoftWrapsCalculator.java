@@ -0,0 +1,673 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.editor.impl.softwrap.mapping;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.LineWrapPositionStrategy;
+import com.intellij.openapi.editor.RangeMarker;
+import com.intellij.openapi.editor.ex.EditorEx;
+import com.intellij.openapi.editor.highlighter.EditorHighlighter;
+import com.intellij.openapi.editor.highlighter.HighlighterIterator;
+import com.intellij.openapi.editor.impl.EditorTextRepresentationHelper;
+import com.intellij.openapi.editor.markup.TextAttributes;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.Comparing;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.util.Consumer;
+import com.intellij.util.concurrency.SequentialTaskExecutor;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntHashSet;
+import gnu.trove.TIntIntHashMap;
+import gnu.trove.TIntIterator;
+import gnu.trove.TIntObjectHashMap;
+import gnu.trove.TIntObjectProcedure;
+import gnu.trove.TObjectProcedure;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
+
+import java.awt.*;
+import java.util.concurrent.Executor;
+
+/**
+ * Calculates soft wraps of very long logical lines (minified scripts, single line data files etc) at a background thread, so that
+ * {@link SoftWrapApplianceManager} only has to apply ready soft wraps at EDT instead of measuring every symbol of such a line there.
+ * <p/>
+ * Only lines without tabulations are processed here, symbol font types are taken from the editor highlighter (i.e. font types
+ * defined by range highlighters are not taken into account). Symbol widths are measured at EDT once per symbol and font type.
+ * <p/>
+ * All public methods are assumed to be called from EDT. Calculated layouts are bound to the {@link Parameters} they are requested
+ * for and are dropped as soon as different parameters are used (e.g. the document is changed or visible area is resized).
+ */
+class LongLineSoftWrapsCalculator {
+
+  private static final Logger LOG = Logger.getInstance("#" + LongLineSoftWrapsCalculator.class.getName());
+
+  /** Logical lines with at least this number of symbols are processed in background. */
+  static final int LONG_LINE_LENGTH = 10000;
+
+  /** Max number of symbols to process within a single read action. */
+  private static final int SYMBOLS_PER_READ_ACTION = 50000;
+
+  private final Executor                      myExecutor = new SequentialTaskExecutor(PooledThreadExecutor.INSTANCE);
+  private final TIntObjectHashMap<LineLayout>  myLayouts  = new TIntObjectHashMap<LineLayout>();
+  private final TIntObjectHashMap<RangeMarker> myPending  = new TIntObjectHashMap<RangeMarker>();
+  /** Symbol widths by <code>'font type << 16 | symbol'</code> keys. Guarded by itself. */
+  private final TIntIntHashMap                 myWidths   = new TIntIntHashMap();
+
+  @NotNull private final EditorEx              myEditor;
+  @NotNull private final Consumer<TextRange>   myLayoutListener;
+
+  @Nullable private Parameters myParameters;
+  /** Is incremented every time calculated layouts are dropped; background calculations of the previous generations are stopped. */
+  private volatile int myGeneration;
+
+  /**
+   * @param editor            target editor
+   * @param layoutListener    is notified at EDT about logical lines which soft wraps should be recalculated because their layout
+   *                          is calculated or because calculation of their layout has been interrupted by a document change
+   */
+  LongLineSoftWrapsCalculator(@NotNull EditorEx editor, @NotNull Consumer<TextRange> layoutListener) {
+    myEditor = editor;
+    myLayoutListener = layoutListener;
+  }
+
+  /**
+   * Asks for a layout of the given long logical line.
+   *
+   * @param lineStart     start offset of the target logical line
+   * @param lineEnd       end offset of the target logical line
+   * @param parameters    current soft wraps calculation parameters
+   * @return              layout of the target line calculated for the given parameters if any (note that it may be
+   *                      {@link LineLayout#UNSUPPORTED}); <code>null</code> if the layout is not calculated yet, its calculation
+   *                      is started then and the {@link #myLayoutListener listener} is notified when it's finished
+   */
+  @Nullable
+  LineLayout getLayout(int lineStart, int lineEnd, @NotNull Parameters parameters) {
+    if (!parameters.equals(myParameters)) {
+      if (myParameters == null || !myParameters.isSameFont(parameters)) {
+        synchronized (myWidths) {
+          myWidths.clear();
+        }
+      }
+      dropLayouts();
+      myParameters = parameters;
+    }
+    LineLayout layout = myLayouts.get(lineStart);
+    if (layout != null || myPending.containsKey(lineStart)) {
+      return layout;
+    }
+    myPending.put(lineStart, myEditor.getDocument().createRangeMarker(lineStart, lineEnd));
+    final int generation = myGeneration;
+    final Task task = new Task(lineStart, lineEnd, parameters, generation);
+    myExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          task.run();
+        }
+        catch (Throwable e) {
+          LOG.error(e);
+          task.finish(LineLayout.UNSUPPORTED);
+        }
+      }
+    });
+    return null;
+  }
+
+  /**
+   * Drops all calculated layouts and stops running calculations.
+   */
+  void release() {
+    myGeneration++;
+    myLayouts.clear();
+    myPending.forEachValue(new TObjectProcedure<RangeMarker>() {
+      @Override
+      public boolean execute(RangeMarker marker) {
+        marker.dispose();
+        return true;
+      }
+    });
+    myPending.clear();
+    myParameters = null;
+  }
+
+  private void dropLayouts() {
+    myGeneration++;
+    myLayouts.clear();
+
+    // Lines which calculation is interrupted are left without soft wraps, so, we ask to process them again.
+    myPending.forEachEntry(new TIntObjectProcedure<RangeMarker>() {
+      @Override
+      public boolean execute(int lineStart, RangeMarker marker) {
+        if (marker.isValid()) {
+          myLayoutListener.consume(new TextRange(marker.getStartOffset(), marker.getEndOffset()));
+        }
+        marker.dispose();
+        return true;
+      }
+    });
+    myPending.clear();
+  }
+
+  private boolean isUpToDate(@NotNull Parameters parameters, int generation) {
+    return generation == myGeneration && !myEditor.isDisposed()
+           && myEditor.getDocument().getModificationStamp() == parameters.myDocumentStamp;
+  }
+
+  /**
+   * Calculates layout of a single logical line at a background thread. Document is read only within short read actions,
+   * the calculation is interrupted as soon as the document is changed or calculated layouts are dropped.
+   */
+  private class Task {
+
+    private final int        myLineStart;
+    private final int        myLineEnd;
+    private final Parameters myTaskParameters;
+    private final int        myTaskGeneration;
+
+    Task(int lineStart, int lineEnd, @NotNull Parameters parameters, int generation) {
+      myLineStart = lineStart;
+      myLineEnd = lineEnd;
+      myTaskParameters = parameters;
+      myTaskGeneration = generation;
+    }
+
+    void run() {
+      if (myTaskGeneration != myGeneration) {
+        return;
+      }
+
+      final TIntHashSet symbols = new TIntHashSet();
+      for (int offset = myLineStart; offset < myLineEnd; offset += SYMBOLS_PER_READ_ACTION) {
+        final int start = offset;
+        final int end = Math.min(myLineEnd, offset + SYMBOLS_PER_READ_ACTION);
+        Boolean supported = ApplicationManager.getApplication().runReadAction(new Computable<Boolean>() {
+          @Override
+          public Boolean compute() {
+            if (!isUpToDate(myTaskParameters, myTaskGeneration)) {
+              return null;
+            }
+            CharSequence text = myEditor.getDocument().getCharsSequence();
+            return collectSymbols(text, myTaskParameters.myHighlighter.createIterator(start), start, end, symbols);
+          }
+        });
+        if (supported == null) {
+          onOutdated();
+          return;
+        }
+        if (!supported) {
+          finish(LineLayout.UNSUPPORTED);
+          return;
+        }
+      }
+
+      final TIntIntHashMap widths = getWidths(symbols);
+      if (widths == null) {
+        onOutdated();
+        return;
+      }
+
+      final LineLayoutBuilder builder = new LineLayoutBuilder(myLineStart, myLineEnd, myTaskParameters, widths);
+      while (true) {
+        Boolean done = ApplicationManager.getApplication().runReadAction(new Computable<Boolean>() {
+          @Override
+          public Boolean compute() {
+            if (!isUpToDate(myTaskParameters, myTaskGeneration)) {
+              return null;
+            }
+            return builder.process(myEditor.getDocument(), SYMBOLS_PER_READ_ACTION);
+          }
+        });
+        if (done == null) {
+          onOutdated();
+          return;
+        }
+        if (done) {
+          break;
+        }
+      }
+      finish(builder.build());
+    }
+
+    /**
+     * @return widths of all given symbols; <code>null</code> if current task is outdated
+     */
+    @Nullable
+    private TIntIntHashMap getWidths(@NotNull TIntHashSet symbols) {
+      final TIntArrayList missing = new TIntArrayList();
+      synchronized (myWidths) {
+        for (TIntIterator it = symbols.iterator(); it.hasNext(); ) {
+          int key = it.next();
+          if (!myWidths.containsKey(key)) {
+            missing.add(key);
+          }
+        }
+      }
+      if (!missing.isEmpty()) {
+        // Editor text representation helper is not thread-safe, so, we measure symbols at EDT.
+        ApplicationManager.getApplication().invokeAndWait(new Runnable() {
+          @Override
+          public void run() {
+            if (myTaskGeneration != myGeneration || myEditor.isDisposed()) {
+              return;
+            }
+            EditorTextRepresentationHelper helper = myTaskParameters.myRepresentationHelper;
+            for (int i = 0; i < missing.size(); i++) {
+              int key = missing.get(i);
+              int width = helper.charWidth((char)(key & 0xFFFF), key >> 16);
+              synchronized (myWidths) {
+                myWidths.put(key, width);
+              }
+            }
+          }
+        }, ModalityState.any());
+      }
+      if (myTaskGeneration != myGeneration) {
+        return null;
+      }
+      synchronized (myWidths) {
+        return (TIntIntHashMap)myWidths.clone();
+      }
+    }
+
+    void finish(@NotNull final LineLayout layout) {
+      ApplicationManager.getApplication().invokeLater(new Runnable() {
+        @Override
+        public void run() {
+          if (myTaskGeneration != myGeneration) {
+            return;
+          }
+          RangeMarker marker = myPending.remove(myLineStart);
+          if (marker != null) {
+            marker.dispose();
+          }
+          myLayouts.put(myLineStart, layout);
+          myLayoutListener.consume(new TextRange(myLineStart, myLineEnd));
+        }
+      }, ModalityState.any());
+    }
+
+    /**
+     * Document has been changed during the calculation. Layouts calculated for the previous document state are dropped when
+     * soft wraps are recalculated next time, however, there is a possible case that the changed region doesn't cover
+     * current line, so, we explicitly ask to recalculate it.
+     */
+    private void onOutdated() {
+      ApplicationManager.getApplication().invokeLater(new Runnable() {
+        @Override
+        public void run() {
+          if (myTaskGeneration != myGeneration) {
+            return;
+          }
+          RangeMarker marker = myPending.remove(myLineStart);
+          if (marker == null) {
+            return;
+          }
+          if (marker.isValid()) {
+            myLayoutListener.consume(new TextRange(marker.getStartOffset(), marker.getEndOffset()));
+          }
+          marker.dispose();
+        }
+      }, ModalityState.any());
+    }
+  }
+
+  static int getSymbolKey(char c, int fontType) {
+    return fontType << 16 | c;
+  }
+
+  /**
+   * Collects keys of all symbols of the given text range and space symbols of all font types used there.
+   *
+   * @return    <code>false</code> if the given range contains tabulation symbols; <code>true</code> otherwise
+   */
+  static boolean collectSymbols(@NotNull CharSequence text, @NotNull HighlighterIterator iterator, int start, int end,
+                                @NotNull TIntHashSet symbols)
+  {
+    int offset = start;
+    while (offset < end && !iterator.atEnd()) {
+      int fontType = getFontType(iterator);
+      symbols.add(getSymbolKey(' ', fontType));
+      int tokenEnd = Math.min(end, iterator.getEnd());
+      for (; offset < tokenEnd; offset++) {
+        char c = text.charAt(offset);
+        if (c == '\t') {
+          return false;
+        }
+        symbols.add(getSymbolKey(c, fontType));
+      }
+      iterator.advance();
+    }
+    return true;
+  }
+
+  private static int getFontType(@NotNull HighlighterIterator iterator) {
+    TextAttributes attributes = iterator.getTextAttributes();
+    return attributes == null ? Font.PLAIN : attributes.getFontType();
+  }
+
+  /**
+   * Parameters soft wraps of long lines are calculated for.
+   */
+  static class Parameters {
+
+    final long                           myDocumentStamp;
+    final int                            myVisibleAreaWidth;
+    final int                            myAfterSoftWrapWidth;
+    /** User-defined soft wraps indent if it's enabled; <code>'-1'</code> otherwise. */
+    final int                            myCustomIndent;
+    final String                         myFontName;
+    final int                            myFontSize;
+    final EditorHighlighter              myHighlighter;
+    final EditorTextRepresentationHelper myRepresentationHelper;
+    final LineWrapPositionStrategy       myLineWrapPositionStrategy;
+    @Nullable final Project              myProject;
+
+    Parameters(long documentStamp,
+               int visibleAreaWidth,
+               int afterSoftWrapWidth,
+               int customIndent,
+               String fontName,
+               int fontSize,
+               @NotNull EditorHighlighter highlighter,
+               @NotNull EditorTextRepresentationHelper representationHelper,
+               @NotNull LineWrapPositionStrategy lineWrapPositionStrategy,
+               @Nullable Project project)
+    {
+      myDocumentStamp = documentStamp;
+      myVisibleAreaWidth = visibleAreaWidth;
+      myAfterSoftWrapWidth = afterSoftWrapWidth;
+      myCustomIndent = customIndent;
+      myFontName = fontName;
+      myFontSize = fontSize;
+      myHighlighter = highlighter;
+      myRepresentationHelper = representationHelper;
+      myLineWrapPositionStrategy = lineWrapPositionStrategy;
+      myProject = project;
+    }
+
+    boolean isSameFont(@NotNull Parameters other) {
+      return myFontSize == other.myFontSize && Comparing.equal(myFontName, other.myFontName)
+             && myRepresentationHelper == other.myRepresentationHelper;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      Parameters that = (Parameters)o;
+      return myDocumentStamp == that.myDocumentStamp
+             && myVisibleAreaWidth == that.myVisibleAreaWidth
+             && myAfterSoftWrapWidth == that.myAfterSoftWrapWidth
+             && myCustomIndent == that.myCustomIndent
+             && isSameFont(that)
+             && myHighlighter == that.myHighlighter
+             && myLineWrapPositionStrategy == that.myLineWrapPositionStrategy;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = (int)(myDocumentStamp ^ (myDocumentStamp >>> 32));
+      result = 31 * result + myVisibleAreaWidth;
+      result = 31 * result + myCustomIndent;
+      result = 31 * result + myFontSize;
+      return result;
+    }
+  }
+
+  /**
+   * Soft wraps of a single logical line.
+   */
+  static class LineLayout {
+
+    /** Marks lines which layout can't be calculated in background (e.g. lines with tabulations). */
+    static final LineLayout UNSUPPORTED = new LineLayout(new int[0], new int[0], new int[0], new int[0], 0, false);
+
+    /** Soft wrap offsets in ascending order. */
+    final int[]   myWrapOffsets;
+    /** <code>'x'</code> coordinates of the soft wraps, i.e. widths of the visual lines they end. */
+    final int[]   myXBeforeWraps;
+    final int[]   myIndentsInColumns;
+    final int[]   myIndentsInPixels;
+    /** <code>'x'</code> coordinate of the logical line end. */
+    final int     myEndX;
+    /** Flag that indicates if the line has visual lines that exceed visible area width but can't be soft-wrapped. */
+    final boolean myHasFailedWraps;
+
+    LineLayout(int[] wrapOffsets, int[] xBeforeWraps, int[] indentsInColumns, int[] indentsInPixels, int endX, boolean hasFailedWraps) {
+      myWrapOffsets = wrapOffsets;
+      myXBeforeWraps = xBeforeWraps;
+      myIndentsInColumns = indentsInColumns;
+      myIndentsInPixels = indentsInPixels;
+      myEndX = endX;
+      myHasFailedWraps = hasFailedWraps;
+    }
+  }
+
+  /**
+   * Calculates soft wraps of a single logical line without tabulations in accordance with the rules used by
+   * {@link SoftWrapApplianceManager}, i.e. soft wrap is introduced when a symbol exceeds visible area width, a white space or
+   * an eastern language symbol closely before it is preferred as a wrap point and {@link LineWrapPositionStrategy} is asked
+   * otherwise; if no wrap point is found, the next attempt is made at the next highlighter token start.
+   * <p/>
+   * The line may be processed by parts, i.e. via several {@link #process(Document, int)} calls.
+   */
+  static class LineLayoutBuilder {
+
+    private final TIntArrayList myWrapOffsets      = new TIntArrayList();
+    private final TIntArrayList myXBeforeWraps     = new TIntArrayList();
+    private final TIntArrayList myIndentsInColumns = new TIntArrayList();
+    private final TIntArrayList myIndentsInPixels  = new TIntArrayList();
+
+    private final int            myLineStart;
+    private final int            myLineEnd;
+    private final Parameters     myParameters;
+    private final TIntIntHashMap myWidths;
+
+    /** <code>'x'</code> coordinates of the current visual line symbols starts by their offsets from the visual line start. */
+    private int[] myXs = new int[256];
+
+    private int     myOffset;
+    private int     myX;
+    private int     myVisualLineStart;
+    private int     myMinWrapOffset;
+    private boolean myWrapAtNextToken;
+    private boolean myHasFailedWraps;
+    private int     myNonWhiteSpaceOffset = -1;
+    /** Line indent is not used for the soft wraps that occur within the leading white spaces and for all soft wraps after them. */
+    private boolean myLineIndentDropped;
+    private int     myLineIndentInColumns;
+    private int     myLineIndentInPixels;
+
+    private HighlighterIterator myIterator;
+    private int                 myTokenStart;
+    private int                 myTokenEnd;
+    private int                 myFontType;
+
+    LineLayoutBuilder(int lineStart, int lineEnd, @NotNull Parameters parameters, @NotNull TIntIntHashMap widths) {
+      myLineStart = lineStart;
+      myLineEnd = lineEnd;
+      myParameters = parameters;
+      myWidths = widths;
+      myOffset = myVisualLineStart = myMinWrapOffset = lineStart;
+    }
+
+    /**
+     * Processes next part of the target line.
+     *
+     * @param document    target document
+     * @param maxSymbols  max number of symbols to process during the current call
+     * @return            <code>true</code> if the whole line is processed; <code>false</code> otherwise
+     */
+    boolean process(@NotNull Document document, int maxSymbols) {
+      CharSequence text = document.getCharsSequence();
+      myIterator = null;
+      if (myOffset == myLineStart) {
+        calculateLineIndent(text);
+      }
+      int limit = Math.min(myLineEnd, myOffset + maxSymbols);
+      while (myOffset < limit) {
+        updateToken(myOffset);
+        if (myWrapAtNextToken) {
+          if (myOffset == myTokenStart) {
+            myWrapAtNextToken = false;
+            wrap(document, text);
+          }
+          else {
+            advance(text.charAt(myOffset));
+          }
+          continue;
+        }
+        if (myX + getWidth(text.charAt(myOffset), myFontType) >= myParameters.myVisibleAreaWidth) {
+          wrap(document, text);
+        }
+        else {
+          advance(text.charAt(myOffset));
+        }
+      }
+      return myOffset >= myLineEnd;
+    }
+
+    @NotNull
+    LineLayout build() {
+      return new LineLayout(myWrapOffsets.toNativeArray(), myXBeforeWraps.toNativeArray(), myIndentsInColumns.toNativeArray(),
+                            myIndentsInPixels.toNativeArray(), myX, myHasFailedWraps);
+    }
+
+    private void calculateLineIndent(@NotNull CharSequence text) {
+      updateToken(myLineStart);
+      int spaceWidth = getWidth(' ', myFontType);
+      for (int i = myLineStart; i < myLineEnd; i++) {
+        if (text.charAt(i) != ' ') {
+          myNonWhiteSpaceOffset = i;
+          return;
+        }
+        myLineIndentInColumns++;
+        myLineIndentInPixels += spaceWidth;
+      }
+    }
+
+    private void advance(char c) {
+      int index = myOffset - myVisualLineStart;
+      if (index >= myXs.length) {
+        int[] tmp = new int[myXs.length * 2];
+        System.arraycopy(myXs, 0, tmp, 0, myXs.length);
+        myXs = tmp;
+      }
+      myXs[index] = myX;
+      myX += getWidth(c, myFontType);
+      myOffset++;
+    }
+
+    /**
+     * Tries to introduce a soft wrap for the visual line which symbol at the current offset exceeds visible area width.
+     */
+    private void wrap(@NotNull Document document, @NotNull CharSequence text) {
+      int overflowOffset = myOffset;
+      int preferredOffset = Math.max(myMinWrapOffset, overflowOffset - 1 /* reserve a column for the soft wrap sign */);
+      int wrapOffset = SoftWrapApplianceManager.calculateBackwardSpaceOffsetIfPossible(text, myMinWrapOffset, preferredOffset);
+      if (wrapOffset < 0) {
+        wrapOffset = SoftWrapApplianceManager.calculateBackwardOffsetForEasternLanguageIfPossible(text, myMinWrapOffset, preferredOffset);
+      }
+      if (wrapOffset < 0) {
+        wrapOffset = myParameters.myLineWrapPositionStrategy.calculateWrapPosition(
+          document, myParameters.myProject, myMinWrapOffset, myLineEnd, preferredOffset, true, true
+        );
+      }
+
+      if (wrapOffset <= myVisualLineStart || wrapOffset >= myLineEnd
+          || (myParameters.myCustomIndent >= 0 && wrapOffset == myNonWhiteSpaceOffset))
+      {
+        // There is no convenient wrap point, so, we leave the rest of the current token as-is and try again at the next one.
+        myHasFailedWraps = true;
+        while (myOffset < myTokenEnd && myOffset < myLineEnd) {
+          advance(text.charAt(myOffset));
+        }
+        myWrapAtNextToken = true;
+        return;
+      }
+
+      int xBeforeWrap;
+      if (wrapOffset <= myOffset) {
+        xBeforeWrap = wrapOffset == myOffset ? myX : myXs[wrapOffset - myVisualLineStart];
+      }
+      else {
+        while (myOffset < wrapOffset) {
+          updateToken(myOffset);
+          advance(text.charAt(myOffset));
+        }
+        xBeforeWrap = myX;
+      }
+
+      int indentInColumns = 0;
+      int indentInPixels = myParameters.myAfterSoftWrapWidth;
+      if (myParameters.myCustomIndent >= 0) {
+        if (myNonWhiteSpaceOffset < 0 || overflowOffset <= myNonWhiteSpaceOffset) {
+          myLineIndentDropped = true;
+        }
+        indentInColumns = myParameters.myCustomIndent + (myLineIndentDropped ? 0 : myLineIndentInColumns);
+        indentInPixels += (myLineIndentDropped ? 0 : myLineIndentInPixels) + myParameters.myCustomIndent * getWidth(' ', myFontType);
+      }
+      myWrapOffsets.add(wrapOffset);
+      myXBeforeWraps.add(xBeforeWrap);
+      myIndentsInColumns.add(indentInColumns);
+      myIndentsInPixels.add(indentInPixels);
+
+      myOffset = myVisualLineStart = wrapOffset;
+      myMinWrapOffset = wrapOffset + 1;
+      myX = indentInPixels;
+      myWrapAtNextToken = false;
+    }
+
+    /**
+     * Ensures that highlighter token data (start, end, font type) corresponds to the token that contains the given offset.
+     */
+    private void updateToken(int offset) {
+      if (myIterator != null && offset >= myTokenStart && offset < myTokenEnd) {
+        return;
+      }
+      if (myIterator == null || offset < myTokenStart) {
+        myIterator = myParameters.myHighlighter.createIterator(offset);
+      }
+      while (!myIterator.atEnd() && myIterator.getEnd() <= offset) {
+        myIterator.advance();
+      }
+      if (myIterator.atEnd()) {
+        myTokenStart = offset;
+        myTokenEnd = myLineEnd;
+        myFontType = Font.PLAIN;
+        return;
+      }
+      myTokenStart = myIterator.getStart();
+      myTokenEnd = myIterator.getEnd();
+      myFontType = getFontType(myIterator);
+    }
+
+    private int getWidth(char c, int fontType) {
+      int key = getSymbolKey(c, fontType);
+      if (!myWidths.containsKey(key)) {
+        throw new IllegalStateException(String.format("Width of symbol '%c' (font type %d) is not measured", c, fontType));
+      }
+      return myWidths.get(key);
+    }
+  }
+}
@@ -20,18 +20,22 @@ import com.intellij.diagnostic.LogMessageEx;
 import com.intellij.openapi.application.ex.ApplicationManagerEx;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.*;
+import com.intellij.openapi.editor.colors.EditorColorsScheme;
 import com.intellij.openapi.editor.event.DocumentEvent;
 import com.intellij.openapi.editor.event.DocumentListener;
 import com.intellij.openapi.editor.event.VisibleAreaEvent;
 import com.intellij.openapi.editor.event.VisibleAreaListener;
 import com.intellij.openapi.editor.ex.DocumentEx;
 import com.intellij.openapi.editor.ex.EditorEx;
+import com.intellij.openapi.editor.ex.FoldingModelEx;
 import com.intellij.openapi.editor.ex.ScrollingModelEx;
 import com.intellij.openapi.editor.ex.util.EditorUtil;
 import com.intellij.openapi.editor.impl.*;
 import com.intellij.openapi.editor.impl.softwrap.*;
 import com.intellij.openapi.editor.markup.TextAttributes;
+import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.Consumer;
 import org.intellij.lang.annotations.JdkConstants;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -82,6 +86,7 @@ public class SoftWrapApplianceManager implements SoftWrapFoldingListener, Docume
   private final EditorEx                       myEditor;
   private final SoftWrapPainter myPainter;
   private final SoftWrapDataMapper myDataMapper;
+  private final LongLineSoftWrapsCalculator myLongLinesCalculator;
 
   /**
    * Visual area width change causes soft wraps addition/removal, so, we want to update <code>'y'</code> coordinate
@@ -116,6 +121,12 @@ public class SoftWrapApplianceManager implements SoftWrapFoldingListener, Docume
     myRepresentationHelper = representationHelper;
     myDataMapper = dataMapper;
     myWidthProvider = new DefaultVisibleAreaWidthProvider(editor);
+    myLongLinesCalculator = new LongLineSoftWrapsCalculator(editor, new Consumer<TextRange>() {
+      @Override
+      public void consume(TextRange range) {
+        onLongLineLayoutChanged(range);
+      }
+    });
   }
 
   /**
@@ -142,6 +153,7 @@ public class SoftWrapApplianceManager implements SoftWrapFoldingListener, Docume
   public void release() {
     myEventsStorage.release();
     myLineWrapPositionStrategy = null;
+    myLongLinesCalculator.release();
   }
 
   private void initListenerIfNecessary() {
@@ -283,12 +295,22 @@ public class SoftWrapApplianceManager implements SoftWrapFoldingListener, Docume
       myContext.contentComponent = myEditor.getContentComponent();
       myContext.reservedWidthInPixels = myPainter.getMinDrawingWidth(SoftWrapDrawingType.BEFORE_SOFT_WRAP_LINE_FEED);
 
+      // Long lines changed by the user are processed right here in order to avoid their flickering during typing.
+      myContext.useLongLineLayouts = !event.isDocumentChange();
+
+      if (applyLongLineLayoutIfPossible()) {
+        iterationState = restartIterationState(iterationState);
+      }
+
       // Perform soft wraps calculation.
       while (!iterationState.atEnd() && myContext.currentPosition.offset <= event.getNewEndOffset()) {
         FoldRegion currentFold = iterationState.getCurrentFold();
         if (currentFold == null) {
           myContext.tokenEndOffset = iterationState.getEndOffset();
-          processNonFoldToken();
+          if (processNonFoldToken()) {
+            iterationState = restartIterationState(iterationState);
+            continue;
+          }
         }
         else {
           boolean continueProcessing = processCollapsedFoldRegion(currentFold);
@@ -316,6 +338,120 @@ public class SoftWrapApplianceManager implements SoftWrapFoldingListener, Docume
     return true;
   }
 
+  /**
+   * Creates new iteration state for the current processing offset. It's used when the rest of a long logical line
+   * is {@link #applyLongLineLayoutIfPossible() processed} in a batch.
+   *
+   * @param iterationState    iteration state used so far
+   * @return                  iteration state that starts at the current processing offset
+   */
+  private IterationState restartIterationState(@NotNull IterationState iterationState) {
+    iterationState.dispose();
+    int offset = myContext.currentPosition.offset;
+    IterationState result = new IterationState(myEditor, offset, myEditor.getDocument().getTextLength(), false);
+    myContext.fontType = result.getMergedAttributes().getFontType();
+    myContext.tokenStartOffset = result.getStartOffset();
+    myOffset2fontType.fill(myContext.tokenStartOffset, result.getEndOffset(), myContext.fontType);
+    return result;
+  }
+
+  /**
+   * Applies soft wraps of the long logical line that starts at the current processing position if they are
+   * {@link LongLineSoftWrapsCalculator calculated in background}. The line is left without soft wraps if its calculation
+   * is not finished yet, it's processed again as soon as the calculation is done.
+   *
+   * @return    <code>true</code> if current processing position is moved to the current logical line end;
+   *            <code>false</code> if the current logical line should be processed symbol-by-symbol
+   */
+  private boolean applyLongLineLayoutIfPossible() {
+    EditorPosition position = myContext.currentPosition;
+    Document document = myEditor.getDocument();
+    if (!myContext.useLongLineLayouts || position.x != 0 || position.logicalColumn != 0
+        || position.logicalLine >= document.getLineCount())
+    {
+      return false;
+    }
+    int lineStart = position.offset;
+    int lineEnd = document.getLineEndOffset(position.logicalLine);
+    if (lineEnd - lineStart < LongLineSoftWrapsCalculator.LONG_LINE_LENGTH || lineEnd > myContext.rangeEndOffset
+        || document.getLineStartOffset(position.logicalLine) != lineStart || hasCollapsedFoldRegion(lineStart, lineEnd))
+    {
+      return false;
+    }
+
+    LongLineSoftWrapsCalculator.LineLayout layout = myLongLinesCalculator.getLayout(lineStart, lineEnd, createLongLineParameters());
+    if (layout == LongLineSoftWrapsCalculator.LineLayout.UNSUPPORTED) {
+      return false;
+    }
+    if (layout == null) {
+      myHasLinesWithFailedWrap = true;
+      moveToLineEnd(lineEnd, (lineEnd - lineStart) * myContext.getSpaceWidth());
+      return true;
+    }
+
+    int[] wrapOffsets = layout.myWrapOffsets;
+    for (int i = 0; i < wrapOffsets.length; i++) {
+      int columns = wrapOffsets[i] - position.offset;
+      position.offset = wrapOffsets[i];
+      position.logicalColumn += columns;
+      position.visualColumn += columns;
+      position.x = layout.myXBeforeWraps[i];
+      notifyListenersOnVisualLineStart(myContext.lineStartPosition);
+      processSoftWrap(storeSoftWrap(wrapOffsets[i], layout.myIndentsInColumns[i], layout.myIndentsInPixels[i]));
+    }
+    if (layout.myHasFailedWraps) {
+      myHasLinesWithFailedWrap = true;
+    }
+    moveToLineEnd(lineEnd, layout.myEndX);
+    return true;
+  }
+
+  private void moveToLineEnd(int lineEnd, int x) {
+    EditorPosition position = myContext.currentPosition;
+    int columns = lineEnd - position.offset;
+    position.offset = lineEnd;
+    position.logicalColumn += columns;
+    position.visualColumn += columns;
+    position.x = x;
+    myOffset2fontType.clear();
+    myOffset2widthInPixels.clear();
+  }
+
+  private boolean hasCollapsedFoldRegion(int startOffset, int endOffset) {
+    FoldingModelEx foldingModel = myEditor.getFoldingModel();
+    FoldRegion[] regions = foldingModel.fetchTopLevel();
+    if (regions == null) {
+      // Fold model is not up to date.
+      return true;
+    }
+    int i = foldingModel.getLastCollapsedRegionBefore(startOffset) + 1;
+    return i < regions.length && regions[i].getStartOffset() <= endOffset;
+  }
+
+  @NotNull
+  private LongLineSoftWrapsCalculator.Parameters createLongLineParameters() {
+    if (myLineWrapPositionStrategy == null) {
+      myLineWrapPositionStrategy = LanguageLineWrapPositionStrategy.INSTANCE.forEditor(myEditor);
+    }
+    EditorColorsScheme scheme = myEditor.getColorsScheme();
+    return new LongLineSoftWrapsCalculator.Parameters(
+      myEditor.getDocument().getModificationStamp(), myVisibleAreaWidth, myPainter.getMinDrawingWidth(SoftWrapDrawingType.AFTER_SOFT_WRAP),
+      myCustomIndentUsedLastTime ? myCustomIndentValueUsedLastTime : -1, scheme.getEditorFontName(), scheme.getEditorFontSize(),
+      myEditor.getHighlighter(), myRepresentationHelper, myLineWrapPositionStrategy, myEditor.getProject()
+    );
+  }
+
+  private void onLongLineLayoutChanged(@NotNull TextRange range) {
+    Document document = myEditor.getDocument();
+    if (range.getEndOffset() > document.getTextLength()) {
+      return;
+    }
+    int startOffset = document.getLineStartOffset(document.getLineNumber(range.getStartOffset()));
+    int endOffset = document.getLineEndOffset(document.getLineNumber(range.getEndOffset()));
+    myEventsStorage.add(document, new IncrementalCacheUpdateEvent(document, startOffset, endOffset));
+    myEditor.getContentComponent().repaint();
+  }
+
   /**
    * Encapsulates logic of processing given collapsed fold region.
    *
@@ -445,8 +581,11 @@ public class SoftWrapApplianceManager implements SoftWrapFoldingListener, Docume
    * at {@link ProcessingContext#tokenEndOffset}).
    * <p/>
    * <code>'Token'</code> here stands for the number of subsequent symbols that are represented using the same font by IJ editor.
+   *
+   * @return    <code>true</code> if processing position has been moved beyond the current token because soft wraps of the whole
+   *            long logical line have been {@link #applyLongLineLayoutIfPossible() applied}; <code>false</code> otherwise
    */
-  private void processNonFoldToken() {
+  private boolean processNonFoldToken() {
     int limit = 3 * (myContext.tokenEndOffset - myContext.lineStartPosition.offset);
     int counter = 0;
     int startOffset = myContext.currentPosition.offset;
@@ -465,11 +604,11 @@ public class SoftWrapApplianceManager implements SoftWrapFoldingListener, Docume
             myContext.onNonLineFeedSymbol(c);
           }
         }
-        return;
+        return false;
       }
       int offset = myContext.currentPosition.offset;
       if (offset > myContext.rangeEndOffset) {
-        return;
+        return false;
       }
 
       if (myContext.delayedSoftWrap != null && myContext.delayedSoftWrap.getStart() == offset) {
@@ -480,6 +619,9 @@ public class SoftWrapApplianceManager implements SoftWrapFoldingListener, Docume
       char c = myContext.text.charAt(offset);
       if (c == '\n') {
         myContext.onNewLine();
+        if (applyLongLineLayoutIfPossible()) {
+          return true;
+        }
         continue;
       }
 
@@ -497,6 +639,7 @@ public class SoftWrapApplianceManager implements SoftWrapFoldingListener, Docume
         myContext.onNonLineFeedSymbol(c, newX);
       }
     }
+    return false;
   }
 
   /**
@@ -699,6 +842,11 @@ public class SoftWrapApplianceManager implements SoftWrapFoldingListener, Docume
       indentInColumns = myCustomIndentValueUsedLastTime + lineData.indentInColumns;
       indentInPixels += lineData.indentInPixels + (myCustomIndentValueUsedLastTime * spaceSize);
     }
+    return storeSoftWrap(offset, indentInColumns, indentInPixels);
+  }
+
+  @NotNull
+  private SoftWrap storeSoftWrap(int offset, int indentInColumns, int indentInPixels) {
     SoftWrapImpl result = new SoftWrapImpl(
       new TextChangeImpl("\n" + StringUtil.repeatSymbol(' ', indentInColumns), offset, offset),
       indentInColumns + 1/* for 'after soft wrap' drawing */,
@@ -722,6 +870,10 @@ public class SoftWrapApplianceManager implements SoftWrapFoldingListener, Docume
    *                          <code>'-1'</code> otherwise
    */
   private int calculateBackwardSpaceOffsetIfPossible(int minOffset, int preferredOffset) {
+    return calculateBackwardSpaceOffsetIfPossible(myContext.text, minOffset, preferredOffset);
+  }
+
+  static int calculateBackwardSpaceOffsetIfPossible(@NotNull CharSequence text, int minOffset, int preferredOffset) {
     // There is a possible case that we have a long line that contains many non-white space symbols eligible for performing
     // soft wrap that are preceded by white space symbol. We don't want to create soft wrap that is located so far from the
     // preferred position then, hence, we check white space symbol existence not more than specific number of symbols back.
@@ -731,7 +883,7 @@ public class SoftWrapApplianceManager implements SoftWrapFoldingListener, Docume
       minOffsetToUse = preferredOffset - maxTrackBackSymbolsNumber;
     }
     for (int i = preferredOffset - 1; i >= minOffsetToUse; i--) {
-      char c = myContext.text.charAt(i);
+      char c = text.charAt(i);
       if (c == ' ') {
         return i + 1;
       }
@@ -749,6 +901,10 @@ public class SoftWrapApplianceManager implements SoftWrapFoldingListener, Docume
    *                          <code>'-1'</code> otherwise
    */
   public int calculateBackwardOffsetForEasternLanguageIfPossible(int minOffset, int preferredOffset) {
+    return calculateBackwardOffsetForEasternLanguageIfPossible(myContext.text, minOffset, preferredOffset);
+  }
+
+  static int calculateBackwardOffsetForEasternLanguageIfPossible(@NotNull CharSequence text, int minOffset, int preferredOffset) {
     // There is a possible case that we have a long line that contains many non-white space symbols eligible for performing
     // soft wrap that are preceded by white space symbol. We don't want to create soft wrap that is located so far from the
     // preferred position then, hence, we check white space symbol existence not more than specific number of symbols back.
@@ -758,7 +914,7 @@ public class SoftWrapApplianceManager implements SoftWrapFoldingListener, Docume
       minOffsetToUse = preferredOffset - maxTrackBackSymbolsNumber;
     }
     for (int i = preferredOffset - 1; i >= minOffsetToUse; i--) {
-      char c = myContext.text.charAt(i);
+      char c = text.charAt(i);
       if (c >= 0x2f00) { // Check this document for eastern languages unicode ranges - http://www.unicode.org/charts
         return i + 1;
       }
@@ -1253,6 +1409,8 @@ public class SoftWrapApplianceManager implements SoftWrapFoldingListener, Docume
     public int            fontType;
     public boolean        notifyListenersOnLineStartPosition;
     public boolean        skipToLineEnd;
+    /** Flag that indicates if soft wraps of long logical lines may be calculated in background. */
+    public boolean        useLongLineLayouts;
 
     @Override
     public String toString() {
@@ -1279,6 +1437,7 @@ public class SoftWrapApplianceManager implements SoftWrapFoldingListener, Docume
       fontType = 0;
       notifyListenersOnLineStartPosition = false;
       skipToLineEnd = false;
+      useLongLineLayouts = false;
       fontType2spaceWidth.reset();
       logicalLineData.reset();
     }
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInsight.daemon.impl;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.io.PersistentHashMap;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+public class HighlightingSnapshotStorageTest extends TestCase {
+  private File myDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("highlights", null);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtil.delete(myDir);
+    super.tearDown();
+  }
+
+  public void testSnapshotsSurviveReopening() throws Exception {
+    File file = new File(myDir, "highlights");
+    PersistentHashMap<Integer, HighlightingSnapshotStorage.Snapshot> map = HighlightingSnapshotStorage.createMap(file);
+    try {
+      HighlightingSnapshotStorage.StoredInfo info =
+        new HighlightingSnapshotStorage.StoredInfo(1, 5, "ERROR", null, "Cannot resolve symbol", null, false);
+      map.put(1, new HighlightingSnapshotStorage.Snapshot(100, 20, 42, Arrays.asList(info, info)));
+    }
+    finally {
+      map.close();
+    }
+
+    map = HighlightingSnapshotStorage.createMap(file);
+    try {
+      HighlightingSnapshotStorage.Snapshot snapshot = map.get(1);
+      assertNotNull(snapshot);
+      assertEquals(100, snapshot.myTimestamp);
+      assertEquals(20, snapshot.myTextLength);
+      assertEquals(42, snapshot.myTextHash);
+      assertEquals(2, snapshot.myInfos.size());
+    }
+    finally {
+      map.close();
+    }
+  }
+
+  public void testPruneDropsOldSnapshots() throws Exception {
+    long now = System.currentTimeMillis();
+    PersistentHashMap<Integer, HighlightingSnapshotStorage.Snapshot> map = HighlightingSnapshotStorage.createMap(new File(myDir, "highlights"));
+    try {
+      map.put(1, snapshot(now - TimeUnit.DAYS.toMillis(1)));
+      map.put(2, snapshot(now - TimeUnit.DAYS.toMillis(100)));
+
+      HighlightingSnapshotStorage.prune(map, now);
+
+      assertNotNull(map.get(1));
+      assertNull(map.get(2));
+    }
+    finally {
+      map.close();
+    }
+  }
+
+  public void testPruneKeepsLimitedNumberOfRecentSnapshots() throws Exception {
+    long now = System.currentTimeMillis();
+    PersistentHashMap<Integer, HighlightingSnapshotStorage.Snapshot> map = HighlightingSnapshotStorage.createMap(new File(myDir, "highlights"));
+    try {
+      int count = 1200;
+      for (int i = 1; i <= count; i++) {
+        map.put(i, snapshot(now - count + i));
+      }
+
+      HighlightingSnapshotStorage.prune(map, now);
+
+      assertEquals(1000, map.getAllKeysWithExistingMapping().size());
+      assertNull(map.get(1));
+      assertNotNull(map.get(count));
+    }
+    finally {
+      map.close();
+    }
+  }
+
+  private static HighlightingSnapshotStorage.Snapshot snapshot(long timestamp) {
+    return new HighlightingSnapshotStorage.Snapshot(timestamp, 0, 0, Collections.<HighlightingSnapshotStorage.StoredInfo>emptyList());
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.find.impl;
+
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.util.CommonProcessors;
+import com.intellij.util.Processor;
+import junit.framework.TestCase;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class OrderedFileResultsTest extends TestCase {
+  public void testResultsArePassedInFileOrder() {
+    List<String> passed = new ArrayList<String>();
+    OrderedFileResults<String> results = new OrderedFileResults<String>(new CommonProcessors.CollectProcessor<String>(passed));
+
+    results.fileSearched(1, Arrays.asList("b1", "b2"));
+    assertTrue(passed.isEmpty());
+    results.fileSearched(2, Collections.<String>emptyList());
+    results.fileSearched(0, Arrays.asList("a1"));
+    assertEquals(Arrays.asList("a1", "b1", "b2"), passed);
+
+    results.fileSearched(3, Arrays.asList("d1"));
+    assertEquals(Arrays.asList("a1", "b1", "b2", "d1"), passed);
+    assertEquals(4, results.getResultCount());
+  }
+
+  public void testConcurrentlySearchedFilesArePassedInOrder() throws Exception {
+    final List<Integer> passed = new ArrayList<Integer>();
+    final OrderedFileResults<Integer> results = new OrderedFileResults<Integer>(new CommonProcessors.CollectProcessor<Integer>(passed));
+    int count = 1000;
+    List<Integer> indices = new ArrayList<Integer>();
+    for (int i = 0; i < count; i++) {
+      indices.add(i);
+    }
+    Collections.shuffle(indices, new Random(42));
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    for (final Integer index : indices) {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          results.fileSearched(index, Collections.singletonList(index));
+        }
+      });
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+    assertEquals(count, passed.size());
+    for (int i = 0; i < count; i++) {
+      assertEquals(i, passed.get(i).intValue());
+    }
+  }
+
+  public void testFilesArePassedOneByOne() {
+    final List<Integer> passedFiles = new ArrayList<Integer>();
+    OrderedFileResults<String> results = new OrderedFileResults<String>(new CommonProcessors.CollectProcessor<String>()) {
+      @Override
+      protected void passResults(int index, List<String> fileResults) {
+        super.passResults(index, fileResults);
+        passedFiles.add(index);
+      }
+    };
+
+    results.fileSearched(2, Arrays.asList("c"));
+    results.fileSearched(0, Collections.<String>emptyList());
+    results.fileSearched(1, Arrays.asList("b"));
+    assertEquals(Arrays.asList(0, 1, 2), passedFiles);
+  }
+
+  public void testSearchIsCanceledWhenConsumerStops() {
+    OrderedFileResults<String> results = new OrderedFileResults<String>(new Processor<String>() {
+      @Override
+      public boolean process(String s) {
+        return !s.equals("stop");
+      }
+    });
+
+    results.fileSearched(0, Arrays.asList("a"));
+    try {
+      results.fileSearched(1, Arrays.asList("stop", "b"));
+      fail();
+    }
+    catch (ProcessCanceledException ignored) {
+    }
+    assertEquals(1, results.getResultCount());
+  }
+}
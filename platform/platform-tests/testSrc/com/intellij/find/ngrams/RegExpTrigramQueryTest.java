@@ -0,0 +1,106 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.find.ngrams;
+
+import com.intellij.openapi.util.text.TrigramBuilder;
+import gnu.trove.TIntHashSet;
+import junit.framework.TestCase;
+
+import java.util.List;
+
+public class RegExpTrigramQueryTest extends TestCase {
+  public void testLiteral() {
+    assertDecomposed("foobar", "foobar");
+  }
+
+  public void testBranches() {
+    List<TIntHashSet> branches = RegExpTrigramQuery.decompose("foobar|bazqux");
+    assertNotNull(branches);
+    assertEquals(2, branches.size());
+    assertEquals(trigrams("foobar"), branches.get(0));
+    assertEquals(trigrams("bazqux"), branches.get(1));
+  }
+
+  public void testOptionalElementsAreNotRequired() {
+    assertDecomposed("foox?bar", "foo", "bar");
+    assertDecomposed("foo(abc)?bar", "foo", "bar");
+    assertDecomposed("foo[abc]bar", "foo", "bar");
+    assertDecomposed("fooo+bar", "fooo", "bar");
+  }
+
+  public void testBranchWithoutTrigramsIsNotDecomposed() {
+    assertNull(RegExpTrigramQuery.decompose("foobar|x"));
+    assertNull(RegExpTrigramQuery.decompose(".*"));
+    assertNull(RegExpTrigramQuery.decompose("(?x)foo bar"));
+  }
+
+  public void testEscapedCharacters() {
+    assertDecomposed("foo\\.bar", "foo.bar");
+    assertDecomposed("foo\\tbar", "foo\tbar");
+    assertDecomposed("\\Qfoo.bar\\E", "foo.bar");
+    assertDecomposed("\\Qfoo|bar", "foo|bar");
+  }
+
+  public void testEscapesWithArguments() {
+    assertDecomposed("foo\\x2Ebar", "foo.bar");
+    assertDecomposed("foo\\x{2E}bar", "foo.bar");
+    assertDecomposed("foo\\u002Ebar", "foo.bar");
+    assertDecomposed("foo\\056bar", "foo.bar");
+    assertDecomposed("foo\\0056bar", "foo.bar");
+    assertDecomposed("foo\\0456bar", "foo%6bar");
+    assertDecomposed("foo\\cJbar", "foo\nbar");
+  }
+
+  public void testEscapeArgumentsAreNotLiterals() {
+    assertDecomposed("foo\\k<name>bar", "foo", "bar");
+    assertDecomposed("foo\\p{Lower}bar", "foo", "bar");
+    assertDecomposed("foo\\pLbar", "foo", "bar");
+    assertDecomposed("(foo)\\123bar", "bar");
+    assertDecomposed("foo\\dbar", "foo", "bar");
+  }
+
+  public void testEscapesInClassesAndGroups() {
+    assertDecomposed("foo[\\]\\x5D]bar", "foo", "bar");
+    assertDecomposed("foo(\\)|x)bar", "foo", "bar");
+    assertDecomposed("foo[\\Q]\\E]bar", "foo", "bar");
+  }
+
+  public void testUnknownOrMalformedEscapesAreNotDecomposed() {
+    assertNull(RegExpTrigramQuery.decompose("foo\\ybar"));
+    assertNull(RegExpTrigramQuery.decompose("foo\\x2"));
+    assertNull(RegExpTrigramQuery.decompose("foo\\xZZbar"));
+    assertNull(RegExpTrigramQuery.decompose("foo\\u12xyz"));
+    assertNull(RegExpTrigramQuery.decompose("foo\\k<bar"));
+    assertNull(RegExpTrigramQuery.decompose("foo\\p{Lowerbar"));
+    assertNull(RegExpTrigramQuery.decompose("foo\\0bar"));
+    assertNull(RegExpTrigramQuery.decompose("foobar\\"));
+  }
+
+  private static void assertDecomposed(String regExp, String... fragments) {
+    List<TIntHashSet> branches = RegExpTrigramQuery.decompose(regExp);
+    assertNotNull(regExp, branches);
+    assertEquals(regExp, 1, branches.size());
+    assertEquals(regExp, trigrams(fragments), branches.get(0));
+  }
+
+  private static TIntHashSet trigrams(String... fragments) {
+    TIntHashSet result = new TIntHashSet();
+    for (String fragment : fragments) {
+      result.addAll(TrigramBuilder.buildTrigram(fragment).toArray());
+    }
+    return result;
+  }
+}
@@ -17,8 +17,11 @@
 package com.intellij.history.core.changes;
 
 import com.intellij.history.core.LocalHistoryTestCase;
+import com.intellij.history.core.StoredContent;
 import org.junit.Test;
 
+import java.io.*;
+
 public class ChangeSetTest extends LocalHistoryTestCase {
   @Test
   public void testIsCreational() {
@@ -57,4 +60,79 @@ public class ChangeSetTest extends LocalHistoryTestCase {
     assertFalse(cs(new ContentChange(nextId(), "f1", null, -1), new ContentChange(nextId(), "f2", null, -1)).isContentChangeOnly());
     assertFalse(cs(new CreateFileChange(nextId(), "f1"), new ContentChange(nextId(), "f2", null, -1)).isContentChangeOnly());
   }
+
+  @Test
+  public void testStoredChangeSetIsUnpackedOnAccess() throws IOException {
+    ChangeSet cs = stored(cs("name", new CreateFileChange(nextId(), "dir/file"), new ContentChange(nextId(), "dir/file", new StoredContent(333), -1)));
+    assertTrue(cs.isPackedInTests());
+    assertEquals("name", cs.getName());
+
+    assertEquals(2, cs.getChanges().size());
+    assertFalse(cs.isPackedInTests());
+    assertTrue(cs.isCreationalFor("dir/file"));
+  }
+
+  @Test
+  public void testSummaryOfStoredChangeSet() throws IOException {
+    ChangeSet cs = stored(cs(new CreateFileChange(nextId(), "dir/sub/file"), new RenameChange(nextId(), "dir/renamed", "old")));
+
+    assertTrue(cs.mayAffectPath("dir/sub/file"));
+    assertTrue(cs.mayAffectPath("dir/sub"));
+    assertTrue(cs.mayAffectPath("dir/renamed/child"));
+    assertFalse(cs.mayAffectPath("dir/other"));
+    assertFalse(cs.mayAffectPath("another"));
+    assertFalse(cs.mayContainLabels());
+    assertTrue(cs.isPackedInTests());
+
+    assertTrue(stored(cs(new PutLabelChange(nextId(), "label", "project"))).mayContainLabels());
+  }
+
+  @Test
+  public void testSkippedChangeSetStaysPacked() throws Exception {
+    ChangeSet skipped = stored(cs(new CreateFileChange(nextId(), "other")));
+    ChangeSet visited = stored(cs(new CreateFileChange(nextId(), "dir/file")));
+
+    PathVisitor v = new PathVisitor("dir/file");
+    skipped.accept(v);
+    visited.accept(v);
+
+    assertEquals(1, v.myVisited);
+    assertTrue(skipped.isPackedInTests());
+    assertFalse(visited.isPackedInTests());
+  }
+
+  @Test
+  public void testNotStoredChangeSetMayBeSkipped() throws Exception {
+    PathVisitor v = new PathVisitor("dir/file");
+    cs(new CreateFileChange(nextId(), "other")).accept(v);
+    cs(new CreateFileChange(nextId(), "dir/file")).accept(v);
+    assertEquals(1, v.myVisited);
+  }
+
+  private static ChangeSet stored(ChangeSet cs) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    cs.write(out);
+    out.close();
+    return new ChangeSet(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+  }
+
+  private static class PathVisitor extends ChangeVisitor {
+    private final String myPath;
+    private int myVisited;
+
+    private PathVisitor(String path) {
+      myPath = path;
+    }
+
+    @Override
+    public boolean canSkip(ChangeSet c) {
+      return !c.mayAffectPath(myPath);
+    }
+
+    @Override
+    public void begin(ChangeSet c) {
+      myVisited++;
+    }
+  }
 }
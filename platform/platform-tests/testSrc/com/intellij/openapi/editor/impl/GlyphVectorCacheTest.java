@@ -0,0 +1,71 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.editor.impl;
+
+import junit.framework.TestCase;
+
+import java.awt.*;
+import java.awt.font.GlyphVector;
+import java.awt.image.BufferedImage;
+
+public class GlyphVectorCacheTest extends TestCase {
+  private GlyphVectorCache myCache;
+  private Graphics2D myGraphics;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myCache = new GlyphVectorCache();
+    myGraphics = new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB).createGraphics();
+    myGraphics.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myGraphics.dispose();
+    super.tearDown();
+  }
+
+  public void testSameFragmentIsLaidOutOnce() {
+    GlyphVector vector = myCache.getGlyphVector(myGraphics, "int i = 0;".toCharArray(), 0, 10);
+    assertNotNull(vector);
+    assertSame(vector, myCache.getGlyphVector(myGraphics, "  int i = 0;  ".toCharArray(), 2, 12));
+    assertEquals(10, vector.getNumGlyphs());
+  }
+
+  public void testFontChangeIsNotServedFromCache() {
+    char[] text = "foo".toCharArray();
+    GlyphVector plain = myCache.getGlyphVector(myGraphics, text, 0, 3);
+    myGraphics.setFont(myGraphics.getFont().deriveFont(Font.BOLD));
+    GlyphVector bold = myCache.getGlyphVector(myGraphics, text, 0, 3);
+    assertNotSame(plain, bold);
+    assertEquals(Font.BOLD, bold.getFont().getStyle());
+  }
+
+  public void testClear() {
+    char[] text = "foo".toCharArray();
+    GlyphVector vector = myCache.getGlyphVector(myGraphics, text, 0, 3);
+    myCache.clear();
+    assertNotSame(vector, myCache.getGlyphVector(myGraphics, text, 0, 3));
+  }
+
+  public void testComplexAndLongFragmentsAreNotCached() {
+    assertNull(myCache.getGlyphVector(myGraphics, "e\u0301".toCharArray(), 0, 2));
+    assertNull(myCache.getGlyphVector(myGraphics, "\u05e9\u05dc\u05d5\u05dd".toCharArray(), 0, 4));
+    assertNull(myCache.getGlyphVector(myGraphics, new char[300], 0, 300));
+    assertNull(myCache.getGlyphVector(myGraphics, "foo".toCharArray(), 1, 1));
+  }
+}
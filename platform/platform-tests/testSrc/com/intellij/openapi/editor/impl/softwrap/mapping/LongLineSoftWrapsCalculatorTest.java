@@ -0,0 +1,179 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.editor.impl.softwrap.mapping;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.LineWrapPositionStrategy;
+import com.intellij.openapi.editor.ex.util.EmptyEditorHighlighter;
+import com.intellij.openapi.editor.impl.DocumentImpl;
+import com.intellij.openapi.editor.impl.EditorTextRepresentationHelper;
+import com.intellij.openapi.editor.markup.TextAttributes;
+import com.intellij.openapi.project.Project;
+import gnu.trove.TIntHashSet;
+import gnu.trove.TIntIntHashMap;
+import gnu.trove.TIntIterator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class LongLineSoftWrapsCalculatorTest {
+
+  private static final int SYMBOL_WIDTH         = 10;
+  private static final int VISIBLE_AREA_WIDTH   = 75;
+  private static final int AFTER_SOFT_WRAP_WIDTH = 5;
+
+  private static final EditorTextRepresentationHelper HELPER = new EditorTextRepresentationHelper() {
+    @Override
+    public int toVisualColumnSymbolsNumber(@NotNull CharSequence text, int start, int end, int x) {
+      return end - start;
+    }
+
+    @Override
+    public int textWidth(@NotNull CharSequence text, int start, int end, int fontType, int x) {
+      return (end - start) * SYMBOL_WIDTH;
+    }
+
+    @Override
+    public int charWidth(char c, int fontType) {
+      return SYMBOL_WIDTH;
+    }
+  };
+
+  /** Wraps lines at the preferred offset if possible. */
+  private static final LineWrapPositionStrategy PREFERRED_OFFSET_STRATEGY = new LineWrapPositionStrategy() {
+    @Override
+    public int calculateWrapPosition(@NotNull Document document, @Nullable Project project, int startOffset, int endOffset,
+                                     int maxPreferredOffset, boolean allowToBeyondMaxPreferredOffset, boolean virtual)
+    {
+      return maxPreferredOffset > startOffset ? maxPreferredOffset : -1;
+    }
+  };
+
+  private static final LineWrapPositionStrategy NO_WRAP_STRATEGY = new LineWrapPositionStrategy() {
+    @Override
+    public int calculateWrapPosition(@NotNull Document document, @Nullable Project project, int startOffset, int endOffset,
+                                     int maxPreferredOffset, boolean allowToBeyondMaxPreferredOffset, boolean virtual)
+    {
+      return -1;
+    }
+  };
+
+  @Test
+  public void wrapAfterSpaces() {
+    LongLineSoftWrapsCalculator.LineLayout layout = calculate("aaaa bbbb cccc dddd", NO_WRAP_STRATEGY, -1, Integer.MAX_VALUE);
+
+    assertArrayEquals(new int[] {5, 10, 15}, layout.myWrapOffsets);
+    assertArrayEquals(new int[] {50, 55, 55}, layout.myXBeforeWraps);
+    assertArrayEquals(new int[] {0, 0, 0}, layout.myIndentsInColumns);
+    assertArrayEquals(new int[] {AFTER_SOFT_WRAP_WIDTH, AFTER_SOFT_WRAP_WIDTH, AFTER_SOFT_WRAP_WIDTH}, layout.myIndentsInPixels);
+    assertEquals(AFTER_SOFT_WRAP_WIDTH + 4 * SYMBOL_WIDTH, layout.myEndX);
+    assertFalse(layout.myHasFailedWraps);
+  }
+
+  @Test
+  public void wrapPositionStrategyIsUsedWhenThereAreNoSpaces() {
+    LongLineSoftWrapsCalculator.LineLayout layout = calculate("aaaaaaaaaaaaaaaaaaaa", PREFERRED_OFFSET_STRATEGY, -1, Integer.MAX_VALUE);
+
+    assertArrayEquals(new int[] {6, 11, 16}, layout.myWrapOffsets);
+    assertArrayEquals(new int[] {60, 55, 55}, layout.myXBeforeWraps);
+    assertEquals(AFTER_SOFT_WRAP_WIDTH + 4 * SYMBOL_WIDTH, layout.myEndX);
+    assertFalse(layout.myHasFailedWraps);
+  }
+
+  @Test
+  public void lineWithoutWrapPositionsIsLeftAsIs() {
+    LongLineSoftWrapsCalculator.LineLayout layout = calculate("aaaaaaaaaaaaaaaaaaaa", NO_WRAP_STRATEGY, -1, Integer.MAX_VALUE);
+
+    assertEquals(0, layout.myWrapOffsets.length);
+    assertEquals(20 * SYMBOL_WIDTH, layout.myEndX);
+    assertTrue(layout.myHasFailedWraps);
+  }
+
+  @Test
+  public void customIndentIncludesLineIndent() {
+    LongLineSoftWrapsCalculator.LineLayout layout = calculate("  aa bbbb cccc dddd", PREFERRED_OFFSET_STRATEGY, 1, Integer.MAX_VALUE);
+
+    assertEquals(5, layout.myWrapOffsets[0]);
+    assertEquals(50, layout.myXBeforeWraps[0]);
+    assertEquals(1 + 2, layout.myIndentsInColumns[0]);
+    assertEquals(AFTER_SOFT_WRAP_WIDTH + 2 * SYMBOL_WIDTH + SYMBOL_WIDTH, layout.myIndentsInPixels[0]);
+  }
+
+  @Test
+  public void processingByPartsGivesTheSameResult() {
+    String text = "aaaa bbbb cccccccccccccccc dd eeeeeeeeeeeeeeeeeeee f g h";
+    LongLineSoftWrapsCalculator.LineLayout expected = calculate(text, PREFERRED_OFFSET_STRATEGY, 2, Integer.MAX_VALUE);
+    LongLineSoftWrapsCalculator.LineLayout actual = calculate(text, PREFERRED_OFFSET_STRATEGY, 2, 3);
+
+    assertTrue(expected.myWrapOffsets.length > 3);
+    assertArrayEquals(expected.myWrapOffsets, actual.myWrapOffsets);
+    assertArrayEquals(expected.myXBeforeWraps, actual.myXBeforeWraps);
+    assertArrayEquals(expected.myIndentsInColumns, actual.myIndentsInColumns);
+    assertArrayEquals(expected.myIndentsInPixels, actual.myIndentsInPixels);
+    assertEquals(expected.myEndX, actual.myEndX);
+  }
+
+  @Test
+  public void linesWithTabulationsAreNotSupported() {
+    String text = "aaaa\tbbbb";
+    EmptyEditorHighlighter highlighter = createHighlighter(text);
+    TIntHashSet symbols = new TIntHashSet();
+
+    assertFalse(LongLineSoftWrapsCalculator.collectSymbols(text, highlighter.createIterator(0), 0, text.length(), symbols));
+    assertTrue(LongLineSoftWrapsCalculator.collectSymbols(text, highlighter.createIterator(0), 0, 4, symbols));
+  }
+
+  @NotNull
+  private static LongLineSoftWrapsCalculator.LineLayout calculate(@NotNull String text,
+                                                                  @NotNull LineWrapPositionStrategy strategy,
+                                                                  int customIndent,
+                                                                  int symbolsPerStep)
+  {
+    Document document = new DocumentImpl(text);
+    EmptyEditorHighlighter highlighter = createHighlighter(text);
+    LongLineSoftWrapsCalculator.Parameters parameters = new LongLineSoftWrapsCalculator.Parameters(
+      document.getModificationStamp(), VISIBLE_AREA_WIDTH, AFTER_SOFT_WRAP_WIDTH, customIndent, "Monospaced", 12, highlighter, HELPER,
+      strategy, null
+    );
+
+    TIntHashSet symbols = new TIntHashSet();
+    assertTrue(LongLineSoftWrapsCalculator.collectSymbols(text, highlighter.createIterator(0), 0, text.length(), symbols));
+    TIntIntHashMap widths = new TIntIntHashMap();
+    for (TIntIterator it = symbols.iterator(); it.hasNext(); ) {
+      int key = it.next();
+      widths.put(key, HELPER.charWidth((char)(key & 0xFFFF), key >> 16));
+    }
+
+    LongLineSoftWrapsCalculator.LineLayoutBuilder builder =
+      new LongLineSoftWrapsCalculator.LineLayoutBuilder(0, text.length(), parameters, widths);
+    int steps = 0;
+    while (!builder.process(document, symbolsPerStep)) {
+      assertTrue("Too many steps for " + Arrays.toString(builder.build().myWrapOffsets), steps++ < text.length() * 2);
+    }
+    return builder.build();
+  }
+
+  @NotNull
+  private static EmptyEditorHighlighter createHighlighter(@NotNull String text) {
+    EmptyEditorHighlighter highlighter = new EmptyEditorHighlighter(new TextAttributes());
+    highlighter.setText(text);
+    return highlighter;
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi.impl.source.resolve;
+
+import com.intellij.openapi.util.Getter;
+import com.intellij.openapi.util.StaticGetter;
+import junit.framework.TestCase;
+
+public class ResolveCacheBoundedMapTest extends TestCase {
+  public void testEvictsBySizeAndCountsEvictions() {
+    ResolveCache.Statistics statistics = new ResolveCache.Statistics();
+    ResolveCache.BoundedResultMap<String, String> map = new ResolveCache.BoundedResultMap<String, String>(4);
+    for (int i = 0; i < 10; i++) {
+      map.put("ref" + i, new StaticGetter<String>("result" + i), statistics);
+    }
+
+    // results which have never been hit stay in the probational half of the map
+    assertEquals(8, statistics.getEvictions());
+    assertNull(get(map, "ref0"));
+    assertEquals("result9", get(map, "ref9"));
+  }
+
+  public void testHitResultsSurviveEviction() {
+    ResolveCache.Statistics statistics = new ResolveCache.Statistics();
+    ResolveCache.BoundedResultMap<String, String> map = new ResolveCache.BoundedResultMap<String, String>(4);
+    map.put("hot", new StaticGetter<String>("hot"), statistics);
+    assertEquals("hot", get(map, "hot"));
+    for (int i = 0; i < 10; i++) {
+      map.put("ref" + i, new StaticGetter<String>("result" + i), statistics);
+    }
+
+    assertEquals("hot", get(map, "hot"));
+  }
+
+  public void testReplacingAndClearingAreNotEvictions() {
+    ResolveCache.Statistics statistics = new ResolveCache.Statistics();
+    ResolveCache.BoundedResultMap<String, String> map = new ResolveCache.BoundedResultMap<String, String>(4);
+    map.put("ref", new StaticGetter<String>("old"), statistics);
+    map.put("ref", new StaticGetter<String>("new"), statistics);
+    assertEquals("new", get(map, "ref"));
+
+    map.put("other", new StaticGetter<String>("other"), statistics);
+    map.clear();
+    assertNull(get(map, "ref"));
+    assertEquals(0, statistics.getEvictions());
+  }
+
+  private static String get(ResolveCache.BoundedResultMap<String, String> map, String ref) {
+    Getter<String> getter = map.get(ref);
+    return getter == null ? null : getter.get();
+  }
+}
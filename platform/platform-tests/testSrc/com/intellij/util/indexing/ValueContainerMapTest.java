@@ -0,0 +1,172 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.indexing;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.io.DataInputOutputUtil;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.PersistentHashMap;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Checks that value containers appended by chunks in the old (plain ids) and the new (delta-coded ids) formats,
+ * mixed with invalidate commands, are read back correctly.
+ */
+public class ValueContainerMapTest extends TestCase {
+  private static final String KEY = "key";
+  private static final EnumeratorStringDescriptor DESCRIPTOR = new EnumeratorStringDescriptor();
+
+  private File myDir;
+  private ValueContainerMap<String, String> myMap;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("value-container-map", null);
+    myMap = createMap();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myMap.close();
+    FileUtil.delete(myDir);
+    super.tearDown();
+  }
+
+  public void testMixedOldAndNewRecords() throws IOException {
+    appendOldRecord("a", 5, 3);
+    appendOldRecord("b", 7);
+
+    ChangeTrackingValueContainer<String> container = createContainer();
+    container.removeAssociatedValue(5);
+    container.addValue(2000000, "a");
+    container.addValue(1000000000, "a");
+    container.addValue(Integer.MAX_VALUE, "a");
+    container.addValue(9, "c");
+    myMap.put(KEY, container);
+
+    appendInvalidateCommand(7);
+    appendOldRecord("d", 11);
+
+    myMap.close();
+    myMap = createMap();
+
+    Map<String, Set<Integer>> expected = ContainerUtil.newHashMap();
+    expected.put("a", ids(3, 2000000, 1000000000, Integer.MAX_VALUE));
+    expected.put("c", ids(9));
+    expected.put("d", ids(11));
+    assertEquals(expected, read());
+  }
+
+  public void testSeveralNewRecords() throws IOException {
+    ChangeTrackingValueContainer<String> container = createContainer();
+    container.addValue(Integer.MAX_VALUE - 1, "a");
+    container.addValue(1, "a");
+    container.addValue(65536, "a");
+    myMap.put(KEY, container);
+
+    container = createContainer();
+    container.removeAssociatedValue(1);
+    container.addValue(Integer.MAX_VALUE, "a");
+    container.addValue(2, "b");
+    container.addValue(128, "b");
+    myMap.put(KEY, container);
+
+    myMap.close();
+    myMap = createMap();
+
+    Map<String, Set<Integer>> expected = ContainerUtil.newHashMap();
+    expected.put("a", ids(65536, Integer.MAX_VALUE - 1, Integer.MAX_VALUE));
+    expected.put("b", ids(2, 128));
+    assertEquals(expected, read());
+  }
+
+  @NotNull
+  private ValueContainerMap<String, String> createMap() throws IOException {
+    return new ValueContainerMap<String, String>(new File(myDir, "map"), DESCRIPTOR, DESCRIPTOR);
+  }
+
+  @NotNull
+  private static ChangeTrackingValueContainer<String> createContainer() {
+    return new ChangeTrackingValueContainer<String>(new ChangeTrackingValueContainer.Initializer<String>() {
+      @Override
+      public Object getLock() {
+        return this;
+      }
+
+      @Override
+      public ValueContainer<String> compute() {
+        return new ValueContainerImpl<String>();
+      }
+    });
+  }
+
+  // the format written before ids were delta-coded: the count of ids is never negative, ids are written as is
+  private void appendOldRecord(@NotNull final String value, @NotNull final int... ids) throws IOException {
+    myMap.appendData(KEY, new PersistentHashMap.ValueDataAppender() {
+      @Override
+      public void append(DataOutput out) throws IOException {
+        DataInputOutputUtil.writeSINT(out, 1);
+        DESCRIPTOR.save(out, value);
+        DataInputOutputUtil.writeSINT(out, ids.length);
+        for (int id : ids) {
+          DataInputOutputUtil.writeSINT(out, id);
+        }
+      }
+    });
+  }
+
+  private void appendInvalidateCommand(final int id) throws IOException {
+    myMap.appendData(KEY, new PersistentHashMap.ValueDataAppender() {
+      @Override
+      public void append(DataOutput out) throws IOException {
+        DataInputOutputUtil.writeSINT(out, -id);
+      }
+    });
+  }
+
+  @NotNull
+  private Map<String, Set<Integer>> read() throws IOException {
+    ValueContainer<String> container = myMap.get(KEY);
+    assertNotNull(container);
+    Map<String, Set<Integer>> result = ContainerUtil.newHashMap();
+    for (Iterator<String> values = container.getValueIterator(); values.hasNext(); ) {
+      String value = values.next();
+      Set<Integer> ids = new TreeSet<Integer>();
+      for (ValueContainer.IntIterator it = container.getInputIdsIterator(value); it.hasNext(); ) {
+        ids.add(it.next());
+      }
+      result.put(value, ids);
+    }
+    return result;
+  }
+
+  @NotNull
+  private static Set<Integer> ids(@NotNull Integer... ids) {
+    return new TreeSet<Integer>(Arrays.asList(ids));
+  }
+}
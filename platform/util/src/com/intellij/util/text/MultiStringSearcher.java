@@ -0,0 +1,177 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.text;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.text.StringUtil;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds occurrences of the patterns of several {@link StringSearcher}s in one pass over the text (Aho-Corasick automaton),
+ * while each of the searchers would scan the text once for its own pattern.
+ * <p/>
+ * Case sensitivity is taken from each of the searchers, the rest of their settings is left to the caller.
+ * The searcher doesn't change after it's built, so it may be used from several threads.
+ */
+public class MultiStringSearcher {
+  private static final Logger LOG = Logger.getInstance("#com.intellij.util.text.MultiStringSearcher");
+  private static final int ASCII = 128;
+
+  public interface OccurrenceProcessor {
+    /**
+     * @return false to stop the scanning
+     */
+    boolean process(int searcherIndex, int offset);
+  }
+
+  private final List<StringSearcher> mySearchers;
+  // the trie of lower-cased patterns: state -> char -> state, 0 is the root
+  private final List<TIntIntHashMap> myChildren = new ArrayList<TIntIntHashMap>();
+  private final int[] myFailures;
+  // indices of the searchers which patterns end at the state
+  private final int[][] myOutputs;
+  // the transitions by ascii chars: state * 128 + char -> state
+  private final int[] myAsciiTransitions;
+
+  public MultiStringSearcher(@NotNull List<StringSearcher> searchers) {
+    mySearchers = Collections.unmodifiableList(new ArrayList<StringSearcher>(searchers));
+    myChildren.add(new TIntIntHashMap());
+    List<TIntArrayList> outputs = new ArrayList<TIntArrayList>();
+    outputs.add(null);
+    for (int i = 0; i < mySearchers.size(); i++) {
+      StringSearcher searcher = mySearchers.get(i);
+      LOG.assertTrue(searcher.isForwardDirection(), searcher);
+      String pattern = searcher.getPattern();
+      int state = 0;
+      for (int j = 0; j < pattern.length(); j++) {
+        char c = StringUtil.toLowerCase(pattern.charAt(j));
+        int next = myChildren.get(state).get(c);
+        if (next == 0) {
+          next = myChildren.size();
+          myChildren.add(new TIntIntHashMap());
+          outputs.add(null);
+          myChildren.get(state).put(c, next);
+        }
+        state = next;
+      }
+      if (outputs.get(state) == null) {
+        outputs.set(state, new TIntArrayList());
+      }
+      outputs.get(state).add(i);
+    }
+
+    int states = myChildren.size();
+    myFailures = new int[states];
+    myOutputs = new int[states][];
+    myAsciiTransitions = new int[states * ASCII];
+    // breadth-first, so that the failure state is complete when it's referred to
+    TIntArrayList queue = new TIntArrayList();
+    queue.add(0);
+    for (int head = 0; head < queue.size(); head++) {
+      int state = queue.get(head);
+      TIntArrayList stateOutputs = outputs.get(state);
+      int[] failureOutputs = state == 0 ? null : myOutputs[myFailures[state]];
+      if (stateOutputs != null || failureOutputs != null) {
+        TIntArrayList merged = stateOutputs == null ? new TIntArrayList() : stateOutputs;
+        if (failureOutputs != null) {
+          merged.add(failureOutputs);
+        }
+        myOutputs[state] = merged.toNativeArray();
+      }
+
+      TIntIntHashMap children = myChildren.get(state);
+      for (int c : children.keys()) {
+        int child = children.get(c);
+        myFailures[child] = state == 0 ? 0 : getNextState(myFailures[state], (char)c);
+        queue.add(child);
+      }
+      for (char c = 0; c < ASCII; c++) {
+        int child = children.get(c);
+        myAsciiTransitions[state * ASCII + c] = child != 0 || state == 0 ? child : myAsciiTransitions[myFailures[state] * ASCII + c];
+      }
+    }
+  }
+
+  @NotNull
+  public List<StringSearcher> getSearchers() {
+    return mySearchers;
+  }
+
+  /**
+   * Passes occurrences of all patterns between the given offsets to the processor, ordered by their end offsets.
+   *
+   * @return false if the processor stopped the scanning
+   */
+  public boolean scan(@NotNull CharSequence text,
+                      @Nullable char[] textArray,
+                      int start,
+                      int end,
+                      @NotNull OccurrenceProcessor processor) {
+    LOG.assertTrue(start <= end, start - end);
+    LOG.assertTrue(end <= text.length(), text.length() - end);
+    int state = 0;
+    for (int i = start; i < end; i++) {
+      char c = StringUtil.toLowerCase(textArray != null ? textArray[i] : text.charAt(i));
+      state = c < ASCII ? myAsciiTransitions[state * ASCII + c] : getNextState(state, c);
+      int[] outputs = myOutputs[state];
+      if (outputs != null) {
+        for (int index : outputs) {
+          StringSearcher searcher = mySearchers.get(index);
+          int offset = i - searcher.getPattern().length() + 1;
+          if (offset >= start &&
+              (!searcher.isCaseSensitive() || matchesCaseSensitively(text, textArray, offset, searcher.getPattern())) &&
+              !processor.process(index, offset)) {
+            return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  private int getNextState(int state, char c) {
+    while (true) {
+      int next = myChildren.get(state).get(c);
+      if (next != 0 || state == 0) {
+        return next;
+      }
+      state = myFailures[state];
+    }
+  }
+
+  private static boolean matchesCaseSensitively(@NotNull CharSequence text, @Nullable char[] textArray, int offset,
+                                                @NotNull String pattern) {
+    for (int j = 0; j < pattern.length(); j++) {
+      char c = textArray != null ? textArray[offset + j] : text.charAt(offset + j);
+      if (c != pattern.charAt(j)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return "patterns " + mySearchers;
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.text;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class MultiStringSearcherTest extends TestCase {
+  public void testOverlappingPatterns() {
+    assertOccurrences("ushers", new String[]{"he", "she", "his", "hers"}, true,
+                      "1:1", "0:2", "3:2");
+  }
+
+  public void testCaseSensitivity() {
+    MultiStringSearcher searcher = new MultiStringSearcher(Arrays.asList(new StringSearcher("Foo", true, true),
+                                                                          new StringSearcher("foo", false, true)));
+    assertEquals(Arrays.asList("0:0", "1:0", "1:4"), scan(searcher, "Foo foo"));
+  }
+
+  public void testNonAsciiAndRange() {
+    assertOccurrences("aПриветb Привет", new String[]{"привет"}, false,
+                      "0:1", "0:9");
+    MultiStringSearcher searcher = new MultiStringSearcher(Arrays.asList(new StringSearcher("ab", true, true)));
+    final List<String> result = new ArrayList<String>();
+    searcher.scan("abab", null, 1, 4, new MultiStringSearcher.OccurrenceProcessor() {
+      @Override
+      public boolean process(int searcherIndex, int offset) {
+        result.add(searcherIndex + ":" + offset);
+        return true;
+      }
+    });
+    assertEquals(Arrays.asList("0:2"), result);
+  }
+
+  private static void assertOccurrences(String text, String[] patterns, boolean caseSensitive, String... expected) {
+    List<StringSearcher> searchers = new ArrayList<StringSearcher>();
+    for (String pattern : patterns) {
+      searchers.add(new StringSearcher(pattern, caseSensitive, true));
+    }
+    assertEquals(Arrays.asList(expected), scan(new MultiStringSearcher(searchers), text));
+  }
+
+  private static List<String> scan(MultiStringSearcher searcher, String text) {
+    final List<String> result = new ArrayList<String>();
+    searcher.scan(text, text.toCharArray(), 0, text.length(), new MultiStringSearcher.OccurrenceProcessor() {
+      @Override
+      public boolean process(int searcherIndex, int offset) {
+        result.add(searcherIndex + ":" + offset);
+        return true;
+      }
+    });
+    return result;
+  }
+}
@@ -32,27 +32,48 @@ import java.util.*;
 public class ChangeListsIndexes {
   private final TreeMap<String, FileStatus> myFileToStatus;
   private final Map<String, Pair<VcsKey, VcsRevisionNumber>> myFileToVcs;
+  // paths modified since this index was copied from another one; null if the index was not created as a copy
+  @Nullable private final Set<String> myTouchedPaths;
+  // identifies the state of the index: replaced on each modification
+  private Object myStamp;
+  // the stamp of the index this one was copied from, at the moment of copying
+  @Nullable private final Object myBaseStamp;
 
   ChangeListsIndexes() {
     myFileToStatus = new TreeMap<String, FileStatus>();
     myFileToVcs = new HashMap<String, Pair<VcsKey, VcsRevisionNumber>>();
+    myTouchedPaths = null;
+    myStamp = new Object();
+    myBaseStamp = null;
   }
 
   ChangeListsIndexes(final ChangeListsIndexes idx) {
     myFileToStatus = new TreeMap<String, FileStatus>(idx.myFileToStatus);
     myFileToVcs = new HashMap<String, Pair<VcsKey, VcsRevisionNumber>>(idx.myFileToVcs);
+    myTouchedPaths = new HashSet<String>();
+    myStamp = new Object();
+    myBaseStamp = idx.myStamp;
   }
 
   void add(final FilePath file, final FileStatus status, final VcsKey key, VcsRevisionNumber number) {
     final String fileKey = file.getIOFile().getAbsolutePath();
     myFileToStatus.put(fileKey, status);
     myFileToVcs.put(fileKey, Pair.create(key, number));
+    touched(fileKey);
   }
 
   void remove(final FilePath file) {
     final String fileKey = file.getIOFile().getAbsolutePath();
     myFileToStatus.remove(fileKey);
     myFileToVcs.remove(fileKey);
+    touched(fileKey);
+  }
+
+  private void touched(final String fileKey) {
+    if (myTouchedPaths != null) {
+      myTouchedPaths.add(fileKey);
+    }
+    myStamp = new Object();
   }
 
   public FileStatus getStatus(final VirtualFile file) {
@@ -123,6 +144,11 @@ public class ChangeListsIndexes {
                        final Set<BaseRevision> toRemove,
                        Set<BaseRevision> toAdd,
                        Set<BeforeAfter<BaseRevision>> toModify) {
+    if (newIndexes.myTouchedPaths != null && newIndexes.myBaseStamp == myStamp) {
+      // new indexes are a copy of this one which was not modified since then => only touched paths may differ
+      getDeltaForTouched(newIndexes, toRemove, toAdd, toModify);
+      return;
+    }
     // this is old
     final Set<String> oldKeySet = new HashSet<String>(myFileToVcs.keySet());
     final Set<String> toRemoveSet = new HashSet<String>(oldKeySet);
@@ -151,6 +177,28 @@ public class ChangeListsIndexes {
     }
   }
 
+  private void getDeltaForTouched(final ChangeListsIndexes newIndexes,
+                                  final Set<BaseRevision> toRemove,
+                                  final Set<BaseRevision> toAdd,
+                                  final Set<BeforeAfter<BaseRevision>> toModify) {
+    assert newIndexes.myTouchedPaths != null;
+    for (String s : newIndexes.myTouchedPaths) {
+      final Pair<VcsKey, VcsRevisionNumber> old = myFileToVcs.get(s);
+      final Pair<VcsKey, VcsRevisionNumber> newOne = newIndexes.myFileToVcs.get(s);
+      if (old == null) {
+        if (newOne != null) {
+          toAdd.add(fromPairAndPath(s, newOne));
+        }
+      }
+      else if (newOne == null) {
+        toRemove.add(fromPairAndPath(s, old));
+      }
+      else if (! old.equals(newOne)) {
+        toModify.add(new BeforeAfter<BaseRevision>(fromPairAndPath(s, old), fromPairAndPath(s, newOne)));
+      }
+    }
+  }
+
   private BaseRevision fromPairAndPath(String s, Pair<VcsKey, VcsRevisionNumber> pair) {
     return new BaseRevision(pair.getFirst(), pair.getSecond(), s);
   }
@@ -21,7 +21,6 @@ import com.intellij.util.PlusMinusModify;
 
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 
 public class ChangesDelta {
@@ -34,9 +33,8 @@ public class ChangesDelta {
 
   // true -> something changed
   public boolean step(final ChangeListsIndexes was, final ChangeListsIndexes became) {
-    List<BaseRevision> wasAffected = was.getAffectedFilesUnderVcs();
     if (! myInitialized) {
-      sendPlus(wasAffected);
+      sendPlus(was.getAffectedFilesUnderVcs());
       myInitialized = true;
       return true;  //+-
     }
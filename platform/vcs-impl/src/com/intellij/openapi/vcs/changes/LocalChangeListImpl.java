@@ -3,10 +3,10 @@ package com.intellij.openapi.vcs.changes;
 import com.intellij.lifecycle.PeriodicalTasksCloser;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.roots.FileIndexFacade;
 import com.intellij.openapi.util.Comparing;
-import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.util.registry.Registry;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vcs.history.VcsRevisionNumber;
@@ -22,6 +22,7 @@ import java.util.*;
  */
 public class LocalChangeListImpl extends LocalChangeList {
   private static final Logger LOG = Logger.getInstance("#com.intellij.openapi.vcs.changes.ChangeList");
+  private static final int CHANGES_BATCH_SIZE = 100;
 
   private final Project myProject;
   private Collection<Change> myChanges = new HashSet<Change>();
@@ -148,15 +149,27 @@ public class LocalChangeListImpl extends LocalChangeList {
     final Collection<Change> result = new ArrayList<Change>();
     myChangesBeforeUpdate = new OpenTHashSet<Change>(myChanges);
     final FileIndexFacade fileIndex = PeriodicalTasksCloser.getInstance().safeGetService(project, FileIndexFacade.class);
-    for (Change oldBoy : myChangesBeforeUpdate) {
-      final ContentRevision before = oldBoy.getBeforeRevision();
-      final ContentRevision after = oldBoy.getAfterRevision();
-      if (scope == null || before != null && scope.belongsTo(before.getFile()) || after != null && scope.belongsTo(after.getFile())
-        || isIgnoredChange(oldBoy, fileIndex)) {
-        result.add(oldBoy);
-        myChanges.remove(oldBoy);
-        myReadChangesCache = null;
-      }
+    final List<Change> changes = new ArrayList<Change>(myChangesBeforeUpdate);
+    // a read action per batch of changes: taking it for each revision is noticeable when there are lots of changes,
+    // while holding it for all of them would block write actions for too long
+    for (int i = 0; i < changes.size(); i += CHANGES_BATCH_SIZE) {
+      ProgressManager.checkCanceled();
+      final List<Change> batch = changes.subList(i, Math.min(i + CHANGES_BATCH_SIZE, changes.size()));
+      ApplicationManager.getApplication().runReadAction(new Runnable() {
+        @Override
+        public void run() {
+          for (Change oldBoy : batch) {
+            final ContentRevision before = oldBoy.getBeforeRevision();
+            final ContentRevision after = oldBoy.getAfterRevision();
+            if (scope == null || before != null && scope.belongsTo(before.getFile()) || after != null && scope.belongsTo(after.getFile())
+              || isIgnoredChange(oldBoy, fileIndex)) {
+              result.add(oldBoy);
+              myChanges.remove(oldBoy);
+              myReadChangesCache = null;
+            }
+          }
+        }
+      });
     }
     return result;
   }
@@ -168,13 +181,8 @@ public class LocalChangeListImpl extends LocalChangeList {
   }
 
   private static boolean isIgnoredRevision(final ContentRevision revision, final FileIndexFacade fileIndex) {
-    return ApplicationManager.getApplication().runReadAction(new Computable<Boolean>() {
-      @Override
-      public Boolean compute() {
-        VirtualFile vFile = revision.getFile().getVirtualFile();
-        return vFile != null && fileIndex.isExcludedFile(vFile);
-      }
-    });
+    VirtualFile vFile = revision.getFile().getVirtualFile();
+    return vFile != null && fileIndex.isExcludedFile(vFile);
   }
 
   boolean processChange(Change change) {
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.vcs.changes;
+
+import com.intellij.openapi.vcs.BaseRevision;
+import com.intellij.openapi.vcs.FilePath;
+import com.intellij.openapi.vcs.FilePathImpl;
+import com.intellij.openapi.vcs.FileStatus;
+import com.intellij.openapi.vcs.history.VcsRevisionNumber;
+import com.intellij.util.BeforeAfter;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+public class ChangeListsIndexesTest {
+
+  @Test
+  public void deltaOfCopyContainsOnlyTouchedPaths() {
+    ChangeListsIndexes was = new ChangeListsIndexes();
+    add(was, "a", 1);
+    add(was, "b", 1);
+    add(was, "c", 1);
+
+    ChangeListsIndexes became = new ChangeListsIndexes(was);
+    became.remove(path("a"));
+    add(became, "b", 2);
+    add(became, "d", 1);
+    became.remove(path("c"));
+    add(became, "c", 1); // re-added with the same revision: not a modification
+
+    Delta delta = new Delta(was, became);
+    assertEquals(paths("a"), delta.myRemoved);
+    assertEquals(paths("d"), delta.myAdded);
+    assertEquals(paths("b"), delta.myModified);
+  }
+
+  @Test
+  public void deltaIsComputedFullyIfOriginalWasModifiedAfterCopying() {
+    ChangeListsIndexes was = new ChangeListsIndexes();
+    add(was, "a", 1);
+    ChangeListsIndexes became = new ChangeListsIndexes(was);
+    add(became, "b", 1);
+    add(was, "c", 1);
+
+    Delta delta = new Delta(was, became);
+    assertEquals(paths("c"), delta.myRemoved);
+    assertEquals(paths("b"), delta.myAdded);
+    assertEquals(paths(), delta.myModified);
+  }
+
+  @Test
+  public void deltaOfCopyIsSameAsFullComparison() {
+    Random random = new Random(42);
+    ChangeListsIndexes was = new ChangeListsIndexes();
+    for (int i = 0; i < 100; i++) {
+      add(was, String.valueOf(random.nextInt(200)), random.nextInt(3));
+    }
+    ChangeListsIndexes copy = new ChangeListsIndexes(was);
+    for (int i = 0; i < 50; i++) {
+      String name = String.valueOf(random.nextInt(200));
+      if (random.nextBoolean()) {
+        copy.remove(path(name));
+      }
+      else {
+        add(copy, name, random.nextInt(3));
+      }
+    }
+    ChangeListsIndexes notCopy = new ChangeListsIndexes();
+    for (BaseRevision revision : copy.getAffectedFilesUnderVcs()) {
+      notCopy.add(path(new File(revision.getPath()).getName()), FileStatus.MODIFIED, null, revision.getRevision());
+    }
+
+    Delta touched = new Delta(was, copy);
+    Delta full = new Delta(was, notCopy);
+    assertEquals(full.myRemoved, touched.myRemoved);
+    assertEquals(full.myAdded, touched.myAdded);
+    assertEquals(full.myModified, touched.myModified);
+  }
+
+  private static void add(@NotNull ChangeListsIndexes indexes, @NotNull String name, int revision) {
+    indexes.add(path(name), FileStatus.MODIFIED, null, new VcsRevisionNumber.Int(revision));
+  }
+
+  @NotNull
+  private static FilePath path(@NotNull String name) {
+    return new FilePathImpl(new File(name), false);
+  }
+
+  @NotNull
+  private static Set<String> paths(@NotNull String... names) {
+    Set<String> result = new HashSet<String>();
+    for (String name : names) {
+      result.add(new File(name).getAbsolutePath());
+    }
+    return result;
+  }
+
+  private static class Delta {
+    private final Set<String> myRemoved = new HashSet<String>();
+    private final Set<String> myAdded = new HashSet<String>();
+    private final Set<String> myModified = new HashSet<String>();
+
+    private Delta(@NotNull ChangeListsIndexes was, @NotNull ChangeListsIndexes became) {
+      Set<BaseRevision> toRemove = new HashSet<BaseRevision>();
+      Set<BaseRevision> toAdd = new HashSet<BaseRevision>();
+      Set<BeforeAfter<BaseRevision>> toModify = new HashSet<BeforeAfter<BaseRevision>>();
+      was.getDelta(became, toRemove, toAdd, toModify);
+      for (BaseRevision revision : toRemove) {
+        myRemoved.add(revision.getPath());
+      }
+      for (BaseRevision revision : toAdd) {
+        myAdded.add(revision.getPath());
+      }
+      for (BeforeAfter<BaseRevision> beforeAfter : toModify) {
+        myModified.add(beforeAfter.getAfter().getPath());
+      }
+    }
+  }
+}
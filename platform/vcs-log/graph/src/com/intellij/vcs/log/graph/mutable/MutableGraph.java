@@ -4,6 +4,7 @@ import com.intellij.vcs.log.graph.Graph;
 import com.intellij.vcs.log.graph.elements.Edge;
 import com.intellij.vcs.log.graph.elements.Node;
 import com.intellij.vcs.log.graph.elements.NodeRow;
+import com.intellij.vcs.log.graph.mutable.elements.MutableNode;
 import com.intellij.vcs.log.graph.mutable.elements.MutableNodeRow;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -60,8 +61,11 @@ public class MutableGraph implements Graph {
     if (rowIndex >= visibleRows.size()) {
       return null;
     }
-    NodeRow nodeRow = visibleRows.get(rowIndex);
-    for (Node node : nodeRow.getNodes()) {
+    MutableNodeRow nodeRow = visibleRows.get(rowIndex);
+    for (MutableNode node : nodeRow.getInnerNodeList()) {
+      if (!graphDecorator.isVisibleNode(node)) {
+        continue;
+      }
       if (node.getType() == Node.NodeType.COMMIT_NODE || node.getType() == Node.NodeType.END_COMMIT_NODE) {
         return node;
       }
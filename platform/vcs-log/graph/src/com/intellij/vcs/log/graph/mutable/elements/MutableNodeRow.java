@@ -8,6 +8,7 @@ import com.intellij.vcs.log.graph.mutable.MutableGraph;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -40,9 +41,20 @@ public class MutableNodeRow implements NodeRow {
   @NotNull
   @Override
   public List<Node> getNodes() {
+    GraphDecorator decorator = getGraphDecorator();
+    // rows are asked for their nodes on each layout step, and usually all of them are visible: don't copy the list then
+    int firstHidden = 0;
+    while (firstHidden < nodes.size() && decorator.isVisibleNode(nodes.get(firstHidden))) {
+      firstHidden++;
+    }
+    if (firstHidden == nodes.size()) {
+      return Collections.<Node>unmodifiableList(nodes);
+    }
     List<Node> visibleNodes = new ArrayList<Node>(nodes.size());
-    for (Node node : nodes) {
-      if (getGraphDecorator().isVisibleNode(node)) {
+    visibleNodes.addAll(nodes.subList(0, firstHidden));
+    for (int i = firstHidden + 1; i < nodes.size(); i++) {
+      MutableNode node = nodes.get(i);
+      if (decorator.isVisibleNode(node)) {
         visibleNodes.add(node);
       }
     }
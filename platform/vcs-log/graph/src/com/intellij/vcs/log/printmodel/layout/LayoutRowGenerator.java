@@ -1,5 +1,6 @@
 package com.intellij.vcs.log.printmodel.layout;
 
+import com.intellij.util.SmartList;
 import com.intellij.vcs.log.compressedlist.generator.AbstractGenerator;
 import com.intellij.vcs.log.graph.Graph;
 import com.intellij.vcs.log.graph.elements.Edge;
@@ -55,29 +56,21 @@ class LayoutRowGenerator extends AbstractGenerator<LayoutRow, MutableLayoutRow>
     if (newRowIndex == graph.getNodeRows().size()) {
       throw new NoSuchElementException();
     }
-    List<GraphElement> layoutRow = row.getModifiableOrderedGraphElements();
-    Set<Node> addedNodeInNextRow = new HashSet<Node>();
-    for (ListIterator<GraphElement> iterator = layoutRow.listIterator(); iterator.hasNext(); ) {
-      GraphElement element = iterator.next();
+    // the next row is built into a new array instead of editing the previous one in place
+    List<GraphElement> prevRow = row.getModifiableOrderedGraphElements();
+    ArrayList<GraphElement> layoutRow = new ArrayList<GraphElement>(prevRow.size() + 1);
+    // there are a few nodes in a row, so a list is cheaper than a set here
+    List<Node> addedNodeInNextRow = new SmartList<Node>();
+    for (GraphElement element : prevRow) {
       Node node = element.getNode();
       if (node != null) {
-        List<Edge> edges = node.getDownEdges();
-        if (edges.size() == 0) {
-          iterator.remove();
-        }
-        else {
-          iterator.remove();
-          for (Edge edge : orderAddEdges(edges)) {
-            Node downNode = edge.getDownNode();
-            if (downNode.getRowIndex() == newRowIndex) {
-              if (!addedNodeInNextRow.contains(downNode)) {
-                iterator.add(downNode);
-                addedNodeInNextRow.add(downNode);
-              }
-            }
-            else {
-              iterator.add(edge);
-            }
+        for (Edge edge : orderAddEdges(node.getDownEdges())) {
+          Node downNode = edge.getDownNode();
+          if (downNode.getRowIndex() == newRowIndex) {
+            addNodeOnce(layoutRow, addedNodeInNextRow, downNode);
+          }
+          else {
+            layoutRow.add(edge);
           }
         }
       }
@@ -87,13 +80,10 @@ class LayoutRowGenerator extends AbstractGenerator<LayoutRow, MutableLayoutRow>
           throw new IllegalStateException("unexpected element class");
         }
         if (edge.getDownNode().getRowIndex() == newRowIndex) {
-          if (!addedNodeInNextRow.contains(edge.getDownNode())) {
-            iterator.set(edge.getDownNode());
-            addedNodeInNextRow.add(edge.getDownNode());
-          }
-          else {
-            iterator.remove();
-          }
+          addNodeOnce(layoutRow, addedNodeInNextRow, edge.getDownNode());
+        }
+        else {
+          layoutRow.add(edge);
         }
       }
     }
@@ -103,10 +93,18 @@ class LayoutRowGenerator extends AbstractGenerator<LayoutRow, MutableLayoutRow>
         layoutRow.add(node);
       }
     }
+    row.setOrderedGraphElements(layoutRow);
     row.setNodeRow(nextGraphRow);
     return row;
   }
 
+  private static void addNodeOnce(@NotNull List<GraphElement> layoutRow, @NotNull List<Node> addedNodes, @NotNull Node node) {
+    if (!addedNodes.contains(node)) {
+      layoutRow.add(node);
+      addedNodes.add(node);
+    }
+  }
+
   @NotNull
   @Override
   public LayoutRow generateFirst() {
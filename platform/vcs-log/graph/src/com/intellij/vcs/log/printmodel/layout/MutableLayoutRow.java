@@ -4,23 +4,24 @@ import com.intellij.vcs.log.graph.elements.GraphElement;
 import com.intellij.vcs.log.graph.elements.NodeRow;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
  * @author erokhins
  */
 class MutableLayoutRow implements LayoutRow {
-  private final List<GraphElement> graphElements;
+  // array-backed: rows are kept as checkpoints of the layout list, so they should be compact
+  private List<GraphElement> graphElements;
   private NodeRow nodeRow;
 
   public MutableLayoutRow() {
-    graphElements = new LinkedList<GraphElement>();
+    graphElements = new ArrayList<GraphElement>();
   }
 
   public MutableLayoutRow(@NotNull LayoutRow layoutRow) {
-    this.graphElements = new LinkedList<GraphElement>(layoutRow.getOrderedGraphElements());
+    this.graphElements = new ArrayList<GraphElement>(layoutRow.getOrderedGraphElements());
     this.nodeRow = layoutRow.getGraphNodeRow();
   }
 
@@ -30,6 +31,11 @@ class MutableLayoutRow implements LayoutRow {
     return graphElements;
   }
 
+  public void setOrderedGraphElements(@NotNull ArrayList<GraphElement> graphElements) {
+    graphElements.trimToSize();
+    this.graphElements = graphElements;
+  }
+
   public void setNodeRow(@NotNull NodeRow nodeRow) {
     this.nodeRow = nodeRow;
   }
@@ -3,12 +3,15 @@ package com.intellij.vcs.log.data;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.util.Consumer;
 import com.intellij.util.Function;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.containers.Predicate;
 import com.intellij.vcs.log.VcsCommit;
 import com.intellij.vcs.log.Hash;
 import com.intellij.vcs.log.VcsRef;
 import com.intellij.vcs.log.compressedlist.UpdateRequest;
+import com.intellij.vcs.log.impl.VcsCommitImpl;
 import com.intellij.vcs.log.graph.Graph;
+import com.intellij.vcs.log.graph.elements.Branch;
 import com.intellij.vcs.log.graph.elements.Edge;
 import com.intellij.vcs.log.graph.elements.GraphElement;
 import com.intellij.vcs.log.graph.elements.Node;
@@ -36,9 +39,34 @@ public class DataPack {
   public static DataPack build(@NotNull List<? extends VcsCommit> commits, @NotNull Collection<VcsRef> allRefs,
                                @NotNull ProgressIndicator indicator) {
     indicator.setText("Building graph...");
+    return create(GraphBuilder.build(commits, allRefs), allRefs);
+  }
 
-    MutableGraph graph = GraphBuilder.build(commits, allRefs);
+  /**
+   * Builds the data pack for the commits which are shown without the graph, e.g. for the commits which match a filter.
+   * Such commits are not connected with each other, and most of them don't have references,
+   * so their roots are taken from the given map instead.
+   */
+  @NotNull
+  public static DataPack buildUnconnected(@NotNull List<? extends VcsCommit> commits, @NotNull Collection<VcsRef> allRefs,
+                                          @NotNull final Map<Hash, VirtualFile> roots, @NotNull ProgressIndicator indicator) {
+    indicator.setText("Building graph...");
+    List<VcsCommit> unconnectedCommits = new ArrayList<VcsCommit>(commits.size());
+    for (VcsCommit commit : commits) {
+      unconnectedCommits.add(new VcsCommitImpl(commit.getHash(), Collections.<Hash>emptyList()));
+    }
+    GraphBuilder builder = new GraphBuilder(commits.size() - 1, GraphBuilder.calcCommitLogIndices(commits), allRefs) {
+      @NotNull
+      @Override
+      protected Branch createBranch(@NotNull Hash commitHash, @NotNull Collection<VcsRef> refs) {
+        return new Branch(commitHash, refs, roots.get(commitHash));
+      }
+    };
+    return create(builder.runBuild(unconnectedCommits), allRefs);
+  }
 
+  @NotNull
+  private static DataPack create(@NotNull MutableGraph graph, @NotNull Collection<VcsRef> allRefs) {
     GraphModel graphModel = new GraphModelImpl(graph, allRefs);
 
     final GraphPrintCellModel printCellModel = new GraphPrintCellModelImpl(graphModel.getGraph());
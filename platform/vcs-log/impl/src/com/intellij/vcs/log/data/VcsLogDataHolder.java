@@ -16,16 +16,18 @@
 package com.intellij.vcs.log.data;
 
 import com.intellij.openapi.Disposable;
-import com.intellij.openapi.progress.BackgroundTaskQueue;
-import com.intellij.openapi.progress.ProgressIndicator;
-import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.*;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.Consumer;
 import com.intellij.util.Function;
 import com.intellij.util.ThrowableConsumer;
+import com.intellij.util.ThrowableConvertor;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.containers.HashSet;
 import com.intellij.util.messages.Topic;
@@ -33,11 +35,14 @@ import com.intellij.util.ui.UIUtil;
 import com.intellij.vcs.log.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
 
 /**
  * <p>Holds the commit data loaded from the VCS, and is capable to refresh this data by
@@ -50,7 +55,8 @@ import java.util.Map;
  *   <ul>
  *     <li>All write-operations made to the log and data pack are made sequentially, from the same background queue;</li>
  *     <li>Once a refresh request is received, we read logs and refs from all providers, join refresh data, join repositories,
- *         and build the new data pack sequentially in a single thread.</li>
+ *         and build the new data pack sequentially in a single thread. Only reading from the VCS is made for several roots
+ *         concurrently, by {@link #MAX_CONCURRENT_ROOTS} at most, and its results are processed in that thread.</li>
  *     <li>Whilst we are in the middle of this refresh process, anyone who requests the data pack (and possibly the log if this would
  *         be available in the future), will get the consistent previous version of it.</li>
  *   </ul></p>
@@ -78,14 +84,29 @@ import java.util.Map;
  *        If, however, he was looking at the whole log, the data pack for the whole log is rebuilt and shown to the user.
  *    </li></ul></p>
  *
+ * <p><b>Persistence:</b> the whole log is {@link VcsLogStorage stored on disk}, and is updated after each refresh which brings
+ *    new commits. If the stored log is available on startup, it is used instead of reading the whole log from the VCS.
+ *    References are not stored, so the joiner can't detect commits which were dropped (by a rebase, reset, branch deletion)
+ *    while the IDE was closed: instead, once the first block is joined to the stored log, commits which are not reachable
+ *    from the current references are removed from it.</p>
+ *
+ * <p><b>Filtering:</b> commit messages, authors and changed paths are {@link VcsLogIndex indexed}, so the log is filtered
+ *    without querying the VCS. Once the whole log is available, commits which are not indexed yet are indexed in background,
+ *    block by block, in a separate queue, so that refreshes are not delayed. When a filter is applied, commits which are
+ *    still not indexed are indexed first, so the result is exact. While the filter is set, refreshes show filtered commits.</p>
+ *
  * TODO: error handling
  *
  * @author Kirill Likhodedov
  */
 public class VcsLogDataHolder implements Disposable {
 
+  private static final Logger LOG = Logger.getInstance(VcsLogDataHolder.class);
+
   public static final Topic<Runnable> REFRESH_COMPLETED = Topic.create("Vcs.Log.Completed", Runnable.class);
 
+  private static final int MAX_CONCURRENT_ROOTS = 8;
+
   @NotNull private final Project myProject;
   @NotNull private final VcsLogObjectsFactory myFactory;
   @NotNull private final Map<VirtualFile, VcsLogProvider> myLogProviders;
@@ -94,11 +115,17 @@ public class VcsLogDataHolder implements Disposable {
   @NotNull private final CommitDetailsGetter myDetailsGetter;
   @NotNull private final VcsLogJoiner myLogJoiner;
   @NotNull private final VcsLogMultiRepoJoiner myMultiRepoJoiner;
+  @NotNull private final VcsLogStorage myStorage;
+  @NotNull private final VcsLogIndex myIndex;
+  @NotNull private final BackgroundTaskQueue myIndexingQueue;
 
   // all write-access to myDataPack & myLogData is performed only via the myDataLoaderQueue
   @Nullable private volatile DataPack myDataPack;
   @Nullable private volatile LogData myLogData;
   private volatile boolean myFullLogShowing;
+  // the whole log was read from disk and was not yet joined with the actual data from the VCS
+  private volatile boolean myLogFromStorage;
+  @Nullable private volatile VcsLogFilter myFilter;
 
   public VcsLogDataHolder(@NotNull Project project, @NotNull VcsLogObjectsFactory logObjectsFactory,
                           @NotNull Map<VirtualFile, VcsLogProvider> logProviders) {
@@ -110,6 +137,9 @@ public class VcsLogDataHolder implements Disposable {
     myLogJoiner = new VcsLogJoiner();
     myMultiRepoJoiner = new VcsLogMultiRepoJoiner();
     myFactory = logObjectsFactory;
+    myStorage = new VcsLogStorage(project, logObjectsFactory);
+    myIndex = new VcsLogIndex(project, logObjectsFactory);
+    myIndexingQueue = new BackgroundTaskQueue(project, "Indexing history...");
   }
 
   /**
@@ -127,38 +157,191 @@ public class VcsLogDataHolder implements Disposable {
                           @NotNull Map<VirtualFile, VcsLogProvider> logProviders,
                           @NotNull final Consumer<VcsLogDataHolder> onInitialized) {
     final VcsLogDataHolder dataHolder = new VcsLogDataHolder(project, logObjectsFactory, logProviders);
-    dataHolder.initialize(onInitialized);
+    dataHolder.initialize(onInitialized, true);
   }
 
-  private void initialize(@NotNull final Consumer<VcsLogDataHolder> onInitialized) {
+  private void initialize(@NotNull final Consumer<VcsLogDataHolder> onInitialized, boolean useStoredLog) {
     myDataLoaderQueue.clear();
+    myFilter = null; // the whole log is reloaded, so filtered commits can't be shown until then
     loadFirstPart(new Consumer<DataPack>() {
       @Override
       public void consume(DataPack dataPack) {
         onInitialized.consume(VcsLogDataHolder.this);
-        // after first part is loaded and shown to the user, load the whole log in background
-        loadAllLog();
+        // after first part is loaded and shown to the user, load the whole log in background, unless it was read from disk
+        if (!isFullLogReady()) {
+          loadAllLog();
+        }
+        else {
+          indexInBackground();
+        }
       }
-    }, true);
+    }, true, useStoredLog);
   }
 
   private void loadAllLog() {
     runInBackground(new ThrowableConsumer<ProgressIndicator, VcsException>() {
       @Override
       public void consume(ProgressIndicator indicator) throws VcsException {
+        Map<VirtualFile, Pair<List<TimedVcsCommit>, Collection<VcsRef>>> logsAndRefs =
+          readFromRoots(indicator, new ThrowableConvertor<VirtualFile, Pair<List<TimedVcsCommit>, Collection<VcsRef>>, VcsException>() {
+            @Override
+            public Pair<List<TimedVcsCommit>, Collection<VcsRef>> convert(VirtualFile root) throws VcsException {
+              VcsLogProvider logProvider = getLogProvider(root);
+              return Pair.create(logProvider.readAllHashes(root), logProvider.readAllRefs(root));
+            }
+          });
         Map<VirtualFile, List<TimedVcsCommit>> logs = ContainerUtil.newHashMap();
         Map<VirtualFile, Collection<VcsRef>> refs = ContainerUtil.newHashMap();
-        for (Map.Entry<VirtualFile, VcsLogProvider> entry : myLogProviders.entrySet()) {
+        for (Map.Entry<VirtualFile, Pair<List<TimedVcsCommit>, Collection<VcsRef>>> entry : logsAndRefs.entrySet()) {
           VirtualFile root = entry.getKey();
-          VcsLogProvider logProvider = entry.getValue();
-          logs.put(root, logProvider.readAllHashes(root));
-          refs.put(root, logProvider.readAllRefs(root));
+          List<TimedVcsCommit> log = entry.getValue().getFirst();
+          logs.put(root, log);
+          refs.put(root, entry.getValue().getSecond());
+          myStorage.writeLog(root, log);
         }
         myLogData = new LogData(logs, refs);
+        indexInBackground();
+      }
+    });
+  }
+
+  /**
+   * Indexes commits of the whole log which are not indexed yet, reading their details from the VCS block by block.
+   */
+  private void indexInBackground() {
+    final LogData logData = myLogData;
+    if (logData == null) {
+      return;
+    }
+    final Map<VirtualFile, List<TimedVcsCommit>> logs = ContainerUtil.newHashMap(logData.myLogsByRoot);
+    myIndexingQueue.clear();
+    myIndexingQueue.run(new Task.Backgroundable(myProject, "Indexing history...") {
+      @Override
+      public void run(@NotNull ProgressIndicator indicator) {
+        for (Map.Entry<VirtualFile, List<TimedVcsCommit>> entry : logs.entrySet()) {
+          if (myProject.isDisposed()) {
+            return;
+          }
+          try {
+            indexMissingCommits(entry.getKey(), entry.getValue(), indicator);
+          }
+          catch (VcsException e) {
+            LOG.info("Couldn't index commits in " + entry.getKey(), e);
+          }
+        }
+      }
+    });
+  }
+
+  private void indexMissingCommits(@NotNull VirtualFile root, @NotNull List<TimedVcsCommit> log, @NotNull ProgressIndicator indicator)
+    throws VcsException {
+    List<String> hashes = new ArrayList<String>(VcsLogProvider.COMMIT_BLOCK_SIZE);
+    for (TimedVcsCommit commit : log) {
+      indicator.checkCanceled();
+      if (!myIndex.isIndexed(commit.getHash())) {
+        hashes.add(commit.getHash().asString());
+      }
+      if (hashes.size() == VcsLogProvider.COMMIT_BLOCK_SIZE) {
+        myIndex.index(root, getLogProvider(root).readFullDetails(root, hashes));
+        hashes.clear();
+      }
+    }
+    if (!hashes.isEmpty()) {
+      myIndex.index(root, getLogProvider(root).readFullDetails(root, hashes));
+    }
+    myIndex.flush();
+  }
+
+  /**
+   * Shows only commits which satisfy the given filter, or the whole log if the filter is null or empty.
+   * Commits of the whole log which are not indexed yet are indexed before the filter is applied.
+   *
+   * @param onApplied called on the EDT with false if no commit satisfies the filter: in that case the shown commits are not changed.
+   */
+  public void applyFilter(@Nullable final VcsLogFilter filter, @NotNull final Consumer<Boolean> onApplied) {
+    runInBackground(new ThrowableConsumer<ProgressIndicator, VcsException>() {
+      @Override
+      public void consume(ProgressIndicator indicator) throws VcsException {
+        final LogData logData = myLogData;
+        if (logData == null) {
+          LOG.info("The whole log is not available, can't apply the filter " + filter);
+          notifyFilterApplied(onApplied, false);
+          return;
+        }
+        VcsLogFilter newFilter = filter == null || filter.isEmpty() ? null : filter;
+        List<TimedVcsCommit> compoundLog = myMultiRepoJoiner.join(logData.myLogsByRoot.values());
+        DataPack dataPack;
+        if (newFilter == null) {
+          dataPack = DataPack.build(compoundLog, logData.getAllRefs(), indicator);
+        }
+        else {
+          indicator.setText("Indexing history...");
+          for (Map.Entry<VirtualFile, List<TimedVcsCommit>> entry : logData.myLogsByRoot.entrySet()) {
+            indexMissingCommits(entry.getKey(), entry.getValue(), indicator);
+          }
+          dataPack = buildFiltered(newFilter, logData, compoundLog, indicator);
+          if (dataPack == null) {
+            notifyFilterApplied(onApplied, false);
+            return;
+          }
+        }
+        myFilter = newFilter;
+        myDataPack = dataPack;
+        myFullLogShowing = true;
+        notifyFilterApplied(onApplied, true);
+      }
+    });
+  }
+
+  private void notifyFilterApplied(@NotNull final Consumer<Boolean> onApplied, final boolean applied) {
+    UIUtil.invokeAndWaitIfNeeded(new Runnable() {
+      @Override
+      public void run() {
+        if (applied) {
+          notifyAboutDataRefresh();
+        }
+        onApplied.consume(applied);
       }
     });
   }
 
+  /**
+   * Builds the data pack of the commits of the given log which satisfy the given filter,
+   * or returns null if there are no such commits or the index is not available.
+   */
+  @Nullable
+  private DataPack buildFiltered(@NotNull VcsLogFilter filter, @NotNull LogData logData, @NotNull List<TimedVcsCommit> compoundLog,
+                                 @NotNull ProgressIndicator indicator) {
+    Set<Hash> matchingHashes = myIndex.filter(filter);
+    if (matchingHashes == null) {
+      LOG.info("The index is not available, can't apply the filter " + filter);
+      return null;
+    }
+    List<TimedVcsCommit> matchingCommits = ContainerUtil.newArrayList();
+    for (TimedVcsCommit commit : compoundLog) {
+      if (matchingHashes.contains(commit.getHash())) {
+        matchingCommits.add(commit);
+      }
+    }
+    if (matchingCommits.isEmpty()) {
+      return null;
+    }
+    Map<Hash, VirtualFile> roots = ContainerUtil.newHashMap();
+    for (Map.Entry<VirtualFile, List<TimedVcsCommit>> entry : logData.myLogsByRoot.entrySet()) {
+      for (TimedVcsCommit commit : entry.getValue()) {
+        if (matchingHashes.contains(commit.getHash())) {
+          roots.put(commit.getHash(), entry.getKey());
+        }
+      }
+    }
+    return DataPack.buildUnconnected(matchingCommits, logData.getAllRefs(), roots, indicator);
+  }
+
+  @Nullable
+  public VcsLogFilter getFilter() {
+    return myFilter;
+  }
+
   public void showFullLog(@NotNull final Runnable onSuccess) {
     runInBackground(new ThrowableConsumer<ProgressIndicator, VcsException>() {
       @Override
@@ -185,81 +368,220 @@ public class VcsLogDataHolder implements Disposable {
    * @param onSuccess this task is called {@link UIUtil#invokeAndWaitIfNeeded(Runnable) on the EDT} after loading and graph
    *                  building completes.
    * @param invalidateWholeLog if the whole log data should be invalidated and will be retrieved in onSuccess.
+   * @param useStoredLog if the invalidated log data should be replaced with the log stored on disk, if it is available.
    */
-  private void loadFirstPart(@NotNull final Consumer<DataPack> onSuccess, final boolean invalidateWholeLog) {
+  private void loadFirstPart(@NotNull final Consumer<DataPack> onSuccess, final boolean invalidateWholeLog, final boolean useStoredLog) {
     runInBackground(new ThrowableConsumer<ProgressIndicator, VcsException>() {
       @Override
       public void consume(ProgressIndicator indicator) throws VcsException {
         if (invalidateWholeLog) {
-          myLogData = null;
+          myLogData = useStoredLog ? readStoredLog() : null;
+          myLogFromStorage = myLogData != null;
+        }
+        if (!buildFirstPart(indicator, onSuccess)) {
+          buildFirstPart(indicator, onSuccess);
         }
-        boolean ordered = !isFullLogReady(); // full log is not ready (or it is initial loading) => need to fairly query the VCS
+      }
+    });
+  }
 
-        Map<VirtualFile, List<TimedVcsCommit>> logsToBuild = ContainerUtil.newHashMap();
-        Collection<VcsRef> allRefs = ContainerUtil.newHashSet();
+  /**
+   * @return false if the first block couldn't be joined to the log stored on disk: in that case the stored log is dropped,
+   *         and nothing is built.
+   */
+  private boolean buildFirstPart(@NotNull ProgressIndicator indicator, @NotNull final Consumer<DataPack> onSuccess) throws VcsException {
+    final boolean ordered = !isFullLogReady(); // full log is not ready (or it is initial loading) => need to fairly query the VCS
 
-        for (Map.Entry<VirtualFile, VcsLogProvider> entry : myLogProviders.entrySet()) {
-          VirtualFile root = entry.getKey();
-          VcsLogProvider logProvider = entry.getValue();
-          List<? extends VcsFullCommitDetails> firstBlockDetails = logProvider.readFirstBlock(root, ordered);
-          Collection<VcsRef> newRefs = logProvider.readAllRefs(root);
+    Map<VirtualFile, List<TimedVcsCommit>> logsToBuild = ContainerUtil.newHashMap();
+    Collection<VcsRef> allRefs = ContainerUtil.newHashSet();
+
+    Map<VirtualFile, FirstBlock> firstBlocks = readFromRoots(indicator, new ThrowableConvertor<VirtualFile, FirstBlock, VcsException>() {
+      @Override
+      public FirstBlock convert(VirtualFile root) throws VcsException {
+        VcsLogProvider logProvider = getLogProvider(root);
+        return new FirstBlock(logProvider.readFirstBlock(root, ordered), logProvider.readAllRefs(root));
+      }
+    });
 
-          myDetailsGetter.saveInCache(firstBlockDetails);
-          myMiniDetailsGetter.saveInCache(firstBlockDetails);
+    for (Map.Entry<VirtualFile, FirstBlock> entry : firstBlocks.entrySet()) {
+      VirtualFile root = entry.getKey();
+      List<? extends VcsFullCommitDetails> firstBlockDetails = entry.getValue().myDetails;
+      Collection<VcsRef> newRefs = entry.getValue().myRefs;
 
-          List<TimedVcsCommit> firstBlockCommits = ContainerUtil.map(firstBlockDetails, new Function<VcsFullCommitDetails, TimedVcsCommit>() {
-            @Override
-            public TimedVcsCommit fun(VcsFullCommitDetails details) {
-              return myFactory.createTimedCommit(details.getHash(), details.getParents(), details.getAuthorTime());
-            }
-          });
+      myDetailsGetter.saveInCache(firstBlockDetails);
+      myMiniDetailsGetter.saveInCache(firstBlockDetails);
+      myIndex.index(root, firstBlockDetails);
 
-          List<TimedVcsCommit> refreshedLog;
-          int newCommitsCount;
-          if (ordered) {
-            // the whole log is not loaded before the first refresh
-            refreshedLog = new ArrayList<TimedVcsCommit>(firstBlockCommits);
-            newCommitsCount = 0;
-          }
-          else {
-            Pair<List<TimedVcsCommit>, Integer> joinResult = myLogJoiner.addCommits(myLogData.getLog(root), myLogData.getRefs(root),
-                                                                                       firstBlockCommits, newRefs);
-            refreshedLog = joinResult.getFirst();
-            newCommitsCount = joinResult.getSecond();
-          }
+      List<TimedVcsCommit> firstBlockCommits = ContainerUtil.map(firstBlockDetails, new Function<VcsFullCommitDetails, TimedVcsCommit>() {
+        @Override
+        public TimedVcsCommit fun(VcsFullCommitDetails details) {
+          return myFactory.createTimedCommit(details.getHash(), details.getParents(), details.getAuthorTime());
+        }
+      });
+
+      List<TimedVcsCommit> refreshedLog;
+      int newCommitsCount;
+      if (ordered) {
+        // the whole log is not loaded before the first refresh
+        refreshedLog = new ArrayList<TimedVcsCommit>(firstBlockCommits);
+        newCommitsCount = 0;
+      }
+      else {
+        List<TimedVcsCommit> savedLog = myLogData.getLog(root);
+        Collection<VcsRef> previousRefs = myLogData.getRefs(root);
+        Pair<List<TimedVcsCommit>, Integer> joinResult = myLogFromStorage
+                                                         ? myLogJoiner.tryAddCommits(savedLog, previousRefs, firstBlockCommits, newRefs)
+                                                         : myLogJoiner.addCommits(savedLog, previousRefs, firstBlockCommits, newRefs);
+        if (joinResult == null) {
+          // the stored log is too old to attach the first block to it
+          LOG.info("Couldn't join the stored log of " + root + ", reading it from the VCS");
+          myLogData = null;
+          myLogFromStorage = false;
+          return false;
+        }
+        refreshedLog = joinResult.getFirst();
+        newCommitsCount = joinResult.getSecond();
+        if (myLogFromStorage) {
+          refreshedLog = VcsLogJoiner.dropUnreachableCommits(refreshedLog, newRefs);
+        }
+        if (myLogFromStorage || newCommitsCount > 0) {
+          refreshedLog = new ArrayList<TimedVcsCommit>(refreshedLog); // the joiner returns a view over the previous log
+          myLogData.setLog(root, refreshedLog);
+          myStorage.writeLog(root, refreshedLog);
+        }
+      }
 
-          if (myFullLogShowing) {
-            logsToBuild.put(root, refreshedLog);
-          }
-          else {
-            int commitsToShow;
-            if (myDataPack != null) {
-              commitsToShow = myDataPack.getGraphModel().getGraph().getNodeRows().size() + newCommitsCount;
-            }
-            else {
-              commitsToShow = firstBlockDetails.size();
-            }
-            logsToBuild.put(root, refreshedLog.subList(0, Math.min(commitsToShow, refreshedLog.size())));
-          }
-          allRefs.addAll(newRefs);
+      if (myFullLogShowing) {
+        logsToBuild.put(root, refreshedLog);
+      }
+      else {
+        int commitsToShow;
+        if (myDataPack != null) {
+          commitsToShow = myDataPack.getGraphModel().getGraph().getNodeRows().size() + newCommitsCount;
+        }
+        else {
+          commitsToShow = firstBlockDetails.size();
+        }
+        logsToBuild.put(root, refreshedLog.subList(0, Math.min(commitsToShow, refreshedLog.size())));
+      }
+      allRefs.addAll(newRefs);
+
+      if (myLogData != null) {
+        myLogData.setRefs(root, newRefs); // update references, because the joiner needs to know reference changes after each refresh
+      }
+    }
+    myLogFromStorage = false;
+
+    List<TimedVcsCommit> compoundLog = myMultiRepoJoiner.join(logsToBuild.values());
+    DataPack filteredPack = null;
+    VcsLogFilter filter = myFilter;
+    if (filter != null && myLogData != null) {
+      // new commits are not indexed by the background indexing yet, but all of them are in the first block, which was just indexed
+      filteredPack = buildFiltered(filter, myLogData, compoundLog, indicator);
+      if (filteredPack == null) {
+        LOG.info("No commits satisfy the filter " + filter + " after refresh, the filter is reset");
+        myFilter = null;
+      }
+    }
+    myDataPack = filteredPack != null ? filteredPack : DataPack.build(compoundLog, allRefs, indicator);
+
+    UIUtil.invokeAndWaitIfNeeded(new Runnable() {
+      @Override
+      public void run() {
+        onSuccess.consume(myDataPack);
+      }
+    });
+    return true;
+  }
+
+  /**
+   * Reads the data of each root by the given reader, for several roots concurrently.
+   * The first error is rethrown after all started reads complete or are cancelled.
+   */
+  @NotNull
+  private <T> Map<VirtualFile, T> readFromRoots(@Nullable final ProgressIndicator indicator,
+                                                @NotNull final ThrowableConvertor<VirtualFile, T, VcsException> reader)
+    throws VcsException {
+    Map<VirtualFile, T> result = ContainerUtil.newHashMap();
+    if (myLogProviders.size() <= 1) {
+      for (VirtualFile root : myLogProviders.keySet()) {
+        result.put(root, reader.convert(root));
+      }
+      return result;
+    }
 
-          if (myLogData != null) {
-            myLogData.setRefs(root, newRefs); // update references, because the joiner needs to know reference changes after each refresh
-            // log is not updated: once loaded, joiner always join to the old part of it
+    int threads = Math.min(myLogProviders.size(), Math.min(MAX_CONCURRENT_ROOTS, Runtime.getRuntime().availableProcessors()));
+    Executor executor = new BoundedTaskExecutor(PooledThreadExecutor.INSTANCE, threads);
+    Map<VirtualFile, Future<T>> futures = ContainerUtil.newLinkedHashMap();
+    for (final VirtualFile root : myLogProviders.keySet()) {
+      FutureTask<T> task = new FutureTask<T>(new Callable<T>() {
+        @Override
+        public T call() throws Exception {
+          final Ref<T> data = Ref.create();
+          final Ref<VcsException> exception = Ref.create();
+          ProgressManager.getInstance().runProcess(new Runnable() {
+            @Override
+            public void run() {
+              try {
+                data.set(reader.convert(root));
+              }
+              catch (VcsException e) {
+                exception.set(e);
+              }
+            }
+          }, indicator);
+          if (!exception.isNull()) {
+            throw exception.get();
           }
+          return data.get();
         }
+      });
+      futures.put(root, task);
+      executor.execute(task);
+    }
 
-        List<TimedVcsCommit> compoundLog = myMultiRepoJoiner.join(logsToBuild.values());
-        myDataPack = DataPack.build(compoundLog, allRefs, indicator);
+    try {
+      for (Map.Entry<VirtualFile, Future<T>> entry : futures.entrySet()) {
+        result.put(entry.getKey(), entry.getValue().get());
+      }
+      return result;
+    }
+    catch (InterruptedException e) {
+      throw new ProcessCanceledException();
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof VcsException) {
+        throw (VcsException)cause;
+      }
+      if (cause instanceof ProcessCanceledException) {
+        throw (ProcessCanceledException)cause;
+      }
+      throw new RuntimeException(cause);
+    }
+    finally {
+      for (Future<T> future : futures.values()) {
+        future.cancel(false);
+      }
+    }
+  }
 
-        UIUtil.invokeAndWaitIfNeeded(new Runnable() {
-          @Override
-          public void run() {
-            onSuccess.consume(myDataPack);
-          }
-        });
+  /**
+   * Returns the whole log stored during the previous session, if it is available for all roots.
+   */
+  @Nullable
+  private LogData readStoredLog() {
+    Map<VirtualFile, List<TimedVcsCommit>> logs = ContainerUtil.newHashMap();
+    Map<VirtualFile, Collection<VcsRef>> refs = ContainerUtil.newHashMap();
+    for (VirtualFile root : myLogProviders.keySet()) {
+      List<TimedVcsCommit> log = myStorage.readLog(root);
+      if (log == null) {
+        return null;
       }
-    });
+      logs.put(root, log);
+      refs.put(root, new ArrayList<VcsRef>()); // the joiner takes the actual references, they will be updated after the first refresh
+    }
+    return new LogData(logs, refs);
   }
 
   private void runInBackground(final ThrowableConsumer<ProgressIndicator, VcsException> task) {
@@ -282,7 +604,7 @@ public class VcsLogDataHolder implements Disposable {
       public void consume(DataPack dataPack) {
         onSuccess.run();
       }
-    }, false);
+    }, false, false);
   }
 
   /**
@@ -295,7 +617,7 @@ public class VcsLogDataHolder implements Disposable {
       public void consume(VcsLogDataHolder holder) {
         notifyAboutDataRefresh();
       }
-    });
+    }, false);
   }
 
   /**
@@ -331,6 +653,11 @@ public class VcsLogDataHolder implements Disposable {
     }
   }
 
+  @NotNull
+  VcsLogIndex getIndex() {
+    return myIndex;
+  }
+
   public CommitDetailsGetter getCommitDetailsGetter() {
     return myDetailsGetter;
   }
@@ -344,6 +671,9 @@ public class VcsLogDataHolder implements Disposable {
   public void dispose() {
     myLogData = null;
     myDataLoaderQueue.clear();
+    myIndexingQueue.clear();
+    myIndex.dispose();
+    myStorage.dispose();
   }
 
   public boolean isFullLogReady() {
@@ -355,6 +685,19 @@ public class VcsLogDataHolder implements Disposable {
     return myLogProviders.get(root);
   }
 
+  /**
+   * The first block of commits of a root read from the VCS together with the references of the root.
+   */
+  private static class FirstBlock {
+    @NotNull private final List<? extends VcsFullCommitDetails> myDetails;
+    @NotNull private final Collection<VcsRef> myRefs;
+
+    private FirstBlock(@NotNull List<? extends VcsFullCommitDetails> details, @NotNull Collection<VcsRef> refs) {
+      myDetails = details;
+      myRefs = refs;
+    }
+  }
+
   /**
    * Contains full logs per repository root & references per root.
    */
@@ -390,6 +733,10 @@ public class VcsLogDataHolder implements Disposable {
     public void setRefs(@NotNull VirtualFile root, @NotNull Collection<VcsRef> refs) {
       myRefsByRoot.put(root, refs);
     }
+
+    public void setLog(@NotNull VirtualFile root, @NotNull List<TimedVcsCommit> log) {
+      myLogsByRoot.put(root, log);
+    }
   }
 
 }
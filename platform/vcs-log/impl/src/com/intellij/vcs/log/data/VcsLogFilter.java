@@ -0,0 +1,69 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.vcs.log.data;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Conditions which commits shown in the log should satisfy: all given conditions should be satisfied.
+ *
+ * @see VcsLogDataHolder#applyFilter(VcsLogFilter, com.intellij.util.Consumer)
+ */
+public class VcsLogFilter {
+
+  @Nullable private final String myText;
+  @Nullable private final String myUser;
+  @Nullable private final String myPath;
+
+  /**
+   * @param text text which the commit message should contain (ignoring case).
+   * @param user name or email of the commit author (ignoring case).
+   * @param path file which the commit should change, or directory containing such a file.
+   */
+  public VcsLogFilter(@Nullable String text, @Nullable String user, @Nullable String path) {
+    myText = StringUtil.nullize(text, true);
+    myUser = StringUtil.nullize(StringUtil.notNullize(user).trim());
+    String trimmedPath = StringUtil.nullize(StringUtil.notNullize(path).trim());
+    myPath = trimmedPath == null ? null : StringUtil.trimEnd(FileUtil.toSystemIndependentName(trimmedPath), "/");
+  }
+
+  @Nullable
+  public String getText() {
+    return myText;
+  }
+
+  @Nullable
+  public String getUser() {
+    return myUser;
+  }
+
+  @Nullable
+  public String getPath() {
+    return myPath;
+  }
+
+  public boolean isEmpty() {
+    return myText == null && myUser == null && myPath == null;
+  }
+
+  @Override
+  public String toString() {
+    return "text: " + myText + ", user: " + myUser + ", path: " + myPath;
+  }
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.vcs.log.data;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.util.text.TrigramBuilder;
+import com.intellij.openapi.vcs.changes.Change;
+import com.intellij.openapi.vcs.changes.ContentRevision;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.Processor;
+import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.io.*;
+import com.intellij.vcs.log.Hash;
+import com.intellij.vcs.log.VcsFullCommitDetails;
+import com.intellij.vcs.log.VcsLogObjectsFactory;
+import gnu.trove.TIntHashSet;
+import gnu.trove.TIntIterator;
+import gnu.trove.TIntProcedure;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>Persistent index of commit messages, authors and changed paths, which allows to filter the log without querying the VCS.</p>
+ * <p>Commits are identified by ids given by the index's own hash enumerator, so that the index doesn't depend on
+ *    how the {@link VcsLogStorage} enumerates and compacts its hashes. The index contains:
+ *   <ul>
+ *     <li>commit ids &rarr; messages;</li>
+ *     <li>message trigrams &rarr; commits; candidates found by trigrams are checked against the stored messages;</li>
+ *     <li>author names and emails (lower-cased) &rarr; commits;</li>
+ *     <li>changed files and all their parent directories up to the repository root &rarr; commits.</li>
+ *   </ul></p>
+ * <p>The index is filled in background by the {@link VcsLogDataHolder}, and also with the details which are loaded anyway.
+ *    Queries cover only {@link #isIndexed(Hash) indexed commits}, the caller is responsible for indexing the rest first.</p>
+ *
+ * @see VcsLogDataHolder#applyFilter(VcsLogFilter, com.intellij.util.Consumer)
+ */
+class VcsLogIndex {
+
+  private static final Logger LOG = Logger.getInstance(VcsLogIndex.class);
+  private static final int VERSION = 1;
+
+  @NotNull private final VcsLogObjectsFactory myFactory;
+  @NotNull private final File myDir;
+  @Nullable private PersistentEnumerator<String> myHashes;
+  @Nullable private PersistentHashMap<Integer, String> myMessages;
+  @Nullable private PersistentHashMap<Integer, TIntHashSet> myTrigrams;
+  @Nullable private PersistentHashMap<String, TIntHashSet> myUsers;
+  @Nullable private PersistentHashMap<String, TIntHashSet> myPaths;
+
+  VcsLogIndex(@NotNull Project project, @NotNull VcsLogObjectsFactory factory) {
+    this(new File(new File(PathManager.getSystemPath(), "vcs-log-index"), project.getName() + "." + project.getLocationHash()),
+         factory);
+  }
+
+  VcsLogIndex(@NotNull File dir, @NotNull VcsLogObjectsFactory factory) {
+    myFactory = factory;
+    myDir = new File(dir, String.valueOf(VERSION));
+    try {
+      openMaps();
+    }
+    catch (IOException e) {
+      LOG.info(e);
+      closeMaps();
+      FileUtil.delete(myDir);
+      try {
+        openMaps();
+      }
+      catch (IOException e1) {
+        LOG.error(e1);
+        closeMaps();
+      }
+    }
+  }
+
+  private void openMaps() throws IOException {
+    myHashes = new PersistentEnumerator<String>(new File(myDir, "hashes"), new EnumeratorStringDescriptor(), 16 * 1024);
+    myMessages = new PersistentHashMap<Integer, String>(new File(myDir, "messages"), EnumeratorIntegerDescriptor.INSTANCE,
+                                                       new EnumeratorStringDescriptor());
+    myTrigrams = new PersistentHashMap<Integer, TIntHashSet>(new File(myDir, "trigrams"), EnumeratorIntegerDescriptor.INSTANCE,
+                                                             new IdSetExternalizer());
+    myUsers = new PersistentHashMap<String, TIntHashSet>(new File(myDir, "users"), new EnumeratorStringDescriptor(),
+                                                         new IdSetExternalizer());
+    myPaths = new PersistentHashMap<String, TIntHashSet>(new File(myDir, "paths"), new EnumeratorStringDescriptor(),
+                                                         new IdSetExternalizer());
+  }
+
+  /**
+   * Adds the given commits of the given root to the index. Commits which are already indexed are skipped.
+   */
+  public synchronized void index(@NotNull VirtualFile root, @NotNull List<? extends VcsFullCommitDetails> details) {
+    if (myHashes == null) {
+      return;
+    }
+    try {
+      for (VcsFullCommitDetails detail : details) {
+        int commit = myHashes.enumerate(detail.getHash().asString());
+        if (myMessages.containsMapping(commit)) {
+          continue;
+        }
+        String message = detail.getFullMessage();
+
+        TIntIterator trigrams = TrigramBuilder.buildTrigram(message).iterator();
+        while (trigrams.hasNext()) {
+          appendId(myTrigrams, trigrams.next(), commit);
+        }
+        for (String user : ContainerUtil.newHashSet(detail.getAuthorName(), detail.getAuthorEmail())) {
+          if (!user.isEmpty()) {
+            appendId(myUsers, StringUtil.toLowerCase(user), commit);
+          }
+        }
+        for (String path : getChangedPaths(root, detail.getChanges())) {
+          appendId(myPaths, path, commit);
+        }
+        // the message is put last: the commit is considered indexed only when all its data is in the index
+        myMessages.put(commit, message);
+      }
+    }
+    catch (IOException e) {
+      LOG.info(e);
+    }
+  }
+
+  public synchronized boolean isIndexed(@NotNull Hash hash) {
+    if (myHashes == null) {
+      return false;
+    }
+    try {
+      return myMessages.containsMapping(myHashes.enumerate(hash.asString()));
+    }
+    catch (IOException e) {
+      LOG.info(e);
+      return false;
+    }
+  }
+
+  /**
+   * Returns indexed commits which satisfy the given filter, or null if the index is not available.
+   */
+  @Nullable
+  public synchronized Set<Hash> filter(@NotNull VcsLogFilter filter) {
+    if (myHashes == null) {
+      return null;
+    }
+    try {
+      TIntHashSet result = null;
+      if (filter.getUser() != null) {
+        result = intersect(result, getIds(myUsers.get(StringUtil.toLowerCase(filter.getUser()))));
+      }
+      if (filter.getPath() != null) {
+        result = intersect(result, getIds(myPaths.get(filter.getPath())));
+      }
+      if (filter.getText() != null) {
+        result = filterByText(result, filter.getText());
+      }
+      return result == null ? null : toHashes(result);
+    }
+    catch (IOException e) {
+      LOG.info(e);
+      return null;
+    }
+  }
+
+  /**
+   * Returns commits which messages contain the given text ignoring case, among the given candidates if they are given.
+   */
+  @NotNull
+  private TIntHashSet filterByText(@Nullable TIntHashSet candidates, @NotNull final String text) throws IOException {
+    TIntIterator trigrams = TrigramBuilder.buildTrigram(text).iterator();
+    while (trigrams.hasNext()) {
+      candidates = intersect(candidates, getIds(myTrigrams.get(trigrams.next())));
+      if (candidates.isEmpty()) {
+        return candidates;
+      }
+    }
+    final TIntHashSet result = new TIntHashSet();
+    if (candidates == null) {
+      // the text is shorter than a trigram, so check all messages
+      myMessages.processKeysWithExistingMapping(new Processor<Integer>() {
+        @Override
+        public boolean process(Integer commit) {
+          try {
+            addIfMessageContains(result, commit, text);
+            return true;
+          }
+          catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      });
+    }
+    else {
+      TIntIterator iterator = candidates.iterator();
+      while (iterator.hasNext()) {
+        addIfMessageContains(result, iterator.next(), text);
+      }
+    }
+    return result;
+  }
+
+  private void addIfMessageContains(@NotNull TIntHashSet result, int commit, @NotNull String text) throws IOException {
+    String message = myMessages.get(commit);
+    if (message != null && StringUtil.containsIgnoreCase(message, text)) {
+      result.add(commit);
+    }
+  }
+
+  public synchronized void flush() {
+    if (myHashes != null && myHashes.isDirty()) {
+      myHashes.force();
+    }
+    for (PersistentHashMap<?, ?> map : getMaps()) {
+      if (map != null && map.isDirty()) {
+        map.force();
+      }
+    }
+  }
+
+  public synchronized void dispose() {
+    closeMaps();
+  }
+
+  private void closeMaps() {
+    close(myHashes);
+    for (PersistentHashMap<?, ?> map : getMaps()) {
+      close(map);
+    }
+    myHashes = null;
+    myMessages = null;
+    myTrigrams = null;
+    myUsers = null;
+    myPaths = null;
+  }
+
+  @NotNull
+  private PersistentHashMap<?, ?>[] getMaps() {
+    return new PersistentHashMap<?, ?>[]{myMessages, myTrigrams, myUsers, myPaths};
+  }
+
+  private static void close(@Nullable Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      }
+      catch (IOException e) {
+        LOG.info(e);
+      }
+    }
+  }
+
+  @NotNull
+  private static Collection<String> getChangedPaths(@NotNull VirtualFile root, @NotNull Collection<Change> changes) {
+    String rootPath = root.getPath();
+    Set<String> paths = ContainerUtil.newHashSet();
+    for (Change change : changes) {
+      for (ContentRevision revision : new ContentRevision[]{change.getBeforeRevision(), change.getAfterRevision()}) {
+        if (revision == null) {
+          continue;
+        }
+        String path = FileUtil.toSystemIndependentName(revision.getFile().getIOFile().getPath());
+        while (path.length() > rootPath.length() && paths.add(path)) {
+          int separator = path.lastIndexOf('/');
+          if (separator <= 0) {
+            break;
+          }
+          path = path.substring(0, separator);
+        }
+      }
+    }
+    return paths;
+  }
+
+  private static <K> void appendId(@NotNull PersistentHashMap<K, TIntHashSet> map, @NotNull K key, final int commit) throws IOException {
+    map.appendData(key, new PersistentHashMap.ValueDataAppender() {
+      @Override
+      public void append(DataOutput out) throws IOException {
+        DataInputOutputUtil.writeINT(out, commit);
+      }
+    });
+  }
+
+  @NotNull
+  private static TIntHashSet getIds(@Nullable TIntHashSet ids) {
+    return ids == null ? new TIntHashSet() : ids;
+  }
+
+  /**
+   * Returns the intersection of the given sets, where null stands for the set of all commits.
+   */
+  @NotNull
+  private static TIntHashSet intersect(@Nullable TIntHashSet set1, @NotNull final TIntHashSet set2) {
+    if (set1 == null) {
+      return set2;
+    }
+    final TIntHashSet result = new TIntHashSet();
+    set1.forEach(new TIntProcedure() {
+      @Override
+      public boolean execute(int value) {
+        if (set2.contains(value)) {
+          result.add(value);
+        }
+        return true;
+      }
+    });
+    return result;
+  }
+
+  @NotNull
+  private Set<Hash> toHashes(@NotNull TIntHashSet commits) throws IOException {
+    assert myHashes != null;
+    Set<Hash> result = ContainerUtil.newHashSet();
+    TIntIterator iterator = commits.iterator();
+    while (iterator.hasNext()) {
+      String hash = myHashes.valueOf(iterator.next());
+      if (hash != null) {
+        result.add(myFactory.createHash(hash));
+      }
+    }
+    return result;
+  }
+
+  private static class IdSetExternalizer implements DataExternalizer<TIntHashSet> {
+    @Override
+    public void save(DataOutput out, TIntHashSet value) throws IOException {
+      TIntIterator iterator = value.iterator();
+      while (iterator.hasNext()) {
+        DataInputOutputUtil.writeINT(out, iterator.next());
+      }
+    }
+
+    @Override
+    public TIntHashSet read(DataInput in) throws IOException {
+      TIntHashSet result = new TIntHashSet();
+      DataInputStream stream = (DataInputStream)in;
+      while (stream.available() > 0) {
+        result.add(DataInputOutputUtil.readINT(stream));
+      }
+      return result;
+    }
+  }
+}
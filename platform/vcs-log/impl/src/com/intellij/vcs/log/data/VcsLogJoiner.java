@@ -15,6 +15,7 @@
  */
 package com.intellij.vcs.log.data;
 
+import com.intellij.openapi.util.Condition;
 import com.intellij.openapi.util.Pair;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.containers.HashSet;
@@ -22,6 +23,7 @@ import com.intellij.vcs.log.*;
 import com.intellij.vcs.log.TimedVcsCommit;
 import com.intellij.vcs.log.VcsCommit;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 
@@ -47,11 +49,27 @@ public class VcsLogJoiner {
                                                            @NotNull Collection<VcsRef> previousRefs,
                                                            @NotNull List<? extends TimedVcsCommit> firstBlock,
                                                            @NotNull Collection<VcsRef> newRefs) {
-    int unsafeBlockSize = getFirstSafeIndex(savedLog, firstBlock, newRefs);
-    if (unsafeBlockSize == -1) { // firstBlock not enough
+    Pair<List<TimedVcsCommit>, Integer> result = tryAddCommits(savedLog, previousRefs, firstBlock, newRefs);
+    if (result == null) { // firstBlock not enough
       //TODO
       throw new IllegalStateException();
     }
+    return result;
+  }
+
+  /**
+   * Same as {@link #addCommits(List, Collection, List, Collection)}, but returns null if the first block is not enough
+   * to attach it to the saved log, e.g. when the saved log was stored on disk long ago.
+   */
+  @Nullable
+  public Pair<List<TimedVcsCommit>, Integer> tryAddCommits(@NotNull List<TimedVcsCommit> savedLog,
+                                                              @NotNull Collection<VcsRef> previousRefs,
+                                                              @NotNull List<? extends TimedVcsCommit> firstBlock,
+                                                              @NotNull Collection<VcsRef> newRefs) {
+    int unsafeBlockSize = getFirstSafeIndex(savedLog, firstBlock, newRefs);
+    if (unsafeBlockSize == -1) {
+      return null;
+    }
 
     List<TimedVcsCommit> unsafePartSavedLog = new ArrayList<TimedVcsCommit>(savedLog.subList(0, unsafeBlockSize));
     Set<TimedVcsCommit> allNewsCommits = getAllNewCommits(unsafePartSavedLog, firstBlock);
@@ -61,6 +79,38 @@ public class VcsLogJoiner {
                        allNewsCommits.size());
   }
 
+  /**
+   * Returns the log without commits which are not reachable from the given references.
+   */
+  @NotNull
+  public static List<TimedVcsCommit> dropUnreachableCommits(@NotNull List<TimedVcsCommit> log, @NotNull Collection<VcsRef> refs) {
+    Map<Hash, TimedVcsCommit> commits = ContainerUtil.newHashMap();
+    for (TimedVcsCommit commit : log) {
+      commits.put(commit.getHash(), commit);
+    }
+    final Set<Hash> reachable = ContainerUtil.newHashSet();
+    Deque<Hash> toVisit = new ArrayDeque<Hash>();
+    for (VcsRef ref : refs) {
+      toVisit.add(ref.getCommitHash());
+    }
+    while (!toVisit.isEmpty()) {
+      Hash hash = toVisit.poll();
+      TimedVcsCommit commit = commits.get(hash);
+      if (commit != null && reachable.add(hash)) {
+        toVisit.addAll(commit.getParents());
+      }
+    }
+    if (reachable.size() == log.size()) {
+      return log;
+    }
+    return ContainerUtil.filter(log, new Condition<TimedVcsCommit>() {
+      @Override
+      public boolean value(TimedVcsCommit commit) {
+        return reachable.contains(commit.getHash());
+      }
+    });
+  }
+
   /**
    *
    * @param savedLog       currently available part of the log.
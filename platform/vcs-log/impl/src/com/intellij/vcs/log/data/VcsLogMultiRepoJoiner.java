@@ -1,12 +1,15 @@
 package com.intellij.vcs.log.data;
 
-import com.intellij.util.containers.ContainerUtil;
 import com.intellij.vcs.log.TimedVcsCommit;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.*;
 
 /**
+ * Joins logs of several repositories into a single log ordered by commit timestamps.
+ * <p/>
+ * Logs are merged via a priority queue of their heads, so the top of the joined log doesn't depend on the number of repositories.
+ *
  * @author Kirill Likhodedov
  */
 class VcsLogMultiRepoJoiner {
@@ -19,40 +22,49 @@ class VcsLogMultiRepoJoiner {
     }
     List<TimedVcsCommit> result = new ArrayList<TimedVcsCommit>(size);
 
-    Map<TimedVcsCommit, Iterator<? extends TimedVcsCommit>> nextCommits = ContainerUtil.newHashMap();
+    PriorityQueue<LogHead> heads = new PriorityQueue<LogHead>(Math.max(1, logsFromRepos.size()));
+    int repoIndex = 0;
     for (List<? extends TimedVcsCommit> log : logsFromRepos) {
       Iterator<? extends TimedVcsCommit> iterator = log.iterator();
       if (iterator.hasNext()) {
-        nextCommits.put(iterator.next(), iterator);
+        heads.add(new LogHead(iterator.next(), iterator, repoIndex));
       }
+      repoIndex++;
     }
 
-    while (!nextCommits.isEmpty()) {
-      TimedVcsCommit lastCommit = findLatestCommit(nextCommits.keySet());
-      Iterator<? extends TimedVcsCommit> iterator = nextCommits.get(lastCommit);
-      result.add(lastCommit);
-      nextCommits.remove(lastCommit);
-
-      if (iterator.hasNext()) {
-        nextCommits.put(iterator.next(), iterator);
+    while (!heads.isEmpty()) {
+      LogHead latest = heads.poll();
+      result.add(latest.myCommit);
+      if (latest.myIterator.hasNext()) {
+        latest.myCommit = latest.myIterator.next();
+        heads.add(latest);
       }
     }
 
     return result;
   }
 
-  @NotNull
-  private static TimedVcsCommit findLatestCommit(@NotNull Set<TimedVcsCommit> commits) {
-    long maxTimeStamp = 0;
-    TimedVcsCommit lastCommit = null;
-    for (TimedVcsCommit commit : commits) {
-      if (commit.getAuthorTime() > maxTimeStamp) {
-        maxTimeStamp = commit.getAuthorTime();
-        lastCommit = commit;
+  private static class LogHead implements Comparable<LogHead> {
+    @NotNull private TimedVcsCommit myCommit;
+    @NotNull private final Iterator<? extends TimedVcsCommit> myIterator;
+    private final int myRepoIndex;
+
+    LogHead(@NotNull TimedVcsCommit commit, @NotNull Iterator<? extends TimedVcsCommit> iterator, int repoIndex) {
+      myCommit = commit;
+      myIterator = iterator;
+      myRepoIndex = repoIndex;
+    }
+
+    @Override
+    public int compareTo(@NotNull LogHead o) {
+      // the latest commit first; repositories are taken in their order if timestamps are equal
+      long time = myCommit.getAuthorTime();
+      long otherTime = o.myCommit.getAuthorTime();
+      if (time != otherTime) {
+        return time > otherTime ? -1 : 1;
       }
+      return myRepoIndex - o.myRepoIndex;
     }
-    assert lastCommit != null;
-    return lastCommit;
   }
 
 }
@@ -0,0 +1,403 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.vcs.log.data;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.BufferExposingByteArrayOutputStream;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.io.DataInputOutputUtil;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.PersistentEnumerator;
+import com.intellij.vcs.log.Hash;
+import com.intellij.vcs.log.TimedVcsCommit;
+import com.intellij.vcs.log.VcsLogObjectsFactory;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Keeps the whole log of each repository on disk between IDE sessions,
+ *    so that the log is not re-read from the VCS each time it is opened.</p>
+ * <p>Hashes are enumerated by the {@link PersistentEnumerator}, and the log of a root is stored as a compact sequence of integers:
+ *    hash id, timestamp and parent ids for each commit, from the oldest commit to the latest one.
+ *    Since a refresh usually changes only the top of the log, the stored log is not rewritten after it:
+ *    the common oldest part is kept in place, and only the commits after it are written.</p>
+ * <p>Hashes of commits which are not in the log anymore (after rebases, amends, removed branches) stay in the enumerator,
+ *    so when it holds much more hashes than the stored logs use, it is recreated from the logs known to this session.</p>
+ * <p>The storage is accessed from the {@link VcsLogDataHolder} data loading queue, which is sequential.</p>
+ *
+ * @see VcsLogDataHolder
+ */
+class VcsLogStorage {
+
+  private static final Logger LOG = Logger.getInstance(VcsLogStorage.class);
+  private static final int VERSION = 2;
+
+  /**
+   * Offset of the commits count in a log file. The count is {@link #INCOMPLETE} while the file is being updated,
+   * so that a log which was not written completely is not read.
+   */
+  private static final int COUNT_OFFSET = 4;
+  private static final int INCOMPLETE = -1;
+
+  /** The enumerator is recreated only if it holds at least this number of hashes, and twice as much as the stored logs use. */
+  static final int MIN_HASHES_TO_COMPACT = 10000;
+
+  @NotNull private final VcsLogObjectsFactory myFactory;
+  @NotNull private final File myDir;
+  /** Logs read or written during this session by root paths, they are used to update log files and to recreate the enumerator. */
+  @NotNull private final Map<String, StoredLog> myStoredLogs = ContainerUtil.newHashMap();
+  @Nullable private PersistentEnumerator<String> myHashes;
+  /** The number of hashes in the enumerator. */
+  private int myHashesCount;
+
+  VcsLogStorage(@NotNull Project project, @NotNull VcsLogObjectsFactory factory) {
+    this(new File(new File(PathManager.getSystemPath(), "vcs-log"), project.getName() + "." + project.getLocationHash()), factory);
+  }
+
+  VcsLogStorage(@NotNull File dir, @NotNull VcsLogObjectsFactory factory) {
+    myFactory = factory;
+    myDir = dir;
+    if (!getHashesFile().exists()) {
+      // logs of other versions or without hashes are useless
+      FileUtil.delete(myDir);
+    }
+    try {
+      openHashes();
+    }
+    catch (IOException e) {
+      LOG.info(e);
+      FileUtil.delete(myDir);
+      try {
+        openHashes();
+      }
+      catch (IOException e1) {
+        LOG.error(e1);
+      }
+    }
+  }
+
+  private void openHashes() throws IOException {
+    myHashes = new PersistentEnumerator<String>(getHashesFile(), new EnumeratorStringDescriptor(), 16 * 1024);
+    myHashesCount = 0;
+    File countFile = getHashesCountFile();
+    if (countFile.exists()) {
+      DataInputStream in = new DataInputStream(new FileInputStream(countFile));
+      try {
+        myHashesCount = DataInputOutputUtil.readINT(in);
+      }
+      finally {
+        close(in);
+      }
+    }
+  }
+
+  /**
+   * Returns the log of the given root stored during the previous session, or null if there is no (valid) stored log.
+   */
+  @Nullable
+  public synchronized List<TimedVcsCommit> readLog(@NotNull VirtualFile root) {
+    if (myHashes == null) {
+      return null;
+    }
+    String rootPath = root.getPath();
+    File logFile = getLogFile(rootPath);
+    if (!logFile.exists()) {
+      return null;
+    }
+    try {
+      byte[] bytes = FileUtil.loadFileBytes(logFile);
+      ByteArrayInputStream stream = new ByteArrayInputStream(bytes);
+      DataInputStream in = new DataInputStream(stream);
+      if (in.readInt() != VERSION) {
+        return null;
+      }
+      int size = in.readInt();
+      if (size == INCOMPLETE || !rootPath.equals(in.readUTF())) {
+        return null;
+      }
+      long headerEnd = bytes.length - stream.available();
+      TimedVcsCommit[] commits = new TimedVcsCommit[size];
+      long[] ends = new long[size];
+      for (int i = 0; i < size; i++) {
+        commits[size - 1 - i] = readCommit(in);
+        ends[i] = bytes.length - stream.available();
+      }
+      if (stream.available() > 0) {
+        throw new IOException("Unexpected data after " + size + " commits");
+      }
+      List<TimedVcsCommit> log = new ArrayList<TimedVcsCommit>(Arrays.asList(commits));
+      myStoredLogs.put(rootPath, new StoredLog(log, headerEnd, ends));
+      return log;
+    }
+    catch (IOException e) {
+      LOG.info("Couldn't read the stored log for " + root, e);
+      FileUtil.delete(logFile);
+      return null;
+    }
+  }
+
+  /**
+   * Replaces the stored log of the given root.
+   * If the log was read or written during this session, only the commits after its common oldest part are written.
+   */
+  public synchronized void writeLog(@NotNull VirtualFile root, @NotNull List<TimedVcsCommit> log) {
+    if (myHashes == null) {
+      return;
+    }
+    String rootPath = root.getPath();
+    StoredLog stored = myStoredLogs.get(rootPath);
+    try {
+      if (stored != null && getLogFile(rootPath).exists()) {
+        myStoredLogs.put(rootPath, write(rootPath, log, stored, countCommonOldestCommits(stored.myLog, log)));
+      }
+      else {
+        myStoredLogs.put(rootPath, write(rootPath, log, null, 0));
+      }
+      saveHashesCount();
+    }
+    catch (IOException e) {
+      LOG.info("Couldn't store the log for " + root, e);
+      myStoredLogs.remove(rootPath);
+      FileUtil.delete(getLogFile(rootPath));
+      return;
+    }
+
+    if (needsCompaction()) {
+      try {
+        compact();
+      }
+      catch (IOException e) {
+        LOG.info("Couldn't compact the stored logs", e);
+        closeHashes();
+        myStoredLogs.clear();
+        FileUtil.delete(myDir);
+      }
+    }
+  }
+
+  /**
+   * Writes the given log, keeping the given number of the oldest commits of the stored log, if it is given, in place.
+   */
+  @NotNull
+  private StoredLog write(@NotNull String rootPath, @NotNull List<TimedVcsCommit> log, @Nullable StoredLog stored, int keptCommits)
+    throws IOException {
+    File logFile = getLogFile(rootPath);
+    FileUtil.createParentDirs(logFile);
+    RandomAccessFile file = new RandomAccessFile(logFile, "rw");
+    try {
+      long[] ends = new long[log.size()];
+      long headerEnd;
+      if (stored == null) {
+        BufferExposingByteArrayOutputStream header = new BufferExposingByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(header);
+        out.writeInt(VERSION);
+        out.writeInt(INCOMPLETE);
+        out.writeUTF(rootPath);
+        file.setLength(0);
+        file.write(header.getInternalBuffer(), 0, header.size());
+        headerEnd = header.size();
+      }
+      else {
+        file.seek(COUNT_OFFSET);
+        file.writeInt(INCOMPLETE);
+        headerEnd = stored.myHeaderEnd;
+        System.arraycopy(stored.myEnds, 0, ends, 0, keptCommits);
+      }
+
+      long position = keptCommits == 0 ? headerEnd : ends[keptCommits - 1];
+      BufferExposingByteArrayOutputStream buffer = new BufferExposingByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(buffer);
+      for (int i = keptCommits; i < log.size(); i++) {
+        writeCommit(out, log.get(log.size() - 1 - i));
+        ends[i] = position + buffer.size();
+      }
+      file.seek(position);
+      file.write(buffer.getInternalBuffer(), 0, buffer.size());
+      file.setLength(position + buffer.size());
+
+      // the log may be marked as complete only when all its hashes are on disk
+      assert myHashes != null;
+      myHashes.force();
+      file.seek(COUNT_OFFSET);
+      file.writeInt(log.size());
+      return new StoredLog(log, headerEnd, ends);
+    }
+    finally {
+      file.close();
+    }
+  }
+
+  private boolean needsCompaction() {
+    int usedHashes = 0;
+    for (StoredLog log : myStoredLogs.values()) {
+      usedHashes += log.myLog.size();
+    }
+    return myHashesCount >= MIN_HASHES_TO_COMPACT && myHashesCount > 2 * usedHashes;
+  }
+
+  /**
+   * Recreates the enumerator from the logs known to this session, logs of other roots are dropped.
+   */
+  private void compact() throws IOException {
+    LOG.info("Compacting the stored logs: " + myHashesCount + " hashes are stored for " + myStoredLogs.size() + " roots");
+    closeHashes();
+    FileUtil.delete(myDir);
+    openHashes();
+    for (Map.Entry<String, StoredLog> entry : myStoredLogs.entrySet()) {
+      entry.setValue(write(entry.getKey(), entry.getValue().myLog, null, 0));
+    }
+    saveHashesCount();
+  }
+
+  public synchronized void dispose() {
+    closeHashes();
+    myStoredLogs.clear();
+  }
+
+  private void closeHashes() {
+    if (myHashes != null) {
+      try {
+        myHashes.close();
+      }
+      catch (IOException e) {
+        LOG.info(e);
+      }
+      myHashes = null;
+    }
+  }
+
+  @TestOnly
+  synchronized int getHashesCount() {
+    return myHashesCount;
+  }
+
+  /**
+   * Returns the number of commits at the end of both logs (i.e. the oldest ones), which are the same.
+   */
+  private static int countCommonOldestCommits(@NotNull List<TimedVcsCommit> oldLog, @NotNull List<TimedVcsCommit> newLog) {
+    int common = 0;
+    int max = Math.min(oldLog.size(), newLog.size());
+    while (common < max &&
+           oldLog.get(oldLog.size() - 1 - common).getHash().equals(newLog.get(newLog.size() - 1 - common).getHash())) {
+      common++;
+    }
+    return common;
+  }
+
+  private void writeCommit(@NotNull DataOutput out, @NotNull TimedVcsCommit commit) throws IOException {
+    DataInputOutputUtil.writeINT(out, enumerate(commit.getHash()));
+    out.writeLong(commit.getAuthorTime());
+    List<Hash> parents = commit.getParents();
+    DataInputOutputUtil.writeINT(out, parents.size());
+    for (Hash parent : parents) {
+      DataInputOutputUtil.writeINT(out, enumerate(parent));
+    }
+  }
+
+  @NotNull
+  private TimedVcsCommit readCommit(@NotNull DataInput in) throws IOException {
+    Hash hash = readHash(in);
+    long time = in.readLong();
+    int parentsCount = DataInputOutputUtil.readINT(in);
+    List<Hash> parents = new ArrayList<Hash>(parentsCount);
+    for (int j = 0; j < parentsCount; j++) {
+      parents.add(readHash(in));
+    }
+    return myFactory.createTimedCommit(hash, parents, time);
+  }
+
+  private int enumerate(@NotNull Hash hash) throws IOException {
+    assert myHashes != null;
+    int largestId = myHashes.getLargestId();
+    int id = myHashes.enumerate(hash.asString());
+    if (myHashes.getLargestId() != largestId) {
+      myHashesCount++;
+    }
+    return id;
+  }
+
+  @NotNull
+  private Hash readHash(@NotNull DataInput in) throws IOException {
+    assert myHashes != null;
+    String hash = myHashes.valueOf(DataInputOutputUtil.readINT(in));
+    if (hash == null) {
+      throw new IOException("Unknown hash id");
+    }
+    return myFactory.createHash(hash);
+  }
+
+  private void saveHashesCount() throws IOException {
+    DataOutputStream out = new DataOutputStream(new FileOutputStream(getHashesCountFile()));
+    try {
+      DataInputOutputUtil.writeINT(out, myHashesCount);
+    }
+    finally {
+      close(out);
+    }
+  }
+
+  @NotNull
+  private File getHashesFile() {
+    return new File(myDir, "hashes." + VERSION);
+  }
+
+  @NotNull
+  private File getHashesCountFile() {
+    return new File(myDir, "hashcount." + VERSION);
+  }
+
+  @NotNull
+  private File getLogFile(@NotNull String rootPath) {
+    return new File(myDir, "log." + Integer.toHexString(rootPath.hashCode()) + "." + VERSION);
+  }
+
+  private static void close(@Nullable Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      }
+      catch (IOException e) {
+        LOG.info(e);
+      }
+    }
+  }
+
+  /**
+   * The log of a root as it is stored on disk: the commits and the end offsets of their records, from the oldest commit.
+   */
+  private static class StoredLog {
+    @NotNull private final List<TimedVcsCommit> myLog;
+    private final long myHeaderEnd;
+    @NotNull private final long[] myEnds;
+
+    private StoredLog(@NotNull List<TimedVcsCommit> log, long headerEnd, @NotNull long[] ends) {
+      myLog = log;
+      myHeaderEnd = headerEnd;
+      myEnds = ends;
+    }
+  }
+}
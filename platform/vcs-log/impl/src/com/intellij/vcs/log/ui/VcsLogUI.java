@@ -3,11 +3,14 @@ package com.intellij.vcs.log.ui;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.util.Consumer;
 import com.intellij.util.ui.UIUtil;
 import com.intellij.vcs.log.Hash;
 import com.intellij.vcs.log.compressedlist.UpdateRequest;
 import com.intellij.vcs.log.data.DataPack;
 import com.intellij.vcs.log.data.VcsLogDataHolder;
+import com.intellij.vcs.log.data.VcsLogFilter;
 import com.intellij.vcs.log.graph.elements.GraphElement;
 import com.intellij.vcs.log.graph.elements.Node;
 import com.intellij.vcs.log.graphmodel.FragmentManager;
@@ -176,6 +179,23 @@ public class VcsLogUI {
     }
   }
 
+  /**
+   * Shows only commits which satisfy the given filter, or all commits if the filter is null.
+   */
+  public void applyFilter(@Nullable final VcsLogFilter filter) {
+    myLogDataHolder.applyFilter(filter, new Consumer<Boolean>() {
+      @Override
+      public void consume(Boolean applied) {
+        if (applied) {
+          jumpToRow(0);
+        }
+        else {
+          Messages.showInfoMessage(myMainFrame.getMainComponent(), "No commits satisfy the filter", "Filter Commits");
+        }
+      }
+    });
+  }
+
   @NotNull
   public VcsLogColorManager getColorManager() {
     return myColorManager;
@@ -101,10 +101,38 @@ public class MainFrame {
       }
     };
 
+    AnAction filterAction = new DumbAwareAction("Filter commits", "Show only commits with the given message, author or changed path",
+                                                AllIcons.General.Filter) {
+      @Override
+      public void actionPerformed(AnActionEvent e) {
+        VcsLogFilterDialog dialog = new VcsLogFilterDialog(myProject, myLogDataHolder.getFilter());
+        if (dialog.showAndGet()) {
+          myUI.applyFilter(dialog.getFilter());
+        }
+      }
+
+      @Override
+      public void update(AnActionEvent e) {
+        e.getPresentation().setEnabled(myLogDataHolder.isFullLogReady());
+      }
+    };
+
+    AnAction clearFilterAction = new DumbAwareAction("Clear filter", "Show all commits", AllIcons.Actions.Cancel) {
+      @Override
+      public void actionPerformed(AnActionEvent e) {
+        myUI.applyFilter(null);
+      }
+
+      @Override
+      public void update(AnActionEvent e) {
+        e.getPresentation().setEnabled(myLogDataHolder.getFilter() != null);
+      }
+    };
+
     refreshAction.registerShortcutOn(myMainPanel);
 
     DefaultActionGroup toolbarGroup = new DefaultActionGroup(hideBranchesAction, showBranchesAction, showFullPatchAction, refreshAction,
-                                                             showDetailsAction);
+                                                             showDetailsAction, filterAction, clearFilterAction);
     return ActionManager.getInstance().createActionToolbar(ActionPlaces.UNKNOWN, toolbarGroup, true).getComponent();
   }
 
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.vcs.log.ui.frame;
+
+import com.intellij.openapi.fileChooser.FileChooserDescriptor;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.DialogWrapper;
+import com.intellij.openapi.ui.TextFieldWithBrowseButton;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.ui.components.JBTextField;
+import com.intellij.util.ui.FormBuilder;
+import com.intellij.vcs.log.data.VcsLogFilter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+
+/**
+ * Asks for the conditions which commits shown in the log should satisfy.
+ */
+class VcsLogFilterDialog extends DialogWrapper {
+
+  @NotNull private final JBTextField myTextField;
+  @NotNull private final JBTextField myUserField;
+  @NotNull private final TextFieldWithBrowseButton myPathField;
+
+  VcsLogFilterDialog(@NotNull Project project, @Nullable VcsLogFilter filter) {
+    super(project);
+    myTextField = new JBTextField(filter == null ? "" : StringUtil.notNullize(filter.getText()));
+    myUserField = new JBTextField(filter == null ? "" : StringUtil.notNullize(filter.getUser()));
+    myPathField = new TextFieldWithBrowseButton();
+    myPathField.setText(filter == null ? "" : StringUtil.notNullize(filter.getPath()));
+    myPathField.addBrowseFolderListener("Select File or Directory", null, project,
+                                        new FileChooserDescriptor(true, true, false, false, false, false));
+    setTitle("Filter Commits");
+    init();
+  }
+
+  @Nullable
+  @Override
+  protected JComponent createCenterPanel() {
+    return FormBuilder.createFormBuilder()
+      .addLabeledComponent("&Message contains:", myTextField)
+      .addLabeledComponent("&Author (name or e-mail):", myUserField)
+      .addLabeledComponent("Changed &path:", myPathField)
+      .getPanel();
+  }
+
+  @Nullable
+  @Override
+  public JComponent getPreferredFocusedComponent() {
+    return myTextField;
+  }
+
+  @NotNull
+  public VcsLogFilter getFilter() {
+    return new VcsLogFilter(myTextField.getText(), myUserField.getText(), myPathField.getText());
+  }
+}
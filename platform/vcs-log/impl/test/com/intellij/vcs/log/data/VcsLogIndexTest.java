@@ -0,0 +1,129 @@
+package com.intellij.vcs.log.data;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vcs.FilePathImpl;
+import com.intellij.openapi.vcs.changes.Change;
+import com.intellij.openapi.vcs.changes.SimpleContentRevision;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.LightVirtualFile;
+import com.intellij.util.containers.ContainerUtil;
+import com.intellij.vcs.log.Hash;
+import com.intellij.vcs.log.VcsFullCommitDetails;
+import com.intellij.vcs.log.impl.HashImpl;
+import com.intellij.vcs.log.impl.VcsLogObjectsFactoryImpl;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class VcsLogIndexTest {
+
+  private final VirtualFile myRoot = new LightVirtualFile("root");
+  private File myDir;
+  private VcsLogIndex myIndex;
+
+  @Before
+  public void setUp() throws IOException {
+    myDir = FileUtil.createTempDirectory("vcs-log-index", null);
+    myIndex = new VcsLogIndex(myDir, new VcsLogObjectsFactoryImpl());
+    myIndex.index(myRoot, Arrays.asList(details("a1", "Fix NPE in the parser", "John Doe", "john@example.com", "/root/src/parser/Parser.java"),
+                                        details("b2", "Add parser tests", "Jane Roe", "jane@example.com", "/root/test/ParserTest.java",
+                                                    "/root/src/parser/Lexer.java"),
+                                        details("c3", "fix typo", "John Doe", "john@example.com", "/root/README")));
+  }
+
+  @After
+  public void tearDown() {
+    myIndex.dispose();
+    FileUtil.delete(myDir);
+  }
+
+  @Test
+  public void textIsFoundIgnoringCase() {
+    assertFiltered(filter("parser", null, null), "a1", "b2");
+    assertFiltered(filter("FIX", null, null), "a1", "c3");
+    assertFiltered(filter("npe in", null, null), "a1");
+    assertFiltered(filter("fix parser", null, null));
+  }
+
+  @Test
+  public void textShorterThanTrigramIsFound() {
+    assertFiltered(filter("fi", null, null), "a1", "c3");
+    assertFiltered(filter("q", null, null));
+  }
+
+  @Test
+  public void userIsFoundByNameOrEmail() {
+    assertFiltered(filter(null, "john doe", null), "a1", "c3");
+    assertFiltered(filter(null, "Jane@Example.com", null), "b2");
+    assertFiltered(filter(null, "John", null));
+  }
+
+  @Test
+  public void pathIsFoundWithParentDirectories() {
+    assertFiltered(filter(null, null, "/root/src/parser/Parser.java"), "a1");
+    assertFiltered(filter(null, null, "/root/src/parser/"), "a1", "b2");
+    assertFiltered(filter(null, null, "/root/src"), "a1", "b2");
+    assertFiltered(filter(null, null, "/root/src/par"));
+  }
+
+  @Test
+  public void allConditionsAreSatisfied() {
+    assertFiltered(filter("fix", "john@example.com", "/root/src"), "a1");
+    assertFiltered(filter("parser", "jane@example.com", "/root/src/parser"), "b2");
+    assertFiltered(filter("typo", "jane@example.com", null));
+  }
+
+  @Test
+  public void indexSurvivesReopening() {
+    myIndex.dispose();
+    myIndex = new VcsLogIndex(myDir, new VcsLogObjectsFactoryImpl());
+
+    assertTrue(myIndex.isIndexed(HashImpl.build("b2")));
+    assertFalse(myIndex.isIndexed(HashImpl.build("d4")));
+    assertFiltered(filter("parser", null, "/root/test"), "b2");
+  }
+
+  @Test
+  public void indexedCommitsAreNotIndexedTwice() {
+    myIndex.index(myRoot, Collections.singletonList(details("a1", "Other message", "Other", "other@example.com", "/root/other")));
+
+    assertFiltered(filter("NPE", "john doe", "/root/src"), "a1");
+    assertFiltered(filter("other", null, null));
+  }
+
+  @NotNull
+  private static VcsLogFilter filter(@Nullable String text, @Nullable String user, @Nullable String path) {
+    return new VcsLogFilter(text, user, path);
+  }
+
+  private void assertFiltered(@NotNull VcsLogFilter filter, @NotNull String... expectedHashes) {
+    Set<Hash> expected = ContainerUtil.newHashSet();
+    for (String hash : expectedHashes) {
+      expected.add(HashImpl.build(hash));
+    }
+    assertEquals(filter.toString(), expected, myIndex.filter(filter));
+  }
+
+  @NotNull
+  private static VcsFullCommitDetails details(@NotNull String hash, @NotNull String message, @NotNull String name,
+                                              @NotNull String email, @NotNull String... paths) {
+    List<Change> changes = new ArrayList<Change>();
+    for (String path : paths) {
+      changes.add(new Change(null, new SimpleContentRevision("", new FilePathImpl(new File(path), false), hash)));
+    }
+    return new VcsLogObjectsFactoryImpl().createFullDetails(HashImpl.build(hash), Collections.<Hash>emptyList(), 1, message, name, email,
+                                                            message, name, email, 1, changes);
+  }
+}
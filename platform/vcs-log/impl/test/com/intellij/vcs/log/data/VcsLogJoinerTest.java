@@ -2,6 +2,7 @@ package com.intellij.vcs.log.data;
 
 import com.intellij.openapi.vfs.newvfs.impl.StubVirtualFile;
 import com.intellij.util.ArrayUtil;
+import com.intellij.vcs.log.Hash;
 import com.intellij.vcs.log.TimedVcsCommit;
 import com.intellij.vcs.log.VcsRef;
 import com.intellij.vcs.log.VcsRefType;
@@ -9,6 +10,7 @@ import com.intellij.vcs.log.impl.HashImpl;
 import com.intellij.vcs.log.impl.VcsRefImpl;
 import com.intellij.vcs.log.parser.CommitParser;
 import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
 
 import java.awt.*;
 import java.util.Arrays;
@@ -16,6 +18,7 @@ import java.util.Collection;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 /**
  * @author Kirill Likhodedov
@@ -36,8 +39,38 @@ public class VcsLogJoinerTest {
     assertEquals(expected, result);
   }
 
+  @Test
+  public void reachableLogIsNotChanged() {
+    List<TimedVcsCommit> log = CommitParser.log("3|-c|-b", "3|-d|-a", "2|-b|-a", "1|-a|-");
+    assertSame(log, VcsLogJoiner.dropUnreachableCommits(log, Arrays.asList(ref("master", log.get(0)), ref("feature", log.get(1)))));
+  }
+
+  @Test
+  public void commitsDroppedByRebaseAreRemoved() {
+    // "c-b" was rebased onto "d" while the IDE was closed: the stored "c" and "b" are not reachable anymore
+    List<TimedVcsCommit> log = CommitParser.log("5|-c2|-b2", "4|-b2|-d", "3|-c|-b", "3|-d|-a", "2|-b|-a", "1|-a|-");
+    List<TimedVcsCommit> expected = CommitParser.log("5|-c2|-b2", "4|-b2|-d", "3|-d|-a", "1|-a|-");
+    Collection<VcsRef> refs = Arrays.asList(ref("master", log.get(3)), ref("feature", log.get(0)));
+    assertEquals(expected, VcsLogJoiner.dropUnreachableCommits(log, refs));
+  }
+
+  @Test
+  public void refsOutsideOfTheLogAreIgnored() {
+    List<TimedVcsCommit> log = CommitParser.log("2|-b|-a", "1|-a|-");
+    Collection<VcsRef> refs = Arrays.asList(ref("master", log.get(1)), ref("tag", "f"));
+    assertEquals(CommitParser.log("1|-a|-"), VcsLogJoiner.dropUnreachableCommits(log, refs));
+  }
+
+  private static VcsRef ref(String name, TimedVcsCommit commit) {
+    return ref(name, commit.getHash());
+  }
+
   private static VcsRef ref(String name, String hash) {
-    return new VcsRefImpl(HashImpl.build(hash), name, new VcsRefType() {
+    return ref(name, HashImpl.build(hash));
+  }
+
+  private static VcsRef ref(String name, Hash hash) {
+    return new VcsRefImpl(hash, name, new VcsRefType() {
       @Override
       public boolean isBranch() {
         return true;
@@ -0,0 +1,179 @@
+package com.intellij.vcs.log.data;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.LightVirtualFile;
+import com.intellij.vcs.log.Hash;
+import com.intellij.vcs.log.TimedVcsCommit;
+import com.intellij.vcs.log.impl.HashImpl;
+import com.intellij.vcs.log.impl.VcsLogObjectsFactoryImpl;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class VcsLogStorageTest {
+
+  private final VirtualFile myRoot = new LightVirtualFile("root");
+  private File myDir;
+  private VcsLogStorage myStorage;
+
+  @Before
+  public void setUp() throws IOException {
+    myDir = FileUtil.createTempDirectory("vcs-log", null);
+    myStorage = new VcsLogStorage(myDir, new VcsLogObjectsFactoryImpl());
+  }
+
+  @After
+  public void tearDown() {
+    myStorage.dispose();
+    FileUtil.delete(myDir);
+  }
+
+  @Test
+  public void noStoredLog() {
+    assertNull(myStorage.readLog(myRoot));
+  }
+
+  @Test
+  public void logSurvivesReopening() {
+    List<TimedVcsCommit> log = Arrays.asList(commit("c3", 3, "c2", "b1"), commit("b1", 2, "a0"), commit("c2", 2, "a0"), commit("a0", 1));
+    myStorage.writeLog(myRoot, log);
+    myStorage.dispose();
+
+    myStorage = new VcsLogStorage(myDir, new VcsLogObjectsFactoryImpl());
+    assertLogEquals(log, myStorage.readLog(myRoot));
+    assertNull(myStorage.readLog(new LightVirtualFile("other")));
+  }
+
+  @Test
+  public void refreshedLogReplacesStoredLog() {
+    myStorage.writeLog(myRoot, Arrays.asList(commit("b1", 2, "a0"), commit("a0", 1)));
+    List<TimedVcsCommit> refreshed = Arrays.asList(commit("c2", 3, "a0"), commit("a0", 1));
+    myStorage.writeLog(myRoot, refreshed);
+    assertLogEquals(refreshed, myStorage.readLog(myRoot));
+  }
+
+  @Test
+  public void refreshWritesOnlyNewCommits() throws IOException {
+    List<TimedVcsCommit> log = Arrays.asList(commit("b1", 2, "a0"), commit("a0", 1));
+    myStorage.writeLog(myRoot, log);
+    byte[] before = FileUtil.loadFileBytes(getLogFile());
+
+    List<TimedVcsCommit> refreshed = Arrays.asList(commit("d3", 4, "c2"), commit("c2", 3, "b1"), commit("b1", 2, "a0"), commit("a0", 1));
+    myStorage.writeLog(myRoot, refreshed);
+    byte[] after = FileUtil.loadFileBytes(getLogFile());
+
+    assertTrue(after.length > before.length);
+    // everything except the commits count stays in place
+    assertArrayEquals(Arrays.copyOfRange(before, 8, before.length), Arrays.copyOfRange(after, 8, before.length));
+    assertLogEquals(refreshed, reopenAndRead());
+  }
+
+  @Test
+  public void rewrittenHistoryReplacesStoredCommits() {
+    myStorage.writeLog(myRoot, Arrays.asList(commit("c2", 3, "b1"), commit("b1", 2, "a0"), commit("a0", 1)));
+    assertNotNull(reopenAndRead());
+
+    List<TimedVcsCommit> amended = Arrays.asList(commit("b2", 3, "a0"), commit("a0", 1));
+    myStorage.writeLog(myRoot, amended);
+    assertLogEquals(amended, reopenAndRead());
+
+    List<TimedVcsCommit> refreshed = Arrays.asList(commit("c3", 4, "b2"), commit("b2", 3, "a0"), commit("a0", 1));
+    myStorage.writeLog(myRoot, refreshed);
+    assertLogEquals(refreshed, reopenAndRead());
+  }
+
+  @Test
+  public void incompleteLogIsNotRead() throws IOException {
+    myStorage.writeLog(myRoot, Arrays.asList(commit("b1", 2, "a0"), commit("a0", 1)));
+    myStorage.dispose();
+
+    RandomAccessFile file = new RandomAccessFile(getLogFile(), "rw");
+    try {
+      file.seek(4);
+      file.writeInt(-1);
+    }
+    finally {
+      file.close();
+    }
+
+    myStorage = new VcsLogStorage(myDir, new VcsLogObjectsFactoryImpl());
+    assertNull(myStorage.readLog(myRoot));
+  }
+
+  @Test
+  public void unusedHashesAreCompacted() {
+    int size = VcsLogStorage.MIN_HASHES_TO_COMPACT / 2 + 1;
+    for (int round = 0; round < 3; round++) {
+      List<TimedVcsCommit> log = new ArrayList<TimedVcsCommit>();
+      for (int i = size - 1; i >= 0; i--) {
+        log.add(i == 0 ? commit(hash(round, 0), 1) : commit(hash(round, i), i + 1, hash(round, i - 1)));
+      }
+      myStorage.writeLog(myRoot, log);
+      assertTrue(myStorage.getHashesCount() <= 2 * size);
+    }
+    assertEquals(size, myStorage.getHashesCount());
+    List<TimedVcsCommit> log = reopenAndRead();
+    assertNotNull(log);
+    assertEquals(size, log.size());
+    assertEquals(hash(2, size - 1), log.get(0).getHash().asString());
+  }
+
+  @NotNull
+  private static String hash(int round, int index) {
+    return String.format("%02x%06x", round, index);
+  }
+
+  private List<TimedVcsCommit> reopenAndRead() {
+    myStorage.dispose();
+    myStorage = new VcsLogStorage(myDir, new VcsLogObjectsFactoryImpl());
+    return myStorage.readLog(myRoot);
+  }
+
+  @NotNull
+  private File getLogFile() {
+    File[] files = myDir.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.startsWith("log.");
+      }
+    });
+    assertNotNull(files);
+    assertEquals(1, files.length);
+    return files[0];
+  }
+
+  private static void assertLogEquals(@NotNull List<TimedVcsCommit> expected, List<TimedVcsCommit> actual) {
+    assertNotNull(actual);
+    assertEquals(toStrings(expected), toStrings(actual));
+  }
+
+  @NotNull
+  private static List<String> toStrings(@NotNull List<TimedVcsCommit> log) {
+    List<String> result = new ArrayList<String>();
+    for (TimedVcsCommit commit : log) {
+      result.add(commit.getHash() + " " + commit.getParents() + " " + commit.getAuthorTime());
+    }
+    return result;
+  }
+
+  @NotNull
+  static TimedVcsCommit commit(@NotNull String hash, long time, @NotNull String... parents) {
+    List<Hash> parentHashes = new ArrayList<Hash>();
+    for (String parent : parents) {
+      parentHashes.add(HashImpl.build(parent));
+    }
+    return new VcsLogObjectsFactoryImpl().createTimedCommit(HashImpl.build(hash), parentHashes, time);
+  }
+}
@@ -19,9 +19,6 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vcs.FilePath;
 import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vcs.changes.BinaryContentRevision;
-import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.vcsUtil.VcsFileUtil;
-import git4idea.util.GitFileUtils;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -39,7 +36,6 @@ public class GitBinaryContentRevision extends GitContentRevision implements Bina
     if (myFile.isDirectory()) {
       return null;
     }
-    final VirtualFile root = GitUtil.getGitRoot(myFile);
-    return GitFileUtils.getFileContent(myProject, root, myRevision.getRev(), VcsFileUtil.relativePath(root, myFile));
+    return loadContent();
   }
 }
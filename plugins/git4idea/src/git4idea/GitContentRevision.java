@@ -29,7 +29,6 @@ import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.vcsUtil.VcsFileUtil;
 import com.intellij.vcsUtil.VcsUtil;
-import git4idea.util.GitFileUtils;
 import git4idea.history.wholeTree.GitBinaryMultipleContentsRevision;
 import git4idea.history.wholeTree.GitMultipleContentsRevision;
 import org.jetbrains.annotations.NotNull;
@@ -89,9 +88,9 @@ public class GitContentRevision implements ContentRevision {
     }
   }
 
-  private byte[] loadContent() throws VcsException {
+  protected byte[] loadContent() throws VcsException {
     VirtualFile root = GitUtil.getGitRoot(myFile);
-    return GitFileUtils.getFileContent(myProject, root, myRevision.getRev(), VcsFileUtil.relativePath(root, myFile));
+    return GitContentStorage.getInstance().getFileContent(myProject, root, myRevision.getRev(), VcsFileUtil.relativePath(root, myFile));
   }
 
   @NotNull
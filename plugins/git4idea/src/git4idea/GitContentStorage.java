@@ -0,0 +1,379 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vfs.CharsetToolkit;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.PersistentHashMap;
+import git4idea.util.GitFileUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * <p>Keeps contents of files at commits on disk, so that diff, annotate, history and shelve don't call {@code 'git show'}
+ *    for the same file revision again and again, also between IDE sessions.</p>
+ * <p>Contents are stored by their git blob ids, so the same content is stored once for all commits and repositories which have it;
+ *    the file at a commit is mapped to its blob id in a separate small map. Only revisions identified by commit hashes are stored:
+ *    contents of branches, {@code HEAD} etc. may change.</p>
+ * <p>The total size of the stored contents is limited: the least recently used ones are removed first,
+ *    together with the mappings to them.</p>
+ * <p>Files are read and written outside of the lock, which only guards the in-memory bookkeeping of the stored blobs.</p>
+ */
+public class GitContentStorage implements Disposable {
+  private static final Logger LOG = Logger.getInstance(GitContentStorage.class);
+  private static final int VERSION = 1;
+
+  private static final long MAX_TOTAL_SIZE = 100 * 1024 * 1024;
+  private static final int MAX_CONTENT_SIZE = 2 * 1024 * 1024;
+  // the mappings to the removed blobs are removed in batches, since the whole map is scanned for them
+  static final int EVICTIONS_PER_CLEANUP = 100;
+
+  @NotNull private final File myDir;
+  @NotNull private final File myBlobsDir;
+  private final long myMaxTotalSize;
+  @Nullable private volatile PersistentHashMap<String, String> myBlobIds;
+
+  private final Object myLock = new Object();
+  // blob id -> size, the least recently used first; filled from the disk on the first access
+  @Nullable private LinkedHashMap<String, Long> myBlobs;
+  private long myTotalSize;
+  private int myEvictionsSinceCleanup;
+
+  private int myHits;
+  private int myMisses;
+
+  public static GitContentStorage getInstance() {
+    return ServiceManager.getService(GitContentStorage.class);
+  }
+
+  public GitContentStorage() {
+    this(new File(new File(PathManager.getSystemPath(), "vcs"), "git-contents." + VERSION), MAX_TOTAL_SIZE);
+  }
+
+  GitContentStorage(@NotNull File dir, long maxTotalSize) {
+    myDir = dir;
+    myBlobsDir = new File(myDir, "blobs");
+    myMaxTotalSize = maxTotalSize;
+    File blobIdsFile = new File(myDir, "blob-ids");
+    try {
+      myBlobIds = createMap(blobIdsFile);
+    }
+    catch (IOException e) {
+      LOG.info(e);
+      FileUtil.delete(myDir);
+      try {
+        myBlobIds = createMap(blobIdsFile);
+      }
+      catch (IOException e1) {
+        LOG.error(e1);
+      }
+    }
+  }
+
+  @NotNull
+  private static PersistentHashMap<String, String> createMap(@NotNull File file) throws IOException {
+    return new PersistentHashMap<String, String>(file, new EnumeratorStringDescriptor(), new EnumeratorStringDescriptor());
+  }
+
+  /**
+   * Returns the content of the file at the given revision, taking it from the storage if possible,
+   * and calling {@code 'git show'} otherwise.
+   */
+  @NotNull
+  public byte[] getFileContent(@NotNull Project project, @NotNull VirtualFile root, @NotNull String revision,
+                               @NotNull String relativePath) throws VcsException {
+    if (!isCommitHash(revision)) {
+      return GitFileUtils.getFileContent(project, root, revision, relativePath);
+    }
+    String key = root.getPath() + "\n" + revision + "\n" + relativePath;
+    byte[] content = get(key);
+    if (content != null) {
+      return content;
+    }
+    content = GitFileUtils.getFileContent(project, root, revision, relativePath);
+    put(key, content);
+    return content;
+  }
+
+  @Nullable
+  byte[] get(@NotNull String key) {
+    PersistentHashMap<String, String> blobIds = myBlobIds;
+    if (blobIds == null) {
+      return null;
+    }
+    String blobId = null;
+    try {
+      blobId = blobIds.get(key);
+      if (blobId != null) {
+        if (touch(blobId)) {
+          File file = getBlobFile(blobId);
+          byte[] content = FileUtil.loadFileBytes(file);
+          file.setLastModified(System.currentTimeMillis());
+          synchronized (myLock) {
+            myHits++;
+          }
+          return content;
+        }
+        // the blob has been removed, and the mapping to it hasn't been cleaned up yet
+        blobIds.remove(key);
+      }
+    }
+    catch (IOException e) {
+      LOG.info(e);
+      if (blobId != null) {
+        forget(blobId);
+      }
+    }
+    synchronized (myLock) {
+      myMisses++;
+    }
+    return null;
+  }
+
+  void put(@NotNull String key, @NotNull byte[] content) {
+    PersistentHashMap<String, String> blobIds = myBlobIds;
+    if (blobIds == null || content.length > MAX_CONTENT_SIZE) {
+      return;
+    }
+    String blobId = getBlobId(content);
+    try {
+      if (!touch(blobId)) {
+        File file = getBlobFile(blobId);
+        FileUtil.createParentDirs(file);
+        // concurrent writers of the same blob use different temporary files
+        File tempFile = FileUtil.createTempFile(file.getParentFile(), file.getName(), ".tmp", true);
+        FileUtil.writeToFile(tempFile, content);
+        FileUtil.rename(tempFile, file);
+        List<String> evicted = register(blobId, content.length);
+        for (String evictedId : evicted) {
+          FileUtil.delete(getBlobFile(evictedId));
+        }
+      }
+      blobIds.put(key, blobId);
+      if (isCleanupNeeded()) {
+        removeMappingsToEvictedBlobs(blobIds);
+      }
+    }
+    catch (IOException e) {
+      LOG.info(e);
+    }
+  }
+
+  private boolean touch(@NotNull String blobId) {
+    LinkedHashMap<String, Long> loaded = loadBlobs();
+    synchronized (myLock) {
+      return getBlobs(loaded).get(blobId) != null;
+    }
+  }
+
+  private void forget(@NotNull String blobId) {
+    synchronized (myLock) {
+      Long size = myBlobs == null ? null : myBlobs.remove(blobId);
+      if (size != null) {
+        myTotalSize -= size;
+      }
+    }
+  }
+
+  // returns ids of the blobs which should be deleted to fit the total size limit
+  @NotNull
+  private List<String> register(@NotNull String blobId, long size) {
+    LinkedHashMap<String, Long> loaded = loadBlobs();
+    List<String> evicted = new ArrayList<String>();
+    synchronized (myLock) {
+      LinkedHashMap<String, Long> blobs = getBlobs(loaded);
+      Long oldSize = blobs.put(blobId, size);
+      myTotalSize += size - (oldSize == null ? 0 : oldSize);
+      Iterator<Map.Entry<String, Long>> iterator = blobs.entrySet().iterator();
+      while (myTotalSize > myMaxTotalSize && iterator.hasNext()) {
+        Map.Entry<String, Long> eldest = iterator.next();
+        if (eldest.getKey().equals(blobId)) {
+          continue;
+        }
+        evicted.add(eldest.getKey());
+        myTotalSize -= eldest.getValue();
+        iterator.remove();
+      }
+      myEvictionsSinceCleanup += evicted.size();
+    }
+    return evicted;
+  }
+
+  private boolean isCleanupNeeded() {
+    synchronized (myLock) {
+      if (myEvictionsSinceCleanup < EVICTIONS_PER_CLEANUP) {
+        return false;
+      }
+      myEvictionsSinceCleanup = 0;
+      return true;
+    }
+  }
+
+  private void removeMappingsToEvictedBlobs(@NotNull PersistentHashMap<String, String> blobIds) throws IOException {
+    List<String> evictedKeys = new ArrayList<String>();
+    for (String key : blobIds.getAllKeysWithExistingMapping()) {
+      String blobId = blobIds.get(key);
+      if (blobId == null || !isStored(blobId)) {
+        evictedKeys.add(key);
+      }
+    }
+    for (String key : evictedKeys) {
+      blobIds.remove(key);
+    }
+  }
+
+  // unlike touch(), doesn't change the order of the least recently used blobs
+  private boolean isStored(@NotNull String blobId) {
+    synchronized (myLock) {
+      return myBlobs != null && myBlobs.containsKey(blobId);
+    }
+  }
+
+  // reads the stored blobs from the disk unless they have been read already, without holding the lock
+  @Nullable
+  private LinkedHashMap<String, Long> loadBlobs() {
+    synchronized (myLock) {
+      if (myBlobs != null) {
+        return null;
+      }
+    }
+    LinkedHashMap<String, Long> blobs = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    List<File> files = new ArrayList<File>();
+    File[] dirs = myBlobsDir.listFiles();
+    if (dirs != null) {
+      for (File dir : dirs) {
+        File[] blobFiles = dir.listFiles();
+        if (blobFiles != null) {
+          Collections.addAll(files, blobFiles);
+        }
+      }
+    }
+    final Map<File, Long> timestamps = new HashMap<File, Long>(files.size());
+    for (File file : files) {
+      timestamps.put(file, file.lastModified());
+    }
+    Collections.sort(files, new Comparator<File>() {
+      @Override
+      public int compare(File f1, File f2) {
+        return timestamps.get(f1).compareTo(timestamps.get(f2));
+      }
+    });
+    for (File file : files) {
+      if (!file.getName().endsWith(".tmp")) {
+        blobs.put(file.getParentFile().getName() + file.getName(), file.length());
+      }
+    }
+    return blobs;
+  }
+
+  // should be called under the lock
+  @NotNull
+  private LinkedHashMap<String, Long> getBlobs(@Nullable LinkedHashMap<String, Long> loaded) {
+    if (myBlobs == null) {
+      myBlobs = loaded != null ? loaded : new LinkedHashMap<String, Long>(16, 0.75f, true);
+      myTotalSize = 0;
+      for (Long size : myBlobs.values()) {
+        myTotalSize += size;
+      }
+    }
+    return myBlobs;
+  }
+
+  @NotNull
+  private File getBlobFile(@NotNull String blobId) {
+    return new File(new File(myBlobsDir, blobId.substring(0, 2)), blobId.substring(2));
+  }
+
+  /**
+   * Returns the number of contents taken from the storage during this session.
+   */
+  public int getHitCount() {
+    synchronized (myLock) {
+      return myHits;
+    }
+  }
+
+  /**
+   * Returns the number of contents which were not found in the storage during this session.
+   */
+  public int getMissCount() {
+    synchronized (myLock) {
+      return myMisses;
+    }
+  }
+
+  @Override
+  public void dispose() {
+    PersistentHashMap<String, String> blobIds = myBlobIds;
+    if (blobIds == null) {
+      return;
+    }
+    myBlobIds = null;
+    synchronized (myLock) {
+      LOG.debug("Contents taken from the storage: " + myHits + ", loaded from git: " + myMisses + ", stored: " + myTotalSize + " bytes");
+    }
+    try {
+      blobIds.close();
+    }
+    catch (IOException e) {
+      LOG.info(e);
+    }
+  }
+
+  private static boolean isCommitHash(@NotNull String revision) {
+    if (revision.length() != 40 || revision.equals(GitRevisionNumber.NOT_COMMITTED_HASH)) {
+      return false;
+    }
+    for (int i = 0; i < revision.length(); i++) {
+      if (Character.digit(revision.charAt(i), 16) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // the same id as git gives to the blob with this content
+  @NotNull
+  private static String getBlobId(@NotNull byte[] content) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      digest.update(("blob " + content.length + "\0").getBytes(CharsetToolkit.UTF8_CHARSET));
+      byte[] hash = digest.digest(content);
+      StringBuilder result = new StringBuilder(hash.length * 2);
+      for (byte b : hash) {
+        result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return result.toString();
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -15,11 +15,15 @@
  */
 package git4idea.annotate;
 
+import com.intellij.execution.process.ProcessOutputTypes;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vcs.FilePath;
 import com.intellij.openapi.vcs.FilePathImpl;
@@ -29,22 +33,23 @@ import com.intellij.openapi.vcs.history.VcsAbstractHistorySession;
 import com.intellij.openapi.vcs.history.VcsFileRevision;
 import com.intellij.openapi.vcs.history.VcsRevisionNumber;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.vcsUtil.VcsFileUtil;
 import com.intellij.vcsUtil.VcsUtil;
 import git4idea.GitFileRevision;
 import git4idea.GitRevisionNumber;
 import git4idea.GitUtil;
 import git4idea.commands.GitCommand;
 import git4idea.commands.GitSimpleHandler;
-import git4idea.util.StringScanner;
 import git4idea.history.GitHistoryUtils;
 import git4idea.i18n.GitBundle;
-import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * Git annotation provider implementation.
@@ -57,13 +62,9 @@ public class GitAnnotationProvider implements AnnotationProvider, VcsCacheableAn
    */
   private final Project myProject;
   /**
-   * The author key for annotations
+   * blames of files at commits, kept between sessions
    */
-  @NonNls private static final String AUTHOR_KEY = "author";
-  /**
-   * The committer time key for annotations
-   */
-  @NonNls private static final String COMMITTER_TIME_KEY = "committer-time";
+  private final GitAnnotationStorage myStorage;
   private static final Logger LOG = Logger.getInstance(GitAnnotationProvider.class);
 
   /**
@@ -73,6 +74,8 @@ public class GitAnnotationProvider implements AnnotationProvider, VcsCacheableAn
    */
   public GitAnnotationProvider(@NotNull Project project) {
     myProject = project;
+    myStorage = new GitAnnotationStorage(project);
+    Disposer.register(project, myStorage);
   }
 
   /**
@@ -94,13 +97,20 @@ public class GitAnnotationProvider implements AnnotationProvider, VcsCacheableAn
     Runnable command = new Runnable() {
       public void run() {
         final ProgressIndicator progress = ProgressManager.getInstance().getProgressIndicator();
+        final FilePath currentFilePath = VcsUtil.getFilePath(file.getPath());
+        // the history doesn't depend on the blame, so it is loaded meanwhile
+        final Future<List<VcsFileRevision>> history = ApplicationManager.getApplication().executeOnPooledThread(
+          new Callable<List<VcsFileRevision>>() {
+            @Override
+            public List<VcsFileRevision> call() throws Exception {
+              return GitHistoryUtils.history(myProject, currentFilePath);
+            }
+          });
         try {
-          final FilePath currentFilePath = VcsUtil.getFilePath(file.getPath());
           final FilePath realFilePath;
           if (progress != null) {
             progress.setText(GitBundle.message("getting.history", file.getName()));
           }
-          final List<VcsFileRevision> revisions = GitHistoryUtils.history(myProject, currentFilePath);
           if (revision == null) {
             realFilePath = GitHistoryUtils.getLastCommitName(myProject, currentFilePath);
           }
@@ -110,10 +120,12 @@ public class GitAnnotationProvider implements AnnotationProvider, VcsCacheableAn
           if (progress != null) {
             progress.setText(GitBundle.message("computing.annotation", file.getName()));
           }
-          final GitFileAnnotation result = annotate(realFilePath, revision, revisions, file);
+          final GitFileAnnotation result = annotate(realFilePath, revision, file);
+          result.addLogEntries(getHistory(history));
           annotation[0] = result;
         }
         catch (Exception e) {
+          history.cancel(true);
           exception[0] = e;
         }
       }
@@ -132,86 +144,91 @@ public class GitAnnotationProvider implements AnnotationProvider, VcsCacheableAn
     return annotation[0];
   }
 
+  @NotNull
+  private static List<VcsFileRevision> getHistory(@NotNull Future<List<VcsFileRevision>> history) throws VcsException {
+    try {
+      return history.get();
+    }
+    catch (InterruptedException e) {
+      throw new ProcessCanceledException();
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof VcsException) {
+        throw (VcsException)cause;
+      }
+      throw new VcsException(cause);
+    }
+  }
+
   /**
    * Calculate annotations
    *
    * @param repositoryFilePath the file path in the repository
    * @param revision           the revision to checkout
-   * @param revisions          the revision list from history
    * @param file               a virtual file for the action
    * @return a file annotation object
    * @throws VcsException if there is a problem with running git
    */
   private GitFileAnnotation annotate(final FilePath repositoryFilePath,
                                      final VcsFileRevision revision,
-                                     final List<VcsFileRevision> revisions,
                                      final VirtualFile file) throws VcsException {
-    GitSimpleHandler h = new GitSimpleHandler(myProject, GitUtil.getGitRoot(repositoryFilePath), GitCommand.BLAME);
+    VirtualFile root = GitUtil.getGitRoot(repositoryFilePath);
+    String relativePath = VcsFileUtil.relativePath(root, repositoryFilePath);
+    // the blame of a commit never changes, so it is taken from the storage if possible;
+    // for the current revision the blame is requested for the exact HEAD commit to be stored under it
+    String hash = revision == null ? getHeadHash(root) : revision.getRevisionNumber().asString();
+    VcsRevisionNumber revisionNumber = revision == null ? null : revision.getRevisionNumber();
+    if (hash != null) {
+      GitBlame stored = myStorage.get(root, relativePath, hash);
+      if (stored != null) {
+        return stored.toAnnotation(myProject, file, revisionNumber);
+      }
+    }
+
+    final GitBlame.Parser parser = new GitBlame.Parser();
+    GitSimpleHandler h = new GitSimpleHandler(myProject, root, GitCommand.BLAME) {
+      @Override
+      protected void onTextAvailable(String text, Key outputType) {
+        if (ProcessOutputTypes.STDOUT == outputType) {
+          parser.feed(text);
+        }
+        else {
+          super.onTextAvailable(text, outputType);
+        }
+      }
+    };
+    parser.setHandler(h);
     h.setStdoutSuppressed(true);
     h.setCharset(file.getCharset());
     h.addParameters("-p", "-l", "-t", "-w");
-    if (revision == null) {
-      h.addParameters("HEAD");
-    }
-    else {
-      h.addParameters(revision.getRevisionNumber().asString());
-    }
+    h.addParameters(hash != null ? hash : "HEAD");
     h.endOptions();
     h.addRelativePaths(repositoryFilePath);
-    String output = h.run();
-    GitFileAnnotation annotation = new GitFileAnnotation(myProject, file, revision == null, revision == null ? null : revision.getRevisionNumber());
-    class CommitInfo {
-      Date date;
-      String author;
-      GitRevisionNumber revision;
+    h.run();
+    GitBlame blame = parser.finish();
+    GitFileAnnotation annotation = blame.toAnnotation(myProject, file, revisionNumber);
+    if (hash != null) {
+      myStorage.put(root, relativePath, hash, blame);
     }
-    HashMap<String, CommitInfo> commits = new HashMap<String, CommitInfo>();
-    for (StringScanner s = new StringScanner(output); s.hasMoreData();) {
-      // parse header line
-      String commitHash = s.spaceToken();
-      if (commitHash.equals(GitRevisionNumber.NOT_COMMITTED_HASH)) {
-        commitHash = null;
-      }
-      s.spaceToken(); // skip revision line number
-      String s1 = s.spaceToken();
-      int lineNum = Integer.parseInt(s1);
-      s.nextLine();
-      // parse commit information
-      CommitInfo commit = commits.get(commitHash);
-      if (commit != null) {
-        while (s.hasMoreData() && !s.startsWith('\t')) {
-          s.nextLine();
-        }
-      }
-      else {
-        commit = new CommitInfo();
-        while (s.hasMoreData() && !s.startsWith('\t')) {
-          String key = s.spaceToken();
-          String value = s.line();
-          if (commitHash != null && AUTHOR_KEY.equals(key)) {
-            commit.author = value;
-          }
-          if (commitHash != null && COMMITTER_TIME_KEY.equals(key)) {
-            commit.date = GitUtil.parseTimestampWithNFEReport(value, h, output);
-            commit.revision = new GitRevisionNumber(commitHash, commit.date);
-          }
-        }
-        commits.put(commitHash, commit);
-      }
-      // parse line
-      if (!s.hasMoreData()) {
-        // if the file is empty, the next line will not start with tab and it will be
-        // empty.  
-        continue;
-      }
-      s.skipChars(1);
-      String line = s.line(true);
-      annotation.appendLineInfo(commit.date, commit.revision, commit.author, line, lineNum);
-    }
-    annotation.addLogEntries(revisions);
     return annotation;
   }
 
+  // HEAD is resolved by git itself, because the state cached in GitRepository may be not updated yet after a checkout or a commit
+  @Nullable
+  private String getHeadHash(@NotNull VirtualFile root) {
+    GitSimpleHandler handler = new GitSimpleHandler(myProject, root, GitCommand.REV_PARSE);
+    handler.addParameters("--verify", "HEAD");
+    handler.setSilent(true);
+    try {
+      return handler.run().trim();
+    }
+    catch (VcsException e) {
+      LOG.info("git rev-parse --verify HEAD", e);
+      return null;
+    }
+  }
+
   @Override
   public VcsAnnotation createCacheable(FileAnnotation fileAnnotation) {
     final GitFileAnnotation gitFileAnnotation = (GitFileAnnotation) fileAnnotation;
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.annotate;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.Processor;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.DataInputOutputUtil;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.IOUtil;
+import com.intellij.util.io.PersistentHashMap;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TLongArrayList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps {@link GitBlame blames} of files between IDE sessions.
+ * <p/>
+ * The blame of a file at a commit never changes, so it is stored by the root, the path of the file relative to the root and the
+ * full commit hash, and is never invalidated. Blames which can change, i.e. of the working tree state or of a symbolic revision,
+ * are not stored.
+ * <p/>
+ * The last access time and the size of each blame are kept aside, and only {@link #MAX_BLAMES} recently used blames which were
+ * accessed during the last {@link #MAX_AGE} and take {@link #MAX_SIZE} in total by default are kept: the rest are removed on startup and once
+ * enough blames are added. Blames of huge files, which would take a noticeable part of the limit, are not stored at all.
+ */
+class GitAnnotationStorage implements Disposable {
+  private static final Logger LOG = Logger.getInstance(GitAnnotationStorage.class);
+  private static final int VERSION = 3;
+  static final int MAX_BLAMES = 500;
+  static final long MAX_AGE = TimeUnit.DAYS.toMillis(30);
+  static final long MAX_SIZE = 32 * 1024 * 1024; // characters of hashes, authors and lines
+
+  private final File myDir;
+  private final long myMaxSize;
+  @Nullable private PersistentHashMap<String, GitBlame> myMap;
+  @Nullable private PersistentHashMap<String, AccessInfo> myAccessTimes;
+  private int myAddedSincePrune;
+  private long myAddedSizeSincePrune;
+  private long myLastAccessTime;
+
+  GitAnnotationStorage(@NotNull Project project) {
+    this(new File(PathManager.getSystemPath() + File.separator + "git-annotations" + File.separator +
+                  project.getName() + "." + project.getLocationHash()));
+    ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+      @Override
+      public void run() {
+        prune();
+      }
+    });
+  }
+
+  GitAnnotationStorage(@NotNull File dir) {
+    this(dir, MAX_SIZE);
+  }
+
+  GitAnnotationStorage(@NotNull File dir, long maxSize) {
+    myDir = dir;
+    myMaxSize = maxSize;
+    try {
+      openMaps();
+    }
+    catch (IOException e) {
+      LOG.info(e);
+      closeMaps();
+      FileUtil.delete(myDir);
+      try {
+        openMaps();
+      }
+      catch (IOException e1) {
+        LOG.error(e1);
+        closeMaps();
+      }
+    }
+  }
+
+  private void openMaps() throws IOException {
+    myMap = new PersistentHashMap<String, GitBlame>(new File(myDir, "blames." + VERSION), new EnumeratorStringDescriptor(),
+                                                    new BlameExternalizer());
+    myAccessTimes = new PersistentHashMap<String, AccessInfo>(new File(myDir, "access." + VERSION), new EnumeratorStringDescriptor(),
+                                                              new AccessInfoExternalizer());
+  }
+
+  @Nullable
+  public synchronized GitBlame get(@NotNull VirtualFile root, @NotNull String relativePath, @NotNull String hash) {
+    if (myMap == null || myAccessTimes == null || !isFullHash(hash)) return null;
+    try {
+      String key = getKey(root, relativePath, hash);
+      GitBlame blame = myMap.get(key);
+      if (blame != null) {
+        myAccessTimes.put(key, new AccessInfo(nextAccessTime(), getSize(blame)));
+      }
+      return blame;
+    }
+    catch (IOException e) {
+      LOG.info(e);
+      return null;
+    }
+  }
+
+  public synchronized void put(@NotNull VirtualFile root, @NotNull String relativePath, @NotNull String hash, @NotNull GitBlame blame) {
+    if (myMap == null || myAccessTimes == null || !isFullHash(hash)) return;
+    long size = getSize(blame);
+    if (size > myMaxSize / 10) return;
+    try {
+      String key = getKey(root, relativePath, hash);
+      myMap.put(key, blame);
+      myAccessTimes.put(key, new AccessInfo(nextAccessTime(), size));
+    }
+    catch (IOException e) {
+      LOG.info(e);
+    }
+    myAddedSizeSincePrune += size;
+    if (++myAddedSincePrune > MAX_BLAMES / 10 || myAddedSizeSincePrune > myMaxSize / 10) {
+      prune();
+    }
+  }
+
+  /**
+   * Removes blames which were not accessed for {@link #MAX_AGE}, and the least recently used ones above {@link #MAX_BLAMES}
+   * or {@link #MAX_SIZE}.
+   */
+  synchronized void prune() {
+    myAddedSincePrune = 0;
+    myAddedSizeSincePrune = 0;
+    if (myMap == null || myAccessTimes == null) return;
+    try {
+      final long now = System.currentTimeMillis();
+      final List<Pair<String, AccessInfo>> entries = new ArrayList<Pair<String, AccessInfo>>();
+      final PersistentHashMap<String, AccessInfo> accessTimes = myAccessTimes;
+      myMap.processKeysWithExistingMapping(new Processor<String>() {
+        @Override
+        public boolean process(String key) {
+          AccessInfo info = null;
+          try {
+            info = accessTimes.get(key);
+          }
+          catch (IOException e) {
+            LOG.info(e);
+          }
+          // a blame of unknown size is not trusted to be small
+          entries.add(Pair.create(key, info == null ? new AccessInfo(now, myMaxSize) : info));
+          return true;
+        }
+      });
+      Collections.sort(entries, new Comparator<Pair<String, AccessInfo>>() {
+        @Override
+        public int compare(Pair<String, AccessInfo> o1, Pair<String, AccessInfo> o2) {
+          return o2.second.myTime < o1.second.myTime ? -1 : o2.second.myTime == o1.second.myTime ? 0 : 1;
+        }
+      });
+      long totalSize = 0;
+      for (int i = 0; i < entries.size(); i++) {
+        Pair<String, AccessInfo> entry = entries.get(i);
+        totalSize += entry.second.mySize;
+        if (i >= MAX_BLAMES || totalSize > myMaxSize || now - entry.second.myTime > MAX_AGE) {
+          myMap.remove(entry.first);
+          myAccessTimes.remove(entry.first);
+        }
+      }
+    }
+    catch (IOException e) {
+      LOG.info(e);
+    }
+  }
+
+  // access times are distinct, so that the order of blames is defined even if they are accessed within a millisecond
+  private long nextAccessTime() {
+    myLastAccessTime = Math.max(System.currentTimeMillis(), myLastAccessTime + 1);
+    return myLastAccessTime;
+  }
+
+  static long getSize(@NotNull GitBlame blame) {
+    long size = 0;
+    for (int i = 0; i < blame.myHashes.size(); i++) {
+      size += blame.myHashes.get(i).length() + StringUtil.length(blame.myAuthors.get(i));
+    }
+    for (String line : blame.myLines) {
+      size += line.length();
+    }
+    return size;
+  }
+
+  static boolean isFullHash(@NotNull String hash) {
+    if (hash.length() != 40) return false;
+    for (int i = 0; i < hash.length(); i++) {
+      char c = hash.charAt(i);
+      if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f')) return false;
+    }
+    return true;
+  }
+
+  @NotNull
+  private static String getKey(@NotNull VirtualFile root, @NotNull String relativePath, @NotNull String hash) {
+    return root.getPath() + "\n" + relativePath + "\n" + hash;
+  }
+
+  @Override
+  public synchronized void dispose() {
+    closeMaps();
+  }
+
+  private void closeMaps() {
+    for (PersistentHashMap<String, ?> map : new PersistentHashMap[]{myMap, myAccessTimes}) {
+      if (map == null) continue;
+      try {
+        map.close();
+      }
+      catch (IOException e) {
+        LOG.info(e);
+      }
+    }
+    myMap = null;
+    myAccessTimes = null;
+  }
+
+  private static class AccessInfo {
+    private final long myTime;
+    private final long mySize;
+
+    AccessInfo(long time, long size) {
+      myTime = time;
+      mySize = size;
+    }
+  }
+
+  private static class AccessInfoExternalizer implements DataExternalizer<AccessInfo> {
+    @Override
+    public void save(DataOutput out, AccessInfo value) throws IOException {
+      out.writeLong(value.myTime);
+      out.writeLong(value.mySize);
+    }
+
+    @Override
+    public AccessInfo read(DataInput in) throws IOException {
+      return new AccessInfo(in.readLong(), in.readLong());
+    }
+  }
+
+  private static class BlameExternalizer implements DataExternalizer<GitBlame> {
+    @Override
+    public void save(DataOutput out, GitBlame value) throws IOException {
+      int commits = value.myHashes.size();
+      DataInputOutputUtil.writeINT(out, commits);
+      for (int i = 0; i < commits; i++) {
+        IOUtil.writeString(value.myHashes.get(i), out);
+        IOUtil.writeString(value.myAuthors.get(i), out);
+        out.writeLong(value.myTimes.get(i));
+      }
+      int lines = value.myLines.size();
+      DataInputOutputUtil.writeINT(out, lines);
+      for (int i = 0; i < lines; i++) {
+        DataInputOutputUtil.writeINT(out, value.myLineCommits.get(i) + 1);
+        IOUtil.writeString(value.myLines.get(i), out);
+      }
+    }
+
+    @Override
+    public GitBlame read(DataInput in) throws IOException {
+      int commits = DataInputOutputUtil.readINT(in);
+      List<String> hashes = new ArrayList<String>(commits);
+      List<String> authors = new ArrayList<String>(commits);
+      TLongArrayList times = new TLongArrayList(commits);
+      for (int i = 0; i < commits; i++) {
+        hashes.add(IOUtil.readString(in));
+        authors.add(IOUtil.readString(in));
+        times.add(in.readLong());
+      }
+      int lines = DataInputOutputUtil.readINT(in);
+      TIntArrayList lineCommits = new TIntArrayList(lines);
+      List<String> lineTexts = new ArrayList<String>(lines);
+      for (int i = 0; i < lines; i++) {
+        lineCommits.add(DataInputOutputUtil.readINT(in) - 1);
+        lineTexts.add(IOUtil.readString(in));
+      }
+      return new GitBlame(hashes, authors, times, lineCommits, lineTexts);
+    }
+  }
+}
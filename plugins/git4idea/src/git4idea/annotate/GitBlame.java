@@ -0,0 +1,207 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.annotate;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vcs.history.VcsRevisionNumber;
+import com.intellij.openapi.vfs.VirtualFile;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TLongArrayList;
+import gnu.trove.TObjectIntHashMap;
+import git4idea.GitRevisionNumber;
+import git4idea.GitUtil;
+import git4idea.commands.GitHandler;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * <p>The result of {@code 'git blame --porcelain'}: the commit (hash, author and committer time) and the text of each line.</p>
+ * <p>The blame is built incrementally by {@link Parser} as the output comes from the process,
+ *    and is compact enough to be kept in {@link GitAnnotationStorage}.</p>
+ */
+class GitBlame {
+  @NonNls private static final String AUTHOR_KEY = "author";
+  @NonNls private static final String COMMITTER_TIME_KEY = "committer-time";
+
+  // commits, referred from lines by index
+  @NotNull final List<String> myHashes;
+  @NotNull final List<String> myAuthors;
+  @NotNull final TLongArrayList myTimes;
+  // the commit index of each line, -1 for not committed lines
+  @NotNull final TIntArrayList myLineCommits;
+  @NotNull final List<String> myLines;
+
+  GitBlame() {
+    this(new ArrayList<String>(), new ArrayList<String>(), new TLongArrayList(), new TIntArrayList(), new ArrayList<String>());
+  }
+
+  GitBlame(@NotNull List<String> hashes,
+           @NotNull List<String> authors,
+           @NotNull TLongArrayList times,
+           @NotNull TIntArrayList lineCommits,
+           @NotNull List<String> lines) {
+    myHashes = hashes;
+    myAuthors = authors;
+    myTimes = times;
+    myLineCommits = lineCommits;
+    myLines = lines;
+  }
+
+  @NotNull
+  GitFileAnnotation toAnnotation(@NotNull Project project, @NotNull VirtualFile file, @Nullable VcsRevisionNumber revision)
+    throws VcsException {
+    GitFileAnnotation annotation = new GitFileAnnotation(project, file, revision == null, revision);
+    GitRevisionNumber[] revisions = new GitRevisionNumber[myHashes.size()];
+    for (int i = 0; i < revisions.length; i++) {
+      revisions[i] = new GitRevisionNumber(myHashes.get(i), new Date(myTimes.get(i)));
+    }
+    for (int i = 0; i < myLines.size(); i++) {
+      int commit = myLineCommits.get(i);
+      if (commit < 0) {
+        annotation.appendLineInfo(null, null, null, myLines.get(i), i + 1);
+      }
+      else {
+        GitRevisionNumber number = revisions[commit];
+        annotation.appendLineInfo(number.getTimestamp(), number, myAuthors.get(commit), myLines.get(i), i + 1);
+      }
+    }
+    return annotation;
+  }
+
+  /**
+   * Parses the output of {@code 'git blame -p'} fed by chunks as it comes from the process.
+   * Exceptions are not thrown from {@link #feed(String)}, which is called from the output reading thread, but from {@link #finish()}.
+   */
+  static class Parser {
+    @NotNull private final GitBlame myBlame = new GitBlame();
+    @NotNull private final TObjectIntHashMap<String> myCommitIndices = new TObjectIntHashMap<String>();
+    @NotNull private final StringBuilder myLine = new StringBuilder();
+    @Nullable private GitHandler myHandler; // for error reporting
+
+    private boolean myInHeader; // the commit information lines of the current blame entry are being read
+    private int myCurrentCommit;
+    private boolean myNewCommit;
+    private int myLineNumber;
+    @Nullable private VcsException myError;
+
+    void setHandler(@NotNull GitHandler handler) {
+      myHandler = handler;
+    }
+
+    synchronized void feed(@NotNull String text) {
+      int start = 0;
+      for (int i = 0; i < text.length(); i++) {
+        if (text.charAt(i) == '\n') {
+          myLine.append(text, start, i + 1);
+          processLine(myLine.toString());
+          myLine.setLength(0);
+          start = i + 1;
+        }
+      }
+      myLine.append(text, start, text.length());
+    }
+
+    @NotNull
+    synchronized GitBlame finish() throws VcsException {
+      if (myLine.length() > 0) {
+        processLine(myLine.toString());
+        myLine.setLength(0);
+      }
+      if (myError != null) {
+        throw myError;
+      }
+      return myBlame;
+    }
+
+    private void processLine(@NotNull String line) {
+      if (myError != null) {
+        return;
+      }
+      try {
+        if (!myInHeader) {
+          parseEntryStart(line);
+        }
+        else if (line.startsWith("\t")) {
+          // the line of the file itself, with the line separator
+          if (myLineNumber != myBlame.myLines.size() + 1) {
+            throw new VcsException("Adding for info for line " + myLineNumber + " but we are expecting it to be for " +
+                                   (myBlame.myLines.size() + 1));
+          }
+          myBlame.myLineCommits.add(myCurrentCommit);
+          myBlame.myLines.add(line.substring(1));
+          myInHeader = false;
+        }
+        else if (myNewCommit) {
+          parseCommitInfo(line);
+        }
+      }
+      catch (VcsException e) {
+        myError = e;
+      }
+      catch (RuntimeException e) {
+        myError = new VcsException("Couldn't parse line [" + line + "] of " + myHandler, e);
+      }
+    }
+
+    // <hash> <original line number> <final line number>[ <lines in group>]
+    private void parseEntryStart(@NotNull String line) throws VcsException {
+      String[] tokens = line.trim().split(" ");
+      if (tokens.length < 3) {
+        throw new VcsException("Unexpected blame entry start [" + line + "] of " + myHandler);
+      }
+      String hash = tokens[0];
+      myLineNumber = Integer.parseInt(tokens[2]);
+      myInHeader = true;
+      if (hash.equals(GitRevisionNumber.NOT_COMMITTED_HASH)) {
+        myCurrentCommit = -1;
+        myNewCommit = false;
+      }
+      else if (myCommitIndices.containsKey(hash)) {
+        myCurrentCommit = myCommitIndices.get(hash);
+        myNewCommit = false;
+      }
+      else {
+        myCurrentCommit = myBlame.myHashes.size();
+        myCommitIndices.put(hash, myCurrentCommit);
+        myBlame.myHashes.add(hash);
+        myBlame.myAuthors.add(null);
+        myBlame.myTimes.add(0);
+        myNewCommit = true;
+      }
+    }
+
+    private void parseCommitInfo(@NotNull String line) {
+      int space = line.indexOf(' ');
+      if (space < 0) {
+        return;
+      }
+      String key = line.substring(0, space);
+      String value = line.substring(space + 1).trim();
+      if (AUTHOR_KEY.equals(key)) {
+        myBlame.myAuthors.set(myCurrentCommit, value);
+      }
+      else if (COMMITTER_TIME_KEY.equals(key)) {
+        myBlame.myTimes.set(myCurrentCommit, GitUtil.parseTimestampWithNFEReport(value, myHandler, line).getTime());
+      }
+    }
+  }
+}
@@ -21,6 +21,7 @@ import com.intellij.dvcs.repo.RepositoryUtil;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.util.Processor;
+import com.intellij.util.containers.ContainerUtil;
 import com.intellij.vcs.log.Hash;
 import com.intellij.vcs.log.impl.HashImpl;
 import git4idea.GitBranch;
@@ -37,6 +38,7 @@ import java.io.File;
 import java.io.FileReader;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -45,6 +47,10 @@ import java.util.regex.Pattern;
  * Reads information about the Git repository from Git service files located in the {@code .git} folder.
  * NB: works with {@link java.io.File}, i.e. reads from disk. Consider using caching.
  * Throws a {@link RepoStateException} in the case of incorrect Git file format.
+ * <p/>
+ * Branches from {@code packed-refs} and loose branch files are cached between reads, and a file is re-read only if its
+ * timestamp or length has changed, so that re-reading a repository with a lot of refs after a change costs
+ * proportionally to the number of changed files, not to the number of refs.
  *
  * @author Kirill Likhodedov
  */
@@ -60,12 +66,21 @@ class GitRepositoryReader {
   @NonNls private static final String REFS_HEADS_PREFIX = "refs/heads/";
   @NonNls private static final String REFS_REMOTES_PREFIX = "refs/remotes/";
 
+  /**
+   * A file modified within this interval before it was read could have been modified again without changing its timestamp
+   * (file system timestamps may have a granularity of several seconds), so the cached contents of such file are not trusted.
+   */
+  private static final long RACY_MODIFICATION_INTERVAL = 3000;
+
   @NotNull private final File          myGitDir;         // .git/
   @NotNull private final File          myHeadFile;       // .git/HEAD
   @NotNull private final File          myRefsHeadsDir;   // .git/refs/heads/
   @NotNull private final File          myRefsRemotesDir; // .git/refs/remotes/
   @NotNull private final File          myPackedRefsFile; // .git/packed-refs
 
+  @Nullable private volatile CachedFile<Map<String, String>> myPackedBranches; // branch name -> hash from packed-refs
+  @NotNull private final ConcurrentMap<String, CachedFile<String>> myLooseBranches = ContainerUtil.newConcurrentMap(); // path -> hash
+
   GitRepositoryReader(@NotNull File gitDir) {
     myGitDir = gitDir;
     RepositoryUtil.assertFileExists(myGitDir, ".git directory not found in " + gitDir);
@@ -197,28 +212,51 @@ class GitRepositoryReader {
    */
   @Nullable
   private String findBranchRevisionInPackedRefs(final String ref) {
+    Map<String, String> packedBranches = readPackedBranchHashes();
+    String hash = packedBranches.get(REFS_HEADS_PREFIX + ref);
+    if (hash != null) {
+      return hash;
+    }
+    for (Map.Entry<String, String> entry : packedBranches.entrySet()) {
+      if (entry.getKey().endsWith(ref)) {
+        return entry.getValue();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns local and remote branches from the {@code packed-refs} file, re-reading it only if it has changed since the previous call.
+   * Tags are not stored, since they are not needed, and there may be a lot of them.
+   */
+  @NotNull
+  private Map<String, String> readPackedBranchHashes() {
     if (!myPackedRefsFile.exists()) {
-      return null;
+      myPackedBranches = null;
+      return Collections.emptyMap();
+    }
+    CachedFile<Map<String, String>> cached = myPackedBranches;
+    if (cached != null && cached.isUpToDate(myPackedRefsFile)) {
+      return cached.myValue;
     }
 
-    final AtomicReference<String> hashRef = new AtomicReference<String>();
+    final Map<String, String> branches = new LinkedHashMap<String, String>();
+    long readTime = System.currentTimeMillis();
+    long timestamp = myPackedRefsFile.lastModified();
+    long length = myPackedRefsFile.length();
     readPackedRefsFile(new PackedRefsLineResultHandler() {
       @Override
-      public void handleResult(String hash, String branchName) {
+      public void handleResult(@Nullable String hash, @Nullable String branchName) {
         if (hash == null || branchName == null) {
           return;
         }
-        if (branchName.endsWith(ref)) {
-          hashRef.set(shortBuffer(hash));
-          stop();
+        if (branchName.startsWith(REFS_HEADS_PREFIX) || branchName.startsWith(REFS_REMOTES_PREFIX)) {
+          branches.put(branchName, shortBuffer(hash));
         }
       }
     });
-    if (hashRef.get() != null) {
-      return hashRef.get();
-    }
-
-    return null;
+    myPackedBranches = new CachedFile<Map<String, String>>(timestamp, length, readTime, branches);
+    return branches;
   }
 
   private void readPackedRefsFile(@NotNull final PackedRefsLineResultHandler handler) {
@@ -275,8 +313,10 @@ class GitRepositoryReader {
    * @param remotes
    */
   GitBranchesCollection readBranches(@NotNull Collection<GitRemote> remotes) {
-    Set<GitLocalBranch> localBranches = readUnpackedLocalBranches();
-    Set<GitRemoteBranch> remoteBranches = readUnpackedRemoteBranches(remotes);
+    Set<String> visitedFiles = new HashSet<String>();
+    Set<GitLocalBranch> localBranches = readUnpackedLocalBranches(visitedFiles);
+    Set<GitRemoteBranch> remoteBranches = readUnpackedRemoteBranches(remotes, visitedFiles);
+    myLooseBranches.keySet().retainAll(visitedFiles); // forget deleted branches
     GitBranchesCollection packedBranches = readPackedBranches(remotes);
     localBranches.addAll(packedBranches.getLocalBranches());
     remoteBranches.addAll(packedBranches.getRemoteBranches());
@@ -287,24 +327,39 @@ class GitRepositoryReader {
    * @return list of branches from refs/heads. active branch is not marked as active - the caller should do this.
    */
   @NotNull
-  private Set<GitLocalBranch> readUnpackedLocalBranches() {
+  private Set<GitLocalBranch> readUnpackedLocalBranches(@NotNull Set<String> visitedFiles) {
     Set<GitLocalBranch> branches = new HashSet<GitLocalBranch>();
     for (Map.Entry<String, File> entry : readLocalBranches().entrySet()) {
       String branchName = entry.getKey();
       File branchFile = entry.getValue();
+      visitedFiles.add(branchFile.getPath());
       String hash = loadHashFromBranchFile(branchFile);
       branches.add(new GitLocalBranch(branchName, createHash(hash)));
     }
     return branches;
   }
 
+  /**
+   * Reads the hash from the given loose branch file, or takes it from the cache if the file hasn't changed since the previous read.
+   */
   @Nullable
-  private static String loadHashFromBranchFile(@NotNull File branchFile) {
+  private String loadHashFromBranchFile(@NotNull File branchFile) {
+    String path = branchFile.getPath();
+    CachedFile<String> cached = myLooseBranches.get(path);
+    if (cached != null && cached.isUpToDate(branchFile)) {
+      return cached.myValue;
+    }
+    long readTime = System.currentTimeMillis();
+    long timestamp = branchFile.lastModified();
+    long length = branchFile.length();
     try {
-      return RepositoryUtil.tryLoadFile(branchFile);
+      String hash = RepositoryUtil.tryLoadFile(branchFile);
+      myLooseBranches.put(path, new CachedFile<String>(timestamp, length, readTime, hash));
+      return hash;
     }
     catch (RepoStateException e) {  // notify about error but don't break the process
       LOG.error("Couldn't read " + branchFile, e);
+      myLooseBranches.remove(path);
     }
     return null;
   }
@@ -314,7 +369,8 @@ class GitRepositoryReader {
    * @param remotes
    */
   @NotNull
-  private Set<GitRemoteBranch> readUnpackedRemoteBranches(@NotNull final Collection<GitRemote> remotes) {
+  private Set<GitRemoteBranch> readUnpackedRemoteBranches(@NotNull final Collection<GitRemote> remotes,
+                                                          @NotNull final Set<String> visitedFiles) {
     final Set<GitRemoteBranch> branches = new HashSet<GitRemoteBranch>();
     if (!myRefsRemotesDir.exists()) {
       return branches;
@@ -326,6 +382,7 @@ class GitRepositoryReader {
           final String relativePath = FileUtil.getRelativePath(myGitDir, file);
           if (relativePath != null) {
             String branchName = FileUtil.toSystemIndependentName(relativePath);
+            visitedFiles.add(file.getPath());
             String hash = loadHashFromBranchFile(file);
             GitRemoteBranch remoteBranch = GitBranchUtil.parseRemoteBranch(branchName, createHash(hash), remotes);
             if (remoteBranch != null) {
@@ -345,29 +402,25 @@ class GitRepositoryReader {
    */
   @NotNull
   private GitBranchesCollection readPackedBranches(@NotNull final Collection<GitRemote> remotes) {
-    final Set<GitLocalBranch> localBranches = new HashSet<GitLocalBranch>();
-    final Set<GitRemoteBranch> remoteBranches = new HashSet<GitRemoteBranch>();
-    if (!myPackedRefsFile.exists()) {
+    Map<String, String> packedBranches = readPackedBranchHashes();
+    if (packedBranches.isEmpty()) {
       return GitBranchesCollection.EMPTY;
     }
-
-    readPackedRefsFile(new PackedRefsLineResultHandler() {
-      @Override public void handleResult(@Nullable String hash, @Nullable String branchName) {
-        if (hash == null || branchName == null) {
-          return;
-        }
-        hash = shortBuffer(hash);
-        if (branchName.startsWith(REFS_HEADS_PREFIX)) {
-          localBranches.add(new GitLocalBranch(branchName, HashImpl.build(hash)));
-        }
-        else if (branchName.startsWith(REFS_REMOTES_PREFIX)) {
-          GitRemoteBranch remoteBranch = GitBranchUtil.parseRemoteBranch(branchName, HashImpl.build(hash), remotes);
-          if (remoteBranch != null) {
-            remoteBranches.add(remoteBranch);
-          }
+    Set<GitLocalBranch> localBranches = new HashSet<GitLocalBranch>();
+    Set<GitRemoteBranch> remoteBranches = new HashSet<GitRemoteBranch>();
+    for (Map.Entry<String, String> entry : packedBranches.entrySet()) {
+      String branchName = entry.getKey();
+      Hash hash = HashImpl.build(entry.getValue());
+      if (branchName.startsWith(REFS_HEADS_PREFIX)) {
+        localBranches.add(new GitLocalBranch(branchName, hash));
+      }
+      else {
+        GitRemoteBranch remoteBranch = GitBranchUtil.parseRemoteBranch(branchName, hash, remotes);
+        if (remoteBranch != null) {
+          remoteBranches.add(remoteBranch);
         }
       }
-    });
+    }
     return new GitBranchesCollection(localBranches, remoteBranches);
   }
 
@@ -467,6 +520,27 @@ class GitRepositoryReader {
     }
   }
 
+  /**
+   * Contents parsed from a file, together with the file attributes at the moment of reading.
+   */
+  private static class CachedFile<T> {
+    private final long myTimestamp;
+    private final long myLength;
+    private final long myReadTime;
+    @NotNull private final T myValue;
+
+    CachedFile(long timestamp, long length, long readTime, @NotNull T value) {
+      myTimestamp = timestamp;
+      myLength = length;
+      myReadTime = readTime;
+      myValue = value;
+    }
+
+    boolean isUpToDate(@NotNull File file) {
+      return myReadTime - myTimestamp > RACY_MODIFICATION_INTERVAL && file.lastModified() == myTimestamp && file.length() == myLength;
+    }
+  }
+
   /**
    * Container to hold two information items: current .git/HEAD value and is Git on branch.
    */
@@ -17,14 +17,18 @@ package git4idea.status;
 
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vcs.*;
 import com.intellij.openapi.vcs.changes.*;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.PairProcessor;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
 import com.intellij.util.containers.Convertor;
 import git4idea.GitContentRevision;
 import git4idea.GitRevisionNumber;
@@ -35,8 +39,11 @@ import git4idea.commands.Git;
 import git4idea.config.GitVersion;
 import git4idea.config.GitVersionSpecialty;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Git repository change provider
@@ -44,6 +51,7 @@ import java.util.*;
 public class GitChangeProvider implements ChangeProvider {
 
   private static final Logger PROFILE_LOG = Logger.getInstance("#GitStatus");
+  private static final int MAX_CONCURRENT_ROOTS = 8;
 
   @NotNull private final Project myProject;
   @NotNull private final Git myGit;
@@ -79,6 +87,10 @@ public class GitChangeProvider implements ChangeProvider {
     try {
       final MyNonChangedHolder holder = new MyNonChangedHolder(myProject, dirtyScope.getDirtyFilesNoExpand(), addGate,
                                                                myFileDocumentManager, myVcsManager);
+      if (roots.size() > 1 && isNewGitChangeProviderAvailable()) {
+        collectConcurrently(vcs, dirtyScope, roots, builder, holder, progress);
+        return;
+      }
       for (VirtualFile root : roots) {
         debug("checking root: " + root.getPath());
         GitChangesCollector collector = isNewGitChangeProviderAvailable()
@@ -86,17 +98,7 @@ public class GitChangeProvider implements ChangeProvider {
                                                                          vcs, dirtyScope, root)
                                         : GitOldChangesCollector.collect(myProject, myChangeListManager, myVcsManager,
                                                                          vcs, dirtyScope, root);
-        final Collection<Change> changes = collector.getChanges();
-        holder.changed(changes);
-        for (Change file : changes) {
-          debug("process change: " + ChangesUtil.getFilePath(file).getPath());
-          builder.processChange(file, GitVcs.getKey());
-        }
-        for (VirtualFile f : collector.getUnversionedFiles()) {
-          builder.processUnversionedFile(f);
-          holder.unversioned(f);
-        }
-        holder.feedBuilder(builder);
+        processCollector(collector, builder, holder);
       }
     }
     catch (VcsException e) {
@@ -106,6 +108,91 @@ public class GitChangeProvider implements ChangeProvider {
     }
   }
 
+  /**
+   * Runs 'git status' for several roots at once, at most {@link #MAX_CONCURRENT_ROOTS} processes simultaneously.
+   * Changes of each root are passed to the builder as soon as the root is processed, in the order of completion.
+   */
+  private void collectConcurrently(@NotNull final GitVcs vcs,
+                                   @NotNull final VcsDirtyScope dirtyScope,
+                                   @NotNull Collection<VirtualFile> roots,
+                                   @NotNull ChangelistBuilder builder,
+                                   @NotNull MyNonChangedHolder holder,
+                                   @Nullable final ProgressIndicator progress) throws VcsException {
+    int threads = Math.min(roots.size(), Math.min(MAX_CONCURRENT_ROOTS, Runtime.getRuntime().availableProcessors()));
+    CompletionService<GitChangesCollector> service =
+      new ExecutorCompletionService<GitChangesCollector>(new BoundedTaskExecutor(PooledThreadExecutor.INSTANCE, threads));
+    List<Future<GitChangesCollector>> futures = new ArrayList<Future<GitChangesCollector>>(roots.size());
+    final GitNewChangesCollector.RunningHandlers handlers = new GitNewChangesCollector.RunningHandlers();
+    for (final VirtualFile root : roots) {
+      futures.add(service.submit(new Callable<GitChangesCollector>() {
+        @Override
+        public GitChangesCollector call() throws Exception {
+          final Ref<GitChangesCollector> collector = Ref.create();
+          final Ref<VcsException> exception = Ref.create();
+          ProgressManager.getInstance().runProcess(new Runnable() {
+            @Override
+            public void run() {
+              debug("checking root: " + root.getPath());
+              try {
+                collector.set(GitNewChangesCollector.collect(myProject, myGit, myChangeListManager, myVcsManager, vcs, dirtyScope, root,
+                                                             handlers));
+              }
+              catch (VcsException e) {
+                exception.set(e);
+              }
+            }
+          }, progress);
+          if (!exception.isNull()) {
+            throw exception.get();
+          }
+          return collector.get();
+        }
+      }));
+    }
+
+    try {
+      for (int i = 0; i < futures.size(); i++) {
+        processCollector(service.take().get(), builder, holder);
+      }
+    }
+    catch (InterruptedException e) {
+      throw new ProcessCanceledException();
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof VcsException) {
+        throw (VcsException)cause;
+      }
+      if (cause instanceof ProcessCanceledException) {
+        throw (ProcessCanceledException)cause;
+      }
+      throw new RuntimeException(cause);
+    }
+    finally {
+      // if all roots have been processed, nothing is running; otherwise don't wait for the rest of the processes
+      for (Future<GitChangesCollector> future : futures) {
+        future.cancel(false);
+      }
+      handlers.destroyAll();
+    }
+  }
+
+  private static void processCollector(@NotNull GitChangesCollector collector,
+                                       @NotNull ChangelistBuilder builder,
+                                       @NotNull MyNonChangedHolder holder) {
+    final Collection<Change> changes = collector.getChanges();
+    holder.changed(changes);
+    for (Change file : changes) {
+      debug("process change: " + ChangesUtil.getFilePath(file).getPath());
+      builder.processChange(file, GitVcs.getKey());
+    }
+    for (VirtualFile f : collector.getUnversionedFiles()) {
+      builder.processUnversionedFile(f);
+      holder.unversioned(f);
+    }
+    holder.feedBuilder(builder);
+  }
+
   public static void appendNestedVcsRootsToDirt(final VcsDirtyScope dirtyScope, GitVcs vcs, final ProjectLevelVcsManager vcsManager) {
     final Set<FilePath> recursivelyDirtyDirectories = dirtyScope.getRecursivelyDirtyDirectories();
     if (recursivelyDirtyDirectories.isEmpty()) {
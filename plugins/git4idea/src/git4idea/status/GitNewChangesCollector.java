@@ -15,8 +15,11 @@
  */
 package git4idea.status;
 
+import com.intellij.execution.process.ProcessOutputTypes;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vcs.*;
 import com.intellij.openapi.vcs.changes.Change;
@@ -37,10 +40,9 @@ import git4idea.commands.GitSimpleHandler;
 import git4idea.repo.GitRepository;
 import git4idea.repo.GitUntrackedFilesHolder;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
 
 /**
  * <p>
@@ -49,6 +51,9 @@ import java.util.Set;
  *   Works only on Git 1.7.0 and later.
  * </p>
  * <p>
+ *   The output is parsed record by record as soon as it comes from the process, i.e. it is not accumulated in memory.
+ * </p>
+ * <p>
  *   The class is immutable: collect changes and get the instance from where they can be retrieved by {@link #collect}.
  * </p>
  *
@@ -61,6 +66,7 @@ class GitNewChangesCollector extends GitChangesCollector {
   private final Collection<Change> myChanges = new HashSet<Change>();
   private final Set<VirtualFile> myUnversionedFiles = new HashSet<VirtualFile>();
   @NotNull private final Git myGit;
+  @Nullable private final RunningHandlers myRunningHandlers;
 
   /**
    * Collects the changes from git command line and returns the instance of GitNewChangesCollector from which these changes can be retrieved.
@@ -70,7 +76,19 @@ class GitNewChangesCollector extends GitChangesCollector {
   static GitNewChangesCollector collect(@NotNull Project project, @NotNull Git git, @NotNull ChangeListManager changeListManager,
                                         @NotNull ProjectLevelVcsManager vcsManager, @NotNull AbstractVcs vcs,
                                         @NotNull VcsDirtyScope dirtyScope, @NotNull VirtualFile vcsRoot) throws VcsException {
-    return new GitNewChangesCollector(project, git, changeListManager, vcsManager, vcs, dirtyScope, vcsRoot);
+    return collect(project, git, changeListManager, vcsManager, vcs, dirtyScope, vcsRoot, null);
+  }
+
+  /**
+   * Same as {@link #collect(Project, Git, ChangeListManager, ProjectLevelVcsManager, AbstractVcs, VcsDirtyScope, VirtualFile)},
+   * but registers the 'git status' handler in the given holder, so that the process can be destroyed from another thread.
+   */
+  @NotNull
+  static GitNewChangesCollector collect(@NotNull Project project, @NotNull Git git, @NotNull ChangeListManager changeListManager,
+                                        @NotNull ProjectLevelVcsManager vcsManager, @NotNull AbstractVcs vcs,
+                                        @NotNull VcsDirtyScope dirtyScope, @NotNull VirtualFile vcsRoot,
+                                        @Nullable RunningHandlers runningHandlers) throws VcsException {
+    return new GitNewChangesCollector(project, git, changeListManager, vcsManager, vcs, dirtyScope, vcsRoot, runningHandlers);
   }
 
   @Override
@@ -87,10 +105,12 @@ class GitNewChangesCollector extends GitChangesCollector {
 
   private GitNewChangesCollector(@NotNull Project project, @NotNull Git git, @NotNull ChangeListManager changeListManager,
                                  @NotNull ProjectLevelVcsManager vcsManager, @NotNull AbstractVcs vcs,
-                                 @NotNull VcsDirtyScope dirtyScope, @NotNull VirtualFile vcsRoot) throws VcsException
+                                 @NotNull VcsDirtyScope dirtyScope, @NotNull VirtualFile vcsRoot,
+                                 @Nullable RunningHandlers runningHandlers) throws VcsException
   {
     super(project, changeListManager, vcsManager, vcs, dirtyScope, vcsRoot);
     myGit = git;
+    myRunningHandlers = runningHandlers;
     myRepository = GitUtil.getRepositoryManager(myProject).getRepositoryForRoot(vcsRoot);
 
     Collection<FilePath> dirtyPaths = dirtyPaths(true);
@@ -102,9 +122,30 @@ class GitNewChangesCollector extends GitChangesCollector {
 
   // calls 'git status' and parses the output, feeding myChanges.
   private void collectChanges(Collection<FilePath> dirtyPaths) throws VcsException {
-    GitSimpleHandler handler = statusHandler(dirtyPaths);
-    String output = handler.run();
-    parseOutput(output, handler);
+    final VcsRevisionNumber head = getHead();
+    StatusOutputParser parser = new StatusOutputParser(new StatusOutputParser.LineProcessor() {
+      @Override
+      public void processLine(@NotNull String line, @Nullable String oldFilename) throws VcsException {
+        GitNewChangesCollector.this.processLine(head, line, oldFilename);
+      }
+    });
+    GitSimpleHandler handler = statusHandler(dirtyPaths, parser);
+    parser.setHandler(handler);
+    if (myRunningHandlers == null) {
+      handler.run();
+    }
+    else {
+      if (!myRunningHandlers.register(handler)) {
+        throw new ProcessCanceledException();
+      }
+      try {
+        handler.run();
+      }
+      finally {
+        myRunningHandlers.unregister(handler);
+      }
+    }
+    parser.finish();
   }
 
   private void collectUnversionedFiles() throws VcsException {
@@ -117,151 +158,287 @@ class GitNewChangesCollector extends GitChangesCollector {
     }
   }
 
-  private GitSimpleHandler statusHandler(Collection<FilePath> dirtyPaths) {
-    GitSimpleHandler handler = new GitSimpleHandler(myProject, myVcsRoot, GitCommand.STATUS);
+  private GitSimpleHandler statusHandler(Collection<FilePath> dirtyPaths, @NotNull StatusOutputParser parser) {
+    GitSimpleHandler handler = createStatusHandler(parser);
+    handler.addRelativePaths(dirtyPaths);
+    if (handler.isLargeCommandLine()) {
+      // if there are too much files, just get all changes for the project
+      handler = createStatusHandler(parser);
+    }
+    return handler;
+  }
+
+  // the handler passes stdout to the parser instead of accumulating it
+  @NotNull
+  private GitSimpleHandler createStatusHandler(@NotNull final StatusOutputParser parser) {
+    GitSimpleHandler handler = new GitSimpleHandler(myProject, myVcsRoot, GitCommand.STATUS) {
+      @Override
+      protected void onTextAvailable(String text, Key outputType) {
+        if (ProcessOutputTypes.STDOUT == outputType) {
+          parser.feed(text);
+        }
+        else {
+          super.onTextAvailable(text, outputType);
+        }
+      }
+    };
     final String[] params = {"--porcelain", "-z", "--untracked-files=no"};   // untracked files are stored separately
     handler.addParameters(params);
     handler.setSilent(true);
     handler.setStdoutSuppressed(true);
     handler.endOptions();
-    handler.addRelativePaths(dirtyPaths);
-    if (handler.isLargeCommandLine()) {
-      // if there are too much files, just get all changes for the project
-      handler = new GitSimpleHandler(myProject, myVcsRoot, GitCommand.STATUS);
-      handler.addParameters(params);
-      handler.setSilent(true);
-      handler.setStdoutSuppressed(true);
-      handler.endOptions();
-    }
     return handler;
   }
 
   /**
-   * Parses the output of the 'git status --porcelain -z' command filling myChanges and myUnversionedFiles.
+   * Handlers of 'git status' processes running for several roots at once.
+   * If changes of one root can't be collected, the processes of other roots are destroyed by {@link #destroyAll()}
+   * instead of waiting for their completion; handlers registered after that are destroyed immediately.
+   */
+  static class RunningHandlers {
+    @NotNull private final Set<GitHandler> myHandlers = new HashSet<GitHandler>();
+    private boolean myDestroyed;
+
+    /**
+     * @return false if the handler should not be run, because {@link #destroyAll()} has already been called.
+     */
+    synchronized boolean register(@NotNull GitHandler handler) {
+      if (myDestroyed) {
+        return false;
+      }
+      myHandlers.add(handler);
+      return true;
+    }
+
+    synchronized void unregister(@NotNull GitHandler handler) {
+      myHandlers.remove(handler);
+    }
+
+    void destroyAll() {
+      List<GitHandler> handlers;
+      synchronized (this) {
+        myDestroyed = true;
+        handlers = new ArrayList<GitHandler>(myHandlers);
+        myHandlers.clear();
+      }
+      for (GitHandler handler : handlers) {
+        handler.destroyProcess();
+      }
+    }
+  }
+
+  /**
+   * Parses the output of the 'git status --porcelain -z' command and passes each entry to the {@link LineProcessor}.
    * See <a href=http://www.kernel.org/pub/software/scm/git/docs/git-status.html#_output">Git man</a> for details.
+   * <p/>
+   * The output is fed by chunks as it comes from the process; records are separated by NUL characters.
+   * Exceptions are not thrown from {@link #feed(String)}, which is called from the process output reading thread,
+   * but are rethrown from {@link #finish()}.
    */
-  // handler is here for debugging purposes in the case of parse error
-  private void parseOutput(@NotNull String output, @NotNull GitHandler handler) throws VcsException {
-    VcsRevisionNumber head = getHead();
+  static class StatusOutputParser {
+
+    interface LineProcessor {
+      /**
+       * @param line        the status line in the format XY_filename.
+       * @param oldFilename the "from" filepath for a rename or a copy, null for other entries.
+       */
+      void processLine(@NotNull String line, @Nullable String oldFilename) throws VcsException;
+    }
+
+    @NotNull private final LineProcessor myProcessor;
+    @NotNull private final StringBuilder myRecord = new StringBuilder();
+    @Nullable private String myPendingLine; // the line of a rename or copy waiting for the "from" filepath
+    @Nullable private GitHandler myHandler; // for debugging purposes in the case of parse error
+    @Nullable private Exception myError;
+
+    StatusOutputParser(@NotNull LineProcessor processor) {
+      myProcessor = processor;
+    }
 
-    final String[] split = output.split("\u0000");
+    void setHandler(@NotNull GitHandler handler) {
+      myHandler = handler;
+    }
 
-    for (int pos = 0; pos < split.length; pos++) {
-      String line = split[pos];
-      if (StringUtil.isEmptyOrSpaces(line)) { // skip empty lines if any (e.g. the whole output may be empty on a clean working tree).
-        continue;
+    synchronized void feed(@NotNull String text) {
+      int start = 0;
+      for (int i = 0; i < text.length(); i++) {
+        if (text.charAt(i) == '\u0000') {
+          myRecord.append(text, start, i);
+          processRecord(myRecord.toString());
+          myRecord.setLength(0);
+          start = i + 1;
+        }
       }
+      myRecord.append(text, start, text.length());
+    }
 
-      // format: XY_filename where _ stands for space.
-      if (line.length() < 4) { // X, Y, space and at least one symbol for the file
-        throwGFE("Line is too short.", handler, output, line, '0', '0');
+    synchronized void finish() throws VcsException {
+      if (myRecord.length() > 0) {
+        processRecord(myRecord.toString());
+        myRecord.setLength(0);
       }
-      final String xyStatus = line.substring(0, 2);
-      final String filepath = line.substring(3); // skipping the space
-      final char xStatus = xyStatus.charAt(0);
-      final char yStatus = xyStatus.charAt(1);
-
-      switch (xStatus) {
-        case ' ':
-          if (yStatus == 'M') {
-            reportModified(filepath, head);
-          } else if (yStatus == 'D') {
-            reportDeleted(filepath, head);
-          } else if (yStatus == 'T') {
-            reportTypeChanged(filepath, head);
-          } else if (yStatus == 'U') {
-            reportConflict(filepath, head);
-          } else {
-            throwYStatus(output, handler, line, xStatus, yStatus);
-          }
-          break;
-
-        case 'M':
-          if (yStatus == ' ' || yStatus == 'M' || yStatus == 'T') {
-            reportModified(filepath, head);
-          } else if (yStatus == 'D') {
-            reportDeleted(filepath, head);
-          } else {
-            throwYStatus(output, handler, line, xStatus, yStatus);
-          }
-          break;
-
-        case 'C':
-          //noinspection AssignmentToForLoopParameter
-          pos += 1;  // read the "from" filepath which is separated also by NUL character.
-          // NB: no "break" here!
-          // we treat "Copy" as "Added", but we still have to read the old path not to break the format parsing.
-        case 'A':
-          if (yStatus == 'M' || yStatus == ' ' || yStatus == 'T') {
-            reportAdded(filepath);
-          } else if (yStatus == 'D') {
-            // added + deleted => no change (from IDEA point of view).
-          } else if (yStatus == 'U' || yStatus == 'A') { // AU - unmerged, added by us; AA - unmerged, both added
-            reportConflict(filepath, head);
-          }  else {
-            throwYStatus(output, handler, line, xStatus, yStatus);
-          }
-          break;
-
-        case 'D':
-          if (yStatus == 'M' || yStatus == ' ' || yStatus == 'T') {
-            reportDeleted(filepath, head);
-          } else if (yStatus == 'U') { // DU - unmerged, deleted by us
-            reportConflict(filepath, head);
-          } else if (yStatus == 'D') { // DD - unmerged, both deleted
-            // TODO
-            // currently not displaying, because "both deleted" conflicts can't be handled by our conflict resolver.
-            // see IDEA-63156
-          } else {
-            throwYStatus(output, handler, line, xStatus, yStatus);
-          }
-          break;
-
-        case 'U':
-          if (yStatus == 'U' || yStatus == 'A' || yStatus == 'D' || yStatus == 'T') {
-            // UU - unmerged, both modified; UD - unmerged, deleted by them; UA - umerged, added by them
-            reportConflict(filepath, head);
-          } else {
-            throwYStatus(output, handler, line, xStatus, yStatus);
-          }
-          break;
-
-        case 'R':
-          //noinspection AssignmentToForLoopParameter
-          pos += 1;  // read the "from" filepath which is separated also by NUL character.
-          String oldFilename = split[pos];
-
-          if (yStatus == 'D') {
-            reportDeleted(filepath, head);
-          } else if (yStatus == ' ' || yStatus == 'M' || yStatus == 'T') {
-            reportRename(filepath, oldFilename, head);
-          } else {
-            throwYStatus(output, handler, line, xStatus, yStatus);
+      if (myError == null && myPendingLine != null) {
+        myError = formatException("The \"from\" filepath is missing.", myPendingLine, myPendingLine.charAt(0), myPendingLine.charAt(1));
+      }
+      if (myError instanceof GitFormatException) {
+        throw new GitFormatException(myError.getMessage() + "\nhandler:\n" + myHandler);
+      }
+      if (myError instanceof VcsException) {
+        throw (VcsException)myError;
+      }
+      if (myError != null) {
+        throw (RuntimeException)myError;
+      }
+    }
+
+    private void processRecord(@NotNull String record) {
+      if (myError != null) {
+        return;
+      }
+      try {
+        if (myPendingLine != null) {
+          String line = myPendingLine;
+          myPendingLine = null;
+          myProcessor.processLine(line, record);
+        }
+        else if (!StringUtil.isEmptyOrSpaces(record)) { // skip empty lines if any (e.g. the whole output may be empty on a clean tree).
+          char xStatus = record.length() > 0 ? record.charAt(0) : '0';
+          if (xStatus == 'R' || xStatus == 'C') {
+            myPendingLine = record; // the "from" filepath is separated also by NUL character.
           }
-          break;
-
-        case 'T'://TODO
-          if (yStatus == ' ' || yStatus == 'M') {
-            reportTypeChanged(filepath, head);
-          } else if (yStatus == 'D') {
-            reportDeleted(filepath, head);
-          } else {
-            throwYStatus(output, handler, line, xStatus, yStatus);
+          else {
+            myProcessor.processLine(record, null);
           }
-          break;
+        }
+      }
+      catch (VcsException e) {
+        myError = e;
+      }
+      catch (RuntimeException e) {
+        myError = e;
+      }
+    }
+  }
 
-        case '?':
-          throwGFE("Unexpected unversioned file flag.", handler, output, line, xStatus, yStatus);
-          break;
+  private void processLine(@NotNull VcsRevisionNumber head, @NotNull String line, @Nullable String oldFilename)
+    throws VcsException {
+    // format: XY_filename where _ stands for space.
+    if (line.length() < 4) { // X, Y, space and at least one symbol for the file
+      throwGFE("Line is too short.", line, '0', '0');
+    }
+    final String xyStatus = line.substring(0, 2);
+    final String filepath = line.substring(3); // skipping the space
+    final char xStatus = xyStatus.charAt(0);
+    final char yStatus = xyStatus.charAt(1);
+
+    switch (xStatus) {
+      case ' ':
+        if (yStatus == 'M') {
+          reportModified(filepath, head);
+        } else if (yStatus == 'D') {
+          reportDeleted(filepath, head);
+        } else if (yStatus == 'T') {
+          reportTypeChanged(filepath, head);
+        } else if (yStatus == 'U') {
+          reportConflict(filepath, head);
+        } else {
+          throwYStatus(line, xStatus, yStatus);
+        }
+        break;
+
+      case 'M':
+        if (yStatus == ' ' || yStatus == 'M' || yStatus == 'T') {
+          reportModified(filepath, head);
+        } else if (yStatus == 'D') {
+          reportDeleted(filepath, head);
+        } else {
+          throwYStatus(line, xStatus, yStatus);
+        }
+        break;
+
+      case 'C':
+        // NB: no "break" here!
+        // we treat "Copy" as "Added", but the old path was read not to break the format parsing.
+      case 'A':
+        if (yStatus == 'M' || yStatus == ' ' || yStatus == 'T') {
+          reportAdded(filepath);
+        } else if (yStatus == 'D') {
+          // added + deleted => no change (from IDEA point of view).
+        } else if (yStatus == 'U' || yStatus == 'A') { // AU - unmerged, added by us; AA - unmerged, both added
+          reportConflict(filepath, head);
+        }  else {
+          throwYStatus(line, xStatus, yStatus);
+        }
+        break;
+
+      case 'D':
+        if (yStatus == 'M' || yStatus == ' ' || yStatus == 'T') {
+          reportDeleted(filepath, head);
+        } else if (yStatus == 'U') { // DU - unmerged, deleted by us
+          reportConflict(filepath, head);
+        } else if (yStatus == 'D') { // DD - unmerged, both deleted
+          // TODO
+          // currently not displaying, because "both deleted" conflicts can't be handled by our conflict resolver.
+          // see IDEA-63156
+        } else {
+          throwYStatus(line, xStatus, yStatus);
+        }
+        break;
+
+      case 'U':
+        if (yStatus == 'U' || yStatus == 'A' || yStatus == 'D' || yStatus == 'T') {
+          // UU - unmerged, both modified; UD - unmerged, deleted by them; UA - umerged, added by them
+          reportConflict(filepath, head);
+        } else {
+          throwYStatus(line, xStatus, yStatus);
+        }
+        break;
+
+      case 'R':
+        if (yStatus == 'D') {
+          reportDeleted(filepath, head);
+        } else if (yStatus == ' ' || yStatus == 'M' || yStatus == 'T') {
+          reportRename(filepath, oldFilename, head);
+        } else {
+          throwYStatus(line, xStatus, yStatus);
+        }
+        break;
+
+      case 'T'://TODO
+        if (yStatus == ' ' || yStatus == 'M') {
+          reportTypeChanged(filepath, head);
+        } else if (yStatus == 'D') {
+          reportDeleted(filepath, head);
+        } else {
+          throwYStatus(line, xStatus, yStatus);
+        }
+        break;
+
+      case '?':
+        throwGFE("Unexpected unversioned file flag.", line, xStatus, yStatus);
+        break;
+
+      case '!':
+        throwGFE("Unexpected ignored file flag.", line, xStatus, yStatus);
+
+      default:
+        throwGFE("Unexpected symbol as xStatus.", line, xStatus, yStatus);
 
-        case '!':
-          throwGFE("Unexpected ignored file flag.", handler, output, line, xStatus, yStatus);
+    }
+  }
 
-        default:
-          throwGFE("Unexpected symbol as xStatus.", handler, output, line, xStatus, yStatus);
+  private static void throwYStatus(String line, char xStatus, char yStatus) {
+    throwGFE("Unexpected symbol as yStatus.", line, xStatus, yStatus);
+  }
 
-      }
-    }
+  private static void throwGFE(String message, String line, char xStatus, char yStatus) {
+    throw formatException(message, line, xStatus, yStatus);
+  }
+
+  @NotNull
+  private static GitFormatException formatException(String message, String line, char xStatus, char yStatus) {
+    return new GitFormatException(String.format("%s\n xStatus=[%s], yStatus=[%s], line=[%s]",
+                                                message, xStatus, yStatus, line.replace('\u0000', '!')));
   }
 
   @NotNull
@@ -293,16 +470,6 @@ class GitNewChangesCollector extends GitChangesCollector {
     return nativeHead;
   }
 
-  private static void throwYStatus(String output, GitHandler handler, String line, char xStatus, char yStatus) {
-    throwGFE("Unexpected symbol as yStatus.", handler, output, line, xStatus, yStatus);
-  }
-
-  private static void throwGFE(String message, GitHandler handler, String output, String line, char xStatus, char yStatus) {
-    throw new GitFormatException(String.format("%s\n xStatus=[%s], yStatus=[%s], line=[%s], \n" +
-                                               "handler:\n%s\n output: \n%s",
-                                               message, xStatus, yStatus, line.replace('\u0000', '!'), handler, output));
-  }
-
   private void reportModified(String filepath, VcsRevisionNumber head) throws VcsException {
     ContentRevision before = GitContentRevision.createRevision(myVcsRoot, filepath, head, myProject, false, true, false);
     ContentRevision after = GitContentRevision.createRevision(myVcsRoot, filepath, null, myProject, false, false, false);
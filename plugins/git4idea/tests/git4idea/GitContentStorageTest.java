@@ -0,0 +1,101 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.PersistentHashMap;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.Arrays;
+
+public class GitContentStorageTest extends TestCase {
+  private static final int CONTENT_SIZE = 10;
+
+  private File myDir;
+  private GitContentStorage myStorage;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("git-contents", null);
+    myStorage = new GitContentStorage(myDir, 2 * CONTENT_SIZE);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myStorage.dispose();
+    FileUtil.delete(myDir);
+    super.tearDown();
+  }
+
+  public void testContentSurvivesReopening() {
+    myStorage.put("key", content(1));
+    myStorage.dispose();
+
+    myStorage = new GitContentStorage(myDir, 2 * CONTENT_SIZE);
+    assertTrue(Arrays.equals(content(1), myStorage.get("key")));
+    assertEquals(1, myStorage.getHitCount());
+  }
+
+  public void testSameContentIsStoredOnce() {
+    myStorage.put("key1", content(1));
+    myStorage.put("key2", content(1));
+    myStorage.put("key3", content(2));
+
+    assertTrue(Arrays.equals(content(1), myStorage.get("key1")));
+    assertTrue(Arrays.equals(content(1), myStorage.get("key2")));
+    assertTrue(Arrays.equals(content(2), myStorage.get("key3")));
+  }
+
+  public void testLeastRecentlyUsedContentsAreRemoved() {
+    myStorage.put("key1", content(1));
+    myStorage.put("key2", content(2));
+    assertNotNull(myStorage.get("key1"));
+    myStorage.put("key3", content(3));
+
+    assertNotNull(myStorage.get("key1"));
+    assertNull(myStorage.get("key2"));
+    assertNotNull(myStorage.get("key3"));
+    assertEquals(1, myStorage.getMissCount());
+  }
+
+  public void testMappingsToRemovedContentsAreRemoved() throws Exception {
+    int count = GitContentStorage.EVICTIONS_PER_CLEANUP + 10;
+    for (int i = 0; i < count; i++) {
+      myStorage.put("key" + i, content(i));
+    }
+    myStorage.dispose();
+
+    PersistentHashMap<String, String> blobIds =
+      new PersistentHashMap<String, String>(new File(myDir, "blob-ids"), new EnumeratorStringDescriptor(), new EnumeratorStringDescriptor());
+    try {
+      assertTrue(blobIds.getAllKeysWithExistingMapping().size() <= 2 + 10);
+      assertTrue(blobIds.containsMapping("key" + (count - 1)));
+    }
+    finally {
+      blobIds.close();
+    }
+    myStorage = new GitContentStorage(myDir, 2 * CONTENT_SIZE);
+  }
+
+  private static byte[] content(int i) {
+    byte[] content = new byte[CONTENT_SIZE];
+    Arrays.fill(content, (byte)i);
+    return content;
+  }
+}
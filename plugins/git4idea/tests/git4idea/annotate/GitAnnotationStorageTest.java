@@ -0,0 +1,136 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.annotate;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.LightVirtualFile;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TLongArrayList;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class GitAnnotationStorageTest extends TestCase {
+  private static final String HASH = "0123456789abcdef0123456789abcdef01234567";
+
+  private final VirtualFile myRoot = new LightVirtualFile("root");
+  private File myDir;
+  private GitAnnotationStorage myStorage;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("git-annotations", null);
+    myStorage = new GitAnnotationStorage(myDir);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myStorage.dispose();
+    FileUtil.delete(myDir);
+    super.tearDown();
+  }
+
+  public void testBlameSurvivesReopening() {
+    GitBlame blame = new GitBlame(Arrays.asList(HASH), Arrays.asList("John Doe"), new TLongArrayList(new long[]{1000}),
+                                  new TIntArrayList(new int[]{0, -1}), Arrays.asList("committed", "not committed"));
+    myStorage.put(myRoot, "dir/file.txt", HASH, blame);
+    myStorage.dispose();
+
+    myStorage = new GitAnnotationStorage(myDir);
+    GitBlame stored = myStorage.get(myRoot, "dir/file.txt", HASH);
+    assertNotNull(stored);
+    assertEquals(blame.myHashes, stored.myHashes);
+    assertEquals(blame.myAuthors, stored.myAuthors);
+    assertEquals(blame.myTimes, stored.myTimes);
+    assertEquals(blame.myLineCommits, stored.myLineCommits);
+    assertEquals(blame.myLines, stored.myLines);
+
+    assertNull(myStorage.get(myRoot, "dir/other.txt", HASH));
+  }
+
+  public void testOnlyFullHashesAreStored() {
+    for (String revision : Arrays.asList("0123456", "HEAD", "master", StringUtil.toUpperCase(HASH), HASH + "0")) {
+      myStorage.put(myRoot, "file.txt", revision, blame());
+      assertNull(revision, myStorage.get(myRoot, "file.txt", revision));
+    }
+    assertTrue(GitAnnotationStorage.isFullHash(HASH));
+  }
+
+  public void testLeastRecentlyUsedBlamesAreRemoved() {
+    myStorage.put(myRoot, "used", HASH, blame());
+    myStorage.put(myRoot, "unused", HASH, blame());
+    for (int i = 0; i < GitAnnotationStorage.MAX_BLAMES; i++) {
+      myStorage.put(myRoot, "file" + i, HASH, blame());
+      if (i % 10 == 0) {
+        assertNotNull(myStorage.get(myRoot, "used", HASH));
+      }
+    }
+    myStorage.prune();
+
+    assertNotNull(myStorage.get(myRoot, "used", HASH));
+    assertNull(myStorage.get(myRoot, "unused", HASH));
+    assertNull(myStorage.get(myRoot, "file0", HASH));
+    assertNotNull(myStorage.get(myRoot, "file" + (GitAnnotationStorage.MAX_BLAMES - 1), HASH));
+  }
+
+  public void testHugeBlameIsNotStored() {
+    myStorage.dispose();
+    myStorage = new GitAnnotationStorage(myDir, 1000);
+
+    myStorage.put(myRoot, "small", HASH, blame(90));
+    myStorage.put(myRoot, "huge", HASH, blame(110));
+
+    assertNotNull(myStorage.get(myRoot, "small", HASH));
+    assertNull(myStorage.get(myRoot, "huge", HASH));
+  }
+
+  public void testLeastRecentlyUsedBlamesAboveTotalSizeAreRemoved() {
+    myStorage.dispose();
+    myStorage = new GitAnnotationStorage(myDir, 1000);
+
+    myStorage.put(myRoot, "used", HASH, blame(100));
+    myStorage.put(myRoot, "unused", HASH, blame(100));
+    for (int i = 0; i < 8; i++) {
+      myStorage.put(myRoot, "file" + i, HASH, blame(100));
+    }
+    assertNotNull(myStorage.get(myRoot, "used", HASH));
+    myStorage.put(myRoot, "file8", HASH, blame(100));
+    myStorage.prune();
+
+    assertNotNull(myStorage.get(myRoot, "used", HASH));
+    assertNull(myStorage.get(myRoot, "unused", HASH));
+    assertNotNull(myStorage.get(myRoot, "file0", HASH));
+    assertNotNull(myStorage.get(myRoot, "file8", HASH));
+  }
+
+  @NotNull
+  private static GitBlame blame(int size) {
+    return new GitBlame(Collections.<String>emptyList(), Collections.<String>emptyList(), new TLongArrayList(),
+                        new TIntArrayList(new int[]{-1}), Collections.singletonList(StringUtil.repeat("a", size)));
+  }
+
+  @NotNull
+  private static GitBlame blame() {
+    return new GitBlame(Collections.<String>emptyList(), Collections.<String>emptyList(), new TLongArrayList(), new TIntArrayList(),
+                        Collections.<String>emptyList());
+  }
+}
@@ -87,6 +87,72 @@ public class GitRepositoryReaderTest extends GitLightTest {
     assertBranches(remoteBranches, myRemoteBranches);
   }
 
+  @Test
+  public void testLooseBranchRewrittenWithinSameSecondWithSameLengthIsReread() {
+    File branchFile = new File(new File(new File(myGitDir, "refs"), "heads"), "feature");
+    long timestamp = touchWithinCurrentSecond(branchFile);
+    assertEquals(FileUtil.loadFile(branchFile).trim(), readLocalBranchHash("feature"));
+
+    String newHash = "1111111111111111111111111111111111111111";
+    rewrite(branchFile, newHash + "\n", timestamp);
+    assertEquals(newHash, readLocalBranchHash("feature"));
+  }
+
+  @Test
+  public void testPackedRefsRewrittenWithinSameSecondWithSameLengthAreReread() {
+    File packedRefs = new File(myGitDir, "packed-refs");
+    String oldHash = "2222222222222222222222222222222222222222";
+    FileUtil.writeToFile(packedRefs, oldHash + " refs/heads/packed\n");
+    long timestamp = touchWithinCurrentSecond(packedRefs);
+    assertEquals(oldHash, readLocalBranchHash("packed"));
+
+    String newHash = "3333333333333333333333333333333333333333";
+    rewrite(packedRefs, newHash + " refs/heads/packed\n", timestamp);
+    assertEquals(newHash, readLocalBranchHash("packed"));
+  }
+
+  @Test
+  public void testRefsRewrittenWithAnotherTimestampAreReread() {
+    File branchFile = new File(new File(new File(myGitDir, "refs"), "heads"), "feature");
+    long timestamp = branchFile.lastModified() - 60 * 1000;
+    assertTrue(branchFile.setLastModified(timestamp));
+    readLocalBranchHash("feature");
+
+    String newHash = "4444444444444444444444444444444444444444";
+    rewrite(branchFile, newHash + "\n", timestamp + 1000);
+    assertEquals(newHash, readLocalBranchHash("feature"));
+  }
+
+  /**
+   * Sets the modification time of the file to the beginning of the current second,
+   * as it looks on file systems which store timestamps with the granularity of a second.
+   */
+  private static long touchWithinCurrentSecond(@NotNull File file) {
+    long timestamp = System.currentTimeMillis() / 1000 * 1000;
+    assertTrue(file.setLastModified(timestamp));
+    return file.lastModified();
+  }
+
+  /**
+   * Writes the given content, which should have the same length as the current one, and restores the given modification time.
+   */
+  private static void rewrite(@NotNull File file, @NotNull String content, long timestamp) {
+    long length = file.length();
+    FileUtil.writeToFile(file, content);
+    assertTrue(file.setLastModified(timestamp));
+    assertEquals(length, file.length());
+  }
+
+  private String readLocalBranchHash(@NotNull String name) {
+    for (GitBranch branch : myRepositoryReader.readBranches(Collections.emptyList()).getLocalBranches()) {
+      if (branch.getName() == name) {
+        return branch.getHash();
+      }
+    }
+    fail("Branch " + name + " not found");
+    return null;
+  }
+
   private static void assertBranches(Collection<GitBranch> actualBranches, Collection<GitTestBranch> expectedBranches) {
     TestRepositoryUtil.assertEqualCollections(actualBranches, expectedBranches, new TestRepositoryUtil.EqualityChecker<GitBranch, GitTestBranch>() {
       @Override
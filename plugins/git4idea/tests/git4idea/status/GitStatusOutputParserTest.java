@@ -0,0 +1,129 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.status;
+
+import com.intellij.openapi.vcs.VcsException;
+import git4idea.GitFormatException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the output of 'git status --porcelain -z' is parsed correctly regardless of how it is split into chunks.
+ */
+public class GitStatusOutputParserTest {
+
+  private static final String OUTPUT = "M  src/Modified.java\u0000" +
+                                       "R  src/New.java\u0000src/Old.java\u0000" +
+                                       " D deleted.txt\u0000" +
+                                       "C  copy.txt\u0000original.txt\u0000";
+
+  private static final List<String> EXPECTED = Arrays.asList("M  src/Modified.java <- null",
+                                                             "R  src/New.java <- src/Old.java",
+                                                             " D deleted.txt <- null",
+                                                             "C  copy.txt <- original.txt");
+
+  @Test
+  public void wholeOutput() throws VcsException {
+    assertEquals(EXPECTED, parse(OUTPUT));
+  }
+
+  @Test
+  public void outputSplitAtEveryPosition() throws VcsException {
+    for (int i = 0; i <= OUTPUT.length(); i++) {
+      assertEquals("Split at " + i, EXPECTED, parse(OUTPUT.substring(0, i), OUTPUT.substring(i)));
+    }
+  }
+
+  @Test
+  public void outputFedByCharacter() throws VcsException {
+    String[] chunks = new String[OUTPUT.length()];
+    for (int i = 0; i < OUTPUT.length(); i++) {
+      chunks[i] = String.valueOf(OUTPUT.charAt(i));
+    }
+    assertEquals(EXPECTED, parse(chunks));
+  }
+
+  @Test
+  public void renameSourceInSeparateChunk() throws VcsException {
+    assertEquals(Arrays.asList("R  New.java <- Old.java", "A  added.txt <- null"),
+                 parse("R  New.java\u0000", "Old.java", "\u0000A  added.txt\u0000"));
+  }
+
+  @Test
+  public void lastRecordWithoutTrailingSeparator() throws VcsException {
+    assertEquals(Arrays.asList("M  a.txt <- null", "R  b.txt <- c.txt"), parse("M  a.txt\u0000R  b.t", "xt\u0000c.t", "xt"));
+  }
+
+  @Test
+  public void emptyOutput() throws VcsException {
+    assertEquals(Arrays.<String>asList(), parse());
+    assertEquals(Arrays.<String>asList(), parse(""));
+  }
+
+  @Test(expected = GitFormatException.class)
+  public void missingRenameSource() throws VcsException {
+    parse("M  a.txt\u0000R  b.txt\u0000");
+  }
+
+  @Test
+  public void errorIsRethrownFromFinish() throws VcsException {
+    final List<String> lines = new ArrayList<String>();
+    GitNewChangesCollector.StatusOutputParser parser = new GitNewChangesCollector.StatusOutputParser(
+      new GitNewChangesCollector.StatusOutputParser.LineProcessor() {
+        @Override
+        public void processLine(@NotNull String line, @Nullable String oldFilename) throws VcsException {
+          if (line.contains("bad")) {
+            throw new VcsException("bad line");
+          }
+          lines.add(line);
+        }
+      });
+    parser.feed("M  a.txt\u0000M  bad.txt\u0000M  c.txt\u0000");
+    try {
+      parser.finish();
+      fail("VcsException expected");
+    }
+    catch (VcsException e) {
+      assertEquals("bad line", e.getMessage());
+    }
+    assertEquals(Arrays.asList("M  a.txt"), lines);
+  }
+
+  @NotNull
+  private static List<String> parse(@NotNull String... chunks) throws VcsException {
+    final List<String> lines = new ArrayList<String>();
+    GitNewChangesCollector.StatusOutputParser parser = new GitNewChangesCollector.StatusOutputParser(
+      new GitNewChangesCollector.StatusOutputParser.LineProcessor() {
+        @Override
+        public void processLine(@NotNull String line, @Nullable String oldFilename) {
+          lines.add(line + " <- " + oldFilename);
+        }
+      });
+    for (String chunk : chunks) {
+      parser.feed(chunk);
+    }
+    parser.finish();
+    return lines;
+  }
+}
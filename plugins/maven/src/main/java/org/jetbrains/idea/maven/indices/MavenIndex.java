@@ -16,8 +16,7 @@
 package org.jetbrains.idea.maven.indices;
 
 import com.intellij.openapi.util.io.FileUtil;
-import com.intellij.util.io.*;
-import gnu.trove.THashMap;
+import com.intellij.util.Processor;
 import gnu.trove.THashSet;
 import org.apache.lucene.search.Query;
 import org.jetbrains.annotations.NotNull;
@@ -37,7 +36,7 @@ import java.io.*;
 import java.util.*;
 
 public class MavenIndex {
-  private static final String CURRENT_VERSION = "4";
+  private static final String CURRENT_VERSION = "5";
 
   protected static final String INDEX_INFO_FILE = "index.properties";
 
@@ -53,8 +52,9 @@ public class MavenIndex {
 
   private static final String DATA_DIR_PREFIX = "data";
 
-  private static final String ARTIFACT_IDS_MAP_FILE = "artifactIds-map.dat";
-  private static final String VERSIONS_MAP_FILE = "versions-map.dat";
+  private static final String GROUP_IDS_FILE = "groupIds.dat";
+  private static final String ARTIFACT_IDS_FILE = "artifactIds.dat";
+  private static final String VERSIONS_FILE = "versions.dat";
 
   public enum Kind {
     LOCAL, REMOTE
@@ -360,8 +360,9 @@ public class MavenIndex {
 
   private void doUpdateIndexData(IndexData data,
                                  MavenProgressIndicator progress) throws IOException, MavenServerIndexerException {
-    final Map<String, Set<String>> groupToArtifactMap = new THashMap<String, Set<String>>();
-    final Map<String, Set<String>> groupWithArtifactToVersionMap = new THashMap<String, Set<String>>();
+    final Set<String> groupIds = new THashSet<String>();
+    final Set<String> groupWithArtifactIds = new THashSet<String>();
+    final Set<String> groupWithArtifactWithVersions = new THashSet<String>();
 
     final StringBuilder builder = new StringBuilder();
 
@@ -382,35 +383,22 @@ public class MavenIndex {
             builder.append(groupId).append(":").append(artifactId);
             String ga = builder.toString();
 
-            getOrCreate(groupToArtifactMap, groupId).add(artifactId);
-            getOrCreate(groupWithArtifactToVersionMap, ga).add(version);
+            groupIds.add(groupId);
+            groupWithArtifactIds.add(ga);
+            groupWithArtifactWithVersions.add(builder.append(":").append(version).toString());
           }
         }
       });
 
-      persist(groupToArtifactMap, data.groupToArtifactMap);
-      persist(groupWithArtifactToVersionMap, data.groupWithArtifactToVersionMap);
+      data.groupIds.replace(groupIds);
+      data.groupWithArtifactIds.replace(groupWithArtifactIds);
+      data.groupWithArtifactWithVersions.replace(groupWithArtifactWithVersions);
     }
     finally {
       progress.popState();
     }
   }
 
-  private static <T> Set<T> getOrCreate(Map<String, Set<T>> map, String key) {
-    Set<T> result = map.get(key);
-    if (result == null) {
-      result = new THashSet<T>();
-      map.put(key, result);
-    }
-    return result;
-  }
-
-  private static <T> void persist(Map<String, T> map, PersistentHashMap<String, T> persistentMap) throws IOException {
-    for (Map.Entry<String, T> each : map.entrySet()) {
-      persistentMap.put(each.getKey(), each.getValue());
-    }
-  }
-
   @TestOnly
   public File getDir() {
     return myDir;
@@ -439,33 +427,21 @@ public class MavenIndex {
         String artifactId = id.getArtifactId();
         String version = id.getVersion();
 
-        myData.hasGroupCache.put(groupId, true);
-
         String groupWithArtifact = groupId + ":" + artifactId;
 
-        myData.hasArtifactCache.put(groupWithArtifact, true);
-        myData.hasVersionCache.put(groupWithArtifact + ':' + version, true);
-
-        addToCache(myData.groupToArtifactMap, groupId, artifactId);
-        addToCache(myData.groupWithArtifactToVersionMap, groupWithArtifact, version);
-        myData.flush();
+        myData.groupIds.add(groupId);
+        myData.groupWithArtifactIds.add(groupWithArtifact);
+        myData.groupWithArtifactWithVersions.add(groupWithArtifact + ':' + version);
 
         return null;
       }
     }, null);
   }
 
-  private static void addToCache(PersistentHashMap<String, Set<String>> cache, String key, String value) throws IOException {
-    Set<String> values = cache.get(key);
-    if (values == null) values = new THashSet<String>();
-    values.add(value);
-    cache.put(key, values);
-  }
-
-  public synchronized Collection<String> getGroupIds() {
-    return doIndexTask(new IndexTask<Collection<String>>() {
-      public Collection<String> doTask() throws Exception {
-        return myData.groupToArtifactMap.getAllDataObjects(null);
+  public synchronized Set<String> getGroupIds() {
+    return doIndexTask(new IndexTask<Set<String>>() {
+      public Set<String> doTask() throws Exception {
+        return getValues(myData.groupIds, "");
       }
     }, Collections.<String>emptySet());
   }
@@ -473,8 +449,7 @@ public class MavenIndex {
   public synchronized Set<String> getArtifactIds(final String groupId) {
     return doIndexTask(new IndexTask<Set<String>>() {
       public Set<String> doTask() throws Exception {
-        Set<String> result = myData.groupToArtifactMap.get(groupId);
-        return result == null ? Collections.<String>emptySet() : result;
+        return getValues(myData.groupWithArtifactIds, groupId + ":");
       }
     }, Collections.<String>emptySet());
   }
@@ -483,8 +458,8 @@ public class MavenIndex {
   public synchronized void printInfo() {
     doIndexTask(new IndexTask<Set<String>>() {
       public Set<String> doTask() throws Exception {
-        System.out.println("BaseFile: " + myData.groupToArtifactMap.getBaseFile());
-        System.out.println("All data objects: " + myData.groupToArtifactMap.getAllDataObjects(null));
+        System.out.println("BaseFile: " + getCurrentDataDir());
+        System.out.println("All data objects: " + getValues(myData.groupWithArtifactIds, ""));
         return Collections.<String>emptySet();
       }
     }, Collections.<String>emptySet());
@@ -493,59 +468,48 @@ public class MavenIndex {
   public synchronized Set<String> getVersions(final String groupId, final String artifactId) {
     return doIndexTask(new IndexTask<Set<String>>() {
       public Set<String> doTask() throws Exception {
-        Set<String> result = myData.groupWithArtifactToVersionMap.get(groupId + ":" + artifactId);
-        return result == null ? Collections.<String>emptySet() : result;
+        return getValues(myData.groupWithArtifactWithVersions, groupId + ":" + artifactId + ":");
       }
     }, Collections.<String>emptySet());
   }
 
+  // the values starting with the prefix, with the prefix removed
+  private static Set<String> getValues(SortedStringTable table, final String prefix) throws IOException {
+    final Set<String> result = new THashSet<String>();
+    table.processWithPrefix(prefix, new Processor<String>() {
+      @Override
+      public boolean process(String each) {
+        result.add(each.substring(prefix.length()));
+        return true;
+      }
+    });
+    return result;
+  }
+
   public synchronized boolean hasGroupId(String groupId) {
     if (isBroken) return false;
 
-    return hasValue(myData.groupToArtifactMap, myData.hasGroupCache, groupId);
+    return hasValue(myData.groupIds, groupId);
   }
 
   public synchronized boolean hasArtifactId(String groupId, String artifactId) {
     if (isBroken) return false;
 
-    return hasValue(myData.groupWithArtifactToVersionMap, myData.hasArtifactCache, groupId + ":" + artifactId);
+    return hasValue(myData.groupWithArtifactIds, groupId + ":" + artifactId);
   }
 
-  public synchronized boolean hasVersion(String groupId, String artifactId, final String version) {
+  public synchronized boolean hasVersion(String groupId, String artifactId, String version) {
     if (isBroken) return false;
 
-    final String groupWithArtifactWithVersion = groupId + ":" + artifactId + ':' + version;
-
-    Boolean res = myData.hasVersionCache.get(groupWithArtifactWithVersion);
-    if (res == null) {
-      res = doIndexTask(new IndexTask<Boolean>() {
-        @Override
-        public Boolean doTask() throws Exception {
-          String groupWithVersion = groupWithArtifactWithVersion.substring(0, groupWithArtifactWithVersion.length() - version.length() - 1);
-          Set<String> set = myData.groupWithArtifactToVersionMap.get(groupWithVersion);
-          return set != null && set.contains(version);
-        }
-      }, false);
-
-      myData.hasVersionCache.put(groupWithArtifactWithVersion, res);
-    }
-
-    return res;
+    return hasValue(myData.groupWithArtifactWithVersions, groupId + ":" + artifactId + ':' + version);
   }
 
-  private boolean hasValue(final PersistentHashMap<String, ?> map, Map<String, Boolean> cache, final String value) {
-    Boolean res = cache.get(value);
-    if (res == null) {
-      res = doIndexTask(new IndexTask<Boolean>() {
-        public Boolean doTask() throws Exception {
-          return map.tryEnumerate(value) != 0;
-        }
-      }, false).booleanValue();
-
-      cache.put(value, res);
-    }
-
-    return res;
+  private boolean hasValue(final SortedStringTable table, final String value) {
+    return doIndexTask(new IndexTask<Boolean>() {
+      public Boolean doTask() throws Exception {
+        return table.contains(value);
+      }
+    }, false).booleanValue();
   }
 
   public synchronized Set<MavenArtifactInfo> search(final Query query, final int maxResult) {
@@ -591,19 +555,17 @@ public class MavenIndex {
   }
 
   private class IndexData {
-    final PersistentHashMap<String, Set<String>> groupToArtifactMap;
-    final PersistentHashMap<String, Set<String>> groupWithArtifactToVersionMap;
-
-    final Map<String, Boolean> hasGroupCache = new THashMap<String, Boolean>();
-    final Map<String, Boolean> hasArtifactCache = new THashMap<String, Boolean>();
-    final Map<String, Boolean> hasVersionCache = new THashMap<String, Boolean>();
+    final SortedStringTable groupIds;
+    final SortedStringTable groupWithArtifactIds;
+    final SortedStringTable groupWithArtifactWithVersions;
 
     private final int indexId;
 
     public IndexData(File dir) throws MavenIndexException {
       try {
-        groupToArtifactMap = createPersistentMap(new File(dir, ARTIFACT_IDS_MAP_FILE));
-        groupWithArtifactToVersionMap = createPersistentMap(new File(dir, VERSIONS_MAP_FILE));
+        groupIds = new SortedStringTable(new File(dir, GROUP_IDS_FILE));
+        groupWithArtifactIds = new SortedStringTable(new File(dir, ARTIFACT_IDS_FILE));
+        groupWithArtifactWithVersions = new SortedStringTable(new File(dir, VERSIONS_FILE));
 
         indexId = createContext(getDataContextDir(dir), dir.getName());
       }
@@ -617,10 +579,6 @@ public class MavenIndex {
       }
     }
 
-    private PersistentHashMap<String, Set<String>> createPersistentMap(File f) throws IOException {
-      return new PersistentHashMap<String, Set<String>>(f, new EnumeratorStringDescriptor(), new SetDescriptor());
-    }
-
     public void close(boolean releaseIndexContext) throws MavenIndexException {
       MavenIndexException[] exceptions = new MavenIndexException[1];
 
@@ -632,8 +590,9 @@ public class MavenIndex {
         if (exceptions[0] == null) exceptions[0] = new MavenIndexException(e);
       }
 
-      safeClose(groupToArtifactMap, exceptions);
-      safeClose(groupWithArtifactToVersionMap, exceptions);
+      safeClose(groupIds, exceptions);
+      safeClose(groupWithArtifactIds, exceptions);
+      safeClose(groupWithArtifactWithVersions, exceptions);
 
       if (exceptions[0] != null) throw exceptions[0];
     }
@@ -649,8 +608,9 @@ public class MavenIndex {
     }
 
     public void flush() throws IOException {
-      groupToArtifactMap.force();
-      groupWithArtifactToVersionMap.force();
+      groupIds.force();
+      groupWithArtifactIds.force();
+      groupWithArtifactWithVersions.force();
     }
 
     public MavenId addArtifact(File artifactFile) throws MavenServerIndexerException {
@@ -662,24 +622,6 @@ public class MavenIndex {
     }
   }
 
-  private static class SetDescriptor implements DataExternalizer<Set<String>> {
-    public void save(DataOutput s, Set<String> set) throws IOException {
-      s.writeInt(set.size());
-      for (String each : set) {
-        s.writeUTF(each);
-      }
-    }
-
-    public Set<String> read(DataInput s) throws IOException {
-      int count = s.readInt();
-      Set<String> result = new THashSet<String>(count);
-      while (count-- > 0) {
-        result.add(s.readUTF());
-      }
-      return result;
-    }
-  }
-
   public interface IndexListener {
     void indexIsBroken(MavenIndex index);
   }
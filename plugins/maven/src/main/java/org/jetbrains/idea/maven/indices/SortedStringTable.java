@@ -0,0 +1,197 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.idea.maven.indices;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.Processor;
+import com.intellij.util.io.RandomAccessDataFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A set of strings stored on disk sorted, so that membership checks and enumeration of the strings starting with
+ * a prefix are binary searches over the file, which is read through the shared page pool rather than loaded to the heap.
+ * <p/>
+ * The table is written at once by {@link #replace}. Strings {@link #add added} after that are appended to a separate file
+ * and kept in memory: they are only the artifacts installed to the repository between full index updates.
+ * <p/>
+ * File format: number of strings, offsets of the strings, then the strings as length and UTF-8 bytes.
+ */
+class SortedStringTable implements Closeable {
+  private static final String ADDED_SUFFIX = ".added";
+
+  private final File myFile;
+  private final File myAddedFile;
+  private RandomAccessDataFile myData;
+  private int mySize;
+  private final TreeSet<String> myAdded = new TreeSet<String>();
+
+  public SortedStringTable(@NotNull File file) throws IOException {
+    myFile = file;
+    myAddedFile = new File(file.getPath() + ADDED_SUFFIX);
+    if (!myFile.exists()) {
+      write(myFile, Collections.<String>emptyList());
+    }
+    open();
+  }
+
+  private void open() throws IOException {
+    myData = new RandomAccessDataFile(myFile);
+    long length = myData.length();
+    mySize = length < 4 ? -1 : myData.getInt(0);
+    if (mySize < 0 || length < 4 + 4L * mySize) {
+      myData.dispose();
+      throw new IOException("Corrupted table: " + myFile);
+    }
+
+    myAdded.clear();
+    if (myAddedFile.exists()) {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(myAddedFile)));
+      try {
+        while (in.available() > 0) {
+          myAdded.add(in.readUTF());
+        }
+      }
+      finally {
+        in.close();
+      }
+    }
+  }
+
+  /**
+   * Replaces the whole content of the table with the given strings.
+   */
+  public void replace(@NotNull Collection<String> values) throws IOException {
+    myData.dispose();
+    FileUtil.delete(myAddedFile);
+
+    List<String> sorted = new ArrayList<String>(values);
+    Collections.sort(sorted);
+    write(myFile, sorted);
+    open();
+  }
+
+  private static void write(@NotNull File file, @NotNull List<String> sorted) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      out.writeInt(sorted.size());
+      long offset = 4 + 4L * sorted.size();
+      for (String each : sorted) {
+        if (offset > Integer.MAX_VALUE) throw new IOException("Table is too large: " + file);
+        out.writeInt((int)offset);
+        offset += 4 + each.getBytes("UTF-8").length;
+      }
+      for (String each : sorted) {
+        byte[] bytes = each.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  public void add(@NotNull String value) throws IOException {
+    if (contains(value)) return;
+
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myAddedFile, true)));
+    try {
+      out.writeUTF(value);
+    }
+    finally {
+      out.close();
+    }
+    myAdded.add(value);
+  }
+
+  public boolean contains(@NotNull String value) throws IOException {
+    if (myAdded.contains(value)) return true;
+    int index = lowerBound(value);
+    return index < mySize && get(index).equals(value);
+  }
+
+  /**
+   * Passes the strings starting with the prefix to the processor in the sorted order.
+   *
+   * @return false if the processor stopped the enumeration
+   */
+  public boolean processWithPrefix(@NotNull String prefix, @NotNull Processor<String> processor) throws IOException {
+    Iterator<String> added = myAdded.tailSet(prefix).iterator();
+    String nextAdded = nextWithPrefix(added, prefix);
+    for (int i = lowerBound(prefix); i < mySize; i++) {
+      String each = get(i);
+      if (!each.startsWith(prefix)) break;
+
+      while (nextAdded != null && nextAdded.compareTo(each) <= 0) {
+        if (!nextAdded.equals(each) && !processor.process(nextAdded)) return false;
+        nextAdded = nextWithPrefix(added, prefix);
+      }
+      if (!processor.process(each)) return false;
+    }
+    while (nextAdded != null) {
+      if (!processor.process(nextAdded)) return false;
+      nextAdded = nextWithPrefix(added, prefix);
+    }
+    return true;
+  }
+
+  private static String nextWithPrefix(@NotNull Iterator<String> iterator, @NotNull String prefix) {
+    if (!iterator.hasNext()) return null;
+    String result = iterator.next();
+    return result.startsWith(prefix) ? result : null;
+  }
+
+  // index of the first string which is not less than the value
+  private int lowerBound(@NotNull String value) throws IOException {
+    int low = 0;
+    int high = mySize;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (get(middle).compareTo(value) < 0) {
+        low = middle + 1;
+      }
+      else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  @NotNull
+  private String get(int index) throws IOException {
+    int offset = myData.getInt(4 + 4L * index);
+    if (offset < 4 + 4L * mySize || offset + 4L > myData.length()) {
+      throw new IOException("Corrupted table: " + myFile);
+    }
+    int length = myData.getInt(offset);
+    if (length < 0 || offset + 4L + length > myData.length()) {
+      throw new IOException("Corrupted table: " + myFile);
+    }
+    return myData.getUTF(offset);
+  }
+
+  public void force() {
+    myData.force();
+  }
+
+  @Override
+  public void close() {
+    myData.dispose();
+  }
+}
@@ -17,6 +17,7 @@ package org.jetbrains.idea.maven.project;
 
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.Pair;
 import com.intellij.util.Function;
 import com.intellij.util.containers.SoftValueHashMap;
 import gnu.trove.THashSet;
@@ -26,6 +27,8 @@ import org.jetbrains.idea.maven.server.MavenEmbedderWrapper;
 import org.jetbrains.idea.maven.server.MavenServerManager;
 import org.jetbrains.idea.maven.utils.MavenLog;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -43,6 +46,8 @@ public class MavenEmbeddersManager {
   private final Map<Key, MavenEmbedderWrapper> myPool = new SoftValueHashMap<Key, MavenEmbedderWrapper>();
   private final Set<MavenEmbedderWrapper> myEmbeddersInUse = new THashSet<MavenEmbedderWrapper>();
   private final Set<MavenEmbedderWrapper> myEmbeddersToClear = new THashSet<MavenEmbedderWrapper>();
+  // additional embedders for parallel work by kind and number, see getEmbedders()
+  private final Map<Pair<Key, Integer>, MavenEmbedderWrapper> myParallelPool = new SoftValueHashMap<Pair<Key, Integer>, MavenEmbedderWrapper>();
 
   public MavenEmbeddersManager(Project project) {
     myProject = project;
@@ -81,6 +86,31 @@ public class MavenEmbeddersManager {
     return result;
   }
 
+  /**
+   * Returns the embedder of the given kind and up to {@code count - 1} additional ones for parallel work.
+   * The additional embedders are kept softly as well, so that the next parallel work doesn't start them again.
+   * All the returned embedders are to be {@link #release(MavenEmbedderWrapper) released}.
+   */
+  @NotNull
+  public synchronized List<MavenEmbedderWrapper> getEmbedders(Key kind, int count) {
+    List<MavenEmbedderWrapper> result = new ArrayList<MavenEmbedderWrapper>(count);
+    result.add(getEmbedder(kind));
+    for (int i = 1; result.size() < count; i++) {
+      Pair<Key, Integer> key = Pair.create(kind, i);
+      MavenEmbedderWrapper embedder = myParallelPool.get(key);
+      if (embedder == null) {
+        embedder = MavenServerManager.getInstance().createEmbedder(myProject, kind == FOR_DOWNLOAD);
+        myParallelPool.put(key, embedder);
+      }
+      else if (myEmbeddersInUse.contains(embedder)) {
+        continue;
+      }
+      myEmbeddersInUse.add(embedder);
+      result.add(embedder);
+    }
+    return result;
+  }
+
   public synchronized void release(@NotNull MavenEmbedderWrapper embedder) {
     if (!myEmbeddersInUse.contains(embedder)) {
       embedder.release();
@@ -117,13 +147,19 @@ public class MavenEmbeddersManager {
       }
     });
     myPool.clear();
+    myParallelPool.clear();
     myEmbeddersInUse.clear();
     myEmbeddersToClear.clear();
   }
 
   private void forEachPooled(boolean includeInUse, Function<MavenEmbedderWrapper, ?> func) {
-    for (Key each : myPool.keySet()) {
-      MavenEmbedderWrapper embedder = myPool.get(each);
+    forEachPooled(myPool, includeInUse, func);
+    forEachPooled(myParallelPool, includeInUse, func);
+  }
+
+  private <K> void forEachPooled(Map<K, MavenEmbedderWrapper> pool, boolean includeInUse, Function<MavenEmbedderWrapper, ?> func) {
+    for (K each : pool.keySet()) {
+      MavenEmbedderWrapper embedder = pool.get(each);
       if (embedder == null) continue; // collected
       if (!includeInUse && myEmbeddersInUse.contains(embedder)) continue;
       func.fun(embedder);
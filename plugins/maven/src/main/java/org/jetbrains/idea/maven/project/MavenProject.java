@@ -42,6 +42,8 @@ import org.jetbrains.idea.maven.server.NativeMavenProjectHolder;
 import org.jetbrains.idea.maven.utils.*;
 
 import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -126,7 +128,10 @@ public class MavenProject {
                                   boolean resetProfiles) {
     State newState = myState.clone();
 
-    if (updateLastReadStamp) newState.myLastReadStamp = myState.myLastReadStamp + 1;
+    if (updateLastReadStamp) {
+      newState.myLastReadStamp = myState.myLastReadStamp + 1;
+      newState.myReadFingerprint = calcModelFingerprint(readerResult, settings);
+    }
 
     newState.myReadingProblems = readerResult.readingProblems;
     newState.myLocalRepository = settings.getEffectiveLocalRepository();
@@ -274,6 +279,52 @@ public class MavenProject {
     return myState.myLastReadStamp;
   }
 
+  /**
+   * Returns true if the model read last time is the same as the one of the last successful resolve,
+   * so that the project needs neither resolving nor importing again.
+   */
+  public boolean isResolvedWithCurrentModel() {
+    State state = myState;
+    return state.myReadFingerprint != null && Arrays.equals(state.myReadFingerprint, state.myResolvedFingerprint);
+  }
+
+  // the digest of the effective model, including dependencies, plugins and their configuration, and of the settings.xml files,
+  // which may change e.g. mirrors or repositories without changing the model
+  @Nullable
+  private static byte[] calcModelFingerprint(@NotNull MavenProjectReaderResult readerResult, @NotNull MavenGeneralSettings settings) {
+    if (!readerResult.readingProblems.isEmpty()) return null;
+    try {
+      BufferExposingByteArrayOutputStream bs = new BufferExposingByteArrayOutputStream();
+      ObjectOutputStream os = new ObjectOutputStream(bs);
+      try {
+        os.writeObject(readerResult.mavenModel);
+        os.writeObject(new ArrayList<String>(readerResult.activatedProfiles));
+        os.writeObject(settings.getEffectiveLocalRepository());
+        os.writeObject(loadSettingsFile(settings.getEffectiveUserSettingsIoFile()));
+        os.writeObject(loadSettingsFile(settings.getEffectiveGlobalSettingsIoFile()));
+      }
+      finally {
+        os.close();
+      }
+      MessageDigest digest = MessageDigest.getInstance("MD5");
+      digest.update(bs.getInternalBuffer(), 0, bs.size());
+      return digest.digest();
+    }
+    catch (IOException e) {
+      MavenLog.LOG.warn(e);
+      return null;
+    }
+    catch (NoSuchAlgorithmException e) {
+      MavenLog.LOG.error(e);
+      return null;
+    }
+  }
+
+  @Nullable
+  private static byte[] loadSettingsFile(@Nullable File file) throws IOException {
+    return file == null || !file.isFile() ? null : FileUtil.loadFileBytes(file);
+  }
+
   @NotNull
   public VirtualFile getFile() {
     return myFile;
@@ -581,12 +632,18 @@ public class MavenProject {
                                                                      @NotNull MavenProjectReaderProjectLocator locator,
                                                                      @NotNull ResolveContext context)
     throws MavenProcessCanceledException {
+    byte[] fingerprint = myState.myReadFingerprint;
     MavenProjectReaderResult result = reader.resolveProject(generalSettings,
                                                             embedder,
                                                             getFile(),
                                                             getActivatedProfilesIds(),
                                                             locator);
     MavenProjectChanges changes = set(result, generalSettings, false, result.readingProblems.isEmpty(), false);
+    // a project with unresolved artifacts is resolved again even if its model doesn't change, e.g. once the artifacts are deployed
+    State newState = myState.clone();
+    boolean resolved = result.readingProblems.isEmpty() && result.nativeMavenProject != null && !hasUnresolvedArtifacts();
+    newState.myResolvedFingerprint = resolved ? fingerprint : null;
+    myState = newState;
 
     if (result.nativeMavenProject != null) {
       for (MavenImporter eachImporter : getSuitableImporters()) {
@@ -1055,6 +1112,10 @@ public class MavenProject {
     Set<MavenId> myUnresolvedArtifactIds;
     File myLocalRepository;
 
+    // digests of the model read last time and of the one read before the last successful resolve
+    byte[] myReadFingerprint;
+    byte[] myResolvedFingerprint;
+
     volatile List<MavenProjectProblem> myProblemsCache;
     volatile List<MavenArtifact> myUnresolvedDependenciesCache;
     volatile List<MavenPlugin> myUnresolvedPluginsCache;
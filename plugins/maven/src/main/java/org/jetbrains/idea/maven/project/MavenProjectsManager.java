@@ -729,21 +729,16 @@ public class MavenProjectsManager extends MavenSimpleProjectComponent
           toResolve = new LinkedHashSet<MavenProject>(myProjectsToResolve);
           myProjectsToResolve.clear();
         }
-        final ResolveContext context = new ResolveContext();
+        if (toResolve.isEmpty()) return;
 
-        Iterator<MavenProject> it = toResolve.iterator();
-        while (it.hasNext()) {
-          MavenProject each = it.next();
-          Runnable onCompletion = it.hasNext() ? null : new Runnable() {
-            @Override
-            public void run() {
-              if (hasScheduledProjects()) scheduleImport();
-            }
-          };
-
-          myResolvingProcessor.scheduleTask(
-            new MavenProjectsProcessorResolvingTask(each, myProjectsTree, getGeneralSettings(), onCompletion, context));
-        }
+        Runnable onCompletion = new Runnable() {
+          @Override
+          public void run() {
+            if (hasScheduledProjects()) scheduleImport();
+          }
+        };
+        myResolvingProcessor.scheduleTask(
+          new MavenProjectsProcessorResolvingTask(toResolve, myProjectsTree, getGeneralSettings(), onCompletion, new ResolveContext()));
       }
     });
   }
@@ -51,6 +51,14 @@ public class MavenProjectsProcessor {
         return;
       }
       if (myQueue.contains(task)) return;
+      if (task instanceof MavenProjectsProcessorResolvingTask) {
+        for (MavenProjectsProcessorTask each : myQueue) {
+          if (each instanceof MavenProjectsProcessorResolvingTask &&
+              ((MavenProjectsProcessorResolvingTask)each).merge((MavenProjectsProcessorResolvingTask)task)) {
+            return;
+          }
+        }
+      }
       myQueue.add(task);
     }
   }
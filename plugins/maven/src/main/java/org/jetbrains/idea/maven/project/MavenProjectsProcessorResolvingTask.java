@@ -21,25 +21,58 @@ import org.jetbrains.annotations.Nullable;
 import org.jetbrains.idea.maven.utils.MavenProcessCanceledException;
 import org.jetbrains.idea.maven.utils.MavenProgressIndicator;
 
-public class MavenProjectsProcessorResolvingTask extends MavenProjectsProcessorBasicTask {
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Resolves several projects at once, so that they can be resolved in parallel.
+ * Batches scheduled while another one waits in the queue are {@link #merge(MavenProjectsProcessorResolvingTask) merged} into it.
+ */
+public class MavenProjectsProcessorResolvingTask implements MavenProjectsProcessorTask {
+  @NotNull private final Set<MavenProject> myMavenProjects;
+  @NotNull private final MavenProjectsTree myTree;
   @NotNull private final MavenGeneralSettings myGeneralSettings;
-  @Nullable private final Runnable myOnCompletion;
+  @NotNull private final List<Runnable> myOnCompletion = new ArrayList<Runnable>();
   @NotNull private final ResolveContext myContext;
 
-  public MavenProjectsProcessorResolvingTask(@NotNull MavenProject project,
+  public MavenProjectsProcessorResolvingTask(@NotNull Collection<MavenProject> projects,
                                              @NotNull MavenProjectsTree tree,
                                              @NotNull MavenGeneralSettings generalSettings,
                                              @Nullable Runnable onCompletion,
                                              @NotNull ResolveContext context) {
-    super(project, tree);
+    myMavenProjects = new LinkedHashSet<MavenProject>(projects);
+    myTree = tree;
     myGeneralSettings = generalSettings;
-    myOnCompletion = onCompletion;
+    if (onCompletion != null) myOnCompletion.add(onCompletion);
     myContext = context;
   }
 
+  /**
+   * Adds the projects of the other batch to this one, which hasn't been started yet; projects waiting in this batch already are dropped.
+   * Returns false if the batches can't be merged.
+   */
+  public boolean merge(@NotNull MavenProjectsProcessorResolvingTask other) {
+    if (myTree != other.myTree || myGeneralSettings != other.myGeneralSettings) return false;
+    myMavenProjects.addAll(other.myMavenProjects);
+    for (Runnable each : other.myOnCompletion) {
+      if (!myOnCompletion.contains(each)) myOnCompletion.add(each);
+    }
+    return true;
+  }
+
+  @NotNull
+  public Collection<MavenProject> getMavenProjects() {
+    return myMavenProjects;
+  }
+
   public void perform(Project project, MavenEmbeddersManager embeddersManager, MavenConsole console, MavenProgressIndicator indicator)
     throws MavenProcessCanceledException {
-    myTree.resolve(project, myMavenProject, myGeneralSettings, embeddersManager, console, myContext, indicator);
-    if (myOnCompletion != null) myOnCompletion.run();
+    myTree.resolve(project, myMavenProjects, myGeneralSettings, embeddersManager, console, myContext, indicator);
+    for (Runnable each : myOnCompletion) {
+      each.run();
+    }
   }
 }
@@ -29,6 +29,7 @@ import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.containers.ArrayListSet;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.containers.Stack;
+import gnu.trove.THashMap;
 import gnu.trove.THashSet;
 import gnu.trove.TObjectHashingStrategy;
 import org.jdom.Element;
@@ -40,16 +41,19 @@ import org.jetbrains.idea.maven.model.*;
 import org.jetbrains.idea.maven.server.MavenEmbedderWrapper;
 import org.jetbrains.idea.maven.server.NativeMavenProjectHolder;
 import org.jetbrains.idea.maven.utils.*;
+import org.jetbrains.ide.PooledThreadExecutor;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Pattern;
 import java.util.zip.CRC32;
 
 public class MavenProjectsTree {
-  private static final String STORAGE_VERSION = MavenProjectsTree.class.getSimpleName() + ".6";
+  private static final String STORAGE_VERSION = MavenProjectsTree.class.getSimpleName() + ".7";
+  private static final int MAX_RESOLVING_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
 
   private final Object myStateLock = new Object();
   private final ReentrantReadWriteLock myStructureLock = new ReentrantReadWriteLock();
@@ -523,6 +527,8 @@ public class MavenProjectsTree {
     boolean isChanged = force || !timestamp.equals(myTimestamps.get(mavenProject));
 
     MavenProjectChanges changes = force ? MavenProjectChanges.ALL : MavenProjectChanges.NONE;
+    // e.g. a property of the parent was changed, but the effective model of this project is still the same
+    boolean isModelUnchanged = false;
     if (isChanged) {
       writeLock();
       try {
@@ -550,6 +556,7 @@ public class MavenProjectsTree {
         timestamp = calculateTimestamp(mavenProject, explicitProfiles, generalSettings);
       }
       myTimestamps.put(mavenProject, timestamp);
+      isModelUnchanged = !force && !isNew && mavenProject.isResolvedWithCurrentModel();
     }
 
     boolean reconnected = isNew;
@@ -560,7 +567,7 @@ public class MavenProjectsTree {
       reconnected = reconnect(aggregator, mavenProject);
     }
 
-    if (isChanged || reconnected) {
+    if (isChanged && !isModelUnchanged || reconnected) {
       updateContext.update(mavenProject, changes);
     }
 
@@ -1184,6 +1191,140 @@ public class MavenProjectsTree {
     }
   }
 
+  /**
+   * Resolves the projects in parallel with several embedders. As in the reactor, a project is resolved after its parent
+   * and the modules it depends on, if they are among the given projects.
+   * {@link Listener#projectResolved} is fired in the calling thread.
+   */
+  public void resolve(@NotNull final Project project,
+                      @NotNull Collection<MavenProject> mavenProjects,
+                      @NotNull final MavenGeneralSettings generalSettings,
+                      @NotNull MavenEmbeddersManager embeddersManager,
+                      @NotNull MavenConsole console,
+                      @NotNull final ResolveContext context,
+                      @NotNull final MavenProgressIndicator process) throws MavenProcessCanceledException {
+    int threads = Math.min(MAX_RESOLVING_THREADS, mavenProjects.size());
+    if (threads <= 1 || MavenUtil.isNoBackgroundMode()) {
+      for (MavenProject each : mavenProjects) {
+        resolve(project, each, generalSettings, embeddersManager, console, context, process);
+      }
+      return;
+    }
+
+    Map<MavenProject, Set<MavenProject>> dependencies = getReactorDependencies(mavenProjects);
+    Set<MavenProject> waiting = new LinkedHashSet<MavenProject>(mavenProjects);
+    Set<MavenProject> resolved = new THashSet<MavenProject>();
+    Stack<MavenEmbedderWrapper> freeEmbedders = new Stack<MavenEmbedderWrapper>();
+    Map<Future<Pair<MavenProjectChanges, NativeMavenProjectHolder>>, Pair<MavenProject, MavenEmbedderWrapper>> running =
+      new HashMap<Future<Pair<MavenProjectChanges, NativeMavenProjectHolder>>, Pair<MavenProject, MavenEmbedderWrapper>>();
+    CompletionService<Pair<MavenProjectChanges, NativeMavenProjectHolder>> service =
+      new ExecutorCompletionService<Pair<MavenProjectChanges, NativeMavenProjectHolder>>(PooledThreadExecutor.INSTANCE);
+
+    List<MavenEmbedderWrapper> embedders = embeddersManager.getEmbedders(MavenEmbeddersManager.FOR_DEPENDENCIES_RESOLVE, threads);
+    try {
+      MavenWorkspaceMap workspaceMap = getWorkspaceMap();
+      for (MavenEmbedderWrapper each : embedders) {
+        each.customizeForResolve(workspaceMap.copy(), console, process);
+        freeEmbedders.push(each);
+      }
+
+      while (!waiting.isEmpty() || !running.isEmpty()) {
+        process.checkCanceled();
+        while (!freeEmbedders.isEmpty()) {
+          final MavenProject each = pollReady(waiting, resolved, dependencies, running.isEmpty());
+          if (each == null) break;
+          final MavenEmbedderWrapper embedder = freeEmbedders.pop();
+          Future<Pair<MavenProjectChanges, NativeMavenProjectHolder>> future =
+            service.submit(new Callable<Pair<MavenProjectChanges, NativeMavenProjectHolder>>() {
+              public Pair<MavenProjectChanges, NativeMavenProjectHolder> call() throws Exception {
+                process.checkCanceled();
+                process.setText(ProjectBundle.message("maven.resolving.pom", each.getDisplayName()));
+                process.setText2("");
+                return each.resolve(project, generalSettings, embedder, new MavenProjectReader(), myProjectLocator, context);
+              }
+            });
+          running.put(future, Pair.create(each, embedder));
+        }
+
+        Future<Pair<MavenProjectChanges, NativeMavenProjectHolder>> done = service.poll(100, TimeUnit.MILLISECONDS);
+        if (done == null) continue;
+        Pair<MavenProject, MavenEmbedderWrapper> projectAndEmbedder = running.remove(done);
+        freeEmbedders.push(projectAndEmbedder.second);
+        resolved.add(projectAndEmbedder.first);
+        try {
+          Pair<MavenProjectChanges, NativeMavenProjectHolder> resolveResult = done.get();
+          fireProjectResolved(Pair.create(projectAndEmbedder.first, resolveResult.first), resolveResult.second);
+        }
+        catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof MavenProcessCanceledException) throw (MavenProcessCanceledException)cause;
+          MavenLog.LOG.error(cause);
+        }
+        process.setFraction(resolved.size() / (double)mavenProjects.size());
+      }
+    }
+    catch (InterruptedException e) {
+      throw new MavenProcessCanceledException();
+    }
+    finally {
+      // the embedders may be released only after they are not used anymore
+      for (Future<Pair<MavenProjectChanges, NativeMavenProjectHolder>> each : running.keySet()) {
+        try {
+          each.get();
+        }
+        catch (Exception ignore) {
+        }
+      }
+      for (MavenEmbedderWrapper each : embedders) {
+        embeddersManager.release(each);
+      }
+    }
+  }
+
+  // the parent and the dependencies of each project among the given projects
+  @NotNull
+  Map<MavenProject, Set<MavenProject>> getReactorDependencies(@NotNull Collection<MavenProject> mavenProjects) {
+    Set<MavenProject> projects = new THashSet<MavenProject>(mavenProjects);
+    Map<MavenProject, Set<MavenProject>> result = new THashMap<MavenProject, Set<MavenProject>>();
+    for (MavenProject each : projects) {
+      Set<MavenProject> projectDependencies = new THashSet<MavenProject>();
+      MavenProject parent = findParent(each);
+      if (parent != null && projects.contains(parent)) {
+        projectDependencies.add(parent);
+      }
+      for (MavenArtifact dependency : each.getDependencies()) {
+        MavenProject dependencyProject = findProject(dependency);
+        if (dependencyProject != null && dependencyProject != each && projects.contains(dependencyProject)) {
+          projectDependencies.add(dependencyProject);
+        }
+      }
+      result.put(each, projectDependencies);
+    }
+    return result;
+  }
+
+  // the first waiting project whose dependencies are resolved
+  @Nullable
+  static <T> T pollReady(@NotNull Set<T> waiting,
+                         @NotNull Set<T> resolved,
+                         @NotNull Map<T, Set<T>> dependencies,
+                         boolean nothingRunning) {
+    for (Iterator<T> it = waiting.iterator(); it.hasNext(); ) {
+      T each = it.next();
+      if (resolved.containsAll(dependencies.get(each))) {
+        it.remove();
+        return each;
+      }
+    }
+    if (nothingRunning && !waiting.isEmpty()) {
+      // a dependency cycle between the modules: resolve them in an arbitrary order
+      T first = waiting.iterator().next();
+      waiting.remove(first);
+      return first;
+    }
+    return null;
+  }
+
   public void resolvePlugins(@NotNull MavenProject mavenProject,
                              @NotNull NativeMavenProjectHolder nativeMavenProject,
                              @NotNull MavenEmbeddersManager embeddersManager,
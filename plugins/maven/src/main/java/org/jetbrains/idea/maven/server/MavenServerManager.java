@@ -60,6 +60,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @State(
   name = "MavenVersion",
@@ -69,6 +71,8 @@ public class MavenServerManager extends RemoteObjectWrapper<MavenServer> impleme
   @NonNls private static final String MAIN_CLASS = "org.jetbrains.idea.maven.server.RemoteMavenServer";
 
   private static final String DEFAULT_VM_OPTIONS = "-Xmx512m";
+  // the server is shared by all the projects, it's stopped when none of them has used it for that long
+  private static final long IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(Integer.getInteger("idea.maven.embedder.idle.ttl.minutes", 30));
 
   private final RemoteProcessSupport<Object, MavenServer, Object> mySupport;
 
@@ -78,6 +82,7 @@ public class MavenServerManager extends RemoteObjectWrapper<MavenServer> impleme
   private boolean myDownloadListenerExported;
 
   private final Alarm myShutdownAlarm = new Alarm(Alarm.ThreadToUse.SHARED_THREAD);
+  private final AtomicInteger myRunningOperations = new AtomicInteger();
 
   private boolean useMaven2 = true;
   private String mavenEmbedderVMOptions = DEFAULT_VM_OPTIONS;
@@ -139,6 +144,31 @@ public class MavenServerManager extends RemoteObjectWrapper<MavenServer> impleme
     cleanup();
   }
 
+  @Override
+  protected void onOperationStarted() {
+    myRunningOperations.incrementAndGet();
+    myShutdownAlarm.cancelAllRequests();
+  }
+
+  @Override
+  protected void onOperationFinished() {
+    if (myRunningOperations.decrementAndGet() == 0) {
+      myShutdownAlarm.cancelAllRequests();
+      myShutdownAlarm.addRequest(new Runnable() {
+        @Override
+        public void run() {
+          shutdownIfIdle();
+        }
+      }, IDLE_TIMEOUT_MILLIS);
+    }
+  }
+
+  private synchronized void shutdownIfIdle() {
+    if (myRunningOperations.get() > 0 || getWrappee() == null) return;
+    MavenLog.LOG.info("Stopping idle maven server");
+    shutdown(false);
+  }
+
   protected synchronized void cleanup() {
     super.cleanup();
 
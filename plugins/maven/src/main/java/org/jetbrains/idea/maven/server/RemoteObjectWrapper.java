@@ -55,6 +55,14 @@ public abstract class RemoteObjectWrapper<T> {
     if (myParent != null) myParent.onWrappeeAccessed();
   }
 
+  protected void onOperationStarted() {
+    if (myParent != null) myParent.onOperationStarted();
+  }
+
+  protected void onOperationFinished() {
+    if (myParent != null) myParent.onOperationFinished();
+  }
+
   protected synchronized void handleRemoteError(RemoteException e) {
     MavenLog.LOG.debug("Connection failed. Will be reconnected on the next request.", e);
     onError();
@@ -70,61 +78,85 @@ public abstract class RemoteObjectWrapper<T> {
   }
 
   protected <T> T perform(Retriable<T> r) {
-    RemoteException last = null;
-    for (int i = 0; i < 2; i++) {
-      try {
-        return r.execute();
-      }
-      catch (RemoteException e) {
-        handleRemoteError(last = e);
+    onOperationStarted();
+    try {
+      RemoteException last = null;
+      for (int i = 0; i < 2; i++) {
+        try {
+          return r.execute();
+        }
+        catch (RemoteException e) {
+          handleRemoteError(last = e);
+        }
       }
+      throw new RuntimeException("Cannot reconnect.", last);
+    }
+    finally {
+      onOperationFinished();
     }
-    throw new RuntimeException("Cannot reconnect.", last);
   }
 
   protected <T> T perform(RetriableCancelable<T> r) throws MavenProcessCanceledException {
-    RemoteException last = null;
-    for (int i = 0; i < 2; i++) {
-      try {
-        return r.execute();
-      }
-      catch (RemoteException e) {
-        handleRemoteError(last = e);
-      }
-      catch (MavenServerProcessCanceledException e) {
-        throw new MavenProcessCanceledException();
+    onOperationStarted();
+    try {
+      RemoteException last = null;
+      for (int i = 0; i < 2; i++) {
+        try {
+          return r.execute();
+        }
+        catch (RemoteException e) {
+          handleRemoteError(last = e);
+        }
+        catch (MavenServerProcessCanceledException e) {
+          throw new MavenProcessCanceledException();
+        }
       }
+      throw new RuntimeException("Cannot reconnect.", last);
+    }
+    finally {
+      onOperationFinished();
     }
-    throw new RuntimeException("Cannot reconnect.", last);
   }
 
   protected <T> T perform(IndexRetriable<T> r) throws MavenServerIndexerException {
-    RemoteException last = null;
-    for (int i = 0; i < 2; i++) {
-      try {
-        return r.execute();
-      }
-      catch (RemoteException e) {
-        handleRemoteError(last = e);
+    onOperationStarted();
+    try {
+      RemoteException last = null;
+      for (int i = 0; i < 2; i++) {
+        try {
+          return r.execute();
+        }
+        catch (RemoteException e) {
+          handleRemoteError(last = e);
+        }
       }
+      throw new RuntimeException("Cannot reconnect.", last);
+    }
+    finally {
+      onOperationFinished();
     }
-    throw new RuntimeException("Cannot reconnect.", last);
   }
 
   protected <T> T perform(IndexRetriableCancelable<T> r) throws MavenServerIndexerException, MavenProcessCanceledException {
-    RemoteException last = null;
-    for (int i = 0; i < 2; i++) {
-      try {
-        return r.execute();
-      }
-      catch (RemoteException e) {
-        handleRemoteError(last = e);
-      }
-      catch (MavenServerProcessCanceledException e) {
-        throw new MavenProcessCanceledException();
+    onOperationStarted();
+    try {
+      RemoteException last = null;
+      for (int i = 0; i < 2; i++) {
+        try {
+          return r.execute();
+        }
+        catch (RemoteException e) {
+          handleRemoteError(last = e);
+        }
+        catch (MavenServerProcessCanceledException e) {
+          throw new MavenProcessCanceledException();
+        }
       }
+      throw new RuntimeException("Cannot reconnect.", last);
+    }
+    finally {
+      onOperationFinished();
     }
-    throw new RuntimeException("Cannot reconnect.", last);
   }
 
   protected interface Retriable<T> {
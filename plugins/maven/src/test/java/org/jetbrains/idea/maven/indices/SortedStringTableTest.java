@@ -0,0 +1,117 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.idea.maven.indices;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.Processor;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SortedStringTableTest extends TestCase {
+  private File myDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("table", null);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtil.delete(myDir);
+    super.tearDown();
+  }
+
+  public void testPrefixSearch() throws Exception {
+    SortedStringTable table = new SortedStringTable(new File(myDir, "table.dat"));
+    try {
+      assertEquals(Arrays.<String>asList(), getWithPrefix(table, ""));
+
+      table.replace(Arrays.asList("junit:junit", "jmock:jmock", "junit:junit-dep", "junitx:junit", "org.jmock:jmock"));
+
+      assertEquals(Arrays.asList("junit:junit", "junit:junit-dep"), getWithPrefix(table, "junit:"));
+      assertEquals(Arrays.asList("jmock:jmock", "junit:junit", "junit:junit-dep", "junitx:junit"), getWithPrefix(table, "j"));
+      assertEquals(Arrays.<String>asList(), getWithPrefix(table, "x"));
+
+      assertTrue(table.contains("junitx:junit"));
+      assertFalse(table.contains("junit"));
+      assertFalse(table.contains("zzz"));
+    }
+    finally {
+      table.close();
+    }
+  }
+
+  public void testAddingAndReopening() throws Exception {
+    File file = new File(myDir, "table.dat");
+    SortedStringTable table = new SortedStringTable(file);
+    try {
+      table.replace(Arrays.asList("b", "d"));
+      table.add("c");
+      table.add("a");
+      table.add("d");
+      table.add("e");
+      assertEquals(Arrays.asList("a", "b", "c", "d", "e"), getWithPrefix(table, ""));
+    }
+    finally {
+      table.close();
+    }
+
+    table = new SortedStringTable(file);
+    try {
+      assertEquals(Arrays.asList("a", "b", "c", "d", "e"), getWithPrefix(table, ""));
+      assertTrue(table.contains("c"));
+
+      table.replace(Arrays.asList("x"));
+      assertEquals(Arrays.asList("x"), getWithPrefix(table, ""));
+    }
+    finally {
+      table.close();
+    }
+  }
+
+  public void testCorruptedFile() throws Exception {
+    File file = new File(myDir, "table.dat");
+    FileWriter w = new FileWriter(file);
+    w.write("bad content");
+    w.close();
+
+    try {
+      new SortedStringTable(file);
+      fail();
+    }
+    catch (IOException ignored) {
+    }
+  }
+
+  private static List<String> getWithPrefix(SortedStringTable table, String prefix) throws IOException {
+    final List<String> result = new ArrayList<String>();
+    table.processWithPrefix(prefix, new Processor<String>() {
+      @Override
+      public boolean process(String s) {
+        result.add(s);
+        return true;
+      }
+    });
+    return result;
+  }
+}
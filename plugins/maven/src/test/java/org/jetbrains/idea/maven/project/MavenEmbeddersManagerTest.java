@@ -18,6 +18,9 @@ package org.jetbrains.idea.maven.project;
 import org.jetbrains.idea.maven.MavenTestCase;
 import org.jetbrains.idea.maven.server.MavenEmbedderWrapper;
 
+import java.util.HashSet;
+import java.util.List;
+
 public class MavenEmbeddersManagerTest extends MavenTestCase {
   private MavenEmbeddersManager myManager;
 
@@ -69,6 +72,26 @@ public class MavenEmbeddersManagerTest extends MavenTestCase {
     assertNotSame(one2, one22);
   }
 
+  public void testCachingParallelEmbedders() throws Exception {
+    List<MavenEmbedderWrapper> embedders = myManager.getEmbedders(MavenEmbeddersManager.FOR_DEPENDENCIES_RESOLVE, 3);
+    assertEquals(3, new HashSet<MavenEmbedderWrapper>(embedders).size());
+
+    MavenEmbedderWrapper other = myManager.getEmbedder(MavenEmbeddersManager.FOR_DEPENDENCIES_RESOLVE);
+    assertFalse(embedders.contains(other));
+    myManager.release(other);
+
+    for (MavenEmbedderWrapper each : embedders) {
+      myManager.release(each);
+    }
+
+    List<MavenEmbedderWrapper> embedders2 = myManager.getEmbedders(MavenEmbeddersManager.FOR_DEPENDENCIES_RESOLVE, 2);
+    assertSame(embedders.get(0), embedders2.get(0));
+    assertTrue(embedders.contains(embedders2.get(1)));
+    for (MavenEmbedderWrapper each : embedders2) {
+      myManager.release(each);
+    }
+  }
+
   public void testResettingAllCachedAndInUse() throws Exception {
     MavenEmbedderWrapper one1 = myManager.getEmbedder(MavenEmbeddersManager.FOR_DEPENDENCIES_RESOLVE);
     MavenEmbedderWrapper one2 = myManager.getEmbedder(MavenEmbeddersManager.FOR_FOLDERS_RESOLVE);
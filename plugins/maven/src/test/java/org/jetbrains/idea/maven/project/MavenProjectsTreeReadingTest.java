@@ -693,6 +693,108 @@ public class MavenProjectsTreeReadingTest extends MavenProjectsTreeTestCase {
     assertEquals("updated: parent child deleted: <none> resolved: parent plugins: parent folders: parent ", listener.log);
   }
 
+  public void testDoNotUpdateResolvedChildIfItsModelIsUnchanged() throws Exception {
+    createProjectPom("<groupId>test</groupId>" +
+                     "<artifactId>parent</artifactId>" +
+                     "<version>1</version>" +
+                     "<packaging>pom</packaging>" +
+
+                     "<modules>" +
+                     "  <module>child</module>" +
+                     "</modules>");
+
+    VirtualFile child = createModulePom("child",
+                                        "<groupId>test</groupId>" +
+                                        "<artifactId>child</artifactId>" +
+                                        "<version>1</version>" +
+
+                                        "<parent>" +
+                                        "  <groupId>test</groupId>" +
+                                        "  <artifactId>parent</artifactId>" +
+                                        "  <version>1</version>" +
+                                        "</parent>");
+
+    updateAll(myProjectPom);
+
+    MavenEmbeddersManager embeddersManager = new MavenEmbeddersManager(myProject);
+    try {
+      myTree.resolve(myProject, myTree.findProject(child), getMavenGeneralSettings(), embeddersManager, NULL_MAVEN_CONSOLE,
+                     EMPTY_MAVEN_PROCESS);
+    }
+    finally {
+      embeddersManager.releaseInTests();
+    }
+
+    MyLoggingListener listener = new MyLoggingListener();
+    myTree.addListener(listener);
+
+    createProjectPom("<groupId>test</groupId>" +
+                     "<artifactId>parent</artifactId>" +
+                     "<version>1</version>" +
+                     "<packaging>pom</packaging>" +
+
+                     "<modules>" +
+                     "  <module>child</module>" +
+                     "</modules>" +
+
+                     "<profiles>" +
+                     "  <profile>" +
+                     "    <id>inactive</id>" +
+                     "  </profile>" +
+                     "</profiles>");
+    update(myProjectPom);
+
+    assertEquals("updated: parent deleted: <none> ", listener.log);
+  }
+
+  public void testUpdateResolvedChildIfSettingsChanged() throws Exception {
+    createProjectPom("<groupId>test</groupId>" +
+                     "<artifactId>parent</artifactId>" +
+                     "<version>1</version>" +
+                     "<packaging>pom</packaging>" +
+
+                     "<modules>" +
+                     "  <module>child</module>" +
+                     "</modules>");
+
+    VirtualFile child = createModulePom("child",
+                                        "<groupId>test</groupId>" +
+                                        "<artifactId>child</artifactId>" +
+                                        "<version>1</version>" +
+
+                                        "<parent>" +
+                                        "  <groupId>test</groupId>" +
+                                        "  <artifactId>parent</artifactId>" +
+                                        "  <version>1</version>" +
+                                        "</parent>");
+
+    updateAll(myProjectPom);
+
+    MavenEmbeddersManager embeddersManager = new MavenEmbeddersManager(myProject);
+    try {
+      myTree.resolve(myProject, myTree.findProject(child), getMavenGeneralSettings(), embeddersManager, NULL_MAVEN_CONSOLE,
+                     EMPTY_MAVEN_PROCESS);
+    }
+    finally {
+      embeddersManager.releaseInTests();
+    }
+
+    MyLoggingListener listener = new MyLoggingListener();
+    myTree.addListener(listener);
+
+    // the model stays the same, but the artifacts may now come from elsewhere
+    updateSettingsXml("<mirrors>" +
+                      "  <mirror>" +
+                      "    <id>mirror</id>" +
+                      "    <url>file:///mirror</url>" +
+                      "    <mirrorOf>*</mirrorOf>" +
+                      "  </mirror>" +
+                      "</mirrors>");
+    update(myProjectPom);
+
+    assertEquals("updated: parent child deleted: <none> ", listener.log);
+  }
+
   public void testAddingInheritanceParent() throws Exception {
     VirtualFile child = createModulePom("child",
                                         "<groupId>test</groupId>" +
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.idea.maven.project;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.containers.ContainerUtil;
+
+import java.util.*;
+
+/**
+ * Checks the order in which projects are resolved in parallel by
+ * {@link MavenProjectsTree#resolve(com.intellij.openapi.project.Project, Collection, MavenGeneralSettings, MavenEmbeddersManager,
+ * MavenConsole, ResolveContext, org.jetbrains.idea.maven.utils.MavenProgressIndicator)}
+ * without running Maven, so that it doesn't depend on the sequential resolve used in tests.
+ */
+public class MavenProjectsTreeResolveOrderTest extends MavenProjectsTreeTestCase {
+  public void testReactorDependencies() throws Exception {
+    createModules();
+
+    MavenProject parent = myTree.findProject(myProjectPom);
+    Map<MavenProject, Set<MavenProject>> dependencies = myTree.getReactorDependencies(myTree.getProjects());
+
+    assertEquals(Collections.<MavenProject>emptySet(), dependencies.get(parent));
+    assertEquals(ContainerUtil.newHashSet(parent, project("m2")), dependencies.get(project("m1")));
+    assertEquals(ContainerUtil.newHashSet(parent, project("m3")), dependencies.get(project("m2")));
+    assertEquals(ContainerUtil.newHashSet(parent), dependencies.get(project("m3")));
+    assertEquals(ContainerUtil.newHashSet(parent), dependencies.get(project("m4")));
+  }
+
+  public void testProjectsOutsideOfTheBatchAreNotWaitedFor() throws Exception {
+    createModules();
+
+    List<MavenProject> batch = Arrays.asList(project("m1"), project("m3"));
+    Map<MavenProject, Set<MavenProject>> dependencies = myTree.getReactorDependencies(batch);
+
+    assertEquals(Collections.<MavenProject>emptySet(), dependencies.get(project("m1")));
+    assertEquals(Collections.<MavenProject>emptySet(), dependencies.get(project("m3")));
+  }
+
+  public void testDependenciesAreResolvedFirst() throws Exception {
+    createModules();
+
+    List<MavenProject> projects = myTree.getProjects();
+    Map<MavenProject, Set<MavenProject>> dependencies = myTree.getReactorDependencies(projects);
+    for (int threads = 1; threads <= 4; threads++) {
+      List<MavenProject> started = new ArrayList<MavenProject>();
+      List<MavenProject> order = resolveOrder(projects, dependencies, threads, started);
+
+      assertEquals(new HashSet<MavenProject>(projects), new HashSet<MavenProject>(order));
+      for (MavenProject each : started) {
+        for (MavenProject dependency : dependencies.get(each)) {
+          assertTrue(each + " is started before " + dependency + " is resolved",
+                     order.indexOf(dependency) < started.indexOf(each));
+        }
+      }
+    }
+  }
+
+  public void testIndependentProjectsAreResolvedTogether() {
+    Map<String, Set<String>> dependencies = new HashMap<String, Set<String>>();
+    dependencies.put("parent", Collections.<String>emptySet());
+    dependencies.put("m1", Collections.singleton("parent"));
+    dependencies.put("m2", Collections.singleton("parent"));
+    dependencies.put("m3", Collections.singleton("parent"));
+
+    List<String> started = new ArrayList<String>();
+    assertEquals(Arrays.asList("parent", "m1", "m2", "m3"),
+                 resolveOrder(Arrays.asList("m1", "m2", "m3", "parent"), dependencies, 2, started));
+    assertEquals(Arrays.asList("parent", "m1", "m2", "m3"), started);
+  }
+
+  public void testDependencyCycleIsResolved() {
+    Map<String, Set<String>> dependencies = new HashMap<String, Set<String>>();
+    dependencies.put("a", Collections.singleton("b"));
+    dependencies.put("b", Collections.singleton("a"));
+    dependencies.put("c", Collections.singleton("a"));
+
+    for (int threads = 1; threads <= 3; threads++) {
+      List<String> started = new ArrayList<String>();
+      assertEquals(Arrays.asList("a", "b", "c"), resolveOrder(Arrays.asList("a", "b", "c"), dependencies, threads, started));
+    }
+  }
+
+  public void testCycleIsBrokenOnlyWhenNothingIsRunning() {
+    Map<String, Set<String>> dependencies = new HashMap<String, Set<String>>();
+    dependencies.put("a", Collections.singleton("b"));
+    dependencies.put("b", Collections.singleton("a"));
+    dependencies.put("c", Collections.<String>emptySet());
+    Set<String> waiting = new LinkedHashSet<String>(Arrays.asList("a", "b", "c"));
+    Set<String> resolved = new HashSet<String>();
+
+    assertEquals("c", MavenProjectsTree.pollReady(waiting, resolved, dependencies, true));
+    assertNull(MavenProjectsTree.pollReady(waiting, resolved, dependencies, false));
+    assertEquals("a", MavenProjectsTree.pollReady(waiting, resolved, dependencies, true));
+    assertNull(MavenProjectsTree.pollReady(waiting, resolved, dependencies, false));
+    resolved.add("a");
+    assertEquals("b", MavenProjectsTree.pollReady(waiting, resolved, dependencies, false));
+    assertTrue(waiting.isEmpty());
+  }
+
+  // follows MavenProjectsTree.resolve(Collection): at most 'threads' projects are being resolved at once,
+  // and the project started first is resolved first; returns the projects in the order they are resolved
+  private static <T> List<T> resolveOrder(Collection<T> projects, Map<T, Set<T>> dependencies, int threads, List<T> started) {
+    Set<T> waiting = new LinkedHashSet<T>(projects);
+    Set<T> resolved = new HashSet<T>();
+    LinkedList<T> running = new LinkedList<T>();
+    List<T> order = new ArrayList<T>();
+    while (!waiting.isEmpty() || !running.isEmpty()) {
+      while (running.size() < threads) {
+        T each = MavenProjectsTree.pollReady(waiting, resolved, dependencies, running.isEmpty());
+        if (each == null) break;
+        running.add(each);
+        started.add(each);
+      }
+      T done = running.removeFirst();
+      resolved.add(done);
+      order.add(done);
+    }
+    return order;
+  }
+
+  private MavenProject project(String name) {
+    return myTree.findProject(myProjectRoot.findFileByRelativePath(name + "/pom.xml"));
+  }
+
+  // m1 depends on m2, m2 depends on m3, m4 depends on a project outside of the tree
+  private void createModules() throws Exception {
+    createProjectPom("<groupId>test</groupId>" +
+                     "<artifactId>project</artifactId>" +
+                     "<version>1</version>" +
+                     "<packaging>pom</packaging>" +
+
+                     "<modules>" +
+                     "  <module>m1</module>" +
+                     "  <module>m2</module>" +
+                     "  <module>m3</module>" +
+                     "  <module>m4</module>" +
+                     "</modules>");
+
+    createModulePom("m1", modulePom("m1", "m2"));
+    createModulePom("m2", modulePom("m2", "m3"));
+    createModulePom("m3", modulePom("m3", null));
+    createModulePom("m4", modulePom("m4", "external"));
+
+    updateAll(myProjectPom);
+  }
+
+  private static String modulePom(String name, String dependency) {
+    String result = "<groupId>test</groupId>" +
+                    "<artifactId>" + name + "</artifactId>" +
+                    "<version>1</version>" +
+
+                    "<parent>" +
+                    "  <groupId>test</groupId>" +
+                    "  <artifactId>project</artifactId>" +
+                    "  <version>1</version>" +
+                    "</parent>";
+    if (dependency != null) {
+      result += "<dependencies>" +
+                "  <dependency>" +
+                "    <groupId>test</groupId>" +
+                "    <artifactId>" + dependency + "</artifactId>" +
+                "    <version>1</version>" +
+                "  </dependency>" +
+                "</dependencies>";
+    }
+    return result;
+  }
+}